@@ -0,0 +1,242 @@
+/*
+ * Copyright (c) 2006-2014 Nuxeo SA (http://nuxeo.com/) and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Nuxeo - initial API and implementation
+ *
+ */
+
+package org.nuxeo.ecm.core.api.impl;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import org.nuxeo.ecm.core.api.ClientRuntimeException;
+import org.nuxeo.ecm.core.api.DataModel;
+import org.nuxeo.ecm.core.api.model.DocumentPart;
+import org.nuxeo.ecm.core.api.model.PropertyException;
+import org.nuxeo.ecm.core.api.model.PropertyNotFoundException;
+import org.nuxeo.ecm.core.api.model.impl.DocumentPartImpl;
+import org.nuxeo.ecm.core.schema.SchemaManager;
+import org.nuxeo.runtime.api.Framework;
+
+/**
+ * Data model reading its top-level fields from an immutable snapshot of values, shared with its copies.
+ * <p>
+ * Copying such a data model only allocates a new holder for the shared snapshot, instead of building a new
+ * {@link DocumentPart} like {@link DocumentModelImpl#clone} does for a {@link DataModelImpl}. Reading a field returns a
+ * copy of its value, so callers cannot modify the snapshot. The first write, or any access that needs the property tree
+ * ({@link #getDocumentPart}, paths below a top-level field), builds the document part from the snapshot and the data
+ * model then behaves as a plain {@link DataModelImpl}.
+ * <p>
+ * This is meant for entries cached and copied many times but rarely modified, like directory entries.
+ *
+ * @since 7.1
+ */
+public class CopyOnWriteDataModel extends DataModelImpl {
+
+    private static final long serialVersionUID = 1L;
+
+    protected final String schemaName;
+
+    /** Index of each top-level field in {@link #values}, shared. */
+    protected final Map<String, Integer> fields;
+
+    /** Snapshot of the top-level field values, shared and never modified. Null once the document part is built. */
+    protected Object[] values;
+
+    /**
+     * Builds a data model from a snapshot of the values of another data model.
+     */
+    public CopyOnWriteDataModel(DataModel dataModel) throws PropertyException {
+        schemaName = dataModel.getSchema();
+        Map<String, Object> map = dataModel.getMap();
+        fields = new HashMap<String, Integer>(map.size() * 2);
+        values = new Object[map.size()];
+        int i = 0;
+        for (Entry<String, Object> es : map.entrySet()) {
+            fields.put(es.getKey(), Integer.valueOf(i));
+            values[i++] = copyValue(es.getValue());
+        }
+    }
+
+    protected CopyOnWriteDataModel(CopyOnWriteDataModel other) {
+        schemaName = other.schemaName;
+        fields = other.fields;
+        values = other.values;
+    }
+
+    /**
+     * Returns a copy of this data model, sharing its snapshot if it was not modified.
+     */
+    public CopyOnWriteDataModel copy() {
+        if (values != null) {
+            return new CopyOnWriteDataModel(this);
+        }
+        try {
+            return new CopyOnWriteDataModel((DataModel) this);
+        } catch (PropertyException e) {
+            throw new ClientRuntimeException(e);
+        }
+    }
+
+    /**
+     * Builds the document part from the snapshot, before the first write.
+     */
+    protected void materialize() {
+        if (dp != null) {
+            return;
+        }
+        SchemaManager schemaManager = Framework.getLocalService(SchemaManager.class);
+        DocumentPart part = new DocumentPartImpl(schemaManager.getSchema(schemaName));
+        try {
+            part.init((Serializable) snapshotMap());
+        } catch (PropertyException e) {
+            throw new ClientRuntimeException(e);
+        }
+        dp = part;
+        values = null;
+    }
+
+    protected Map<String, Object> snapshotMap() {
+        Map<String, Object> map = new HashMap<String, Object>(fields.size() * 2);
+        for (Entry<String, Integer> es : fields.entrySet()) {
+            map.put(es.getKey(), copyValue(values[es.getValue().intValue()]));
+        }
+        return map;
+    }
+
+    @Override
+    public DocumentPart getDocumentPart() {
+        materialize();
+        return dp;
+    }
+
+    @Override
+    public String getSchema() {
+        return schemaName;
+    }
+
+    @Override
+    public Object getData(String key) throws PropertyException {
+        if (values != null) {
+            Integer i = fields.get(key);
+            if (i != null) {
+                return copyValue(values[i.intValue()]);
+            }
+        }
+        materialize();
+        return super.getData(key);
+    }
+
+    @Override
+    public void setData(String key, Object value) throws PropertyException {
+        materialize();
+        super.setData(key, value);
+    }
+
+    @Override
+    public Map<String, Object> getMap() throws PropertyException {
+        if (values != null) {
+            return snapshotMap();
+        }
+        return super.getMap();
+    }
+
+    @Override
+    public void setMap(Map<String, Object> data) throws PropertyException {
+        materialize();
+        super.setMap(data);
+    }
+
+    @Override
+    public boolean isDirty() {
+        return values == null && super.isDirty();
+    }
+
+    @Override
+    public boolean isDirty(String name) throws PropertyNotFoundException {
+        if (values != null && fields.containsKey(name)) {
+            return false;
+        }
+        materialize();
+        return super.isDirty(name);
+    }
+
+    @Override
+    public Collection<String> getDirtyFields() {
+        if (values != null) {
+            return Collections.emptyList();
+        }
+        return super.getDirtyFields();
+    }
+
+    @Override
+    public void setDirty(String name) throws PropertyNotFoundException {
+        materialize();
+        super.setDirty(name);
+    }
+
+    @Override
+    public Object getValue(String path) throws PropertyException {
+        return getData(path);
+    }
+
+    @Override
+    public Object setValue(String path, Object value) throws PropertyException {
+        materialize();
+        return super.setValue(path, value);
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + '(' + schemaName + (isDirty() ? "*" : "") + ')';
+    }
+
+    /**
+     * Copies the mutable parts of a property value.
+     */
+    @SuppressWarnings("unchecked")
+    protected static Object copyValue(Object value) {
+        if (value instanceof List) {
+            List<Object> list = (List<Object>) value;
+            List<Object> copy = new ArrayList<Object>(list.size());
+            for (Object v : list) {
+                copy.add(copyValue(v));
+            }
+            return copy;
+        } else if (value instanceof Map) {
+            Map<String, Object> map = (Map<String, Object>) value;
+            Map<String, Object> copy = new HashMap<String, Object>(map.size() * 2);
+            for (Entry<String, Object> es : map.entrySet()) {
+                copy.put(es.getKey(), copyValue(es.getValue()));
+            }
+            return copy;
+        } else if (value instanceof Object[]) {
+            Object[] array = ((Object[]) value).clone();
+            for (int i = 0; i < array.length; i++) {
+                array[i] = copyValue(array[i]);
+            }
+            return array;
+        } else if (value instanceof Calendar) {
+            return ((Calendar) value).clone();
+        } else if (value instanceof Date) {
+            return ((Date) value).clone();
+        }
+        return value;
+    }
+
+}
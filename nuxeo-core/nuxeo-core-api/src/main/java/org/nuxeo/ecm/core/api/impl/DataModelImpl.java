@@ -41,7 +41,15 @@ public class DataModelImpl implements DataModel {
 
     private static final long serialVersionUID = 1L;
 
-    private final DocumentPart dp;
+    protected DocumentPart dp;
+
+    /**
+     * Constructor for subclasses setting the document part themselves.
+     *
+     * @since 7.1
+     */
+    protected DataModelImpl() {
+    }
 
     /**
      * Builds an empty data model.
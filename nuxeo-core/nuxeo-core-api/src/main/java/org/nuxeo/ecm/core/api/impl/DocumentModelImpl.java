@@ -1073,8 +1073,7 @@ public class DocumentModelImpl implements DocumentModel, Cloneable {
     @Override
     public boolean isDirty() {
         for (DataModel dm : dataModels.values()) {
-            DocumentPart part = ((DataModelImpl) dm).getDocumentPart();
-            if (part.isDirty()) {
+            if (dm.isDirty()) {
                 return true;
             }
         }
@@ -1441,6 +1440,15 @@ public class DocumentModelImpl implements DocumentModel, Cloneable {
                 return value;
             }
         }
+        if (xpath != null && xpath.indexOf('/') == -1) {
+            // top-level field of an unmodified copy-on-write data model
+            String[] returnName = new String[1];
+            String schemaName = getXPathSchemaName(canonicalXPath(xpath), schemas, returnName);
+            DataModel dm = schemaName == null ? null : dataModels.get(schemaName);
+            if (dm instanceof CopyOnWriteDataModel && !dm.isDirty()) {
+                return (Serializable) dm.getData(returnName[0]);
+            }
+        }
         return getProperty(xpath).getValue();
     }
 
@@ -1501,11 +1509,16 @@ public class DocumentModelImpl implements DocumentModel, Cloneable {
         for (Map.Entry<String, DataModel> entry : dataModels.entrySet()) {
             String key = entry.getKey();
             DataModel data = entry.getValue();
-            DataModelImpl newData;
-            try {
-                newData = new DataModelImpl(key, data.getMap());
-            } catch (PropertyException e) {
-                throw new ClientRuntimeException(e);
+            DataModel newData;
+            if (data instanceof CopyOnWriteDataModel) {
+                // shares the values until modified
+                newData = ((CopyOnWriteDataModel) data).copy();
+            } else {
+                try {
+                    newData = new DataModelImpl(key, data.getMap());
+                } catch (PropertyException e) {
+                    throw new ClientRuntimeException(e);
+                }
             }
             dm.dataModels.put(key, newData);
         }
@@ -0,0 +1,133 @@
+/*
+ * Copyright (c) 2006-2014 Nuxeo SA (http://nuxeo.com/) and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Nuxeo - initial API and implementation
+ *
+ */
+
+package org.nuxeo.ecm.core.api.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.GregorianCalendar;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.junit.Before;
+import org.junit.Ignore;
+import org.junit.Test;
+import org.nuxeo.ecm.core.api.DataModel;
+import org.nuxeo.ecm.core.api.DocumentModel;
+import org.nuxeo.runtime.test.NXRuntimeTestCase;
+
+public class TestCopyOnWriteDataModel extends NXRuntimeTestCase {
+
+    private static final Log log = LogFactory.getLog(TestCopyOnWriteDataModel.class);
+
+    protected static final String SCHEMA = "benchuser";
+
+    @Override
+    @Before
+    public void setUp() throws Exception {
+        super.setUp();
+        deployBundle("org.nuxeo.ecm.core.schema");
+        deployContrib("org.nuxeo.ecm.core.api.tests", "OSGI-INF/test-copyonwrite-types-contrib.xml");
+    }
+
+    /**
+     * Builds a user entry like directories do.
+     */
+    protected static DocumentModelImpl newEntry(boolean copyOnWrite) throws Exception {
+        DocumentModelImpl entry = new DocumentModelImpl(null, SCHEMA, "jdoe", null, null, null, null,
+                new String[] { SCHEMA }, new HashSet<String>(), null, null);
+        Map<String, Object> values = new HashMap<String, Object>();
+        for (String field : new String[] { "username", "password", "firstName", "lastName", "company", "email",
+                "phone", "mobile", "street", "city", "zipCode", "country", "title", "department", "manager",
+                "tenantId" }) {
+            values.put(field, field + " value");
+        }
+        values.put("accessLevel", Long.valueOf(3));
+        values.put("active", Boolean.TRUE);
+        values.put("created", new GregorianCalendar(2014, 10, 20));
+        values.put("groups", new String[] { "members", "administrators" });
+        DataModel dataModel = new DataModelImpl(SCHEMA, values);
+        entry.addDataModel(copyOnWrite ? new CopyOnWriteDataModel(dataModel) : dataModel);
+        return entry;
+    }
+
+    @Test
+    public void testCopyOnWrite() throws Exception {
+        DocumentModelImpl entry = newEntry(true);
+        DocumentModel copy = entry.clone();
+        CopyOnWriteDataModel dataModel = (CopyOnWriteDataModel) entry.getDataModel(SCHEMA);
+        CopyOnWriteDataModel copyDataModel = (CopyOnWriteDataModel) copy.getDataModel(SCHEMA);
+        assertSame(dataModel.values, copyDataModel.values);
+
+        assertEquals("email value", copy.getProperty(SCHEMA, "email"));
+        assertEquals("email value", copy.getPropertyValue("bu:email"));
+        assertEquals(Long.valueOf(3), copy.getPropertyValue("accessLevel"));
+        assertFalse(copy.isDirty());
+
+        // values read cannot change the shared snapshot
+        ((Calendar) copy.getProperty(SCHEMA, "created")).add(Calendar.YEAR, 1);
+        ((String[]) copy.getProperty(SCHEMA, "groups"))[0] = "changed";
+        assertEquals(2014, ((Calendar) entry.getProperty(SCHEMA, "created")).get(Calendar.YEAR));
+        assertEquals(Arrays.asList("members", "administrators"),
+                Arrays.asList((String[]) entry.getProperty(SCHEMA, "groups")));
+
+        // a write only affects the copy
+        copy.setProperty(SCHEMA, "email", "jdoe@example.com");
+        assertTrue(copy.isDirty());
+        assertTrue(copyDataModel.isDirty("email"));
+        assertEquals("jdoe@example.com", copy.getProperty(SCHEMA, "email"));
+        assertEquals("jdoe@example.com", copy.getPropertyValue("bu:email"));
+        assertEquals("email value", entry.getProperty(SCHEMA, "email"));
+        assertFalse(entry.isDirty());
+        assertSame(dataModel.values, ((CopyOnWriteDataModel) entry.clone().getDataModel(SCHEMA)).values);
+
+        // property API
+        assertNotNull(entry.getPart(SCHEMA));
+        assertEquals("firstName value", entry.getPropertyValue("bu:firstName"));
+        assertEquals(Long.valueOf(3), entry.getProperty("bu:accessLevel").getValue());
+    }
+
+    @Ignore("benchmark")
+    @Test
+    public void benchmarkCachedEntryCopy() throws Exception {
+        int n = 200000;
+        for (int round = 0; round < 3; round++) {
+            run(newEntry(false), "DataModelImpl", n);
+            run(newEntry(true), "CopyOnWriteDataModel", n);
+        }
+    }
+
+    protected void run(DocumentModelImpl entry, String name, int n) throws Exception {
+        int length = 0;
+        long t0 = System.nanoTime();
+        for (int i = 0; i < n; i++) {
+            // cache hit followed by a label lookup
+            DocumentModel copy = entry.clone();
+            length += ((String) copy.getProperty(SCHEMA, "lastName")).length();
+        }
+        long t = System.nanoTime() - t0;
+        assertEquals(n * "lastName value".length(), length);
+        log.warn(String.format("%s: %d copies in %d ms, %.0f ns/copy", name, Integer.valueOf(n),
+                Long.valueOf(t / 1000000), Double.valueOf((double) t / n)));
+    }
+
+}
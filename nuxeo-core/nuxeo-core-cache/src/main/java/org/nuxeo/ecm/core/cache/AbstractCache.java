@@ -17,6 +17,14 @@
  */
 package org.nuxeo.ecm.core.cache;
 
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.Callable;
+
 /**
  * Abstract class to be extended to provide new cache implementation
  *
@@ -38,4 +46,65 @@ public abstract class AbstractCache implements Cache {
         return name;
     }
 
+    /**
+     * Default implementation calling {@link #get(String)} for each key.
+     */
+    @Override
+    public Map<String, Serializable> getAll(Collection<String> keys) throws IOException {
+        Map<String, Serializable> res = new HashMap<String, Serializable>();
+        for (String key : keys) {
+            if (key == null) {
+                continue;
+            }
+            Serializable value = get(key);
+            if (value != null) {
+                res.put(key, value);
+            }
+        }
+        return res;
+    }
+
+    /**
+     * Default implementation calling {@link #get(String)}, then the loader and {@link #put} if the value is absent.
+     */
+    @Override
+    public Serializable get(String key, Callable<? extends Serializable> loader) throws IOException {
+        if (key == null) {
+            return null;
+        }
+        Serializable value = get(key);
+        if (value == null) {
+            value = load(key, loader);
+            if (value != null) {
+                put(key, value);
+            }
+        }
+        return value;
+    }
+
+    /**
+     * Calls the loader, rethrowing checked exceptions as {@link IOException}.
+     *
+     * @since 7.1
+     */
+    protected Serializable load(String key, Callable<? extends Serializable> loader) throws IOException {
+        try {
+            return loader.call();
+        } catch (IOException | RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new IOException(String.format("Cannot load key '%s' for the cache '%s'", key, name), e);
+        }
+    }
+
+    /**
+     * Default implementation calling {@link #put} for each entry.
+     */
+    @Override
+    public void putAll(Map<String, ? extends Serializable> values) throws IOException {
+        for (Entry<String, ? extends Serializable> es : values.entrySet()) {
+            put(es.getKey(), es.getValue());
+        }
+    }
+
 }
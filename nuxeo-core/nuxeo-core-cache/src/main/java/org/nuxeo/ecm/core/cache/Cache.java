@@ -19,6 +19,9 @@ package org.nuxeo.ecm.core.cache;
 
 import java.io.IOException;
 import java.io.Serializable;
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.Callable;
 
 /**
  * The nuxeo cache interface that define generic methods to use cache technologies
@@ -69,4 +72,34 @@ public interface Cache {
      */
     public void put(String key, Serializable value) throws IOException;
 
+    /**
+     * Get method to retrieve several values from cache in one call
+     *
+     * @param keys the string keys, null keys are ignored
+     * @return a map of the keys found in the cache to their {@link Serializable} value, absent keys are not in the map
+     * @since 7.1
+     */
+    public Map<String, Serializable> getAll(Collection<String> keys) throws IOException;
+
+    /**
+     * Get method to retrieve value from cache, computing it with the given loader if it is absent
+     * <p>
+     * A non-null value returned by the loader is stored in the cache. Implementations may also use the loader to
+     * refresh the value of a frequently accessed key before it expires.
+     *
+     * @param key the string key
+     * @param loader the loader computing the value if absent
+     * @return the {@link Serializable} value, null if the key is null or if the loader returned null
+     * @since 7.1
+     */
+    public Serializable get(String key, Callable<? extends Serializable> loader) throws IOException;
+
+    /**
+     * Put method to store several {@link Serializable} values in one call
+     *
+     * @param values the keys and values to store, null keys and values are not allowed
+     * @since 7.1
+     */
+    public void putAll(Map<String, ? extends Serializable> values) throws IOException;
+
 }
@@ -19,6 +19,11 @@ package org.nuxeo.ecm.core.cache;
 
 import java.io.IOException;
 import java.io.Serializable;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.Callable;
 
 /**
  * Class to implement mandatory check attributes before calling implementation of cache This enable to have the same
@@ -74,4 +79,36 @@ public class CacheAttributesChecker extends AbstractCache {
         cache.put(key, value);
     }
 
+    @Override
+    public Map<String, Serializable> getAll(Collection<String> keys) throws IOException {
+        if (keys == null || keys.isEmpty()) {
+            return Collections.emptyMap();
+        }
+        return cache.getAll(keys);
+    }
+
+    @Override
+    public Serializable get(String key, Callable<? extends Serializable> loader) throws IOException {
+        if (key == null) {
+            return null;
+        }
+        if (loader == null) {
+            throw new IllegalArgumentException(String.format("Can't load with a null loader for the cache '%s'!", name));
+        }
+        return cache.get(key, loader);
+    }
+
+    @Override
+    public void putAll(Map<String, ? extends Serializable> values) throws IOException {
+        for (Entry<String, ? extends Serializable> es : values.entrySet()) {
+            if (es.getKey() == null) {
+                throw new IllegalArgumentException(String.format("Can't put a null key for the cache '%s'!", name));
+            }
+            if (es.getValue() == null) {
+                throw new IllegalArgumentException(String.format("Can't put a null value for the cache '%s'!", name));
+            }
+        }
+        cache.putAll(values);
+    }
+
 }
@@ -17,6 +17,8 @@
  */
 package org.nuxeo.ecm.core.cache;
 
+import java.io.Closeable;
+import java.io.IOException;
 import java.lang.reflect.InvocationTargetException;
 import java.util.HashMap;
 import java.util.Map;
@@ -75,6 +77,13 @@ public class CacheDescriptor {
         this.implClass = implClass;
     }
 
+    /**
+     * @since 7.1
+     */
+    public Map<String, String> getOptions() {
+        return options;
+    }
+
     @Override
     public String toString() {
         return name + ": " + implClass + ": " + ttl + ": " + options;
@@ -94,8 +103,16 @@ public class CacheDescriptor {
         if (cacheChecker == null) {
             return;
         }
+        Cache cache = cacheChecker.cache;
         cacheChecker.cache = null;
         cacheChecker = null;
+        if (cache instanceof Closeable) {
+            try {
+                ((Closeable) cache).close();
+            } catch (IOException e) {
+                throw new NuxeoException("Failed to close cache " + name, e);
+            }
+        }
     }
 
 }
@@ -0,0 +1,150 @@
+/*
+ * (C) Copyright 2014 Nuxeo SA (http://nuxeo.com/) and contributors.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser General Public License
+ * (LGPL) version 2.1 which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl-2.1.html
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * Contributors:
+ *     Florent Guillaume
+ */
+package org.nuxeo.ecm.core.cache;
+
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.io.Serializable;
+import java.util.Calendar;
+import java.util.Collection;
+import java.util.Date;
+import java.util.Map;
+import java.util.Map.Entry;
+
+/**
+ * Computes the approximate size in bytes taken in memory by a {@link Serializable} value.
+ * <p>
+ * Common types (strings, numbers, dates, arrays, collections and maps of them) are estimated from their structure,
+ * other values are estimated from the length of their Java serialization.
+ *
+ * @since 7.1
+ */
+public class SerializableWeigher {
+
+    protected static final int OBJECT_OVERHEAD = 16;
+
+    protected static final int REFERENCE_SIZE = 8;
+
+    /** Depth after which nested collections are not inspected anymore. */
+    protected static final int MAX_DEPTH = 8;
+
+    /** Weight of values too deeply nested or that cannot be serialized. */
+    protected static final int DEFAULT_WEIGHT = 64;
+
+    private SerializableWeigher() {
+        // utility class
+    }
+
+    /**
+     * Gets the approximate weight of a value, in bytes.
+     */
+    public static int weigh(Object value) {
+        long weight = weigh(value, 0);
+        return weight > Integer.MAX_VALUE ? Integer.MAX_VALUE : (int) weight;
+    }
+
+    protected static long weigh(Object value, int depth) {
+        if (value == null) {
+            return 0;
+        }
+        if (value instanceof String) {
+            return 2 * OBJECT_OVERHEAD + 8 + 2L * ((String) value).length();
+        }
+        if (value instanceof Number || value instanceof Boolean || value instanceof Character
+                || value instanceof Enum) {
+            return OBJECT_OVERHEAD + 8;
+        }
+        if (value instanceof Date) {
+            return 2 * OBJECT_OVERHEAD;
+        }
+        if (value instanceof Calendar) {
+            // fields and time zone reference
+            return 200;
+        }
+        if (value instanceof byte[]) {
+            return OBJECT_OVERHEAD + ((byte[]) value).length;
+        }
+        if (value instanceof char[]) {
+            return OBJECT_OVERHEAD + 2L * ((char[]) value).length;
+        }
+        if (value instanceof long[]) {
+            return OBJECT_OVERHEAD + 8L * ((long[]) value).length;
+        }
+        if (value instanceof int[]) {
+            return OBJECT_OVERHEAD + 4L * ((int[]) value).length;
+        }
+        if (depth >= MAX_DEPTH) {
+            return DEFAULT_WEIGHT;
+        }
+        if (value instanceof Object[]) {
+            Object[] array = (Object[]) value;
+            long weight = OBJECT_OVERHEAD + (long) REFERENCE_SIZE * array.length;
+            for (Object v : array) {
+                weight += weigh(v, depth + 1);
+            }
+            return weight;
+        }
+        if (value instanceof Collection) {
+            Collection<?> collection = (Collection<?>) value;
+            // entries or nodes holding the elements
+            long weight = 3 * OBJECT_OVERHEAD + (long) (OBJECT_OVERHEAD + 2 * REFERENCE_SIZE) * collection.size();
+            for (Object v : collection) {
+                weight += weigh(v, depth + 1);
+            }
+            return weight;
+        }
+        if (value instanceof Map) {
+            Map<?, ?> map = (Map<?, ?>) value;
+            long weight = 3 * OBJECT_OVERHEAD + (long) (OBJECT_OVERHEAD + 4 * REFERENCE_SIZE) * map.size();
+            for (Entry<?, ?> es : map.entrySet()) {
+                weight += weigh(es.getKey(), depth + 1) + weigh(es.getValue(), depth + 1);
+            }
+            return weight;
+        }
+        return getSerializedLength(value);
+    }
+
+    protected static long getSerializedLength(Object value) {
+        CountingOutputStream out = new CountingOutputStream();
+        try (ObjectOutputStream oos = new ObjectOutputStream(out)) {
+            oos.writeObject(value);
+        } catch (IOException e) {
+            return DEFAULT_WEIGHT;
+        }
+        return out.count;
+    }
+
+    /**
+     * Output stream only counting the bytes written.
+     */
+    protected static class CountingOutputStream extends OutputStream {
+
+        protected long count;
+
+        @Override
+        public void write(int b) {
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            count += len;
+        }
+    }
+
+}
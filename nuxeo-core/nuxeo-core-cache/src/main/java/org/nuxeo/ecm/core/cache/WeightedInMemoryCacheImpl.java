@@ -0,0 +1,344 @@
+/*
+ * (C) Copyright 2014 Nuxeo SA (http://nuxeo.com/) and contributors.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser General Public License
+ * (LGPL) version 2.1 which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl-2.1.html
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * Contributors:
+ *     Florent Guillaume
+ */
+package org.nuxeo.ecm.core.cache;
+
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.nuxeo.runtime.metrics.MetricsService;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.SharedMetricRegistries;
+import com.codahale.metrics.Timer;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader.InvalidCacheLoadException;
+import com.google.common.cache.RemovalCause;
+import com.google.common.cache.RemovalListener;
+import com.google.common.cache.RemovalNotification;
+import com.google.common.cache.Weigher;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+
+/**
+ * In memory implementation for cache management based on guava, bounded by the approximate size in bytes of its
+ * entries instead of their number.
+ * <p>
+ * The weight of the values is computed once when they are stored, using {@link SerializableWeigher}. Values loaded
+ * through {@link #get(String, Callable)} are loaded only once when several threads miss the same key, and hot keys
+ * can be refreshed in the background before they expire.
+ * <p>
+ * Options:
+ * <ul>
+ * <li>{@code maxBytes}: the maximum total weight of the cache, default 64 MB</li>
+ * <li>{@code concurrencyLevel}: the number of segments of the cache</li>
+ * <li>{@code refreshAfter}: the delay in seconds after which a value read with a loader is reloaded asynchronously,
+ * default 0 (no refresh)</li>
+ * </ul>
+ * The hits, misses, evictions, refreshes and load times are reported in the metrics registry under
+ * {@code nuxeo.cache.<name>}.
+ *
+ * @since 7.1
+ */
+public class WeightedInMemoryCacheImpl extends AbstractCache {
+
+    protected static final Log log = LogFactory.getLog(WeightedInMemoryCacheImpl.class);
+
+    public static final String MAX_BYTES_OPTION = "maxBytes";
+
+    public static final String CONCURRENCY_LEVEL_OPTION = "concurrencyLevel";
+
+    public static final String REFRESH_AFTER_OPTION = "refreshAfter";
+
+    public static final long DEFAULT_MAX_BYTES = 64L * 1024 * 1024;
+
+    protected static final int REFRESH_THREADS = 2;
+
+    protected static final int REFRESH_QUEUE_SIZE = 1000;
+
+    /** Executor shared by all the caches for background refreshes. */
+    protected static final ThreadPoolExecutor refreshExecutor;
+
+    static {
+        refreshExecutor = new ThreadPoolExecutor(REFRESH_THREADS, REFRESH_THREADS, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<Runnable>(REFRESH_QUEUE_SIZE), new RefreshThreadFactory());
+        refreshExecutor.allowCoreThreadTimeOut(true);
+    }
+
+    protected final Cache<String, CacheEntry> cache;
+
+    protected final long refreshAfterMillis;
+
+    protected final MetricRegistry registry = SharedMetricRegistries.getOrCreate(MetricsService.class.getName());
+
+    protected final Counter hitCount;
+
+    protected final Counter missCount;
+
+    protected final Counter evictionCount;
+
+    protected final Counter refreshCount;
+
+    protected final Timer loadTimer;
+
+    public WeightedInMemoryCacheImpl(CacheDescriptor desc) {
+        super(desc);
+        hitCount = registry.counter(MetricRegistry.name("nuxeo", "cache", name, "hits"));
+        missCount = registry.counter(MetricRegistry.name("nuxeo", "cache", name, "misses"));
+        evictionCount = registry.counter(MetricRegistry.name("nuxeo", "cache", name, "evictions"));
+        refreshCount = registry.counter(MetricRegistry.name("nuxeo", "cache", name, "refreshes"));
+        loadTimer = registry.timer(MetricRegistry.name("nuxeo", "cache", name, "loads"));
+        long maxBytes = DEFAULT_MAX_BYTES;
+        if (desc.options.containsKey(MAX_BYTES_OPTION)) {
+            maxBytes = Long.parseLong(desc.options.get(MAX_BYTES_OPTION).trim());
+        }
+        long refreshAfter = 0;
+        if (desc.options.containsKey(REFRESH_AFTER_OPTION)) {
+            refreshAfter = Long.parseLong(desc.options.get(REFRESH_AFTER_OPTION).trim());
+        }
+        refreshAfterMillis = TimeUnit.SECONDS.toMillis(refreshAfter);
+        CacheBuilder<Object, Object> builder = CacheBuilder.newBuilder();
+        builder = builder.expireAfterWrite(desc.ttl, TimeUnit.MINUTES);
+        if (desc.options.containsKey(CONCURRENCY_LEVEL_OPTION)) {
+            builder = builder.concurrencyLevel(Integer.valueOf(desc.options.get(CONCURRENCY_LEVEL_OPTION)).intValue());
+        }
+        cache = builder.maximumWeight(maxBytes).weigher(new EntryWeigher()).removalListener(
+                new EvictionListener()).build();
+    }
+
+    /**
+     * A cached value with its weight and write time.
+     */
+    protected static class CacheEntry {
+
+        protected final Serializable value;
+
+        protected final int weight;
+
+        protected final long writeTime;
+
+        protected final AtomicBoolean refreshing = new AtomicBoolean();
+
+        protected CacheEntry(Serializable value) {
+            this.value = value;
+            weight = SerializableWeigher.weigh(value);
+            writeTime = System.currentTimeMillis();
+        }
+    }
+
+    protected static class EntryWeigher implements Weigher<String, CacheEntry> {
+
+        @Override
+        public int weigh(String key, CacheEntry entry) {
+            int weight = SerializableWeigher.weigh(key) + entry.weight;
+            return weight < 0 ? Integer.MAX_VALUE : weight;
+        }
+    }
+
+    protected class EvictionListener implements RemovalListener<String, CacheEntry> {
+
+        @Override
+        public void onRemoval(RemovalNotification<String, CacheEntry> notification) {
+            if (notification.getCause() == RemovalCause.SIZE) {
+                evictionCount.inc();
+            }
+        }
+    }
+
+    protected static class RefreshThreadFactory implements ThreadFactory {
+
+        protected final AtomicInteger threadNumber = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, "Nuxeo-Cache-Refresh-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+
+    @Override
+    public Serializable get(String key) {
+        if (key == null) {
+            return null;
+        }
+        CacheEntry entry = cache.getIfPresent(key);
+        if (entry == null) {
+            missCount.inc();
+            return null;
+        }
+        hitCount.inc();
+        return entry.value;
+    }
+
+    @Override
+    public Map<String, Serializable> getAll(Collection<String> keys) {
+        List<String> nonNullKeys = new ArrayList<String>(keys.size());
+        for (String key : keys) {
+            if (key != null) {
+                nonNullKeys.add(key);
+            }
+        }
+        Map<String, CacheEntry> entries = cache.getAllPresent(nonNullKeys);
+        hitCount.inc(entries.size());
+        missCount.inc(nonNullKeys.size() - entries.size());
+        Map<String, Serializable> res = new HashMap<String, Serializable>();
+        for (Entry<String, CacheEntry> es : entries.entrySet()) {
+            res.put(es.getKey(), es.getValue().value);
+        }
+        return res;
+    }
+
+    @Override
+    public Serializable get(final String key, final Callable<? extends Serializable> loader) throws IOException {
+        if (key == null) {
+            return null;
+        }
+        CacheEntry entry = cache.getIfPresent(key);
+        if (entry != null) {
+            hitCount.inc();
+            if (refreshAfterMillis > 0 && System.currentTimeMillis() - entry.writeTime > refreshAfterMillis) {
+                refresh(key, entry, loader);
+            }
+            return entry.value;
+        }
+        missCount.inc();
+        try {
+            // concurrent misses on the same key wait for a single load
+            entry = cache.get(key, new Callable<CacheEntry>() {
+                @Override
+                public CacheEntry call() throws IOException {
+                    Serializable value = timedLoad(key, loader);
+                    // a null return is reported by guava as an InvalidCacheLoadException
+                    return value == null ? null : new CacheEntry(value);
+                }
+            });
+        } catch (InvalidCacheLoadException e) {
+            return null;
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            throw new IOException(cause);
+        } catch (UncheckedExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw e;
+        }
+        return entry.value;
+    }
+
+    protected Serializable timedLoad(String key, Callable<? extends Serializable> loader) throws IOException {
+        Timer.Context context = loadTimer.time();
+        try {
+            return load(key, loader);
+        } finally {
+            context.stop();
+        }
+    }
+
+    /**
+     * Reloads a value in the background, unless a refresh is already running for it.
+     * <p>
+     * The new value replaces the old one only if it has not been changed or invalidated in the meantime.
+     */
+    protected void refresh(final String key, final CacheEntry entry, final Callable<? extends Serializable> loader) {
+        if (!entry.refreshing.compareAndSet(false, true)) {
+            return;
+        }
+        Runnable runnable = new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    Serializable value = timedLoad(key, loader);
+                    if (value == null) {
+                        cache.asMap().remove(key, entry);
+                    } else {
+                        cache.asMap().replace(key, entry, new CacheEntry(value));
+                    }
+                    refreshCount.inc();
+                } catch (IOException | RuntimeException e) {
+                    log.warn(String.format("Cannot refresh key '%s' for the cache '%s'", key, name), e);
+                    entry.refreshing.set(false);
+                }
+            }
+        };
+        try {
+            refreshExecutor.execute(runnable);
+        } catch (RejectedExecutionException e) {
+            // too many refreshes pending, try again on next access
+            entry.refreshing.set(false);
+        }
+    }
+
+    @Override
+    public void invalidate(String key) {
+        if (key != null) {
+            cache.invalidate(key);
+        } else {
+            log.warn(String.format("Can't invalidate a null key for the cache '%s'!", name));
+        }
+    }
+
+    @Override
+    public void invalidateAll() {
+        cache.invalidateAll();
+    }
+
+    @Override
+    public void put(String key, Serializable value) {
+        if (key != null && value != null) {
+            cache.put(key, new CacheEntry(value));
+        } else {
+            log.warn(String.format("Can't put a null key nor a null value in the cache '%s'!", name));
+        }
+    }
+
+    @Override
+    public void putAll(Map<String, ? extends Serializable> values) {
+        Map<String, CacheEntry> entries = new HashMap<String, CacheEntry>();
+        for (Entry<String, ? extends Serializable> es : values.entrySet()) {
+            if (es.getKey() != null && es.getValue() != null) {
+                entries.put(es.getKey(), new CacheEntry(es.getValue()));
+            } else {
+                log.warn(String.format("Can't put a null key nor a null value in the cache '%s'!", name));
+            }
+        }
+        cache.putAll(entries);
+    }
+
+}
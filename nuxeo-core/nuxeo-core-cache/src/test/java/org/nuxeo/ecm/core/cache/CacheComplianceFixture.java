@@ -21,6 +21,11 @@ package org.nuxeo.ecm.core.cache;
 import static org.junit.Assert.fail;
 
 import java.io.IOException;
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
 
 import javax.inject.Named;
 
@@ -105,4 +110,47 @@ public class CacheComplianceFixture {
         Assert.assertNull(defaultCache.get("key2"));
     }
 
+    @Test
+    public void putAllGetAll() throws IOException {
+        Map<String, Serializable> values = new HashMap<String, Serializable>();
+        values.put("key2", "val2");
+        values.put("key3", "val3");
+        defaultCache.putAll(values);
+        Map<String, Serializable> res = defaultCache.getAll(Arrays.asList(CacheFeature.KEY, "key2", "key3",
+                "key-not-exist"));
+        Assert.assertEquals(3, res.size());
+        Assert.assertEquals(CacheFeature.VAL, res.get(CacheFeature.KEY));
+        Assert.assertEquals("val2", res.get("key2"));
+        Assert.assertEquals("val3", res.get("key3"));
+        Assert.assertFalse(res.containsKey("key-not-exist"));
+    }
+
+    @Test
+    public void getWithLoader() throws IOException {
+        String loaded = (String) defaultCache.get("key-loaded", new Callable<Serializable>() {
+            @Override
+            public Serializable call() {
+                return "val-loaded";
+            }
+        });
+        Assert.assertEquals("val-loaded", loaded);
+        Assert.assertEquals("val-loaded", defaultCache.get("key-loaded"));
+        // loader is not called for a present key
+        String cachedVal = (String) defaultCache.get(CacheFeature.KEY, new Callable<Serializable>() {
+            @Override
+            public Serializable call() {
+                throw new AssertionError("should not be called");
+            }
+        });
+        Assert.assertEquals(CacheFeature.VAL, cachedVal);
+        // null is not stored
+        Assert.assertNull(defaultCache.get("key-null", new Callable<Serializable>() {
+            @Override
+            public Serializable call() {
+                return null;
+            }
+        }));
+        Assert.assertNull(defaultCache.get("key-null"));
+    }
+
 }
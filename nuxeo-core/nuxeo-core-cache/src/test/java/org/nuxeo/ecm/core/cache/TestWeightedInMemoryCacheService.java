@@ -0,0 +1,135 @@
+/*
+ * (C) Copyright 2014 Nuxeo SA (http://nuxeo.com/) and contributors.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser General Public License
+ * (LGPL) version 2.1 which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl-2.1.html
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * Contributors:
+ *     Florent Guillaume
+ *
+ */
+
+package org.nuxeo.ecm.core.cache;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.Callable;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+
+import org.apache.commons.lang.StringUtils;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.nuxeo.runtime.metrics.MetricsService;
+import org.nuxeo.runtime.test.runner.Features;
+import org.nuxeo.runtime.test.runner.FeaturesRunner;
+
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.SharedMetricRegistries;
+
+@RunWith(FeaturesRunner.class)
+@Features({ CacheFeature.class, WeightedInMemoryCacheFeature.class })
+public class TestWeightedInMemoryCacheService {
+
+    @Inject
+    @Named(CacheFeature.DEFAULT_TEST_CACHE_NAME)
+    Cache defaultCache;
+
+    @Inject
+    @Named(WeightedInMemoryCacheFeature.WEIGHT_TEST_CACHE_NAME)
+    Cache weightCache;
+
+    @Inject
+    @Named(WeightedInMemoryCacheFeature.REFRESH_TEST_CACHE_NAME)
+    Cache refreshCache;
+
+    protected final MetricRegistry registry = SharedMetricRegistries.getOrCreate(MetricsService.class.getName());
+
+    protected long getCount(String cacheName, String metric) {
+        return registry.counter(MetricRegistry.name("nuxeo", "cache", cacheName, metric)).getCount();
+    }
+
+    @Test
+    public void getImpl() {
+        assertNotNull(CacheFeature.unwrapImpl(WeightedInMemoryCacheImpl.class, defaultCache));
+    }
+
+    @Test
+    public void weigher() {
+        String s = StringUtils.repeat("x", 1000);
+        int weight = SerializableWeigher.weigh(s);
+        assertTrue(String.valueOf(weight), weight >= 2000);
+        int listWeight = SerializableWeigher.weigh(new ArrayList<String>(Arrays.asList(s, s)));
+        assertTrue(String.valueOf(listWeight), listWeight >= 2 * weight);
+        // fallback on serialization
+        int fileWeight = SerializableWeigher.weigh(new File("/tmp"));
+        assertTrue(String.valueOf(fileWeight), fileWeight > 0);
+    }
+
+    @Test
+    public void maxBytesExceeded() throws IOException {
+        weightCache.invalidateAll();
+        long evictions = getCount(WeightedInMemoryCacheFeature.WEIGHT_TEST_CACHE_NAME, "evictions");
+        // each value weighs more than 2000 bytes, the cache is bounded to 10000 bytes
+        String value = StringUtils.repeat("x", 1000);
+        for (int i = 0; i < 10; i++) {
+            weightCache.put("key" + i, value + i);
+        }
+        assertNotNull(weightCache.get("key9"));
+        assertNull(weightCache.get("key0"));
+        assertTrue(getCount(WeightedInMemoryCacheFeature.WEIGHT_TEST_CACHE_NAME, "evictions") - evictions >= 5);
+    }
+
+    @Test
+    public void hitsAndMisses() throws IOException {
+        String name = CacheFeature.DEFAULT_TEST_CACHE_NAME;
+        long hits = getCount(name, "hits");
+        long misses = getCount(name, "misses");
+        assertNotNull(defaultCache.get(CacheFeature.KEY));
+        assertNull(defaultCache.get("key-not-exist"));
+        defaultCache.getAll(Arrays.asList(CacheFeature.KEY, "key-not-exist"));
+        assertEquals(hits + 2, getCount(name, "hits"));
+        assertEquals(misses + 2, getCount(name, "misses"));
+    }
+
+    @Test
+    public void refreshAhead() throws Exception {
+        refreshCache.put("key", "val1");
+        Callable<Serializable> loader = new Callable<Serializable>() {
+            @Override
+            public Serializable call() {
+                return "val2";
+            }
+        };
+        assertEquals("val1", refreshCache.get("key", loader));
+        // refreshAfter is 1s
+        Thread.sleep(1100);
+        // old value returned while the new one is loaded in the background
+        assertEquals("val1", refreshCache.get("key", loader));
+        for (int i = 0; i < 50; i++) {
+            if ("val2".equals(refreshCache.get("key"))) {
+                break;
+            }
+            Thread.sleep(100);
+        }
+        assertEquals("val2", refreshCache.get("key"));
+        assertTrue(getCount(WeightedInMemoryCacheFeature.REFRESH_TEST_CACHE_NAME, "refreshes") > 0);
+    }
+
+}
@@ -83,4 +83,46 @@ public interface ConversionService {
      */
     boolean isSourceMimeTypeSupported(String converterName, String sourceMimeType);
 
+    /**
+     * Schedules a conversion to be run asynchronously, and returns immediately.
+     * <p>
+     * The conversion is run on the {@code conversions} work queue, and its result is stored in the conversion cache,
+     * which must be enabled. With a repository, the result is also stored in its binary manager and can be retrieved
+     * from any node sharing the work queuing until the completed work is cleared. Otherwise it is only available from
+     * the node that ran the conversion. The same conversion id is returned for identical conversions scheduled by the
+     * same user, and only this user can get their status and result.
+     *
+     * @return the conversion id, to be passed to {@link #getConversionStatus} and {@link #getConversionResult}
+     * @since 7.1
+     */
+    String scheduleConversion(String converterName, BlobHolder blobHolder, Map<String, Serializable> parameters)
+            throws ConversionException;
+
+    /**
+     * Schedules a conversion to a target destination MimeType to be run asynchronously, and returns immediately.
+     *
+     * @see #scheduleConversion
+     * @since 7.1
+     */
+    String scheduleConversionToMimeType(String destinationMimeType, BlobHolder blobHolder,
+            Map<String, Serializable> parameters) throws ConversionException;
+
+    /**
+     * Gets the status of a scheduled conversion.
+     *
+     * @return the status, or {@code null} if the conversion is unknown, was scheduled by another user, or its result is
+     *         no longer available
+     * @since 7.1
+     */
+    ConversionStatus getConversionStatus(String conversionId);
+
+    /**
+     * Gets the result of a scheduled conversion.
+     *
+     * @return the result, or {@code null} if the conversion is not completed, was scheduled by another user, or its
+     *         result is no longer available
+     * @since 7.1
+     */
+    BlobHolder getConversionResult(String conversionId) throws ConversionException;
+
 }
@@ -0,0 +1,60 @@
+/*
+ * Copyright (c) 2006-2014 Nuxeo SA (http://nuxeo.com/) and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Nuxeo - initial API and implementation
+ *
+ */
+
+package org.nuxeo.ecm.core.convert.api;
+
+import java.io.Serializable;
+
+/**
+ * Status of a conversion scheduled through {@link ConversionService#scheduleConversion}.
+ *
+ * @since 7.1
+ */
+public class ConversionStatus implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    public enum Status {
+        /** Waiting in the conversion queue. */
+        SCHEDULED,
+        /** Being converted. */
+        RUNNING,
+        /** Converted, the result is available. */
+        COMPLETED,
+        /** The conversion failed. */
+        FAILED
+    }
+
+    protected final String conversionId;
+
+    protected final Status status;
+
+    public ConversionStatus(String conversionId, Status status) {
+        this.conversionId = conversionId;
+        this.status = status;
+    }
+
+    public String getConversionId() {
+        return conversionId;
+    }
+
+    public Status getStatus() {
+        return status;
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + '(' + conversionId + ", " + status + ')';
+    }
+
+}
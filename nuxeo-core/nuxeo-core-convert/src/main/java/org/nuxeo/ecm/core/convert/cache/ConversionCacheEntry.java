@@ -1,5 +1,5 @@
 /*
- * Copyright (c) 2006-2011 Nuxeo SA (http://nuxeo.com/) and others.
+ * Copyright (c) 2006-2014 Nuxeo SA (http://nuxeo.com/) and others.
  *
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
@@ -15,7 +15,9 @@ package org.nuxeo.ecm.core.convert.cache;
 import java.io.File;
 import java.io.IOException;
 import java.util.Date;
+import java.util.concurrent.atomic.AtomicLong;
 
+import org.apache.commons.io.FileUtils;
 import org.nuxeo.ecm.core.api.blobholder.BlobHolder;
 import org.nuxeo.ecm.core.convert.api.ConversionService;
 
@@ -28,7 +30,12 @@ import org.nuxeo.ecm.core.convert.api.ConversionService;
  */
 public class ConversionCacheEntry {
 
-    protected Date lastAccessTime;
+    /** Logical clock ordering the accesses to all the entries. */
+    protected static final AtomicLong accessClock = new AtomicLong();
+
+    protected volatile Date lastAccessTime;
+
+    protected volatile long lastAccess;
 
     protected BlobHolder bh;
 
@@ -38,13 +45,42 @@ public class ConversionCacheEntry {
 
     protected long sizeInKB = 0;
 
+    protected long sizeInBytes = 0;
+
+    /**
+     * The directory holding the whole entry, if any.
+     *
+     * @since 7.1
+     */
+    protected File entryDir;
+
     public ConversionCacheEntry(BlobHolder bh) {
         this.bh = bh;
         updateAccessTime();
     }
 
+    /**
+     * Creates an entry for a result already persisted in the given entry directory.
+     *
+     * @since 7.1
+     */
+    public ConversionCacheEntry(File entryDir, String persistPath) {
+        this.entryDir = entryDir;
+        this.persistPath = persistPath;
+        persisted = true;
+        computeSize();
+        updateAccessTime();
+    }
+
     protected void updateAccessTime() {
         lastAccessTime = new Date();
+        lastAccess = accessClock.incrementAndGet();
+    }
+
+    protected void computeSize() {
+        File file = new File(persistPath);
+        sizeInBytes = file.exists() ? FileUtils.sizeOf(file) : 0;
+        sizeInKB = sizeInBytes / 1024;
     }
 
     public boolean persist(String basePath) throws IOException {
@@ -52,7 +88,7 @@ public class ConversionCacheEntry {
             CachableBlobHolder cbh = (CachableBlobHolder) bh;
             persistPath = cbh.persist(basePath);
             if (persistPath != null) {
-                sizeInKB = new File(persistPath).length() / 1024;
+                computeSize();
                 persisted = true;
             }
         }
@@ -60,15 +96,37 @@ public class ConversionCacheEntry {
         return persisted;
     }
 
+    /**
+     * Updates the paths of this entry after its directory was moved.
+     *
+     * @param persistPath the new path of the persisted result
+     * @param entryDir the new entry directory
+     * @since 7.1
+     */
+    protected void moved(String persistPath, File entryDir) {
+        this.persistPath = persistPath;
+        this.entryDir = entryDir;
+    }
+
     public void remove() {
-        if (persisted && persistPath != null) {
-            new File(persistPath).delete();
+        if (entryDir != null) {
+            FileUtils.deleteQuietly(entryDir);
+        } else if (persisted && persistPath != null) {
+            FileUtils.deleteQuietly(new File(persistPath));
         }
     }
 
     public BlobHolder restore() {
         updateAccessTime();
         if (persisted && persistPath != null) {
+            if (!new File(persistPath).exists()) {
+                // removed concurrently
+                return null;
+            }
+            if (entryDir != null) {
+                // keeps the access order across restarts
+                entryDir.setLastModified(System.currentTimeMillis());
+            }
             CachableBlobHolder holder = new SimpleCachableBlobHolder();
             holder.load(persistPath);
             return holder;
@@ -81,8 +139,24 @@ public class ConversionCacheEntry {
         return sizeInKB;
     }
 
+    /**
+     * @since 7.1
+     */
+    public long getDiskSpaceUsage() {
+        return sizeInBytes;
+    }
+
     public Date getLastAccessedTime() {
         return lastAccessTime;
     }
 
+    /**
+     * Gets a number ordering the last accesses of the entries, a higher number meaning a more recent access.
+     *
+     * @since 7.1
+     */
+    public long getLastAccess() {
+        return lastAccess;
+    }
+
 }
@@ -14,20 +14,15 @@
  */
 package org.nuxeo.ecm.core.convert.cache;
 
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.Date;
-import java.util.HashMap;
-import java.util.List;
-import java.util.Map;
-import java.util.Set;
-
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.nuxeo.ecm.core.convert.service.ConversionServiceImpl;
 
 /**
  * Manages GC processing to clean up disk cache.
+ * <p>
+ * Since 7.1 the cache is kept under its maximum size by {@link ConversionCacheHolder} each time an entry is added, and
+ * this class is only used to trigger a cleanup explicitly.
  *
  * @author tiry
  */
@@ -60,31 +55,17 @@ public class ConversionCacheGCManager {
     }
 
     public static long getCacheSizeInKB() {
-        long totalSize = 0;
-        Set<String> cacheKeys = ConversionCacheHolder.getCacheKeys();
-
-        for (String key : cacheKeys) {
-            ConversionCacheEntry cacheEntry = ConversionCacheHolder.getCacheEntry(key);
-            if (cacheEntry != null) {
-                totalSize += cacheEntry.getDiskSpaceUsageInKB();
-            }
-        }
-        return totalSize;
+        return ConversionCacheHolder.getCacheSize() / 1024;
     }
 
     public static boolean gcIfNeeded() {
-        log.debug("GC Thread awake, see if there is some work to be done");
-
         long totalSize = getCacheSizeInKB();
         long limit = getMaxDiskSpaceUsageKB();
-
+        gcCalls += 1;
         if (totalSize < limit) {
-            gcCalls += 1;
-            log.debug("No GC needed, go back to sleep for now");
+            log.debug("No GC needed");
             return false;
         }
-
-        // do the GC
         long deltaInKB = totalSize - limit;
         if (limit < 0) {
             // mainly for testing : negative limit means cleanup everything
@@ -92,41 +73,14 @@ public class ConversionCacheGCManager {
         }
         log.debug("GC needed to free " + deltaInKB + " KB of data");
         doGC(deltaInKB);
-        log.debug("GC terminated");
-        gcCalls += 1;
         return true;
     }
 
+    /**
+     * Removes the least recently used entries to free the given size.
+     */
     public static void doGC(long deltaInKB) {
-
-        Set<String> cacheKeys = ConversionCacheHolder.getCacheKeys();
-
-        Map<Date, String> sortingMap = new HashMap<Date, String>();
-
-        for (String key : cacheKeys) {
-            ConversionCacheEntry cacheEntry = ConversionCacheHolder.getCacheEntry(key);
-            if (key != null) {
-                sortingMap.put(cacheEntry.getLastAccessedTime(), key);
-            }
-        }
-
-        List<Date> accessTimeList = new ArrayList<Date>();
-        accessTimeList.addAll(sortingMap.keySet());
-        Collections.sort(accessTimeList);
-
-        long deletedVolume = 0;
-        for (Date accessDate : accessTimeList) {
-            ConversionCacheEntry cacheEntry = ConversionCacheHolder.getCacheEntry(sortingMap.get(accessDate));
-
-            long deletePotential = cacheEntry.getDiskSpaceUsageInKB();
-
-            deletedVolume += deletePotential;
-            ConversionCacheHolder.removeFromCache(sortingMap.get(accessDate));
-
-            if (deletedVolume > deltaInKB) {
-                break;
-            }
-        }
+        ConversionCacheHolder.evict(deltaInKB);
         gcRuns += 1;
     }
 
@@ -14,63 +14,159 @@ package org.nuxeo.ecm.core.convert.cache;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Map.Entry;
 import java.util.Set;
-import java.util.concurrent.locks.ReentrantReadWriteLock;
-
-import org.apache.commons.codec.binary.Base64;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.commons.io.FileUtils;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
-import org.nuxeo.common.utils.Path;
 import org.nuxeo.ecm.core.api.blobholder.BlobHolder;
 import org.nuxeo.ecm.core.convert.api.ConversionService;
 import org.nuxeo.ecm.core.convert.service.ConversionServiceImpl;
+import org.nuxeo.runtime.metrics.MetricsService;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.SharedMetricRegistries;
 
 /**
  * Manager for the cache system of the {@link ConversionService}.
+ * <p>
+ * The index of the entries is a concurrent map, no global lock is held while a converted result is written to disk.
+ * Each entry is written in a temporary directory, which is then atomically renamed to its final place, so that an
+ * entry found on disk is always complete. The index is rebuilt from the disk at startup by {@link #init}.
+ * <p>
+ * The total size of the entries is bounded by {@link ConversionServiceImpl#getMaxCacheSizeInKB}: when an entry is
+ * added over this size, the least recently used entries are evicted.
+ * <p>
+ * The hits, misses, evictions and total size are reported in the metrics registry under
+ * {@code nuxeo.conversion.cache}.
  *
  * @author tiry
  */
 public class ConversionCacheHolder {
 
-    protected static final Map<String, ConversionCacheEntry> cache = new HashMap<>();
+    protected static final ConcurrentMap<String, ConversionCacheEntry> cache = new ConcurrentHashMap<>();
 
-    protected static final ReentrantReadWriteLock cacheLock = new ReentrantReadWriteLock();
+    /** Total size in bytes of the entries of the index. */
+    protected static final AtomicLong cacheSize = new AtomicLong();
+
+    /** Held while evicting, so that only one thread evicts at a time. */
+    protected static final ReentrantLock evictionLock = new ReentrantLock();
 
     private static final Log log = LogFactory.getLog(ConversionCacheHolder.class);
 
-    public static int nbSubPathPart = 5;
+    /**
+     * File holding the cache key in each entry directory.
+     *
+     * @since 7.1
+     */
+    protected static final String KEY_FILE = "key";
+
+    /**
+     * Subdirectory holding the converted result in each entry directory.
+     *
+     * @since 7.1
+     */
+    protected static final String DATA_DIR = "data";
+
+    /**
+     * Directory of the cache where the entries are written before being moved to their final place.
+     *
+     * @since 7.1
+     */
+    protected static final String TMP_DIR = "tmp";
+
+    /**
+     * When evicting, the entries are evicted until the total size is under this ratio of the maximum size, so that
+     * evictions don't happen on each addition.
+     *
+     * @since 7.1
+     */
+    protected static final double EVICTION_LOW_WATER_MARK = 0.9;
+
+    public static int nbSubPathPart = 2;
 
     public static int subPathPartSize = 2;
 
-    public static long cacheHits = 0;
+    protected static final MetricRegistry registry = SharedMetricRegistries.getOrCreate(MetricsService.class.getName());
+
+    protected static final Counter hitCount = registry.counter(MetricRegistry.name("nuxeo", "conversion", "cache",
+            "hits"));
+
+    protected static final Counter missCount = registry.counter(MetricRegistry.name("nuxeo", "conversion", "cache",
+            "misses"));
+
+    protected static final Counter evictionCount = registry.counter(MetricRegistry.name("nuxeo", "conversion",
+            "cache", "evictions"));
+
+    static {
+        String name = MetricRegistry.name("nuxeo", "conversion", "cache", "bytes");
+        registry.remove(name);
+        registry.register(name, new Gauge<Long>() {
+            @Override
+            public Long getValue() {
+                return Long.valueOf(cacheSize.get());
+            }
+        });
+    }
 
     // Utility class.
     private ConversionCacheHolder() {
     }
 
     public static long getCacheHits() {
-        return cacheHits;
+        return hitCount.getCount();
     }
 
-    public static int getNbCacheEntries() {
-        return cache.keySet().size();
+    /**
+     * @since 7.1
+     */
+    public static long getCacheMisses() {
+        return missCount.getCount();
     }
 
-    protected static List<String> getSubPathFromKey(String key) {
-        List<String> subPath = new ArrayList<>();
+    /**
+     * @since 7.1
+     */
+    public static long getCacheEvictions() {
+        return evictionCount.getCount();
+    }
 
-        String path = Base64.encodeBase64String(key.getBytes());
+    public static int getNbCacheEntries() {
+        return cache.size();
+    }
 
-        path = path.replace("+", "X");
-        path = path.replace("/", "Y");
+    /**
+     * Gets the total disk space used by the entries, in bytes.
+     *
+     * @since 7.1
+     */
+    public static long getCacheSize() {
+        return cacheSize.get();
+    }
 
+    protected static List<String> getSubPathFromKey(String key) {
+        List<String> subPath = new ArrayList<>();
+        String path = getEntryName(key);
         int idx = 0;
-
         for (int i = 0; i < nbSubPathPart; i++) {
             String subPart = path.substring(idx, idx + subPathPartSize);
             subPath.add(subPart);
@@ -82,70 +178,257 @@ public class ConversionCacheHolder {
         return subPath;
     }
 
-    protected static String getCacheEntryPath(String key) {
-        Path path = new Path(ConversionServiceImpl.getCacheBasePath());
+    /**
+     * Gets the name of the directory of an entry, which is a digest of its key.
+     *
+     * @since 7.1
+     */
+    protected static String getEntryName(String key) {
+        return DigestUtils.md5Hex(key);
+    }
 
-        List<String> subPath = getSubPathFromKey(key);
+    protected static String getCacheEntryPath(String key) {
+        File dir = new File(ConversionServiceImpl.getCacheBasePath());
+        for (String subPart : getSubPathFromKey(key)) {
+            dir = new File(dir, subPart);
+        }
+        return new File(dir, getEntryName(key)).getPath();
+    }
 
-        for (String subPart : subPath) {
-            path = path.append(subPart);
-            new File(path.toString()).mkdir();
+    /**
+     * Indexes the entries found on disk, and removes the incomplete ones.
+     *
+     * @since 7.1
+     */
+    public static void init() {
+        unload();
+        File base = new File(ConversionServiceImpl.getCacheBasePath());
+        FileUtils.deleteQuietly(new File(base, TMP_DIR));
+        Map<String, ConversionCacheEntry> found = new HashMap<>();
+        File[] children = base.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                scan(child, found);
+            }
         }
+        // restore the access order from the last modification times
+        List<Entry<String, ConversionCacheEntry>> entries = new ArrayList<>(found.entrySet());
+        Collections.sort(entries, new Comparator<Entry<String, ConversionCacheEntry>>() {
+            @Override
+            public int compare(Entry<String, ConversionCacheEntry> e1, Entry<String, ConversionCacheEntry> e2) {
+                long t1 = e1.getValue().entryDir.lastModified();
+                long t2 = e2.getValue().entryDir.lastModified();
+                return t1 < t2 ? -1 : (t1 == t2 ? 0 : 1);
+            }
+        });
+        for (Entry<String, ConversionCacheEntry> es : entries) {
+            ConversionCacheEntry cce = es.getValue();
+            cce.updateAccessTime();
+            cache.put(es.getKey(), cce);
+            cacheSize.addAndGet(cce.getDiskSpaceUsage());
+        }
+        log.info(String.format("Conversion cache: %d entries found on disk (%d KB)", Integer.valueOf(cache.size()),
+                Long.valueOf(cacheSize.get() / 1024)));
+        evictIfNeeded(null);
+    }
 
-        // path = path.append(key);
+    /**
+     * Recursively looks for entry directories, deleting anything else.
+     */
+    protected static void scan(File file, Map<String, ConversionCacheEntry> found) {
+        if (!file.isDirectory()) {
+            // not part of an entry
+            FileUtils.deleteQuietly(file);
+            return;
+        }
+        File keyFile = new File(file, KEY_FILE);
+        File[] data = new File(file, DATA_DIR).listFiles();
+        if (keyFile.isFile()) {
+            if (data != null && data.length == 1) {
+                try {
+                    String key = FileUtils.readFileToString(keyFile, "UTF-8");
+                    found.put(key, new ConversionCacheEntry(file, data[0].getPath()));
+                    return;
+                } catch (IOException e) {
+                    log.warn("Cannot read conversion cache entry: " + file, e);
+                }
+            }
+            FileUtils.deleteQuietly(file);
+            return;
+        }
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                scan(child, found);
+            }
+        }
+        children = file.listFiles();
+        if (children != null && children.length == 0) {
+            file.delete();
+        }
+    }
 
-        return path.toString();
+    /**
+     * Forgets all the entries, without removing them from disk.
+     *
+     * @since 7.1
+     */
+    public static void unload() {
+        cache.clear();
+        cacheSize.set(0);
     }
 
     public static void addToCache(String key, BlobHolder result) {
-        cacheLock.writeLock().lock();
-        try {
-            doAddToCache(key, result);
-        } finally {
-            cacheLock.writeLock().unlock();
-        }
+        doAddToCache(key, result);
+        evictIfNeeded(key);
     }
 
     protected static void doAddToCache(String key, BlobHolder result) {
+        if (cache.containsKey(key)) {
+            return;
+        }
+        File base = new File(ConversionServiceImpl.getCacheBasePath());
+        File tmpDir = new File(new File(base, TMP_DIR), UUID.randomUUID().toString());
+        File tmpDataDir = new File(tmpDir, DATA_DIR);
+        File entryDir = new File(getCacheEntryPath(key));
         ConversionCacheEntry cce = new ConversionCacheEntry(result);
-        boolean persisted = false;
-
         try {
-            persisted = cce.persist(getCacheEntryPath(key));
+            tmpDataDir.mkdirs();
+            if (!cce.persist(tmpDataDir.getPath())) {
+                return;
+            }
+            FileUtils.writeStringToFile(new File(tmpDir, KEY_FILE), key, "UTF-8");
+            Path relativePath = tmpDataDir.toPath().relativize(new File(cce.persistPath).toPath());
+            entryDir.getParentFile().mkdirs();
+            // the entry becomes visible on disk all at once
+            Files.move(tmpDir.toPath(), entryDir.toPath(), StandardCopyOption.ATOMIC_MOVE);
+            cce.moved(new File(new File(entryDir, DATA_DIR), relativePath.toString()).getPath(), entryDir);
         } catch (IOException e) {
-            log.error("Error while trying to persist cache entry", e);
+            if (entryDir.exists()) {
+                // written concurrently for the same key
+                log.debug("Conversion cache entry already exists: " + entryDir);
+            } else {
+                log.error("Error while trying to persist cache entry", e);
+            }
+            return;
+        } finally {
+            FileUtils.deleteQuietly(tmpDir);
         }
+        if (cache.putIfAbsent(key, cce) == null) {
+            cacheSize.addAndGet(cce.getDiskSpaceUsage());
+        }
+    }
 
-        if (persisted) {
-            cache.put(key, cce);
+    /**
+     * Evicts the least recently used entries if the total size is over the maximum.
+     *
+     * @param addedKey the key of an entry just added, which is not evicted, or {@code null}
+     * @since 7.1
+     */
+    protected static void evictIfNeeded(String addedKey) {
+        long max = ConversionServiceImpl.getMaxCacheSizeInKB() * 1024L;
+        if (cacheSize.get() <= max) {
+            return;
+        }
+        // negative maximum means keep nothing (for tests)
+        long target = max < 0 ? 0 : (long) (max * EVICTION_LOW_WATER_MARK);
+        if (!evictionLock.tryLock()) {
+            // another thread is evicting
+            return;
+        }
+        try {
+            evict(cacheSize.get() - target, addedKey);
+        } finally {
+            evictionLock.unlock();
         }
     }
 
-    public static void removeFromCache(String key) {
-        cacheLock.writeLock().lock();
+    /**
+     * Evicts least recently used entries to free at least the given size.
+     *
+     * @param bytes the size to free, in bytes
+     * @param keepKey a key that must not be evicted, or {@code null}
+     * @return the size freed
+     * @since 7.1
+     */
+    protected static long evict(long bytes, String keepKey) {
+        List<String> keys = getKeysByAccess();
+        long freed = 0;
+        for (String key : keys) {
+            if (freed >= bytes) {
+                break;
+            }
+            if (key.equals(keepKey)) {
+                continue;
+            }
+            ConversionCacheEntry cce = cache.remove(key);
+            if (cce != null) {
+                freed += cce.getDiskSpaceUsage();
+                cacheSize.addAndGet(-cce.getDiskSpaceUsage());
+                cce.remove();
+                evictionCount.inc();
+            }
+        }
+        return freed;
+    }
+
+    /**
+     * Gets the keys of the entries, least recently used first.
+     *
+     * @since 7.1
+     */
+    protected static List<String> getKeysByAccess() {
+        List<String> keys = new ArrayList<>(cache.keySet());
+        final List<Long> accesses = new ArrayList<>(keys.size());
+        final List<Integer> order = new ArrayList<>(keys.size());
+        for (int i = 0; i < keys.size(); i++) {
+            ConversionCacheEntry cce = cache.get(keys.get(i));
+            accesses.add(Long.valueOf(cce == null ? 0 : cce.getLastAccess()));
+            order.add(Integer.valueOf(i));
+        }
+        // sort on a snapshot of the access times, which change concurrently
+        Collections.sort(order, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer i1, Integer i2) {
+                return accesses.get(i1.intValue()).compareTo(accesses.get(i2.intValue()));
+            }
+        });
+        List<String> res = new ArrayList<>(keys.size());
+        for (Integer i : order) {
+            res.add(keys.get(i.intValue()));
+        }
+        return res;
+    }
+
+    /**
+     * Evicts least recently used entries to free at least the given size.
+     *
+     * @param deltaInKB the size to free, in KB
+     * @since 7.1
+     */
+    public static void evict(long deltaInKB) {
+        evictionLock.lock();
         try {
-            doRemoveFromCache(key);
+            evict(deltaInKB * 1024, null);
         } finally {
-            cacheLock.writeLock().unlock();
+            evictionLock.unlock();
         }
+    }
 
+    public static void removeFromCache(String key) {
+        doRemoveFromCache(key);
     }
 
     protected static void doRemoveFromCache(String key) {
-        if (cache.containsKey(key)) {
-            ConversionCacheEntry cce = cache.get(key);
+        ConversionCacheEntry cce = cache.remove(key);
+        if (cce != null) {
+            cacheSize.addAndGet(-cce.getDiskSpaceUsage());
             cce.remove();
-            cache.remove(key);
         }
     }
 
     public static ConversionCacheEntry getCacheEntry(String key) {
-        cacheLock.readLock().lock();
-        try {
-            return doGetCacheEntry(key);
-        } finally {
-            cacheLock.readLock().unlock();
-        }
+        return doGetCacheEntry(key);
     }
 
     protected static ConversionCacheEntry doGetCacheEntry(String key) {
@@ -153,46 +436,46 @@ public class ConversionCacheHolder {
     }
 
     public static BlobHolder getFromCache(String key) {
-        cacheLock.readLock().lock();
-        try {
-            return doGetFromCache(key);
-        } finally {
-            cacheLock.readLock().unlock();
-        }
+        return doGetFromCache(key);
     }
 
     protected static BlobHolder doGetFromCache(String key) {
         ConversionCacheEntry cacheEntry = cache.get(key);
         if (cacheEntry != null) {
-            if (cacheHits == Long.MAX_VALUE) {
-                cacheHits = 0;
-            } else {
-                cacheHits += 1;
+            BlobHolder bh = cacheEntry.restore();
+            if (bh != null) {
+                hitCount.inc();
+                return bh;
+            }
+            // files removed concurrently
+            if (cache.remove(key, cacheEntry)) {
+                cacheSize.addAndGet(-cacheEntry.getDiskSpaceUsage());
             }
-            return cacheEntry.restore();
         }
+        missCount.inc();
         return null;
     }
 
     public static Set<String> getCacheKeys() {
-        cacheLock.readLock().lock();
-        try {
-            return new HashSet<>(cache.keySet());
-        } finally {
-            cacheLock.readLock().unlock();
-        }
+        return new HashSet<>(cache.keySet());
     }
 
     /**
      * @since 6.0
      */
     public static void deleteCache() {
-        cacheLock.writeLock().lock();
+        evictionLock.lock();
         try {
-            cache.clear();
-            new File(ConversionServiceImpl.getCacheBasePath()).delete();
+            unload();
+            File base = new File(ConversionServiceImpl.getCacheBasePath());
+            File[] children = base.listFiles();
+            if (children != null) {
+                for (File child : children) {
+                    FileUtils.deleteQuietly(child);
+                }
+            }
         } finally {
-            cacheLock.writeLock().unlock();
+            evictionLock.unlock();
         }
     }
 }
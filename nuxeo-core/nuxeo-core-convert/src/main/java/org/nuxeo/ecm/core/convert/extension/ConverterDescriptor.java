@@ -58,6 +58,14 @@ public class ConverterDescriptor implements Serializable {
     @XNode("@type")
     protected String converterType = CUSTOM_CONVERTER_TYPE;
 
+    /**
+     * The maximum number of conversions run concurrently by this converter, 0 meaning no limit.
+     *
+     * @since 7.1
+     */
+    @XNode("@maxConcurrency")
+    protected int maxConcurrency = 0;
+
     protected boolean wrappedTransformer = false;
 
     @XNodeMap(value = "parameters/parameter", key = "@name", type = HashMap.class, componentType = String.class)
@@ -153,6 +161,9 @@ public class ConverterDescriptor implements Serializable {
         if (other.steps != null && !other.steps.isEmpty()) {
             steps = other.steps;
         }
+        if (other.maxConcurrency > 0) {
+            maxConcurrency = other.maxConcurrency;
+        }
 
         return this;
     }
@@ -161,4 +172,11 @@ public class ConverterDescriptor implements Serializable {
         return converterType;
     }
 
+    /**
+     * @since 7.1
+     */
+    public int getMaxConcurrency() {
+        return maxConcurrency;
+    }
+
 }
@@ -13,10 +13,8 @@
 package org.nuxeo.ecm.core.convert.extension;
 
 import java.io.File;
-import java.io.IOException;
 import java.io.Serializable;
 
-import org.apache.commons.io.FileUtils;
 import org.nuxeo.common.Environment;
 import org.nuxeo.common.xmap.annotation.XNode;
 import org.nuxeo.common.xmap.annotation.XObject;
@@ -47,6 +45,10 @@ public class GlobalConfigDescriptor implements Serializable {
     @XNode("cachingDirectory")
     protected String cachingDirectory = defaultCachingDirectory().getAbsolutePath();
 
+    /**
+     * @deprecated since 7.1, the cache is bounded each time an entry is added and no periodic GC is run
+     */
+    @Deprecated
     public long getGCInterval() {
         return GCInterval;
     }
@@ -86,13 +88,7 @@ public class GlobalConfigDescriptor implements Serializable {
 
     protected File defaultCachingDirectory() {
         File data = new File(Environment.getDefault().getData(), CACHING_DIRECTORY);
-        if (data.exists()) {
-            try {
-                FileUtils.deleteDirectory(data);
-            } catch (IOException cause) {
-                throw new RuntimeException("Cannot create cache dir " + data, cause);
-            }
-        }
+        // existing entries are reloaded at startup
         data.mkdirs();
         return data.getAbsoluteFile();
     }
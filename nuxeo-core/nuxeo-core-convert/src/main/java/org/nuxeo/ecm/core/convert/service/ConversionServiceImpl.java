@@ -13,34 +13,59 @@
 package org.nuxeo.ecm.core.convert.service;
 
 import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.Semaphore;
+
+import org.apache.commons.codec.binary.Base64;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.nuxeo.ecm.core.api.ClientException;
+import org.nuxeo.ecm.core.api.NuxeoPrincipal;
 import org.nuxeo.ecm.core.api.blobholder.BlobHolder;
+import org.nuxeo.ecm.core.api.local.ClientLoginModule;
 import org.nuxeo.ecm.core.convert.api.ConversionException;
 import org.nuxeo.ecm.core.convert.api.ConversionService;
+import org.nuxeo.ecm.core.convert.api.ConversionStatus;
+import org.nuxeo.ecm.core.convert.api.ConversionStatus.Status;
 import org.nuxeo.ecm.core.convert.api.ConverterCheckResult;
 import org.nuxeo.ecm.core.convert.api.ConverterNotAvailable;
 import org.nuxeo.ecm.core.convert.api.ConverterNotRegistered;
 import org.nuxeo.ecm.core.convert.cache.CacheKeyGenerator;
 import org.nuxeo.ecm.core.convert.cache.ConversionCacheHolder;
-import org.nuxeo.ecm.core.convert.cache.GCTask;
 import org.nuxeo.ecm.core.convert.extension.ChainedConverter;
 import org.nuxeo.ecm.core.convert.extension.Converter;
 import org.nuxeo.ecm.core.convert.extension.ConverterDescriptor;
 import org.nuxeo.ecm.core.convert.extension.ExternalConverter;
 import org.nuxeo.ecm.core.convert.extension.GlobalConfigDescriptor;
+import org.nuxeo.ecm.core.work.api.Work;
+import org.nuxeo.ecm.core.work.api.Work.State;
+import org.nuxeo.ecm.core.work.api.WorkManager;
+import org.nuxeo.ecm.core.work.api.WorkManager.Scheduling;
+import org.nuxeo.runtime.api.Framework;
+import org.nuxeo.runtime.metrics.MetricsService;
 import org.nuxeo.runtime.model.ComponentContext;
 import org.nuxeo.runtime.model.ComponentInstance;
 import org.nuxeo.runtime.model.DefaultComponent;
 
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.SharedMetricRegistries;
+
 /**
  * Runtime Component that also provides the POJO implementation of the {@link ConversionService}.
+ * <p>
+ * When the cache is enabled, concurrent identical conversions (having the same cache key) are run only once: the
+ * callers arriving while the conversion is running wait for it and then get the result from the cache. The number of
+ * conversions run concurrently by a converter can also be limited by its {@code maxConcurrency} attribute.
  *
  * @author tiry
  */
@@ -60,11 +85,29 @@ public class ConversionServiceImpl extends DefaultComponent implements Conversio
 
     protected static ConversionServiceImpl self;
 
-    protected Thread gcThread;
+    /**
+     * The conversions currently running, by cache key.
+     *
+     * @since 7.1
+     */
+    protected final ConcurrentMap<String, FutureTask<BlobHolder>> runningConversions = new ConcurrentHashMap<>();
+
+    /**
+     * The permits of the converters having a maximum concurrency.
+     *
+     * @since 7.1
+     */
+    protected final Map<String, Semaphore> converterPermits = new ConcurrentHashMap<>();
+
+    protected final MetricRegistry registry = SharedMetricRegistries.getOrCreate(MetricsService.class.getName());
+
+    protected final Counter coalescedCount = registry.counter(MetricRegistry.name("nuxeo", "conversion",
+            "coalesced"));
 
     @Override
     public void activate(ComponentContext context) {
         converterDescriptors.clear();
+        converterPermits.clear();
         translationHelper.clear();
         self = this;
     }
@@ -72,10 +115,12 @@ public class ConversionServiceImpl extends DefaultComponent implements Conversio
     @Override
     public void deactivate(ComponentContext context) {
         if (config.isCacheEnabled()) {
-            ConversionCacheHolder.deleteCache();
+            // keep the cached files for the next start
+            ConversionCacheHolder.unload();
         }
         self = null;
         converterDescriptors.clear();
+        converterPermits.clear();
         translationHelper.clear();
     }
 
@@ -114,10 +159,18 @@ public class ConversionServiceImpl extends DefaultComponent implements Conversio
         return self.converterDescriptors.get(converterName);
     }
 
+    /**
+     * @deprecated since 7.1, the cache is bounded each time an entry is added and no periodic GC is run
+     */
+    @Deprecated
     public static long getGCIntervalInMinutes() {
         return self.config.getGCInterval();
     }
 
+    /**
+     * @deprecated since 7.1, the cache is bounded each time an entry is added and no periodic GC is run
+     */
+    @Deprecated
     public static void setGCIntervalInMinutes(long interval) {
         self.config.setGCInterval(interval);
     }
@@ -132,6 +185,11 @@ public class ConversionServiceImpl extends DefaultComponent implements Conversio
         desc.initConverter();
         self.translationHelper.addConverter(desc);
         self.converterDescriptors.put(desc.getConverterName(), desc);
+        if (desc.getMaxConcurrency() > 0) {
+            self.converterPermits.put(desc.getConverterName(), new Semaphore(desc.getMaxConcurrency(), true));
+        } else {
+            self.converterPermits.remove(desc.getConverterName());
+        }
     }
 
     public static int getMaxCacheSizeInKB() {
@@ -162,7 +220,41 @@ public class ConversionServiceImpl extends DefaultComponent implements Conversio
     @Override
     public BlobHolder convert(String converterName, BlobHolder blobHolder, Map<String, Serializable> parameters)
             throws ConversionException {
+        ConverterDescriptor desc = getAvailableConverterDescriptor(converterName);
+        String cacheKey = CacheKeyGenerator.computeKey(converterName, blobHolder, parameters);
+        return convert(desc, blobHolder, parameters, cacheKey);
+    }
+
+    /**
+     * Converts a Blob given a converter name, storing the result under the given cache key.
+     *
+     * @since 7.1
+     */
+    protected BlobHolder convert(String converterName, BlobHolder blobHolder, Map<String, Serializable> parameters,
+            String cacheKey) throws ConversionException {
+        ConverterDescriptor desc = getAvailableConverterDescriptor(converterName);
+        return convert(desc, blobHolder, parameters, cacheKey);
+    }
+
+    protected BlobHolder convert(ConverterDescriptor desc, BlobHolder blobHolder,
+            Map<String, Serializable> parameters, String cacheKey) throws ConversionException {
+        BlobHolder cachedResult = ConversionCacheHolder.getFromCache(cacheKey);
 
+        if (cachedResult != null) {
+            return cachedResult;
+        } else if (!config.isCacheEnabled()) {
+            return doConvert(desc, blobHolder, parameters);
+        } else {
+            return convertOnce(cacheKey, desc, blobHolder, parameters);
+        }
+    }
+
+    /**
+     * Gets the descriptor of a converter, checking that it is available.
+     *
+     * @since 7.1
+     */
+    protected ConverterDescriptor getAvailableConverterDescriptor(String converterName) throws ConversionException {
         // exist if not registered
         ConverterCheckResult check = isConverterAvailable(converterName);
         if (!check.isAvailable()) {
@@ -174,22 +266,85 @@ public class ConversionServiceImpl extends DefaultComponent implements Conversio
         if (desc == null) {
             throw new ConversionException("Converter " + converterName + " can not be found");
         }
+        return desc;
+    }
 
-        String cacheKey = CacheKeyGenerator.computeKey(converterName, blobHolder, parameters);
-
+    /**
+     * Runs a conversion, unless the same one is already running, in which case its result is taken from the cache
+     * once it is done.
+     *
+     * @since 7.1
+     */
+    protected BlobHolder convertOnce(final String cacheKey, final ConverterDescriptor desc,
+            final BlobHolder blobHolder, final Map<String, Serializable> parameters) throws ConversionException {
+        FutureTask<BlobHolder> task = new FutureTask<>(new Callable<BlobHolder>() {
+            @Override
+            public BlobHolder call() throws ConversionException {
+                BlobHolder result = doConvert(desc, blobHolder, parameters);
+                ConversionCacheHolder.addToCache(cacheKey, result);
+                return result;
+            }
+        });
+        FutureTask<BlobHolder> running = runningConversions.putIfAbsent(cacheKey, task);
+        if (running == null) {
+            try {
+                task.run();
+            } finally {
+                runningConversions.remove(cacheKey, task);
+            }
+            return getResult(task);
+        }
+        coalescedCount.inc();
+        getResult(running);
         BlobHolder cachedResult = ConversionCacheHolder.getFromCache(cacheKey);
-
         if (cachedResult != null) {
             return cachedResult;
-        } else {
-            Converter converter = desc.getConverterInstance();
-
-            BlobHolder result = converter.convert(blobHolder, parameters);
+        }
+        // result not cachable, or already evicted
+        return doConvert(desc, blobHolder, parameters);
+    }
 
-            if (config.isCacheEnabled()) {
-                ConversionCacheHolder.addToCache(cacheKey, result);
+    protected static BlobHolder getResult(FutureTask<BlobHolder> task) throws ConversionException {
+        try {
+            return task.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ConversionException("Interrupted while waiting for a conversion", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof ConversionException) {
+                throw (ConversionException) cause;
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
             }
-            return result;
+            throw new ConversionException("Error during conversion", cause);
+        }
+    }
+
+    /**
+     * Calls the converter, waiting for a permit if its concurrency is limited.
+     *
+     * @since 7.1
+     */
+    protected BlobHolder doConvert(ConverterDescriptor desc, BlobHolder blobHolder,
+            Map<String, Serializable> parameters) throws ConversionException {
+        Converter converter = desc.getConverterInstance();
+        Semaphore permits = converterPermits.get(desc.getConverterName());
+        if (permits == null) {
+            return converter.convert(blobHolder, parameters);
+        }
+        try {
+            permits.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ConversionException("Interrupted while waiting for converter " + desc.getConverterName(), e);
+        }
+        try {
+            return converter.convert(blobHolder, parameters);
+        } finally {
+            permits.release();
         }
     }
 
@@ -197,6 +352,11 @@ public class ConversionServiceImpl extends DefaultComponent implements Conversio
     public BlobHolder convertToMimeType(String destinationMimeType, BlobHolder blobHolder,
             Map<String, Serializable> parameters) throws ConversionException {
 
+        String converterName = getConverterName(blobHolder, destinationMimeType);
+        return convert(converterName, blobHolder, parameters);
+    }
+
+    protected String getConverterName(BlobHolder blobHolder, String destinationMimeType) throws ConversionException {
         String srcMt;
         try {
             srcMt = blobHolder.getBlob().getMimeType();
@@ -208,8 +368,145 @@ public class ConversionServiceImpl extends DefaultComponent implements Conversio
             throw new ConversionException("Cannot find converter from type " + srcMt + " to type "
                     + destinationMimeType);
         }
+        return converterName;
+    }
 
-        return convert(converterName, blobHolder, parameters);
+    @Override
+    public String scheduleConversion(String converterName, BlobHolder blobHolder, Map<String, Serializable> parameters)
+            throws ConversionException {
+        if (!config.isCacheEnabled()) {
+            throw new ConversionException("The conversion cache must be enabled to schedule conversions");
+        }
+        getAvailableConverterDescriptor(converterName);
+        String cacheKey = CacheKeyGenerator.computeKey(converterName, blobHolder, parameters);
+        String conversionId = getConversionId(cacheKey);
+        if (ConversionCacheHolder.getCacheEntry(cacheKey) != null) {
+            // already converted
+            return conversionId;
+        }
+        WorkManager workManager = Framework.getLocalService(WorkManager.class);
+        if (workManager == null) {
+            throw new ConversionException("No WorkManager available to schedule conversions");
+        }
+        State state = workManager.getWorkState(conversionId);
+        if (state == State.SCHEDULED || state == State.RUNNING) {
+            // don't store the blobs again
+            return conversionId;
+        }
+        if (state == State.COMPLETED && getCompletedResult(workManager, conversionId) != null) {
+            // converted by another node
+            return conversionId;
+        }
+        ConversionWork work = new ConversionWork(conversionId, cacheKey, converterName, blobHolder, parameters);
+        workManager.schedule(work, Scheduling.IF_NOT_RUNNING_OR_SCHEDULED);
+        if (work.getWorkInstanceState() == State.CANCELED) {
+            work.cleanUpTempFiles();
+        }
+        return conversionId;
+    }
+
+    @Override
+    public String scheduleConversionToMimeType(String destinationMimeType, BlobHolder blobHolder,
+            Map<String, Serializable> parameters) throws ConversionException {
+        String converterName = getConverterName(blobHolder, destinationMimeType);
+        return scheduleConversion(converterName, blobHolder, parameters);
+    }
+
+    @Override
+    public ConversionStatus getConversionStatus(String conversionId) {
+        String cacheKey = getCacheKey(conversionId);
+        if (cacheKey == null) {
+            return null;
+        }
+        WorkManager workManager = Framework.getLocalService(WorkManager.class);
+        State state = workManager == null ? null : workManager.getWorkState(conversionId);
+        if (state == State.SCHEDULED) {
+            return new ConversionStatus(conversionId, Status.SCHEDULED);
+        } else if (state == State.RUNNING) {
+            return new ConversionStatus(conversionId, Status.RUNNING);
+        }
+        if (ConversionCacheHolder.getCacheEntry(cacheKey) != null) {
+            return new ConversionStatus(conversionId, Status.COMPLETED);
+        } else if (state == State.COMPLETED && getCompletedResult(workManager, conversionId) != null) {
+            return new ConversionStatus(conversionId, Status.COMPLETED);
+        } else if (state == State.FAILED) {
+            return new ConversionStatus(conversionId, Status.FAILED);
+        }
+        return null;
+    }
+
+    @Override
+    public BlobHolder getConversionResult(String conversionId) throws ConversionException {
+        String cacheKey = getCacheKey(conversionId);
+        if (cacheKey == null) {
+            return null;
+        }
+        BlobHolder result = ConversionCacheHolder.getFromCache(cacheKey);
+        if (result == null) {
+            WorkManager workManager = Framework.getLocalService(WorkManager.class);
+            if (workManager != null) {
+                result = getCompletedResult(workManager, conversionId);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Gets the result kept in the binary manager by a completed conversion work, which may have run on another node.
+     *
+     * @return the result, or {@code null} if the work is not completed, was cleared, or ran without binary manager
+     * @since 7.1
+     */
+    protected static BlobHolder getCompletedResult(WorkManager workManager, String conversionId) {
+        Work work = workManager.find(conversionId, State.COMPLETED);
+        if (!(work instanceof ConversionWork)) {
+            return null;
+        }
+        return ((ConversionWork) work).getResult();
+    }
+
+    /**
+     * The conversion id is the URL-safe encoding of the name of the current user and of the cache key of the
+     * conversion. Only the user who scheduled the conversion can get its status and result from it. Identical
+     * conversions scheduled by the same user get the same id.
+     * <p>
+     * The result is first looked up in the conversion cache, which is local to each node, then in the completed work,
+     * which is visible from all the nodes sharing the work queuing and references the result stored in the binary
+     * manager.
+     *
+     * @since 7.1
+     */
+    protected static String getConversionId(String cacheKey) {
+        String id = getCurrentUsername() + '\n' + cacheKey;
+        return Base64.encodeBase64URLSafeString(id.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Gets the cache key from a conversion id, or {@code null} if the id is invalid or the conversion was not
+     * scheduled by the current user.
+     *
+     * @since 7.1
+     */
+    protected static String getCacheKey(String conversionId) {
+        if (conversionId == null || !Base64.isBase64(conversionId)) {
+            return null;
+        }
+        String id = new String(Base64.decodeBase64(conversionId), StandardCharsets.UTF_8);
+        int i = id.indexOf('\n');
+        if (i < 0 || !id.substring(0, i).equals(getCurrentUsername())) {
+            return null;
+        }
+        return id.substring(i + 1);
+    }
+
+    /**
+     * Gets the name of the current user, or an empty string if there is no logged in user.
+     *
+     * @since 7.1
+     */
+    protected static String getCurrentUsername() {
+        NuxeoPrincipal principal = ClientLoginModule.getCurrentPrincipal();
+        return principal == null ? "" : principal.getName();
     }
 
     @Override
@@ -290,22 +587,9 @@ public class ConversionServiceImpl extends DefaultComponent implements Conversio
 
     @Override
     public void applicationStarted(ComponentContext context) {
-        startGC();
-    }
-
-    protected void startGC() {
-        log.debug("CasheCGTaskActivator activated starting GC thread");
-        gcThread = new Thread(new GCTask(), "Nuxeo-Convert-GC");
-        gcThread.setDaemon(true);
-        gcThread.start();
-        log.debug("GC Thread started");
-
-    }
-
-    public void endGC() {
-        log.debug("Stopping GC Thread");
-        gcThread.interrupt();
-        gcThread = null;
+        if (config.isCacheEnabled()) {
+            ConversionCacheHolder.init();
+        }
     }
 
 }
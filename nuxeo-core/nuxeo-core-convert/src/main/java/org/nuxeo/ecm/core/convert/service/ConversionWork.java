@@ -0,0 +1,201 @@
+/*
+ * Copyright (c) 2006-2014 Nuxeo SA (http://nuxeo.com/) and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Nuxeo - initial API and implementation
+ *
+ */
+
+package org.nuxeo.ecm.core.convert.service;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.nuxeo.ecm.core.api.Blob;
+import org.nuxeo.ecm.core.api.blobholder.BlobHolder;
+import org.nuxeo.ecm.core.api.blobholder.SimpleBlobHolder;
+import org.nuxeo.ecm.core.api.impl.blob.FileBlob;
+import org.nuxeo.ecm.core.api.repository.RepositoryManager;
+import org.nuxeo.ecm.core.convert.api.ConversionException;
+import org.nuxeo.ecm.core.convert.api.ConversionService;
+import org.nuxeo.ecm.core.storage.StorageBlob;
+import org.nuxeo.ecm.core.storage.binary.Binary;
+import org.nuxeo.ecm.core.storage.binary.BinaryManager;
+import org.nuxeo.ecm.core.storage.binary.BinaryManagerService;
+import org.nuxeo.ecm.core.work.AbstractWork;
+import org.nuxeo.runtime.api.Framework;
+
+/**
+ * Work running a conversion scheduled through {@link ConversionService#scheduleConversion}.
+ * <p>
+ * The work id is the conversion id. The result is stored in the conversion cache of the node running the work, under
+ * the cache key computed at scheduling time.
+ * <p>
+ * The input blobs are stored in the binary manager of the default repository when the work is created, so that the
+ * work only references them and can be run by any node. The result blobs are stored there too and referenced by the
+ * completed work, so that {@link ConversionService#getConversionResult} finds them from any node sharing the work
+ * queuing, until the completed work is cleared. All these blobs are then garbage collected with the other unreferenced
+ * binaries. Without a repository, the input blobs are copied to temporary files deleted once the work is done, and the
+ * result is only available from the conversion cache.
+ *
+ * @since 7.1
+ */
+public class ConversionWork extends AbstractWork {
+
+    private static final long serialVersionUID = 1L;
+
+    public static final String CATEGORY = "conversions";
+
+    protected static final String TITLE = "Conversion";
+
+    protected final String converterName;
+
+    protected final String cacheKey;
+
+    protected final ArrayList<Blob> blobs;
+
+    protected final HashMap<String, Serializable> parameters;
+
+    /** Paths of the temporary files to delete once done. */
+    protected final ArrayList<String> tempFiles;
+
+    /** The result blobs stored in the binary manager, or {@code null} if not converted or without binary manager. */
+    protected ArrayList<Blob> result;
+
+    public ConversionWork(String conversionId, String cacheKey, String converterName, BlobHolder blobHolder,
+            Map<String, Serializable> parameters) throws ConversionException {
+        super(conversionId);
+        this.cacheKey = cacheKey;
+        this.converterName = converterName;
+        blobs = new ArrayList<>();
+        tempFiles = new ArrayList<>();
+        try {
+            List<Blob> list = blobHolder.getBlobs();
+            if (list != null) {
+                BinaryManager binaryManager = getBinaryManager();
+                for (Blob blob : list) {
+                    blobs.add(storeBlob(blob, binaryManager));
+                }
+            }
+        } catch (IOException e) {
+            cleanUpTempFiles();
+            throw new ConversionException("Cannot store the blobs to convert", e);
+        }
+        this.parameters = parameters == null ? null : new HashMap<>(parameters);
+    }
+
+    /**
+     * Gets the binary manager of the default repository, or {@code null} if there is none.
+     */
+    protected static BinaryManager getBinaryManager() {
+        BinaryManagerService binaryManagerService = Framework.getLocalService(BinaryManagerService.class);
+        RepositoryManager repositoryManager = Framework.getLocalService(RepositoryManager.class);
+        if (binaryManagerService == null || repositoryManager == null) {
+            return null;
+        }
+        String repositoryName = repositoryManager.getDefaultRepositoryName();
+        return repositoryName == null ? null : binaryManagerService.getBinaryManager(repositoryName);
+    }
+
+    protected Blob storeBlob(Blob blob, BinaryManager binaryManager) throws IOException {
+        if (blob instanceof StorageBlob) {
+            // already in a binary manager
+            return blob;
+        }
+        if (binaryManager == null) {
+            File file = File.createTempFile("nxconversion-", ".tmp");
+            tempFiles.add(file.getPath());
+            blob.transferTo(file);
+            return new FileBlob(file, blob.getMimeType(), blob.getEncoding(), blob.getFilename(), blob.getDigest());
+        }
+        Binary binary;
+        try (InputStream in = blob.getStream()) {
+            binary = binaryManager.getBinary(in);
+        }
+        return new StorageBlob(binary, blob.getFilename(), blob.getMimeType(), blob.getEncoding(), binary.getDigest(),
+                binary.getLength());
+    }
+
+    protected void cleanUpTempFiles() {
+        for (String path : tempFiles) {
+            new File(path).delete();
+        }
+        tempFiles.clear();
+    }
+
+    @Override
+    public String getCategory() {
+        return CATEGORY;
+    }
+
+    @Override
+    public String getTitle() {
+        return TITLE + ": " + converterName;
+    }
+
+    @Override
+    public void work() {
+        setStatus("Converting");
+        ConversionServiceImpl conversionService = (ConversionServiceImpl) Framework.getLocalService(
+                ConversionService.class);
+        // the result is stored in the cache
+        BlobHolder blobHolder = conversionService.convert(converterName, new SimpleBlobHolder(blobs), parameters,
+                cacheKey);
+        setStatus("Storing");
+        try {
+            storeResult(blobHolder);
+        } catch (IOException e) {
+            throw new ConversionException("Cannot store the result of the conversion", e);
+        }
+        setStatus("Done");
+    }
+
+    /**
+     * Stores the result blobs in the binary manager, to be available from the completed work on any node.
+     */
+    protected void storeResult(BlobHolder blobHolder) throws IOException {
+        BinaryManager binaryManager = getBinaryManager();
+        if (binaryManager == null || blobHolder == null) {
+            // only in the cache of this node
+            return;
+        }
+        ArrayList<Blob> stored = new ArrayList<>();
+        List<Blob> list = blobHolder.getBlobs();
+        if (list != null) {
+            for (Blob blob : list) {
+                stored.add(storeBlob(blob, binaryManager));
+            }
+        }
+        result = stored;
+    }
+
+    /**
+     * Gets the result of the conversion stored in the binary manager.
+     *
+     * @return the result, or {@code null} if the work did not complete or there is no binary manager
+     */
+    public BlobHolder getResult() {
+        return result == null ? null : new SimpleBlobHolder(new ArrayList<Blob>(result));
+    }
+
+    @Override
+    public void cleanUp(boolean ok, Exception e) {
+        super.cleanUp(ok, e);
+        if (ok || !(e instanceof InterruptedException)) {
+            // not suspended
+            cleanUpTempFiles();
+        }
+    }
+
+}
@@ -34,8 +34,6 @@ public class ConvertFeature extends SimpleFeature {
     public void start(FeaturesRunner runner) throws Exception {
         // do testing configuration
         // cachesize = -1 (actually 0)
-        // GC interval negative => interpreted as seconds
         ConversionServiceImpl.setMaxCacheSizeInKB(-1);
-        ConversionServiceImpl.setGCIntervalInMinutes(-1000);
     }
 }
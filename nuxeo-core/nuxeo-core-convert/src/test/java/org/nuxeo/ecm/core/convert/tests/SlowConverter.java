@@ -0,0 +1,62 @@
+/*
+ * Copyright (c) 2006-2014 Nuxeo SA (http://nuxeo.com/) and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Nuxeo - initial API and implementation
+ *
+ */
+package org.nuxeo.ecm.core.convert.tests;
+
+import java.io.Serializable;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.nuxeo.ecm.core.api.blobholder.BlobHolder;
+import org.nuxeo.ecm.core.convert.api.ConversionException;
+
+/**
+ * Identity converter taking some time, and recording how many conversions it runs.
+ */
+public class SlowConverter extends IdentityConverter {
+
+    public static final long DELAY = 500;
+
+    public static final AtomicInteger calls = new AtomicInteger();
+
+    public static final AtomicInteger running = new AtomicInteger();
+
+    public static final AtomicInteger maxRunning = new AtomicInteger();
+
+    public static void reset() {
+        calls.set(0);
+        running.set(0);
+        maxRunning.set(0);
+    }
+
+    @Override
+    public BlobHolder convert(BlobHolder blobHolder, Map<String, Serializable> parameters) throws ConversionException {
+        calls.incrementAndGet();
+        int n = running.incrementAndGet();
+        for (;;) {
+            int max = maxRunning.get();
+            if (n <= max || maxRunning.compareAndSet(max, n)) {
+                break;
+            }
+        }
+        try {
+            Thread.sleep(DELAY);
+            return super.convert(blobHolder, parameters);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ConversionException("Interrupted", e);
+        } finally {
+            running.decrementAndGet();
+        }
+    }
+
+}
@@ -0,0 +1,177 @@
+/*
+ * Copyright (c) 2006-2014 Nuxeo SA (http://nuxeo.com/) and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Nuxeo - initial API and implementation
+ *
+ */
+package org.nuxeo.ecm.core.convert.tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.nuxeo.ecm.core.api.Blob;
+import org.nuxeo.ecm.core.api.blobholder.BlobHolder;
+import org.nuxeo.ecm.core.api.blobholder.SimpleBlobHolder;
+import org.nuxeo.ecm.core.api.impl.UserPrincipal;
+import org.nuxeo.ecm.core.api.impl.blob.StringBlob;
+import org.nuxeo.ecm.core.api.local.ClientLoginModule;
+import org.nuxeo.ecm.core.convert.api.ConversionException;
+import org.nuxeo.ecm.core.convert.api.ConversionService;
+import org.nuxeo.ecm.core.convert.api.ConversionStatus;
+import org.nuxeo.ecm.core.convert.service.ConversionWork;
+import org.nuxeo.ecm.core.work.api.WorkManager;
+import org.nuxeo.runtime.test.runner.Deploy;
+import org.nuxeo.runtime.test.runner.Features;
+import org.nuxeo.runtime.test.runner.FeaturesRunner;
+import org.nuxeo.runtime.test.runner.LocalDeploy;
+
+import com.google.inject.Inject;
+
+@RunWith(FeaturesRunner.class)
+@Features(ConvertFeature.class)
+@Deploy("org.nuxeo.ecm.core.event")
+@LocalDeploy({ "org.nuxeo.ecm.core.convert:OSGI-INF/convert-service-config-enabled.xml",
+        "org.nuxeo.ecm.core.convert:OSGI-INF/converters-test-contrib6.xml" })
+public class TestAsyncConversion {
+
+    @Inject
+    ConversionService cs;
+
+    @Inject
+    WorkManager workManager;
+
+    @Before
+    public void setUp() {
+        SlowConverter.reset();
+    }
+
+    /**
+     * Gives access to the temporary files of the work.
+     */
+    protected static class TempFilesConversionWork extends ConversionWork {
+
+        private static final long serialVersionUID = 1L;
+
+        public TempFilesConversionWork(BlobHolder blobHolder) throws ConversionException {
+            super("test", "test", "slow", blobHolder, null);
+        }
+
+        public List<String> getTempFiles() {
+            return tempFiles;
+        }
+    }
+
+    protected static void login(String username) {
+        ClientLoginModule.getThreadLocalLogin().push(new UserPrincipal(username), null, null);
+    }
+
+    protected static void logout() {
+        ClientLoginModule.getThreadLocalLogin().pop();
+    }
+
+    protected static BlobHolder getBlobHolder(String content) {
+        Blob blob = new StringBlob(content, "text/plain");
+        blob.setFilename("test.txt");
+        return new SimpleBlobHolder(blob);
+    }
+
+    @Test
+    public void testScheduleConversion() throws Exception {
+        String content = "async content";
+        String id = cs.scheduleConversion("slow", getBlobHolder(content), null);
+        assertNotNull(id);
+
+        ConversionStatus status = cs.getConversionStatus(id);
+        assertNotNull(status);
+        assertEquals(id, status.getConversionId());
+        assertTrue(status.getStatus() != ConversionStatus.Status.FAILED);
+
+        // scheduling the same conversion again gives the same id
+        assertEquals(id, cs.scheduleConversion("slow", getBlobHolder(content), null));
+
+        assertTrue(workManager.awaitCompletion(10, TimeUnit.SECONDS));
+
+        status = cs.getConversionStatus(id);
+        assertNotNull(status);
+        assertEquals(ConversionStatus.Status.COMPLETED, status.getStatus());
+        BlobHolder result = cs.getConversionResult(id);
+        assertNotNull(result);
+        assertEquals(content, result.getBlob().getString());
+        assertEquals(1, SlowConverter.calls.get());
+
+        // once converted, nothing is scheduled anymore
+        assertEquals(id, cs.scheduleConversion("slow", getBlobHolder(content), null));
+        assertEquals(ConversionStatus.Status.COMPLETED, cs.getConversionStatus(id).getStatus());
+    }
+
+    @Test
+    public void testConversionOfOtherUser() throws Exception {
+        String content = "bob's content";
+        String id;
+        login("bob");
+        try {
+            id = cs.scheduleConversion("slow", getBlobHolder(content), null);
+        } finally {
+            logout();
+        }
+        assertTrue(workManager.awaitCompletion(10, TimeUnit.SECONDS));
+
+        // only the user who scheduled the conversion can read it
+        login("bob");
+        try {
+            assertEquals(ConversionStatus.Status.COMPLETED, cs.getConversionStatus(id).getStatus());
+            assertEquals(content, cs.getConversionResult(id).getBlob().getString());
+        } finally {
+            logout();
+        }
+        login("alice");
+        try {
+            assertNull(cs.getConversionStatus(id));
+            assertNull(cs.getConversionResult(id));
+            // the same conversion scheduled by another user has another id
+            String otherId = cs.scheduleConversion("slow", getBlobHolder(content), null);
+            assertFalse(id.equals(otherId));
+            assertEquals(ConversionStatus.Status.COMPLETED, cs.getConversionStatus(otherId).getStatus());
+        } finally {
+            logout();
+        }
+        assertNull(cs.getConversionStatus(id));
+        assertNull(cs.getConversionResult(id));
+    }
+
+    @Test
+    public void testTempFilesDeletedOnCompletion() throws Exception {
+        // without repository, the blobs are kept in temporary files
+        TempFilesConversionWork work = new TempFilesConversionWork(getBlobHolder("temp content"));
+        assertEquals(1, work.getTempFiles().size());
+        File file = new File(work.getTempFiles().get(0));
+        assertTrue(file.exists());
+        work.cleanUp(true, null);
+        assertFalse(file.exists());
+        assertTrue(work.getTempFiles().isEmpty());
+    }
+
+    @Test
+    public void testUnknownConversion() throws Exception {
+        assertNull(cs.getConversionStatus("unknown"));
+        assertNull(cs.getConversionResult("unknown"));
+        assertNull(cs.getConversionStatus("not a base64 id!"));
+    }
+
+}
@@ -1,5 +1,5 @@
 /*
- * Copyright (c) 2006-2011 Nuxeo SA (http://nuxeo.com/) and others.
+ * Copyright (c) 2006-2014 Nuxeo SA (http://nuxeo.com/) and others.
  *
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
@@ -19,6 +19,7 @@ import static org.junit.Assert.assertTrue;
 
 import java.io.File;
 
+import org.apache.commons.lang.StringUtils;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.nuxeo.common.utils.FileUtils;
@@ -26,8 +27,8 @@ import org.nuxeo.ecm.core.api.Blob;
 import org.nuxeo.ecm.core.api.blobholder.BlobHolder;
 import org.nuxeo.ecm.core.api.blobholder.SimpleBlobHolder;
 import org.nuxeo.ecm.core.api.impl.blob.FileBlob;
+import org.nuxeo.ecm.core.api.impl.blob.StringBlob;
 import org.nuxeo.ecm.core.convert.api.ConversionService;
-import org.nuxeo.ecm.core.convert.cache.ConversionCacheGCManager;
 import org.nuxeo.ecm.core.convert.cache.ConversionCacheHolder;
 import org.nuxeo.ecm.core.convert.extension.Converter;
 import org.nuxeo.ecm.core.convert.service.ConversionServiceImpl;
@@ -47,30 +48,35 @@ public class TestCGCache {
     ConversionService cs;
 
     @Test
-    public void testCGTask() throws Exception {
+    public void testEvictionOnAdd() throws Exception {
 
         Converter cv = deployConverter();
         assertNotNull(cv);
 
         int cacheSize1 = ConversionCacheHolder.getNbCacheEntries();
+        long evictions1 = ConversionCacheHolder.getCacheEvictions();
         BlobHolder bh = getBlobHolder();
         BlobHolder result = cs.convert("identity", bh, null);
         assertNotNull(result);
 
         int cacheSize2 = ConversionCacheHolder.getNbCacheEntries();
-        // check new cache entry was created
+        // check new cache entry was created, even if bigger than the cache
         assertEquals(1, cacheSize2 - cacheSize1);
 
-        // wait for the GCThread to run
-        int retryCount = 0;
-        int noRuns = ConversionCacheGCManager.getGCRuns();
-        while (ConversionCacheGCManager.getGCRuns() == noRuns && retryCount++ < 5) {
-            Thread.sleep(1100);
-        }
-        assertTrue(ConversionCacheGCManager.getGCRuns() > 0);
+        // a second conversion evicts the least recently used entry
+        Blob other = new StringBlob(StringUtils.repeat("x", 4096), "text/plain");
+        other.setFilename("other.txt");
+        result = cs.convert("identity", new SimpleBlobHolder(other), null);
+        assertNotNull(result);
 
         int cacheSize3 = ConversionCacheHolder.getNbCacheEntries();
-        assertEquals(0, cacheSize3 - cacheSize1);
+        assertEquals(1, cacheSize3 - cacheSize1);
+        assertTrue(ConversionCacheHolder.getCacheEvictions() > evictions1);
+
+        // the first result is converted again
+        long misses = ConversionCacheHolder.getCacheMisses();
+        cs.convert("identity", bh, null);
+        assertEquals(1, ConversionCacheHolder.getCacheMisses() - misses);
     }
 
     private Converter deployConverter() throws Exception {
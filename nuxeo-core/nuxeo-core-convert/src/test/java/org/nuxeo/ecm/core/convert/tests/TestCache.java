@@ -89,4 +89,42 @@ public class TestCache {
         assertEquals(0, cacheSize1 - cacheSize3);
     }
 
+    @Test
+    public void testCacheReload() throws Exception {
+        ConversionService cs = Framework.getLocalService(ConversionService.class);
+
+        File file = FileUtils.getResourceFileFromContext("test-data/hello.doc");
+        Blob blob = new FileBlob(file);
+        blob.setFilename("hello.doc");
+        blob.setMimeType("application/msword");
+        BlobHolder bh = new SimpleBlobHolder(blob);
+
+        // big enough to keep everything during the test
+        int maxSize = ConversionServiceImpl.getMaxCacheSizeInKB();
+        ConversionServiceImpl.setMaxCacheSizeInKB(1024 * 1024);
+        try {
+            cs.convert("identity", bh, null);
+            int cacheSize1 = ConversionCacheHolder.getNbCacheEntries();
+            long bytes1 = ConversionCacheHolder.getCacheSize();
+            assertTrue(cacheSize1 > 0);
+            assertTrue(bytes1 >= file.length());
+
+            // simulate a restart
+            ConversionCacheHolder.unload();
+            assertEquals(0, ConversionCacheHolder.getNbCacheEntries());
+            ConversionCacheHolder.init();
+            assertEquals(cacheSize1, ConversionCacheHolder.getNbCacheEntries());
+            assertEquals(bytes1, ConversionCacheHolder.getCacheSize());
+
+            // the reloaded entry is used
+            long cacheHits1 = ConversionCacheHolder.getCacheHits();
+            BlobHolder result = cs.convert("identity", bh, null);
+            assertNotNull(result);
+            assertEquals(1, ConversionCacheHolder.getCacheHits() - cacheHits1);
+            assertEquals(cacheSize1, ConversionCacheHolder.getNbCacheEntries());
+        } finally {
+            ConversionServiceImpl.setMaxCacheSizeInKB(maxSize);
+        }
+    }
+
 }
@@ -0,0 +1,112 @@
+/*
+ * Copyright (c) 2006-2014 Nuxeo SA (http://nuxeo.com/) and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Nuxeo - initial API and implementation
+ *
+ */
+package org.nuxeo.ecm.core.convert.tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.nuxeo.ecm.core.api.Blob;
+import org.nuxeo.ecm.core.api.blobholder.BlobHolder;
+import org.nuxeo.ecm.core.api.blobholder.SimpleBlobHolder;
+import org.nuxeo.ecm.core.api.impl.blob.StringBlob;
+import org.nuxeo.ecm.core.convert.api.ConversionService;
+import org.nuxeo.runtime.test.runner.Features;
+import org.nuxeo.runtime.test.runner.FeaturesRunner;
+import org.nuxeo.runtime.test.runner.LocalDeploy;
+
+import com.google.inject.Inject;
+
+@RunWith(FeaturesRunner.class)
+@Features(ConvertFeature.class)
+@LocalDeploy({ "org.nuxeo.ecm.core.convert:OSGI-INF/convert-service-config-enabled.xml",
+        "org.nuxeo.ecm.core.convert:OSGI-INF/converters-test-contrib6.xml" })
+public class TestConcurrentConversions {
+
+    protected static final int THREADS = 5;
+
+    @Inject
+    ConversionService cs;
+
+    @Before
+    public void setUp() {
+        SlowConverter.reset();
+    }
+
+    protected List<BlobHolder> convertConcurrently(final String converterName, List<String> contents)
+            throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(contents.size());
+        try {
+            final CountDownLatch start = new CountDownLatch(1);
+            List<Future<BlobHolder>> futures = new ArrayList<>();
+            for (String content : contents) {
+                Blob blob = new StringBlob(content, "text/plain");
+                blob.setFilename("test.txt");
+                final BlobHolder bh = new SimpleBlobHolder(blob);
+                futures.add(executor.submit(new Callable<BlobHolder>() {
+                    @Override
+                    public BlobHolder call() throws Exception {
+                        start.await();
+                        return cs.convert(converterName, bh, null);
+                    }
+                }));
+            }
+            start.countDown();
+            List<BlobHolder> results = new ArrayList<>();
+            for (Future<BlobHolder> future : futures) {
+                results.add(future.get());
+            }
+            return results;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testIdenticalConversionsRunOnce() throws Exception {
+        String content = "same content";
+        List<String> contents = new ArrayList<>();
+        for (int i = 0; i < THREADS; i++) {
+            contents.add(content);
+        }
+        List<BlobHolder> results = convertConcurrently("slow", contents);
+        for (BlobHolder result : results) {
+            assertNotNull(result);
+            assertEquals(content, result.getBlob().getString());
+        }
+        assertEquals(1, SlowConverter.calls.get());
+    }
+
+    @Test
+    public void testConverterConcurrencyLimit() throws Exception {
+        List<String> contents = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            contents.add("content " + i);
+        }
+        List<BlobHolder> results = convertConcurrently("slowLimited", contents);
+        assertEquals(3, results.size());
+        assertEquals(3, SlowConverter.calls.get());
+        assertEquals(1, SlowConverter.maxRunning.get());
+    }
+
+}
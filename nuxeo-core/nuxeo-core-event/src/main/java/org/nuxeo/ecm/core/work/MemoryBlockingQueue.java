@@ -17,21 +17,25 @@
  */
 package org.nuxeo.ecm.core.work;
 
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.locks.ReentrantLock;
 
+import org.nuxeo.ecm.core.work.api.CoalescingWork;
 import org.nuxeo.ecm.core.work.api.Work;
 
 /**
  * Memory-based {@link BlockingQueue}.
  * <p>
  * In addition, this implementation also keeps a set of {@link Work} ids in the queue when the queue elements are
- * {@link WorkHolder}s.
+ * {@link WorkHolder}s, and the scheduled {@link CoalescingWork} instances by coalesce key, so that new work instances
+ * can be merged into them.
  */
 public class MemoryBlockingQueue extends NuxeoBlockingQueue {
 
@@ -105,6 +109,10 @@ public class MemoryBlockingQueue extends NuxeoBlockingQueue {
     // @GuardedBy("itself")
     protected final Set<String> workIds;
 
+    // @GuardedBy("workIds")
+    // coalesce key -> scheduled work
+    protected final Map<String, CoalescingWork> coalescing;
+
     /**
      * Creates a {@link BlockingQueue} with a maximum capacity.
      * <p>
@@ -116,6 +124,7 @@ public class MemoryBlockingQueue extends NuxeoBlockingQueue {
         this.queuing = queuing;
         queue = new ReentrantLinkedBlockingQueue<Runnable>(capacity);
         workIds = new HashSet<String>();
+        coalescing = new HashMap<String, CoalescingWork>();
     }
 
     /**
@@ -130,12 +139,37 @@ public class MemoryBlockingQueue extends NuxeoBlockingQueue {
         }
     }
 
+    /**
+     * Merges a work instance into the scheduled work instance having the same coalesce key, if any.
+     * <p>
+     * The merge is done while holding the lock used when taking a work instance from the queue, so a work instance
+     * already taken cannot receive a merge anymore.
+     *
+     * @param work the work instance to merge
+     * @return {@code true} if the work instance was merged
+     * @since 7.1
+     */
+    public boolean coalesce(CoalescingWork work) {
+        String key = work.getCoalesceKey();
+        if (key == null) {
+            return false;
+        }
+        synchronized (workIds) {
+            CoalescingWork scheduled = coalescing.get(key);
+            return scheduled != null && scheduled != work && scheduled.merge(work);
+        }
+    }
+
     private Runnable addWorkId(Runnable r) {
         if (r instanceof WorkHolder) {
             WorkHolder wh = (WorkHolder) r;
-            String id = WorkHolder.getWork(wh).getId();
+            Work work = WorkHolder.getWork(wh);
+            String key = getCoalesceKey(work);
             synchronized (workIds) {
-                workIds.add(id);
+                workIds.add(work.getId());
+                if (key != null) {
+                    coalescing.put(key, (CoalescingWork) work);
+                }
             }
         }
         return r;
@@ -144,14 +178,22 @@ public class MemoryBlockingQueue extends NuxeoBlockingQueue {
     private Runnable removeWorkId(Runnable r) {
         if (r instanceof WorkHolder) {
             WorkHolder wh = (WorkHolder) r;
-            String id = WorkHolder.getWork(wh).getId();
+            Work work = WorkHolder.getWork(wh);
+            String key = getCoalesceKey(work);
             synchronized (workIds) {
-                workIds.remove(id);
+                workIds.remove(work.getId());
+                if (key != null && coalescing.get(key) == work) {
+                    coalescing.remove(key);
+                }
             }
         }
         return r;
     }
 
+    private static String getCoalesceKey(Work work) {
+        return work instanceof CoalescingWork ? ((CoalescingWork) work).getCoalesceKey() : null;
+    }
+
     @Override
     public int getQueueSize() {
         return queue.size();
@@ -159,8 +201,17 @@ public class MemoryBlockingQueue extends NuxeoBlockingQueue {
 
     @Override
     public void putElement(Runnable r) throws InterruptedException {
-        queue.put(r);
+        // registered before being queued so that a concurrent take cannot unregister it first
         addWorkId(r);
+        boolean ok = false;
+        try {
+            queue.put(r);
+            ok = true;
+        } finally {
+            if (!ok) {
+                removeWorkId(r);
+            }
+        }
     }
 
     @Override
@@ -218,7 +269,9 @@ public class MemoryBlockingQueue extends NuxeoBlockingQueue {
         if (nanos <= 0) {
             return null;
         }
-        return queue.poll(nanos, TimeUnit.NANOSECONDS);
+        Runnable r = queue.poll(nanos, TimeUnit.NANOSECONDS);
+        removeWorkId(r);
+        return r;
     }
 
 }
@@ -28,6 +28,7 @@ import java.util.concurrent.BlockingQueue;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
+import org.nuxeo.ecm.core.work.api.CoalescingWork;
 import org.nuxeo.ecm.core.work.api.Work;
 import org.nuxeo.ecm.core.work.api.Work.State;
 import org.nuxeo.ecm.core.work.api.WorkQueueDescriptor;
@@ -381,6 +382,12 @@ public class MemoryWorkQueuing implements WorkQueuing {
         return null;
     }
 
+    @Override
+    public boolean coalesceScheduled(String queueId, CoalescingWork work) {
+        MemoryBlockingQueue scheduled = (MemoryBlockingQueue) getScheduledQueue(queueId);
+        return scheduled.coalesce(work);
+    }
+
     @Override
     public int setSuspending(String queueId) {
         // for in-memory queuing, there's no suspend
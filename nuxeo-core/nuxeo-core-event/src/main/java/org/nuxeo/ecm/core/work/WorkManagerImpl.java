@@ -46,6 +46,7 @@ import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 
 import org.nuxeo.ecm.core.event.EventServiceComponent;
+import org.nuxeo.ecm.core.work.api.CoalescingWork;
 import org.nuxeo.ecm.core.work.api.Work;
 import org.nuxeo.ecm.core.work.api.Work.State;
 import org.nuxeo.ecm.core.work.api.WorkManager;
@@ -63,6 +64,7 @@ import org.nuxeo.runtime.transaction.TransactionHelper;
 
 import com.codahale.metrics.Counter;
 import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.RatioGauge;
 import com.codahale.metrics.SharedMetricRegistries;
 import com.codahale.metrics.Timer;
 
@@ -545,6 +547,10 @@ public class WorkManagerImpl extends DefaultComponent implements WorkManager {
 
         protected final Timer workTimer;
 
+        protected final Counter submittedCount;
+
+        protected final Counter coalescedCount;
+
         protected WorkThreadPoolExecutor(String queueId, int corePoolSize, int maximumPoolSize, long keepAliveTime,
                 TimeUnit unit, ThreadFactory threadFactory) {
             super(corePoolSize, maximumPoolSize, keepAliveTime, unit, queuing.initScheduleQueue(queueId), threadFactory);
@@ -557,6 +563,18 @@ public class WorkManagerImpl extends DefaultComponent implements WorkManager {
             runningCount = registry.counter(MetricRegistry.name("nuxeo", "works", queueId, "running"));
             completedCount = registry.counter(MetricRegistry.name("nuxeo", "works", queueId, "completed"));
             workTimer = registry.timer(MetricRegistry.name("nuxeo", "works", queueId, "total"));
+            submittedCount = registry.counter(MetricRegistry.name("nuxeo", "works", queueId, "submitted"));
+            coalescedCount = registry.counter(MetricRegistry.name("nuxeo", "works", queueId, "coalesced"));
+            // the executor may be recreated, replace the gauge bound to the previous one
+            String ratioName = MetricRegistry.name("nuxeo", "works", queueId, "coalesced", "ratio");
+            registry.remove(ratioName);
+            registry.register(ratioName, new RatioGauge() {
+                @Override
+                protected Ratio getRatio() {
+                    long coalesced = coalescedCount.getCount();
+                    return Ratio.of(coalesced, coalesced + submittedCount.getCount());
+                }
+            });
         }
 
         public int getScheduledOrRunningSize() {
@@ -575,6 +593,7 @@ public class WorkManagerImpl extends DefaultComponent implements WorkManager {
          * @see #execute(Runnable)
          */
         public void execute(Work work) {
+            submittedCount.inc();
             scheduledCount.inc();
             if (scheduledCount.getCount() > scheduledMax.getCount()) {
                 scheduledMax.inc();
@@ -699,6 +718,21 @@ public class WorkManagerImpl extends DefaultComponent implements WorkManager {
             return terminated;
         }
 
+        /**
+         * Merges the given work instance into a scheduled one having the same coalesce key, if possible.
+         *
+         * @param work the work instance to merge
+         * @return {@code true} if the work instance was merged and must not be executed on its own
+         * @since 7.1
+         */
+        public boolean coalesce(CoalescingWork work) {
+            if (!queuing.coalesceScheduled(queueId, work)) {
+                return false;
+            }
+            coalescedCount.inc();
+            return true;
+        }
+
         public Work removeScheduled(String workId) {
             Work w = queuing.removeScheduled(queueId, workId);
             if (w != null) {
@@ -773,6 +807,15 @@ public class WorkManagerImpl extends DefaultComponent implements WorkManager {
             break;
 
         }
+        if (work instanceof CoalescingWork && getWorkQueueDescriptor(queueId).coalescing
+                && getExecutor(queueId).coalesce((CoalescingWork) work)) {
+            // processed by the scheduled work it was merged into
+            work.setWorkInstanceState(State.CANCELED);
+            if (log.isDebugEnabled()) {
+                log.debug("Merged work: " + work + " into a scheduled work of queue: " + queueId);
+            }
+            return;
+        }
         getExecutor(queueId).execute(work);
     }
 
@@ -832,6 +875,11 @@ public class WorkManagerImpl extends DefaultComponent implements WorkManager {
         return queuing.find(workId, state);
     }
 
+    @Override
+    public Work find(String workId, State state) {
+        return queuing.find(workId, state);
+    }
+
     /** @param state SCHEDULED, RUNNING or null for both */
     protected boolean hasWorkInState(String workId, State state) {
         return queuing.isWorkInState(workId, state);
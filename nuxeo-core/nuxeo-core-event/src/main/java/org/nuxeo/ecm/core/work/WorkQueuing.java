@@ -20,6 +20,7 @@ import java.util.List;
 import java.util.Set;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.ThreadPoolExecutor;
+import org.nuxeo.ecm.core.work.api.CoalescingWork;
 import org.nuxeo.ecm.core.work.api.Work;
 import org.nuxeo.ecm.core.work.api.Work.State;
 import org.nuxeo.ecm.core.work.api.WorkManager;
@@ -179,4 +180,17 @@ public interface WorkQueuing {
      */
     void clearCompletedWork(String queueId, long completionTime);
 
+    /**
+     * Merges a work instance into a scheduled work instance of the given queue having the same coalesce key, if there
+     * is one.
+     * <p>
+     * The scheduled work instance must not be running yet, or must be guaranteed to see the merge before it runs.
+     *
+     * @param queueId the queue id
+     * @param work the work instance to merge
+     * @return {@code true} if the work instance was merged, {@code false} if it must be scheduled normally
+     * @since 7.1
+     */
+    boolean coalesceScheduled(String queueId, CoalescingWork work);
+
 }
@@ -0,0 +1,53 @@
+/*
+ * (C) Copyright 2014 Nuxeo SA (http://nuxeo.com/) and contributors.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser General Public License
+ * (LGPL) version 2.1 which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl-2.1.html
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * Contributors:
+ *     Florent Guillaume
+ */
+package org.nuxeo.ecm.core.work.api;
+
+/**
+ * A {@link Work} that can absorb other work instances scheduled after it, while it is still waiting in its queue.
+ * <p>
+ * When a {@link CoalescingWork} is scheduled to a queue configured with {@code coalescing} enabled, and a work
+ * instance with the same coalesce key is already scheduled (and not yet running) in this queue, the new instance is
+ * passed to the {@link #merge} method of the scheduled one instead of being queued. The merged instance is then marked
+ * {@link Work.State#CANCELED CANCELED}, its processing being done by the instance that absorbed it. A merged instance
+ * shares the fate of the instance that absorbed it if this one is later canceled.
+ * <p>
+ * The {@link #merge} method is called before the scheduled instance is run, possibly on another Nuxeo instance when
+ * the queuing is persistent.
+ *
+ * @since 7.1
+ */
+public interface CoalescingWork extends Work {
+
+    /**
+     * Gets the key used to find a scheduled work instance into which this one can be merged.
+     *
+     * @return the coalesce key, or {@code null} if this work instance must not be merged
+     */
+    String getCoalesceKey();
+
+    /**
+     * Merges another work instance, having the same coalesce key, into this one.
+     * <p>
+     * After a successful merge, running this work instance must also do the processing of the other one.
+     *
+     * @param other the work instance to merge
+     * @return {@code true} if the other work was merged, or {@code false} if it must be scheduled on its own (for
+     *         instance if this one is already big enough)
+     */
+    boolean merge(CoalescingWork other);
+
+}
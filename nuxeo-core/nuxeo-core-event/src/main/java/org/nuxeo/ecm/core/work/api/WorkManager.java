@@ -176,6 +176,19 @@ public interface WorkManager {
     @Deprecated
     Work find(Work work, State state, boolean useEquals, int[] pos);
 
+    /**
+     * Finds a work instance by id.
+     * <p>
+     * A completed work instance is found until it is cleared, with the state it had at completion.
+     *
+     * @param workId the id of the work to find
+     * @param state the state defining the state to look into, {@link State#SCHEDULED SCHEDULED}, {@link State#RUNNING
+     *            RUNNING}, {@link State#COMPLETED COMPLETED}, or {@code null} for non-completed
+     * @return the found work instance, or {@code null} if not found
+     * @since 7.1
+     */
+    Work find(String workId, State state);
+
     /**
      * Gets the state in which a work instance is.
      * <p>
@@ -74,6 +74,15 @@ public class WorkQueueDescriptor {
     @XNode("capacity")
     public int capacity = -1;
 
+    /**
+     * If this is {@code true}, a {@link CoalescingWork} scheduled to this queue is merged into a scheduled work
+     * instance having the same coalesce key, when there is one.
+     *
+     * @since 7.1
+     */
+    @XNode("coalescing")
+    public boolean coalescing = false;
+
     /**
      * Whether queuing of work instances to this queue is enabled for this Nuxeo instance.
      */
@@ -99,6 +108,7 @@ public class WorkQueueDescriptor {
         o.usePriority = usePriority;
         o.clearCompletedAfterSeconds = clearCompletedAfterSeconds;
         o.capacity = capacity;
+        o.coalescing = coalescing;
         o.categories = new HashSet<String>(categories);
         return o;
     }
@@ -115,6 +125,7 @@ public class WorkQueueDescriptor {
         usePriority = other.usePriority;
         clearCompletedAfterSeconds = other.clearCompletedAfterSeconds;
         capacity = other.capacity;
+        coalescing = other.coalescing;
         categories.addAll(other.categories);
     }
 
@@ -28,10 +28,13 @@ import static org.nuxeo.ecm.core.work.api.Work.State.SCHEDULED;
 
 import java.io.File;
 import java.io.Serializable;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.TimeUnit;
 
 import javax.inject.Inject;
@@ -40,6 +43,7 @@ import org.junit.After;
 import org.junit.Before;
 import org.junit.Ignore;
 import org.junit.Test;
+import org.nuxeo.ecm.core.work.api.CoalescingWork;
 import org.nuxeo.ecm.core.work.api.WorkManager;
 import org.nuxeo.ecm.core.work.api.WorkManager.Scheduling;
 import org.nuxeo.ecm.core.work.api.WorkQueueDescriptor;
@@ -73,8 +77,56 @@ public class WorkManagerTest extends NXRuntimeTestCase {
         }
     }
 
+    /**
+     * Records the values it processes, merging the values of the work instances with the same key.
+     */
+    protected static class ValuesWork extends AbstractWork implements CoalescingWork {
+
+        private static final long serialVersionUID = 1L;
+
+        // static as the instance run may be a deserialized copy
+        protected static final Queue<List<String>> processed = new ConcurrentLinkedQueue<List<String>>();
+
+        protected final String key;
+
+        protected final List<String> values;
+
+        protected ValuesWork(String key, String value) {
+            this.key = key;
+            values = new ArrayList<String>(Collections.singletonList(value));
+        }
+
+        @Override
+        public String getCategory() {
+            return COALESCING_QUEUE;
+        }
+
+        @Override
+        public String getTitle() {
+            return "values";
+        }
+
+        @Override
+        public String getCoalesceKey() {
+            return key;
+        }
+
+        @Override
+        public boolean merge(CoalescingWork other) {
+            values.addAll(((ValuesWork) other).values);
+            return true;
+        }
+
+        @Override
+        public void work() {
+            processed.add(new ArrayList<String>(values));
+        }
+    }
+
     protected static final String CATEGORY = "SleepWork";
 
+    protected static final String COALESCING_QUEUE = "CoalescingWork";
+
     protected static final String QUEUE = "SleepWork";
 
     protected WorkManager service;
@@ -211,6 +263,38 @@ public class WorkManagerTest extends NXRuntimeTestCase {
         assertSetEquals(Arrays.asList("1", "2", "3"), service.listWorkIds(QUEUE, COMPLETED));
     }
 
+    @Test
+    public void testWorkManagerCoalescing() throws Exception {
+        assertTrue(service.getWorkQueueDescriptor(COALESCING_QUEUE).coalescing);
+        ValuesWork.processed.clear();
+        // keep the single thread of the queue busy
+        service.schedule(new SleepWork(1000, COALESCING_QUEUE, false));
+        ValuesWork work1 = new ValuesWork("k", "a");
+        ValuesWork work2 = new ValuesWork("k", "b");
+        ValuesWork work3 = new ValuesWork("other", "c");
+        ValuesWork work4 = new ValuesWork("k", "d");
+        service.schedule(work1);
+        service.schedule(work2);
+        service.schedule(work3);
+        service.schedule(work4);
+        assertEquals(SCHEDULED, work1.getWorkInstanceState());
+        assertEquals(CANCELED, work2.getWorkInstanceState());
+        assertEquals(SCHEDULED, work3.getWorkInstanceState());
+        assertEquals(CANCELED, work4.getWorkInstanceState());
+
+        assertTrue(service.awaitCompletion(COALESCING_QUEUE, 5, TimeUnit.SECONDS));
+        assertEquals(2, ValuesWork.processed.size());
+        assertTrue(ValuesWork.processed.contains(Arrays.asList("a", "b", "d")));
+        assertTrue(ValuesWork.processed.contains(Arrays.asList("c")));
+
+        // after the run, a new work with the same key is scheduled on its own
+        ValuesWork work5 = new ValuesWork("k", "e");
+        service.schedule(work5);
+        assertFalse(CANCELED.equals(work5.getWorkInstanceState()));
+        assertTrue(service.awaitCompletion(COALESCING_QUEUE, 5, TimeUnit.SECONDS));
+        assertEquals(3, ValuesWork.processed.size());
+    }
+
     @Test
     @Ignore
     public void testWorkManagerShutdown() throws Exception {
@@ -0,0 +1,386 @@
+/*
+ * Copyright (c) 2006-2014 Nuxeo SA (http://nuxeo.com/) and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Nuxeo - initial API and implementation
+ *
+ */
+
+package org.nuxeo.ecm.core.io.impl;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.lang.StringUtils;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.nuxeo.common.utils.Path;
+import org.nuxeo.ecm.core.io.DocumentPipe;
+import org.nuxeo.ecm.core.io.DocumentReader;
+import org.nuxeo.ecm.core.io.DocumentTranslationMap;
+import org.nuxeo.ecm.core.io.DocumentWriter;
+import org.nuxeo.ecm.core.io.DocumentWriterFactory;
+import org.nuxeo.ecm.core.io.ExportedDocument;
+import org.nuxeo.runtime.metrics.MetricsService;
+import org.nuxeo.runtime.transaction.TransactionHelper;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.SharedMetricRegistries;
+import com.codahale.metrics.Timer;
+
+/**
+ * {@link DocumentPipe} writing the documents with several threads.
+ * <p>
+ * The documents are read in the calling thread, and handed to writer threads through a bounded queue. Each writer
+ * thread gets its own {@link DocumentWriter} from a {@link DocumentWriterFactory}, applies the transformers, and
+ * commits its own transaction every {@code pageSize} documents (or when it has nothing left to do). The transformers
+ * must therefore be thread-safe.
+ * <p>
+ * A document is only handed to a writer thread once the document at its parent path, if it was read before by this
+ * pipe, has been committed, so that parents are always visible to the writers of their children. Siblings are written
+ * in parallel.
+ * <p>
+ * Without a writer factory, the documents are written sequentially by the writer set on the pipe.
+ *
+ * @since 7.1
+ */
+public class ParallelDocumentPipeImpl extends DocumentPipeImpl {
+
+    private static final Log log = LogFactory.getLog(ParallelDocumentPipeImpl.class);
+
+    public static final int DEFAULT_MAX_PENDING = 10000;
+
+    protected final int batchSize;
+
+    protected final int nbThreads;
+
+    protected final DocumentWriterFactory writerFactory;
+
+    protected final Map<String, Object> writerParams;
+
+    protected int maxPending = DEFAULT_MAX_PENDING;
+
+    // @GuardedBy("this")
+    protected final Deque<ExportedDocument> ready = new ArrayDeque<ExportedDocument>();
+
+    /** Documents waiting for the document at their parent path to be committed. */
+    // @GuardedBy("this")
+    protected final Map<String, List<ExportedDocument>> waiting = new HashMap<String, List<ExportedDocument>>();
+
+    /** Count of read but not yet committed documents, by path. */
+    // @GuardedBy("this")
+    protected final Map<String, Integer> pendingPaths = new HashMap<String, Integer>();
+
+    // @GuardedBy("this")
+    protected int pending;
+
+    // @GuardedBy("this")
+    protected boolean readDone;
+
+    // @GuardedBy("this")
+    protected Throwable failure;
+
+    protected final List<DocumentTranslationMap> maps = Collections.synchronizedList(new ArrayList<DocumentTranslationMap>());
+
+    protected final MetricRegistry registry = SharedMetricRegistries.getOrCreate(MetricsService.class.getName());
+
+    protected final Meter readMeter = registry.meter(MetricRegistry.name("nuxeo", "io", "pipe", "read"));
+
+    protected final Meter writeMeter = registry.meter(MetricRegistry.name("nuxeo", "io", "pipe", "written"));
+
+    protected final Counter failureCount = registry.counter(MetricRegistry.name("nuxeo", "io", "pipe", "failures"));
+
+    protected final Timer commitTimer = registry.timer(MetricRegistry.name("nuxeo", "io", "pipe", "commit"));
+
+    /**
+     * @param pageSize the number of documents read at once, and written by a writer thread in one transaction
+     * @param nbThreads the number of writer threads
+     * @param writerFactory the factory creating the writer of each thread
+     * @param writerParams the parameters passed to the factory
+     */
+    public ParallelDocumentPipeImpl(int pageSize, int nbThreads, DocumentWriterFactory writerFactory,
+            Map<String, Object> writerParams) {
+        super(pageSize);
+        batchSize = Math.max(pageSize, 1);
+        this.nbThreads = nbThreads;
+        this.writerFactory = writerFactory;
+        this.writerParams = writerParams;
+    }
+
+    /**
+     * Sets the maximum number of documents read but not yet committed, beyond which reading waits.
+     */
+    public void setMaxPending(int maxPending) {
+        this.maxPending = maxPending;
+    }
+
+    @Override
+    public DocumentTranslationMap run() throws IOException {
+        if (writerFactory == null) {
+            return super.run();
+        }
+        DocumentReader reader = getReader();
+        if (reader == null) {
+            throw new IllegalArgumentException("Pipe reader cannot be null");
+        }
+        long t0 = System.currentTimeMillis();
+        List<Thread> threads = new ArrayList<Thread>(nbThreads);
+        for (int i = 0; i < nbThreads; i++) {
+            Thread thread = new Thread(new Writer(), "Nuxeo-DocumentPipe-Writer-" + i);
+            thread.setDaemon(true);
+            thread.start();
+            threads.add(thread);
+        }
+        int count = 0;
+        try {
+            count = readDocs(reader);
+        } catch (IOException | RuntimeException e) {
+            fail(e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            fail(e);
+        } finally {
+            synchronized (this) {
+                readDone = true;
+                notifyAll();
+            }
+            for (Thread thread : threads) {
+                try {
+                    thread.join();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    fail(e);
+                    break;
+                }
+            }
+        }
+        synchronized (this) {
+            if (failure != null) {
+                if (failure instanceof IOException) {
+                    throw (IOException) failure;
+                }
+                throw new IOException("Document pipe failed", failure);
+            }
+        }
+        if (log.isInfoEnabled()) {
+            long t = Math.max(System.currentTimeMillis() - t0, 1);
+            log.info(String.format("Piped %d documents with %d threads in %d ms (%.0f docs/s)",
+                    Integer.valueOf(count), Integer.valueOf(nbThreads), Long.valueOf(t),
+                    Double.valueOf(count * 1000.0 / t)));
+        }
+        return DocumentTranslationMapImpl.merge(maps);
+    }
+
+    protected int readDocs(DocumentReader reader) throws IOException, InterruptedException {
+        int count = 0;
+        if (batchSize == 1) {
+            ExportedDocument doc;
+            while ((doc = reader.read()) != null) {
+                if (!submit(doc)) {
+                    break;
+                }
+                count++;
+            }
+        } else {
+            ExportedDocument[] docs;
+            read: while ((docs = reader.read(batchSize)) != null) {
+                for (ExportedDocument doc : docs) {
+                    if (!submit(doc)) {
+                        break read;
+                    }
+                    count++;
+                }
+            }
+        }
+        return count;
+    }
+
+    protected static String pathKey(Path path) {
+        return path == null ? null : StringUtils.join(path.segments(), '/');
+    }
+
+    protected static String parentKey(Path path) {
+        return path == null || path.segmentCount() == 0 ? null : pathKey(path.removeLastSegments(1));
+    }
+
+    /**
+     * Hands a read document to the writer threads, or keeps it until its parent is committed.
+     *
+     * @return {@code false} if the pipe failed
+     */
+    protected synchronized boolean submit(ExportedDocument doc) throws InterruptedException {
+        while (pending >= maxPending && failure == null) {
+            wait();
+        }
+        if (failure != null) {
+            return false;
+        }
+        readMeter.mark();
+        pending++;
+        String parent = parentKey(doc.getPath());
+        if (parent != null && pendingPaths.containsKey(parent)) {
+            List<ExportedDocument> children = waiting.get(parent);
+            if (children == null) {
+                children = new ArrayList<ExportedDocument>();
+                waiting.put(parent, children);
+            }
+            children.add(doc);
+        } else {
+            ready.add(doc);
+        }
+        String key = pathKey(doc.getPath());
+        if (key != null) {
+            Integer n = pendingPaths.get(key);
+            pendingPaths.put(key, Integer.valueOf(n == null ? 1 : n.intValue() + 1));
+        }
+        notifyAll();
+        return true;
+    }
+
+    /**
+     * Takes the next document to write.
+     *
+     * @param hasBatch whether the caller has uncommitted documents, in which case it does not wait
+     * @return the document, or {@code null} if the caller must commit its batch, or stop
+     */
+    protected synchronized ExportedDocument take(boolean hasBatch) throws InterruptedException {
+        for (;;) {
+            if (failure != null) {
+                return null;
+            }
+            ExportedDocument doc = ready.poll();
+            if (doc != null || hasBatch || (readDone && pending == 0)) {
+                return doc;
+            }
+            wait();
+        }
+    }
+
+    /**
+     * Marks committed documents as done, and releases their waiting children.
+     */
+    protected synchronized void done(List<ExportedDocument> docs) {
+        for (ExportedDocument doc : docs) {
+            pending--;
+            String key = pathKey(doc.getPath());
+            if (key == null) {
+                continue;
+            }
+            Integer n = pendingPaths.get(key);
+            if (n != null && n.intValue() > 1) {
+                pendingPaths.put(key, Integer.valueOf(n.intValue() - 1));
+                continue;
+            }
+            pendingPaths.remove(key);
+            List<ExportedDocument> children = waiting.remove(key);
+            if (children != null) {
+                ready.addAll(children);
+            }
+        }
+        notifyAll();
+    }
+
+    protected synchronized void fail(Throwable t) {
+        if (failure == null) {
+            failure = t;
+        } else if (failure != t) {
+            log.error("Document pipe failure", t);
+        }
+        failureCount.inc();
+        notifyAll();
+    }
+
+    /**
+     * Writer thread, with its own writer and transactions.
+     */
+    protected class Writer implements Runnable {
+
+        protected final List<ExportedDocument> batch = new ArrayList<ExportedDocument>();
+
+        protected boolean tx;
+
+        @Override
+        public void run() {
+            tx = TransactionHelper.startTransaction();
+            DocumentWriter writer = null;
+            try {
+                writer = writerFactory.createDocWriter(writerParams);
+                for (;;) {
+                    ExportedDocument doc = take(!batch.isEmpty());
+                    if (doc == null) {
+                        if (batch.isEmpty()) {
+                            break;
+                        }
+                        commit();
+                        continue;
+                    }
+                    batch.add(doc);
+                    write(writer, doc);
+                    if (batch.size() >= batchSize) {
+                        commit();
+                    }
+                }
+            } catch (IOException | RuntimeException e) {
+                if (tx) {
+                    TransactionHelper.setTransactionRollbackOnly();
+                }
+                fail(e);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                if (tx) {
+                    TransactionHelper.setTransactionRollbackOnly();
+                }
+                fail(e);
+            } finally {
+                try {
+                    if (writer != null) {
+                        writer.close();
+                    }
+                } finally {
+                    if (tx) {
+                        TransactionHelper.commitOrRollbackTransaction();
+                    }
+                    done(batch);
+                }
+            }
+        }
+
+        protected void write(DocumentWriter writer, ExportedDocument doc) throws IOException {
+            applyTransforms(doc);
+            DocumentTranslationMap map = writer.write(doc);
+            if (map != null) {
+                maps.add(map);
+            }
+            writeMeter.mark();
+        }
+
+        protected void commit() {
+            if (tx) {
+                Timer.Context context = commitTimer.time();
+                try {
+                    TransactionHelper.commitOrRollbackTransaction();
+                    tx = TransactionHelper.startTransaction();
+                } finally {
+                    context.stop();
+                }
+            }
+            done(batch);
+            batch.clear();
+        }
+
+    }
+
+}
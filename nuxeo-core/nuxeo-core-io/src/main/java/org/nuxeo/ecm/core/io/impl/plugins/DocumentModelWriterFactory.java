@@ -0,0 +1,74 @@
+/*
+ * Copyright (c) 2006-2014 Nuxeo SA (http://nuxeo.com/) and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Nuxeo - initial API and implementation
+ *
+ */
+
+package org.nuxeo.ecm.core.io.impl.plugins;
+
+import java.util.Map;
+
+import org.nuxeo.ecm.core.api.CoreInstance;
+import org.nuxeo.ecm.core.api.CoreSession;
+import org.nuxeo.ecm.core.io.DocumentWriter;
+import org.nuxeo.ecm.core.io.DocumentWriterFactory;
+
+/**
+ * Factory of {@link DocumentModelWriter}s each writing through their own session, closed with the writer.
+ * <p>
+ * The session is opened in the calling thread, which is expected to be the one using the writer, for instance a
+ * writer thread of a {@link org.nuxeo.ecm.core.io.impl.ParallelDocumentPipeImpl}.
+ *
+ * @since 7.1
+ */
+public class DocumentModelWriterFactory implements DocumentWriterFactory {
+
+    /** The repository where to write, mandatory. */
+    public static final String REPOSITORY_NAME = "repositoryName";
+
+    /** The path of the parent of the top level documents, mandatory. */
+    public static final String PARENT_PATH = "parentPath";
+
+    /** The user opening the sessions, a system session is used if absent. */
+    public static final String USERNAME = "username";
+
+    /** The number of documents written between two session saves, as an {@link Integer}. */
+    public static final String SAVE_INTERVAL = "saveInterval";
+
+    @Override
+    public DocumentWriter createDocWriter(Map<String, Object> params) {
+        String repositoryName = (String) params.get(REPOSITORY_NAME);
+        String parentPath = (String) params.get(PARENT_PATH);
+        if (repositoryName == null || parentPath == null) {
+            throw new IllegalArgumentException("Missing " + REPOSITORY_NAME + " or " + PARENT_PATH + " parameter");
+        }
+        String username = (String) params.get(USERNAME);
+        Integer saveInterval = (Integer) params.get(SAVE_INTERVAL);
+        final CoreSession session = username == null ? CoreInstance.openCoreSessionSystem(repositoryName)
+                : CoreInstance.openCoreSession(repositoryName, username);
+        try {
+            int interval = saveInterval == null ? 10 : saveInterval.intValue();
+            return new DocumentModelWriter(session, parentPath, interval) {
+                @Override
+                public void close() {
+                    try {
+                        super.close();
+                    } finally {
+                        session.close();
+                    }
+                }
+            };
+        } catch (RuntimeException e) {
+            session.close();
+            throw e;
+        }
+    }
+
+}
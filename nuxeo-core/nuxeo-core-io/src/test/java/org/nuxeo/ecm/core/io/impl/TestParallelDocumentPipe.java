@@ -0,0 +1,121 @@
+/*
+ * Copyright (c) 2006-2014 Nuxeo SA (http://nuxeo.com/) and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Nuxeo - initial API and implementation
+ *
+ */
+
+package org.nuxeo.ecm.core.io.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.nuxeo.ecm.core.api.CoreSession;
+import org.nuxeo.ecm.core.api.DocumentModel;
+import org.nuxeo.ecm.core.api.DocumentModelList;
+import org.nuxeo.ecm.core.api.PathRef;
+import org.nuxeo.ecm.core.event.EventService;
+import org.nuxeo.ecm.core.io.DocumentPipe;
+import org.nuxeo.ecm.core.io.DocumentReader;
+import org.nuxeo.ecm.core.io.DocumentWriter;
+import org.nuxeo.ecm.core.io.impl.plugins.DocumentModelWriterFactory;
+import org.nuxeo.ecm.core.io.impl.plugins.DocumentTreeReader;
+import org.nuxeo.ecm.core.io.impl.plugins.NuxeoArchiveReader;
+import org.nuxeo.ecm.core.io.impl.plugins.NuxeoArchiveWriter;
+import org.nuxeo.ecm.core.test.CoreFeature;
+import org.nuxeo.ecm.core.test.annotations.Granularity;
+import org.nuxeo.ecm.core.test.annotations.RepositoryConfig;
+import org.nuxeo.runtime.api.Framework;
+import org.nuxeo.runtime.test.runner.Features;
+import org.nuxeo.runtime.test.runner.FeaturesRunner;
+import org.nuxeo.runtime.transaction.TransactionHelper;
+
+import com.google.inject.Inject;
+
+@RunWith(FeaturesRunner.class)
+@Features(CoreFeature.class)
+@RepositoryConfig(cleanup = Granularity.METHOD)
+public class TestParallelDocumentPipe {
+
+    protected static final int NB_FOLDERS = 5;
+
+    protected static final int NB_FILES = 10;
+
+    @Inject
+    protected CoreSession session;
+
+    protected DocumentModel createTree() throws Exception {
+        DocumentModel workspace = session.createDocumentModel("/", "ws1", "Workspace");
+        workspace = session.createDocument(workspace);
+        for (int i = 0; i < NB_FOLDERS; i++) {
+            DocumentModel folder = session.createDocumentModel(workspace.getPathAsString(), "folder" + i, "Folder");
+            folder = session.createDocument(folder);
+            DocumentModel subfolder = session.createDocumentModel(folder.getPathAsString(), "sub", "Folder");
+            subfolder = session.createDocument(subfolder);
+            for (int j = 0; j < NB_FILES; j++) {
+                DocumentModel file = session.createDocumentModel(subfolder.getPathAsString(), "file" + j, "File");
+                file.setPropertyValue("dc:title", "file " + i + " " + j);
+                session.createDocument(file);
+            }
+        }
+        session.save();
+        return workspace;
+    }
+
+    @Test
+    public void testParallelImport() throws Exception {
+        DocumentModel workspace = createTree();
+
+        File archive = File.createTempFile("core-io-archive", "zip");
+        archive.deleteOnExit();
+        DocumentReader reader = new DocumentTreeReader(session, workspace);
+        DocumentWriter writer = new NuxeoArchiveWriter(archive);
+        DocumentPipe pipe = new DocumentPipeImpl(10);
+        pipe.setReader(reader);
+        pipe.setWriter(writer);
+        pipe.run();
+        writer.close();
+        reader.close();
+
+        // wipe the tree
+        Framework.getService(EventService.class).waitForAsyncCompletion();
+        session.removeDocument(workspace.getRef());
+        session.save();
+        assertEquals(0, session.getChildren(session.getRootDocument().getRef()).size());
+        TransactionHelper.commitOrRollbackTransaction();
+
+        // reimport with several writer threads
+        Map<String, Object> params = new HashMap<String, Object>();
+        params.put(DocumentModelWriterFactory.REPOSITORY_NAME, session.getRepositoryName());
+        params.put(DocumentModelWriterFactory.PARENT_PATH, "/");
+        ParallelDocumentPipeImpl parallelPipe = new ParallelDocumentPipeImpl(3, 4,
+                new DocumentModelWriterFactory(), params);
+        parallelPipe.setMaxPending(8);
+        reader = new NuxeoArchiveReader(archive);
+        parallelPipe.setReader(reader);
+        parallelPipe.run();
+        reader.close();
+
+        TransactionHelper.startTransaction();
+        DocumentModelList docs = session.query("SELECT * FROM Document WHERE ecm:path STARTSWITH '/ws1'");
+        assertEquals(NB_FOLDERS * (2 + NB_FILES), docs.size());
+        for (int i = 0; i < NB_FOLDERS; i++) {
+            String path = "/ws1/folder" + i + "/sub";
+            assertTrue(session.exists(new PathRef(path)));
+            assertEquals(NB_FILES, session.getChildren(new PathRef(path)).size());
+        }
+    }
+
+}
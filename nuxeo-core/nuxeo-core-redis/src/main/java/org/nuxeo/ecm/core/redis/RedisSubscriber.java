@@ -0,0 +1,168 @@
+/*
+ * (C) Copyright 2014 Nuxeo SA (http://nuxeo.com/) and contributors.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser General Public License
+ * (LGPL) version 2.1 which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl-2.1.html
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * Contributors:
+ *     Florent Guillaume
+ */
+package org.nuxeo.ecm.core.redis;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPubSub;
+import redis.clients.jedis.exceptions.JedisException;
+import redis.clients.util.Pool;
+
+/**
+ * Subscribes to a Redis pub/sub channel from a dedicated thread, subscribing again after connection failures.
+ * <p>
+ * A subscription blocks its connection until unsubscribed, so it uses its own connection from the pool instead of
+ * going through the {@link RedisExecutor}.
+ *
+ * @since 7.1
+ */
+public abstract class RedisSubscriber implements Runnable {
+
+    private static final Log log = LogFactory.getLog(RedisSubscriber.class);
+
+    protected static final long RECONNECT_DELAY = 5000; // 5s
+
+    protected final Pool<Jedis> pool;
+
+    protected final String channel;
+
+    protected volatile boolean closed;
+
+    protected volatile boolean subscribed;
+
+    protected Thread thread;
+
+    protected final JedisPubSub pubSub = new JedisPubSub() {
+
+        @Override
+        public void onMessage(String channel, String message) {
+            RedisSubscriber.this.onMessage(message);
+        }
+
+        @Override
+        public void onSubscribe(String channel, int subscribedChannels) {
+            RedisSubscriber.this.onSubscribe();
+            subscribed = true;
+        }
+
+        @Override
+        public void onUnsubscribe(String channel, int subscribedChannels) {
+            subscribed = false;
+            RedisSubscriber.this.onUnsubscribe();
+        }
+
+        @Override
+        public void onPMessage(String pattern, String channel, String message) {
+        }
+
+        @Override
+        public void onPSubscribe(String pattern, int subscribedChannels) {
+        }
+
+        @Override
+        public void onPUnsubscribe(String pattern, int subscribedChannels) {
+        }
+    };
+
+    public RedisSubscriber(Pool<Jedis> pool, String channel) {
+        this.pool = pool;
+        this.channel = channel;
+    }
+
+    /**
+     * Called for each message received on the channel.
+     */
+    protected abstract void onMessage(String message);
+
+    /**
+     * Called when the subscription starts, before {@link #isSubscribed} returns {@code true}. Messages published before
+     * were not received.
+     */
+    protected void onSubscribe() {
+    }
+
+    /**
+     * Called when the subscription stops or is lost. Messages published until the next subscription won't be
+     * received.
+     */
+    protected void onUnsubscribe() {
+    }
+
+    /**
+     * Starts the subscription thread.
+     */
+    public void start(String threadName) {
+        thread = new Thread(this, threadName);
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Stops the subscription and its thread.
+     */
+    public void stop() {
+        closed = true;
+        if (pubSub.isSubscribed()) {
+            pubSub.unsubscribe();
+        }
+        if (thread != null) {
+            thread.interrupt();
+        }
+    }
+
+    public boolean isSubscribed() {
+        return subscribed;
+    }
+
+    @Override
+    public void run() {
+        while (!closed) {
+            Jedis jedis = null;
+            try {
+                jedis = pool.getResource();
+                // blocks until unsubscribed
+                jedis.subscribe(pubSub, channel);
+                pool.returnResource(jedis);
+            } catch (JedisException e) {
+                if (jedis != null) {
+                    pool.returnBrokenResource(jedis);
+                }
+                if (subscribed) {
+                    subscribed = false;
+                    onUnsubscribe();
+                }
+                if (closed) {
+                    break;
+                }
+                log.error("Lost subscription to Redis channel " + channel + ", retrying", e);
+                try {
+                    Thread.sleep(RECONNECT_DELAY);
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+            }
+        }
+        if (subscribed) {
+            subscribed = false;
+            onUnsubscribe();
+        }
+    }
+
+}
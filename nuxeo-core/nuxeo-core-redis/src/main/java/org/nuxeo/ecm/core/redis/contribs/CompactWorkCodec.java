@@ -0,0 +1,370 @@
+/*
+ * (C) Copyright 2014 Nuxeo SA (http://nuxeo.com/) and contributors.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser General Public License
+ * (LGPL) version 2.1 which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl-2.1.html
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * Contributors:
+ *     Florent Guillaume
+ */
+package org.nuxeo.ecm.core.redis.contribs;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.Externalizable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InvalidClassException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamClass;
+import java.io.ObjectStreamConstants;
+import java.io.ObjectStreamField;
+import java.io.OutputStream;
+import java.io.Serializable;
+import java.io.StreamCorruptedException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+import org.nuxeo.ecm.core.work.api.Work;
+import org.nuxeo.runtime.api.Framework;
+
+/**
+ * Compact encoding of {@link Work} instances.
+ * <p>
+ * The fields are still written by Java serialization, so that transient fields and custom {@code writeObject} /
+ * {@code readObject} methods behave as usual, but the class descriptors, which make up most of a serialized work
+ * instance, are written in a shorter form: a class id, the serial version UID, the flags, and the type codes and
+ * names of the serializable fields. The class id is an index in a registry of common classes, or the class name for
+ * the others. The types of the object fields are not written, as Java serialization only uses the local ones. No
+ * stream header is written.
+ * <p>
+ * Encoded instances larger than the compression threshold ({@value #COMPRESSION_THRESHOLD_PROPERTY}, in bytes,
+ * default {@value #DEFAULT_COMPRESSION_THRESHOLD}, -1 to disable) are deflated.
+ * <p>
+ * When the serializable fields of a class are the same as when the work was encoded, its local class descriptor is
+ * used directly. Otherwise a class descriptor of the stored fields is built and resolved against the local class as
+ * Java serialization does, so that classes keeping their serial version UID can evolve: added fields get their
+ * default value, removed fields are skipped, and a different serial version UID gives an
+ * {@link InvalidClassException}.
+ * <p>
+ * Instances stored with plain Java serialization are still decoded.
+ *
+ * @since 7.1
+ */
+public class CompactWorkCodec implements WorkCodec {
+
+    public static final String COMPRESSION_THRESHOLD_PROPERTY = "nuxeo.work.redis.compressionThreshold";
+
+    public static final String DEFAULT_COMPRESSION_THRESHOLD = "4096";
+
+    protected static final byte FORMAT_COMPACT = 1;
+
+    protected static final byte FORMAT_DEFLATED = 2;
+
+    /** Type signature written for the object fields in the class descriptors built when decoding. */
+    protected static final String OBJECT_SIGNATURE = "Ljava/lang/Object;";
+
+    /** First byte of a Java serialization stream. */
+    protected static final byte JAVA_MAGIC = (byte) (ObjectInputStream.STREAM_MAGIC >> 8);
+
+    /**
+     * Classes written as a one-byte id. The id is the index in this array plus one, so classes can only be appended.
+     */
+    protected static final String[] REGISTERED_CLASSES = { //
+            "java.lang.Number", //
+            "java.lang.Boolean", //
+            "java.lang.Integer", //
+            "java.lang.Long", //
+            "java.lang.Double", //
+            "java.lang.Enum", //
+            "java.util.ArrayList", //
+            "java.util.LinkedList", //
+            "java.util.HashMap", //
+            "java.util.LinkedHashMap", //
+            "java.util.HashSet", //
+            "java.util.LinkedHashSet", //
+            "java.util.Date", //
+            "java.util.Arrays$ArrayList", //
+            "java.util.Collections$SingletonList", //
+            "java.util.Collections$EmptyList", //
+            "[Ljava.lang.String;", //
+            "[B", //
+            "org.nuxeo.ecm.core.work.AbstractWork", //
+            "org.nuxeo.ecm.core.work.api.WorkSchedulePath", //
+    };
+
+    protected static final Map<String, Integer> REGISTRY = new HashMap<>();
+
+    protected static final Map<String, Class<?>> PRIMITIVES = new HashMap<>();
+
+    static {
+        for (int i = 0; i < REGISTERED_CLASSES.length; i++) {
+            REGISTRY.put(REGISTERED_CLASSES[i], Integer.valueOf(i + 1));
+        }
+        for (Class<?> klass : new Class<?>[] { boolean.class, byte.class, char.class, short.class, int.class,
+                long.class, float.class, double.class, void.class }) {
+            PRIMITIVES.put(klass.getName(), klass);
+        }
+    }
+
+    protected final int compressionThreshold;
+
+    protected final JavaWorkCodec javaCodec = new JavaWorkCodec();
+
+    public CompactWorkCodec() {
+        this(Integer.parseInt(Framework.getProperty(COMPRESSION_THRESHOLD_PROPERTY, DEFAULT_COMPRESSION_THRESHOLD)));
+    }
+
+    public CompactWorkCodec(int compressionThreshold) {
+        this.compressionThreshold = compressionThreshold;
+    }
+
+    @Override
+    public byte[] encode(Work work) throws IOException {
+        ByteArrayOutputStream baout = new ByteArrayOutputStream(512);
+        baout.write(FORMAT_COMPACT);
+        try (ObjectOutputStream out = new CompactObjectOutputStream(baout)) {
+            out.writeObject(work);
+        }
+        byte[] bytes = baout.toByteArray();
+        if (compressionThreshold < 0 || bytes.length < compressionThreshold) {
+            return bytes;
+        }
+        ByteArrayOutputStream zout = new ByteArrayOutputStream(bytes.length / 2);
+        zout.write(FORMAT_DEFLATED);
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        try {
+            try (DeflaterOutputStream out = new DeflaterOutputStream(zout, deflater)) {
+                out.write(bytes, 1, bytes.length - 1);
+            }
+        } finally {
+            deflater.end();
+        }
+        return zout.size() < bytes.length ? zout.toByteArray() : bytes;
+    }
+
+    @Override
+    public Work decode(byte[] bytes) throws IOException {
+        if (bytes.length == 0) {
+            throw new StreamCorruptedException("Empty work");
+        }
+        if (bytes[0] == JAVA_MAGIC) {
+            // stored before 7.1
+            return javaCodec.decode(bytes);
+        }
+        InputStream bain = new ByteArrayInputStream(bytes, 1, bytes.length - 1);
+        if (bytes[0] == FORMAT_DEFLATED) {
+            bain = new InflaterInputStream(bain);
+        } else if (bytes[0] != FORMAT_COMPACT) {
+            throw new StreamCorruptedException("Unknown work format: " + bytes[0]);
+        }
+        try (ObjectInputStream in = new CompactObjectInputStream(bain)) {
+            return (Work) in.readObject();
+        } catch (ClassNotFoundException cause) {
+            throw new IOException(cause);
+        }
+    }
+
+    /**
+     * Computes the flags of the class descriptor of a class, as written by Java serialization.
+     */
+    protected static byte getFlags(Class<?> klass) {
+        byte flags = 0;
+        if (Externalizable.class.isAssignableFrom(klass)) {
+            flags |= ObjectStreamConstants.SC_EXTERNALIZABLE | ObjectStreamConstants.SC_BLOCK_DATA;
+        } else if (Serializable.class.isAssignableFrom(klass)) {
+            flags |= ObjectStreamConstants.SC_SERIALIZABLE;
+        }
+        if (Enum.class.isAssignableFrom(klass)) {
+            flags |= ObjectStreamConstants.SC_ENUM;
+        } else if (hasWriteObjectMethod(klass)) {
+            flags |= ObjectStreamConstants.SC_WRITE_METHOD;
+        }
+        return flags;
+    }
+
+    protected static boolean hasWriteObjectMethod(Class<?> klass) {
+        for (Method method : klass.getDeclaredMethods()) {
+            int mods = method.getModifiers();
+            if (method.getName().equals("writeObject") && method.getReturnType() == Void.TYPE
+                    && method.getParameterTypes().length == 1
+                    && method.getParameterTypes()[0] == ObjectOutputStream.class && Modifier.isPrivate(mods)
+                    && !Modifier.isStatic(mods)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    protected static Class<?> loadClass(String name) throws ClassNotFoundException {
+        Class<?> klass = PRIMITIVES.get(name);
+        if (klass != null) {
+            return klass;
+        }
+        ClassLoader loader = Thread.currentThread().getContextClassLoader();
+        if (loader != null) {
+            try {
+                return Class.forName(name, false, loader);
+            } catch (ClassNotFoundException e) {
+                // try below
+            }
+        }
+        return Class.forName(name, false, CompactWorkCodec.class.getClassLoader());
+    }
+
+    protected static class CompactObjectOutputStream extends ObjectOutputStream {
+
+        public CompactObjectOutputStream(OutputStream out) throws IOException {
+            super(out);
+        }
+
+        @Override
+        protected void writeStreamHeader() {
+        }
+
+        @Override
+        protected void writeClassDescriptor(ObjectStreamClass desc) throws IOException {
+            String name = desc.getName();
+            Integer id = REGISTRY.get(name);
+            if (id == null) {
+                writeByte(0);
+                writeUTF(name);
+            } else {
+                writeByte(id.intValue());
+            }
+            writeLong(desc.getSerialVersionUID());
+            writeByte(getFlags(desc.forClass()));
+            ObjectStreamField[] fields = desc.getFields();
+            writeShort(fields.length);
+            for (ObjectStreamField field : fields) {
+                writeByte(field.getTypeCode());
+                writeUTF(field.getName());
+            }
+        }
+
+    }
+
+    protected static class CompactObjectInputStream extends ObjectInputStream {
+
+        public CompactObjectInputStream(InputStream in) throws IOException {
+            super(in);
+        }
+
+        @Override
+        protected void readStreamHeader() {
+        }
+
+        @Override
+        protected ObjectStreamClass readClassDescriptor() throws IOException, ClassNotFoundException {
+            int id = readUnsignedByte();
+            String name;
+            if (id == 0) {
+                name = readUTF();
+            } else if (id <= REGISTERED_CLASSES.length) {
+                name = REGISTERED_CLASSES[id - 1];
+            } else {
+                throw new StreamCorruptedException("Unknown class id: " + id);
+            }
+            long suid = readLong();
+            byte flags = readByte();
+            int length = readUnsignedShort();
+            char[] typeCodes = new char[length];
+            String[] names = new String[length];
+            for (int i = 0; i < length; i++) {
+                typeCodes[i] = (char) readUnsignedByte();
+                names[i] = readUTF();
+            }
+            Class<?> klass = loadClass(name);
+            ObjectStreamClass desc = ObjectStreamClass.lookupAny(klass);
+            if (desc.getSerialVersionUID() == suid && getFlags(klass) == flags && hasFields(desc, typeCodes, names)) {
+                return desc;
+            }
+            // the class changed since the work was encoded, describe the stored fields
+            return StoredClassInputStream.readClassDescriptor(name, suid, flags, typeCodes, names);
+        }
+
+        protected static boolean hasFields(ObjectStreamClass desc, char[] typeCodes, String[] names) {
+            ObjectStreamField[] fields = desc.getFields();
+            if (fields.length != names.length) {
+                return false;
+            }
+            for (int i = 0; i < fields.length; i++) {
+                if (fields[i].getTypeCode() != typeCodes[i] || !fields[i].getName().equals(names[i])) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        @Override
+        protected Class<?> resolveClass(ObjectStreamClass desc) throws ClassNotFoundException {
+            return loadClass(desc.getName());
+        }
+
+    }
+
+    /**
+     * Reads a class descriptor in Java serialization format, built from a compact class descriptor. The descriptor is
+     * resolved against the local class by the standard {@link ObjectInputStream} logic.
+     */
+    protected static class StoredClassInputStream extends ObjectInputStream {
+
+        public StoredClassInputStream(InputStream in) throws IOException {
+            super(in);
+        }
+
+        public static ObjectStreamClass readClassDescriptor(String name, long suid, byte flags, char[] typeCodes,
+                String[] names) throws IOException, ClassNotFoundException {
+            ByteArrayOutputStream baout = new ByteArrayOutputStream();
+            try (DataOutputStream out = new DataOutputStream(baout)) {
+                out.writeByte(TC_CLASSDESC);
+                out.writeUTF(name);
+                out.writeLong(suid);
+                out.writeByte(flags);
+                out.writeShort(names.length);
+                for (int i = 0; i < names.length; i++) {
+                    out.writeByte(typeCodes[i]);
+                    out.writeUTF(names[i]);
+                    if (typeCodes[i] == 'L') {
+                        out.writeByte(TC_STRING);
+                        out.writeUTF(OBJECT_SIGNATURE);
+                    } else if (typeCodes[i] == '[') {
+                        out.writeByte(TC_STRING);
+                        out.writeUTF("[" + OBJECT_SIGNATURE);
+                    }
+                }
+                // no class annotation, superclass described separately in the work stream
+                out.writeByte(TC_ENDBLOCKDATA);
+                out.writeByte(TC_NULL);
+            }
+            try (StoredClassInputStream in = new StoredClassInputStream(new ByteArrayInputStream(baout.toByteArray()))) {
+                return (ObjectStreamClass) in.readObject();
+            }
+        }
+
+        @Override
+        protected void readStreamHeader() {
+        }
+
+        @Override
+        protected Class<?> resolveClass(ObjectStreamClass desc) throws ClassNotFoundException {
+            return loadClass(desc.getName());
+        }
+
+    }
+
+}
@@ -0,0 +1,52 @@
+/*
+ * (C) Copyright 2014 Nuxeo SA (http://nuxeo.com/) and contributors.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser General Public License
+ * (LGPL) version 2.1 which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl-2.1.html
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * Contributors:
+ *     Florent Guillaume
+ */
+package org.nuxeo.ecm.core.redis.contribs;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+
+import org.nuxeo.ecm.core.work.api.Work;
+
+/**
+ * Plain Java serialization of {@link Work} instances, as stored before 7.1.
+ *
+ * @since 7.1
+ */
+public class JavaWorkCodec implements WorkCodec {
+
+    @Override
+    public byte[] encode(Work work) throws IOException {
+        ByteArrayOutputStream baout = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(baout)) {
+            out.writeObject(work);
+        }
+        return baout.toByteArray();
+    }
+
+    @Override
+    public Work decode(byte[] bytes) throws IOException {
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes))) {
+            return (Work) in.readObject();
+        } catch (ClassNotFoundException cause) {
+            throw new IOException(cause);
+        }
+    }
+
+}
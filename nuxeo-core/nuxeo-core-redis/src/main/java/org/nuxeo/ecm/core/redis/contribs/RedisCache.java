@@ -24,6 +24,12 @@ import java.io.InputStream;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
 import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -35,6 +41,7 @@ import org.nuxeo.ecm.core.redis.RedisExecutor;
 import org.nuxeo.runtime.api.Framework;
 
 import redis.clients.jedis.Jedis;
+import redis.clients.jedis.Pipeline;
 
 /**
  * Cache implementation on top of Redis
@@ -137,4 +144,57 @@ public class RedisCache extends AbstractCache {
         });
     }
 
+    @Override
+    public Map<String, Serializable> getAll(Collection<String> keys) throws IOException {
+        final List<String> nonNullKeys = new ArrayList<String>(keys.size());
+        for (String key : keys) {
+            if (key != null) {
+                nonNullKeys.add(key);
+            }
+        }
+        if (nonNullKeys.isEmpty()) {
+            return new HashMap<String, Serializable>();
+        }
+        return executor.execute(new RedisCallable<Map<String, Serializable>>() {
+
+            @Override
+            public Map<String, Serializable> call(Jedis jedis) throws IOException {
+                byte[][] bkeys = new byte[nonNullKeys.size()][];
+                for (int i = 0; i < bkeys.length; i++) {
+                    bkeys[i] = bytes(formatKey(nonNullKeys.get(i)));
+                }
+                List<byte[]> values = jedis.mget(bkeys);
+                Map<String, Serializable> res = new HashMap<String, Serializable>();
+                for (int i = 0; i < bkeys.length; i++) {
+                    Serializable value = deserializeValue(values.get(i));
+                    if (value != null) {
+                        res.put(nonNullKeys.get(i), value);
+                    }
+                }
+                return res;
+            }
+        });
+    }
+
+    @Override
+    public void putAll(final Map<String, ? extends Serializable> values) throws IOException {
+        if (values.isEmpty()) {
+            return;
+        }
+        executor.execute(new RedisCallable<Void>() {
+
+            @Override
+            public Void call(Jedis jedis) throws IOException {
+                // Redis set in second ttl but descriptor set as mn
+                int ttlKey = ttl * 60;
+                Pipeline pipeline = jedis.pipelined();
+                for (Entry<String, ? extends Serializable> es : values.entrySet()) {
+                    pipeline.setex(bytes(formatKey(es.getKey())), ttlKey, serializeValue(es.getValue()));
+                }
+                pipeline.sync();
+                return null;
+            }
+        });
+    }
+
 }
@@ -0,0 +1,163 @@
+/*
+ * (C) Copyright 2014 Nuxeo SA (http://nuxeo.com/) and contributors.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser General Public License
+ * (LGPL) version 2.1 which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl-2.1.html
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * Contributors:
+ *     Florent Guillaume
+ */
+package org.nuxeo.ecm.core.redis.contribs;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import org.apache.commons.codec.binary.Base64;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.nuxeo.ecm.core.redis.RedisAdmin;
+import org.nuxeo.ecm.core.redis.RedisCallable;
+import org.nuxeo.ecm.core.redis.RedisExecutor;
+import org.nuxeo.ecm.core.redis.RedisSubscriber;
+import org.nuxeo.ecm.core.storage.StorageException;
+import org.nuxeo.ecm.core.storage.sql.ClusterInvalidator;
+import org.nuxeo.ecm.core.storage.sql.Invalidations;
+import org.nuxeo.runtime.api.Framework;
+
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.exceptions.JedisException;
+
+/**
+ * Redis implementation of the VCS {@link ClusterInvalidator}, using Redis pub/sub.
+ * <p>
+ * A message is a node id followed by a tab and the Base64-encoded serialized {@link Invalidations}. Invalidations
+ * received between two calls to {@link #receiveInvalidations} are coalesced.
+ *
+ * @since 7.1
+ */
+public class RedisClusterInvalidator implements ClusterInvalidator {
+
+    private static final Log log = LogFactory.getLog(RedisClusterInvalidator.class);
+
+    protected static final String SEP = "\t";
+
+    protected RedisExecutor redisExecutor;
+
+    protected String nodeId;
+
+    protected String channel;
+
+    /** Invalidations received from other nodes and not yet processed. */
+    protected final Queue<Invalidations> received = new ConcurrentLinkedQueue<>();
+
+    protected RedisSubscriber subscriber;
+
+    @Override
+    public void initialize(String nodeId, String repositoryName) throws StorageException {
+        if (nodeId == null) {
+            throw new StorageException("Missing cluster node id");
+        }
+        this.nodeId = nodeId;
+        redisExecutor = Framework.getService(RedisExecutor.class);
+        RedisAdmin redisAdmin = Framework.getService(RedisAdmin.class);
+        channel = redisAdmin.namespace("vcs", "invalidations", repositoryName);
+        subscriber = new RedisSubscriber(redisExecutor.getPool(), channel) {
+
+            @Override
+            protected void onMessage(String message) {
+                Invalidations invalidations = deserialize(message);
+                if (invalidations != null) {
+                    received.add(invalidations);
+                }
+            }
+
+            @Override
+            protected void onSubscribe() {
+                // messages may have been missed while not subscribed
+                received.add(new Invalidations(true));
+            }
+        };
+        subscriber.start("RedisClusterInvalidator-" + repositoryName);
+    }
+
+    @Override
+    public void close() {
+        subscriber.stop();
+        received.clear();
+    }
+
+    @Override
+    public Invalidations receiveInvalidations() {
+        Invalidations invalidations = received.poll();
+        if (invalidations == null) {
+            return null;
+        }
+        Invalidations more;
+        while ((more = received.poll()) != null) {
+            invalidations.add(more);
+        }
+        return invalidations;
+    }
+
+    @Override
+    public void sendInvalidations(Invalidations invalidations) throws StorageException {
+        if (invalidations.isEmpty()) {
+            return;
+        }
+        try {
+            final String message = serialize(invalidations);
+            redisExecutor.execute(new RedisCallable<Void>() {
+                @Override
+                public Void call(Jedis jedis) {
+                    jedis.publish(channel, message);
+                    return null;
+                }
+            });
+        } catch (IOException | JedisException e) {
+            throw new StorageException("Cannot send cluster invalidations", e);
+        }
+    }
+
+    protected String serialize(Invalidations invalidations) throws IOException {
+        ByteArrayOutputStream baout = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(baout)) {
+            out.writeObject(invalidations);
+        }
+        return nodeId + SEP + Base64.encodeBase64String(baout.toByteArray());
+    }
+
+    /**
+     * Deserializes a message, returns {@code null} if it comes from this node.
+     */
+    protected Invalidations deserialize(String message) {
+        int i = message.indexOf(SEP);
+        if (i < 0) {
+            log.error("Invalid cluster invalidation message: " + message);
+            return null;
+        }
+        if (message.substring(0, i).equals(nodeId)) {
+            return null;
+        }
+        byte[] bytes = Base64.decodeBase64(message.substring(i + 1));
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes))) {
+            return (Invalidations) in.readObject();
+        } catch (IOException | ClassNotFoundException | ClassCastException e) {
+            log.error("Invalid cluster invalidation message: " + message, e);
+            // we don't know what was invalidated
+            return new Invalidations(true);
+        }
+    }
+
+}
@@ -0,0 +1,154 @@
+/*
+ * (C) Copyright 2014 Nuxeo SA (http://nuxeo.com/) and contributors.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser General Public License
+ * (LGPL) version 2.1 which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl-2.1.html
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * Contributors:
+ *     Florent Guillaume
+ */
+package org.nuxeo.ecm.core.redis.contribs;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import org.apache.commons.lang.StringUtils;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.nuxeo.ecm.core.redis.RedisAdmin;
+import org.nuxeo.ecm.core.redis.RedisCallable;
+import org.nuxeo.ecm.core.redis.RedisExecutor;
+import org.nuxeo.ecm.core.redis.RedisSubscriber;
+import org.nuxeo.ecm.core.storage.dbs.DBSClusterInvalidator;
+import org.nuxeo.ecm.core.storage.dbs.DBSInvalidations;
+import org.nuxeo.runtime.api.Framework;
+
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.exceptions.JedisException;
+
+/**
+ * Redis implementation of {@link DBSClusterInvalidator}, using Redis pub/sub.
+ * <p>
+ * A message is a node id followed by a tab and either {@code *} (invalidate all) or a comma-separated list of ids.
+ *
+ * @since 7.1
+ */
+public class RedisDBSClusterInvalidator implements DBSClusterInvalidator {
+
+    private static final Log log = LogFactory.getLog(RedisDBSClusterInvalidator.class);
+
+    protected static final String SEP = "\t";
+
+    protected static final String ALL = "*";
+
+    protected RedisExecutor redisExecutor;
+
+    protected String nodeId;
+
+    protected String channel;
+
+    /** Invalidations received from other nodes and not yet processed. */
+    protected final Queue<DBSInvalidations> received = new ConcurrentLinkedQueue<>();
+
+    protected RedisSubscriber subscriber;
+
+    @Override
+    public void initialize(String nodeId, String repositoryName) {
+        this.nodeId = nodeId;
+        redisExecutor = Framework.getService(RedisExecutor.class);
+        RedisAdmin redisAdmin = Framework.getService(RedisAdmin.class);
+        channel = redisAdmin.namespace("dbs", "invalidations", repositoryName);
+        subscriber = new RedisSubscriber(redisExecutor.getPool(), channel) {
+
+            @Override
+            protected void onMessage(String message) {
+                DBSInvalidations invalidations = deserialize(message);
+                if (invalidations != null) {
+                    received.add(invalidations);
+                }
+            }
+
+            @Override
+            protected void onSubscribe() {
+                // messages may have been missed while not subscribed
+                received.add(new DBSInvalidations(true));
+            }
+        };
+        subscriber.start("RedisDBSClusterInvalidator-" + repositoryName);
+    }
+
+    @Override
+    public void close() {
+        subscriber.stop();
+        received.clear();
+    }
+
+    @Override
+    public DBSInvalidations receiveInvalidations() {
+        DBSInvalidations invalidations = received.poll();
+        if (invalidations == null) {
+            return null;
+        }
+        DBSInvalidations more;
+        while ((more = received.poll()) != null) {
+            invalidations.add(more);
+        }
+        return invalidations;
+    }
+
+    @Override
+    public void sendInvalidations(DBSInvalidations invalidations) {
+        if (invalidations.isEmpty()) {
+            return;
+        }
+        final String message = serialize(invalidations);
+        try {
+            redisExecutor.execute(new RedisCallable<Void>() {
+                @Override
+                public Void call(Jedis jedis) {
+                    jedis.publish(channel, message);
+                    return null;
+                }
+            });
+        } catch (IOException | JedisException e) {
+            log.error("Cannot send cluster invalidations", e);
+        }
+    }
+
+    protected String serialize(DBSInvalidations invalidations) {
+        String payload = invalidations.all ? ALL : StringUtils.join(invalidations.ids, ',');
+        return nodeId + SEP + payload;
+    }
+
+    /**
+     * Deserializes a message, returns {@code null} if it comes from this node.
+     */
+    protected DBSInvalidations deserialize(String message) {
+        int i = message.indexOf(SEP);
+        if (i < 0) {
+            log.error("Invalid cluster invalidation message: " + message);
+            return null;
+        }
+        if (message.substring(0, i).equals(nodeId)) {
+            return null;
+        }
+        String payload = message.substring(i + 1);
+        DBSInvalidations invalidations = new DBSInvalidations();
+        if (ALL.equals(payload)) {
+            invalidations.setAll();
+        } else {
+            invalidations.add(Arrays.asList(StringUtils.split(payload, ',')));
+        }
+        return invalidations;
+    }
+
+}
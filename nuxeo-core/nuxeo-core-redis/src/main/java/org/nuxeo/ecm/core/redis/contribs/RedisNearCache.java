@@ -0,0 +1,294 @@
+/*
+ * (C) Copyright 2014 Nuxeo SA (http://nuxeo.com/) and contributors.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser General Public License
+ * (LGPL) version 2.1 which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl-2.1.html
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * Contributors:
+ *     Florent Guillaume
+ */
+package org.nuxeo.ecm.core.redis.contribs;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.nuxeo.ecm.core.cache.CacheDescriptor;
+import org.nuxeo.ecm.core.redis.RedisAdmin;
+import org.nuxeo.ecm.core.redis.RedisCallable;
+import org.nuxeo.runtime.api.Framework;
+import org.nuxeo.runtime.metrics.MetricsService;
+
+import redis.clients.jedis.Jedis;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.SharedMetricRegistries;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+/**
+ * Two-tier cache: a bounded local near cache in front of a {@link RedisCache}.
+ * <p>
+ * Reads are served from the local cache when possible, which is only populated by reads. Writes and invalidations go
+ * to Redis, drop the local copy and are broadcast to the other nodes through Redis pub/sub, so that they drop theirs.
+ * The near caches of a node share a single subscription, see {@link RedisNearCacheSubscriber}. While it is not
+ * subscribed to the invalidations channel, the local cache is bypassed, and it is cleared on each (re)subscription.
+ * <p>
+ * Options:
+ * <ul>
+ * <li>{@code maxSize}: the maximum number of entries in the local cache, default 1000</li>
+ * </ul>
+ * The local hits and misses are reported in the metrics registry under {@code nuxeo.cache.<name>.near}.
+ *
+ * @since 7.1
+ */
+public class RedisNearCache extends RedisCache implements Closeable {
+
+    private static final Log log = LogFactory.getLog(RedisNearCache.class);
+
+    public static final String MAX_SIZE_OPTION = "maxSize";
+
+    public static final long DEFAULT_NEAR_MAX_SIZE = 1000;
+
+    protected static final String SEP = "\t";
+
+    protected final Cache<String, Serializable> nearCache;
+
+    protected final String nodeId = UUID.randomUUID().toString();
+
+    protected final String channel;
+
+    /**
+     * Incremented on each write or invalidation, so that a value read from Redis concurrently with it doesn't get
+     * stored locally.
+     */
+    protected final AtomicLong generation = new AtomicLong();
+
+    protected final MetricRegistry registry = SharedMetricRegistries.getOrCreate(MetricsService.class.getName());
+
+    protected final Counter nearHitCount;
+
+    protected final Counter nearMissCount;
+
+    protected final RedisNearCacheSubscriber subscriber;
+
+    public RedisNearCache(CacheDescriptor desc) {
+        super(desc);
+        long maxSize = DEFAULT_NEAR_MAX_SIZE;
+        String value = desc.getOptions().get(MAX_SIZE_OPTION);
+        if (value != null) {
+            maxSize = Long.parseLong(value.trim());
+        }
+        nearCache = CacheBuilder.newBuilder().expireAfterWrite(ttl, TimeUnit.MINUTES).maximumSize(maxSize).build();
+        nearHitCount = registry.counter(MetricRegistry.name("nuxeo", "cache", name, "near", "hits"));
+        nearMissCount = registry.counter(MetricRegistry.name("nuxeo", "cache", name, "near", "misses"));
+        channel = Framework.getService(RedisAdmin.class).namespace("cache", "invalidations");
+        subscriber = RedisNearCacheSubscriber.register(executor.getPool(), channel, this);
+    }
+
+    @Override
+    public void close() {
+        subscriber.unregister(this);
+        nearCache.invalidateAll();
+    }
+
+    /**
+     * Called when the shared subscription starts, invalidations may have been missed while not subscribed.
+     */
+    protected void onSubscribe() {
+        generation.incrementAndGet();
+        nearCache.invalidateAll();
+    }
+
+    @Override
+    public Serializable get(String key) throws IOException {
+        if (!subscriber.isSubscribed()) {
+            return super.get(key);
+        }
+        Serializable value = nearCache.getIfPresent(key);
+        if (value != null) {
+            nearHitCount.inc();
+            return value;
+        }
+        nearMissCount.inc();
+        long gen = generation.get();
+        value = super.get(key);
+        if (value != null && generation.get() == gen) {
+            nearCache.put(key, value);
+        }
+        return value;
+    }
+
+    @Override
+    public Map<String, Serializable> getAll(Collection<String> keys) throws IOException {
+        if (!subscriber.isSubscribed()) {
+            return super.getAll(keys);
+        }
+        Map<String, Serializable> res = new HashMap<String, Serializable>();
+        List<String> missing = new ArrayList<String>();
+        for (String key : keys) {
+            if (key == null) {
+                continue;
+            }
+            Serializable value = nearCache.getIfPresent(key);
+            if (value != null) {
+                res.put(key, value);
+            } else {
+                missing.add(key);
+            }
+        }
+        nearHitCount.inc(res.size());
+        nearMissCount.inc(missing.size());
+        if (!missing.isEmpty()) {
+            long gen = generation.get();
+            Map<String, Serializable> remote = super.getAll(missing);
+            if (generation.get() == gen) {
+                nearCache.putAll(remote);
+            }
+            res.putAll(remote);
+        }
+        return res;
+    }
+
+    @Override
+    public void put(String key, Serializable value) throws IOException {
+        super.put(key, value);
+        // not populated, a concurrent put may have written Redis after us
+        generation.incrementAndGet();
+        nearCache.invalidate(key);
+        publish(Collections.singleton(key));
+    }
+
+    @Override
+    public void putAll(Map<String, ? extends Serializable> values) throws IOException {
+        if (values.isEmpty()) {
+            return;
+        }
+        super.putAll(values);
+        generation.incrementAndGet();
+        nearCache.invalidateAll(values.keySet());
+        publish(values.keySet());
+    }
+
+    @Override
+    public void invalidate(String key) throws IOException {
+        super.invalidate(key);
+        generation.incrementAndGet();
+        nearCache.invalidate(key);
+        publish(Collections.singleton(key));
+    }
+
+    @Override
+    public void invalidateAll() throws IOException {
+        super.invalidateAll();
+        generation.incrementAndGet();
+        nearCache.invalidateAll();
+        publish(null);
+    }
+
+    /**
+     * Broadcasts the invalidation of some keys, or of all keys if {@code null}.
+     */
+    protected void publish(Collection<String> keys) throws IOException {
+        final String message = RedisNearCacheSubscriber.formatMessage(name, formatMessage(nodeId, keys));
+        executor.execute(new RedisCallable<Void>() {
+            @Override
+            public Void call(Jedis jedis) {
+                jedis.publish(channel, message);
+                return null;
+            }
+        });
+    }
+
+    /**
+     * A message is the sending node id, followed by a tab and the invalidated keys, each prefixed by its length and a
+     * colon, so that keys may contain any character. A message without tab invalidates all the keys.
+     */
+    protected static String formatMessage(String nodeId, Collection<String> keys) {
+        StringBuilder buf = new StringBuilder(nodeId);
+        if (keys != null) {
+            buf.append(SEP);
+            for (String key : keys) {
+                buf.append(key.length());
+                buf.append(':');
+                buf.append(key);
+            }
+        }
+        return buf.toString();
+    }
+
+    /**
+     * Processes an invalidation message received from another node.
+     */
+    protected void onInvalidation(String message) {
+        if (message.equals(nodeId) || message.startsWith(nodeId + SEP)) {
+            return;
+        }
+        generation.incrementAndGet();
+        List<String> keys;
+        try {
+            keys = parseKeys(message);
+        } catch (IllegalArgumentException e) {
+            log.error("Invalid invalidation message for cache " + name + ": " + message, e);
+            keys = null; // we don't know what was invalidated
+        }
+        if (keys == null) {
+            nearCache.invalidateAll();
+        } else {
+            nearCache.invalidateAll(keys);
+        }
+    }
+
+    /**
+     * Gets the keys invalidated by a message, or {@code null} if all the keys are invalidated.
+     *
+     * @throws IllegalArgumentException if the message is malformed
+     */
+    protected static List<String> parseKeys(String message) {
+        int i = message.indexOf(SEP);
+        if (i < 0) {
+            return null;
+        }
+        List<String> keys = new ArrayList<String>();
+        int len = message.length();
+        i++;
+        while (i < len) {
+            int colon = message.indexOf(':', i);
+            if (colon < 0) {
+                throw new IllegalArgumentException("Missing key length at " + i);
+            }
+            int end;
+            try {
+                end = colon + 1 + Integer.parseInt(message.substring(i, colon));
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Invalid key length at " + i, e);
+            }
+            if (end < colon + 1 || end > len) {
+                throw new IllegalArgumentException("Invalid key length at " + i);
+            }
+            keys.add(message.substring(colon + 1, end));
+            i = end;
+        }
+        return keys;
+    }
+
+}
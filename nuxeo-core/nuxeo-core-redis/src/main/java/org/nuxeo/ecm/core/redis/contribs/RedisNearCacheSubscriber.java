@@ -0,0 +1,140 @@
+/*
+ * (C) Copyright 2014 Nuxeo SA (http://nuxeo.com/) and contributors.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser General Public License
+ * (LGPL) version 2.1 which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl-2.1.html
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * Contributors:
+ *     Florent Guillaume
+ */
+package org.nuxeo.ecm.core.redis.contribs;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.nuxeo.ecm.core.redis.RedisSubscriber;
+
+import redis.clients.jedis.Jedis;
+import redis.clients.util.Pool;
+
+/**
+ * Subscription to the invalidations of all the {@link RedisNearCache}s using a given pool.
+ * <p>
+ * A subscription holds its connection for as long as it lasts, so the near caches share a single one instead of taking
+ * one each from the pool. The invalidations of all the caches go through one channel, each message being prefixed by
+ * the name of its cache, its length and a colon, and are dispatched to the caches registered under that name.
+ *
+ * @since 7.1
+ */
+public class RedisNearCacheSubscriber extends RedisSubscriber {
+
+    private static final Log log = LogFactory.getLog(RedisNearCacheSubscriber.class);
+
+    /** Subscribers by pool, used synchronized on the class. */
+    protected static final Map<Pool<Jedis>, RedisNearCacheSubscriber> subscribers = new HashMap<>();
+
+    /** Registered caches by name. */
+    protected final Map<String, List<RedisNearCache>> caches = new ConcurrentHashMap<String, List<RedisNearCache>>();
+
+    /** Number of registered caches, used synchronized on the class. */
+    protected int count;
+
+    protected RedisNearCacheSubscriber(Pool<Jedis> pool, String channel) {
+        super(pool, channel);
+    }
+
+    /**
+     * Registers a cache to receive its invalidations, starting the subscription of its pool if needed.
+     */
+    public static RedisNearCacheSubscriber register(Pool<Jedis> pool, String channel, RedisNearCache cache) {
+        synchronized (RedisNearCacheSubscriber.class) {
+            RedisNearCacheSubscriber subscriber = subscribers.get(pool);
+            if (subscriber == null) {
+                subscriber = new RedisNearCacheSubscriber(pool, channel);
+                subscribers.put(pool, subscriber);
+                subscriber.start("RedisNearCacheSubscriber");
+            }
+            List<RedisNearCache> list = subscriber.caches.get(cache.getName());
+            if (list == null) {
+                list = new CopyOnWriteArrayList<RedisNearCache>();
+                subscriber.caches.put(cache.getName(), list);
+            }
+            list.add(cache);
+            subscriber.count++;
+            return subscriber;
+        }
+    }
+
+    /**
+     * Unregisters a cache, stopping the subscription when no cache is left.
+     */
+    public void unregister(RedisNearCache cache) {
+        synchronized (RedisNearCacheSubscriber.class) {
+            List<RedisNearCache> list = caches.get(cache.getName());
+            if (list == null || !list.remove(cache)) {
+                return;
+            }
+            if (list.isEmpty()) {
+                caches.remove(cache.getName());
+            }
+            if (--count == 0) {
+                subscribers.remove(pool);
+                stop();
+            }
+        }
+    }
+
+    /**
+     * Prefixes a cache message with the name of its cache.
+     */
+    protected static String formatMessage(String cacheName, String message) {
+        return cacheName.length() + ":" + cacheName + message;
+    }
+
+    @Override
+    protected void onMessage(String message) {
+        int colon = message.indexOf(':');
+        int end = -1;
+        if (colon > 0) {
+            try {
+                end = colon + 1 + Integer.parseInt(message.substring(0, colon));
+            } catch (NumberFormatException e) {
+                end = -1;
+            }
+        }
+        if (end <= colon || end > message.length()) {
+            log.error("Invalid near cache invalidation message: " + message);
+            return;
+        }
+        List<RedisNearCache> list = caches.get(message.substring(colon + 1, end));
+        if (list == null) {
+            return;
+        }
+        String cacheMessage = message.substring(end);
+        for (RedisNearCache cache : list) {
+            cache.onInvalidation(cacheMessage);
+        }
+    }
+
+    @Override
+    protected void onSubscribe() {
+        for (List<RedisNearCache> list : caches.values()) {
+            for (RedisNearCache cache : list) {
+                cache.onSubscribe();
+            }
+        }
+    }
+
+}
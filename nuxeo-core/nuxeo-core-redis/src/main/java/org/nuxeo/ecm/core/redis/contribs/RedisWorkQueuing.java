@@ -16,13 +16,11 @@
  */
 package org.nuxeo.ecm.core.redis.contribs;
 
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
@@ -38,11 +36,14 @@ import org.nuxeo.ecm.core.redis.RedisExecutor;
 import org.nuxeo.ecm.core.work.WorkManagerImpl;
 import org.nuxeo.ecm.core.work.WorkQueueDescriptorRegistry;
 import org.nuxeo.ecm.core.work.WorkQueuing;
+import org.nuxeo.ecm.core.work.api.CoalescingWork;
 import org.nuxeo.ecm.core.work.api.Work;
 import org.nuxeo.ecm.core.work.api.Work.State;
+import org.nuxeo.ecm.core.work.api.WorkQueueDescriptor;
 import org.nuxeo.runtime.api.Framework;
 
 import redis.clients.jedis.Jedis;
+import redis.clients.jedis.exceptions.JedisDataException;
 
 /**
  * Implementation of a {@link WorkQueuing} storing {@link Work} instances in Redis.
@@ -55,6 +56,25 @@ public class RedisWorkQueuing implements WorkQueuing {
 
     protected static final String UTF_8 = "UTF-8";
 
+    /**
+     * The {@link WorkCodec} used to store work instances: {@code compact} (the default), {@code java}, or a class
+     * name.
+     *
+     * @since 7.1
+     */
+    public static final String CODEC_PROPERTY = "nuxeo.work.redis.codec";
+
+    public static final String DEFAULT_CODEC = "compact";
+
+    /**
+     * Whether state transitions are done by atomic Lua scripts (the default), or by separate commands.
+     *
+     * @since 7.1
+     */
+    public static final String SCRIPTS_PROPERTY = "nuxeo.work.redis.scripts";
+
+    public static final String DEFAULT_SCRIPTS = "true";
+
     /**
      * Global hash of Work instance id -> serialized Work instance.
      */
@@ -86,6 +106,40 @@ public class RedisWorkQueuing implements WorkQueuing {
      */
     protected static final String KEY_COMPLETED_PREFIX = "done:";
 
+    /**
+     * Per-queue hash of coalesce key -> id of the scheduled Work instance into which new ones are merged.
+     *
+     * @since 7.1
+     */
+    protected static final String KEY_COALESCE_PREFIX = "coalesce:";
+
+    /**
+     * Per-Work instance list of serialized Work instances merged into it. The list starts with an empty element, and
+     * only exists while the Work instance is scheduled.
+     *
+     * @since 7.1
+     */
+    protected static final String KEY_MERGED_PREFIX = "merged:";
+
+    /**
+     * Per-queue and per-Work instance list of merged Work instances being taken with it from the scheduled queue, named
+     * {@code taking:<queueId>:<workId>}. It's only deleted once the merged Work instance has been saved, and the lists
+     * left behind by a stopped node are scheduled again on startup. The lists are tracked in a per-queue set.
+     *
+     * @since 7.1
+     */
+    protected static final String KEY_TAKING_PREFIX = "taking:";
+
+    /**
+     * Per-queue set of the ids of the Work instances having a taking list, so that the lists left behind can be found
+     * without scanning the keys.
+     *
+     * @since 7.1
+     */
+    protected static final String KEY_TAKING_SET_PREFIX = "takingset:";
+
+    protected static final byte[] EMPTY = new byte[0];
+
     protected static final byte STATE_SCHEDULED_B = 'Q';
 
     protected static final byte STATE_CANCELED_B = 'X';
@@ -111,6 +165,20 @@ public class RedisWorkQueuing implements WorkQueuing {
 
     protected String redisNamespace;
 
+    protected WorkCodec codec;
+
+    protected boolean useScripts;
+
+    protected byte[] scheduleSha;
+
+    protected byte[] popSha;
+
+    protected byte[] removeSha;
+
+    protected byte[] runningSha;
+
+    protected byte[] completedSha;
+
     public RedisWorkQueuing(WorkManagerImpl mgr, WorkQueueDescriptorRegistry workQueueDescriptors) {
         this.mgr = mgr;
     }
@@ -118,17 +186,54 @@ public class RedisWorkQueuing implements WorkQueuing {
     @Override
     public void init() {
         redisExecutor = Framework.getLocalService(RedisExecutor.class);
-        redisNamespace = Framework.getService(RedisAdmin.class).namespace("work");
+        RedisAdmin redisAdmin = Framework.getService(RedisAdmin.class);
+        redisNamespace = redisAdmin.namespace("work");
+        codec = newCodec(Framework.getProperty(CODEC_PROPERTY, DEFAULT_CODEC));
+        useScripts = Boolean.parseBoolean(Framework.getProperty(SCRIPTS_PROPERTY, DEFAULT_SCRIPTS));
         try {
+            if (useScripts) {
+                scheduleSha = bytes(redisAdmin.load("org.nuxeo.ecm.core.redis", "work-schedule"));
+                popSha = bytes(redisAdmin.load("org.nuxeo.ecm.core.redis", "work-pop"));
+                removeSha = bytes(redisAdmin.load("org.nuxeo.ecm.core.redis", "work-remove"));
+                runningSha = bytes(redisAdmin.load("org.nuxeo.ecm.core.redis", "work-running"));
+                completedSha = bytes(redisAdmin.load("org.nuxeo.ecm.core.redis", "work-completed"));
+            }
             for (String queueId : getSuspendedQueueIds()) {
                 int n = scheduleSuspendedWork(queueId);
                 log.info("Re-scheduling " + n + " work instances suspended from queue: " + queueId);
             }
+            for (String queueId : mgr.getWorkQueueIds()) {
+                int n = scheduleTakingWork(queueId);
+                if (n > 0) {
+                    log.info("Re-scheduling " + n + " merged work instances left by a stopped node in queue: "
+                            + queueId);
+                }
+            }
         } catch (IOException e) {
             throw new RuntimeException(e);
         }
     }
 
+    /**
+     * Instantiates the codec configured by {@value #CODEC_PROPERTY}.
+     *
+     * @since 7.1
+     */
+    protected WorkCodec newCodec(String name) {
+        switch (name) {
+        case "compact":
+            return new CompactWorkCodec();
+        case "java":
+            return new JavaWorkCodec();
+        default:
+            try {
+                return (WorkCodec) Class.forName(name).newInstance();
+            } catch (ReflectiveOperationException | ClassCastException e) {
+                throw new RuntimeException("Invalid work codec: " + name, e);
+            }
+        }
+    }
+
     @Override
     public BlockingQueue<Runnable> initScheduleQueue(String queueId) {
         if (allScheduled.containsKey(queueId)) {
@@ -318,6 +423,15 @@ public class RedisWorkQueuing implements WorkQueuing {
         }
     }
 
+    @Override
+    public boolean coalesceScheduled(String queueId, CoalescingWork work) {
+        try {
+            return mergeScheduledWork(queueId, work);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
     @Override
     public State getWorkState(String workId) {
         try {
@@ -396,6 +510,22 @@ public class RedisWorkQueuing implements WorkQueuing {
         return keyBytes(KEY_COMPLETED_PREFIX, queueId);
     }
 
+    protected byte[] coalesceKey(String queueId) {
+        return keyBytes(KEY_COALESCE_PREFIX, queueId);
+    }
+
+    protected byte[] mergedKey(String workId) {
+        return keyBytes(KEY_MERGED_PREFIX, workId);
+    }
+
+    protected byte[] takingKey(String queueId, String workId) {
+        return keyBytes(KEY_TAKING_PREFIX, queueId + ':' + workId);
+    }
+
+    protected byte[] takingSetKey(String queueId) {
+        return keyBytes(KEY_TAKING_SET_PREFIX, queueId);
+    }
+
     protected byte[] stateKey() {
         return keyBytes(KEY_STATE);
     }
@@ -405,24 +535,16 @@ public class RedisWorkQueuing implements WorkQueuing {
     }
 
     protected byte[] serializeWork(Work work) throws IOException {
-        ByteArrayOutputStream baout = new ByteArrayOutputStream();
-        ObjectOutputStream out = new ObjectOutputStream(baout);
-        out.writeObject(work);
-        out.flush();
-        out.close();
-        return baout.toByteArray();
+        return codec.encode(work);
     }
 
     protected Work deserializeWork(byte[] workBytes) {
         if (workBytes == null) {
             return null;
         }
-        InputStream bain = new ByteArrayInputStream(workBytes);
-        try (ObjectInputStream in = new ObjectInputStream(bain)) {
-            return (Work) in.readObject();
-        } catch (RuntimeException cause) {
-            throw cause;
-        } catch (IOException | ClassNotFoundException cause) {
+        try {
+            return codec.decode(workBytes);
+        } catch (IOException cause) {
             throw new RuntimeException("Cannot deserialize work", cause);
         }
     }
@@ -467,9 +589,10 @@ public class RedisWorkQueuing implements WorkQueuing {
      * @param work the work instance
      * @throws IOException
      */
-    public void addScheduledWork(final String queueId, Work work) throws IOException {
+    public void addScheduledWork(final String queueId, final Work work) throws IOException {
         log.debug("Add scheduled " + work);
         final byte[] workIdBytes = bytes(work.getId());
+        final String coalesceKey = getCoalesceKey(queueId, work);
 
         // serialize Work
         final byte[] workBytes = serializeWork(work);
@@ -478,8 +601,27 @@ public class RedisWorkQueuing implements WorkQueuing {
 
             @Override
             public Void call(Jedis jedis) {
+                if (useScripts) {
+                    List<byte[]> keys = new ArrayList<>(5);
+                    List<byte[]> args = new ArrayList<>(4);
+                    Collections.addAll(keys, dataKey(), stateKey(), scheduledKey(queueId));
+                    Collections.addAll(args, workIdBytes, workBytes, STATE_SCHEDULED);
+                    if (coalesceKey != null) {
+                        Collections.addAll(keys, coalesceKey(queueId), mergedKey(work.getId()));
+                        args.add(bytes(coalesceKey));
+                    }
+                    jedis.evalsha(scheduleSha, keys, args);
+                    return null;
+                }
                 jedis.hset(dataKey(), workIdBytes, workBytes);
                 jedis.hset(stateKey(), workIdBytes, STATE_SCHEDULED);
+                if (coalesceKey != null) {
+                    // open the list receiving merged work, then advertise it
+                    byte[] mergedKey = mergedKey(work.getId());
+                    jedis.del(mergedKey);
+                    jedis.rpush(mergedKey, EMPTY);
+                    jedis.hset(coalesceKey(queueId), bytes(coalesceKey), workIdBytes);
+                }
                 jedis.lpush(scheduledKey(queueId), workIdBytes);
                 return null;
             }
@@ -487,6 +629,194 @@ public class RedisWorkQueuing implements WorkQueuing {
         });
     }
 
+    /**
+     * Gets the coalesce key of a work instance, or {@code null} if it cannot receive merges in this queue.
+     *
+     * @since 7.1
+     */
+    protected String getCoalesceKey(String queueId, Work work) {
+        if (!(work instanceof CoalescingWork)) {
+            return null;
+        }
+        WorkQueueDescriptor descriptor = mgr.getWorkQueueDescriptor(queueId);
+        if (descriptor == null || !descriptor.coalescing) {
+            return null;
+        }
+        return ((CoalescingWork) work).getCoalesceKey();
+    }
+
+    /**
+     * Merges a work instance into the scheduled work instance having the same coalesce key, if any.
+     * <p>
+     * The work instance is appended to the list of merged work of the scheduled one, which only succeeds if this list
+     * has not yet been taken by the consumer of the scheduled work.
+     *
+     * @param queueId the queue id
+     * @param work the work instance to merge
+     * @return {@code true} if the work instance was merged
+     * @since 7.1
+     */
+    protected boolean mergeScheduledWork(final String queueId, CoalescingWork work) throws IOException {
+        String coalesceKey = work.getCoalesceKey();
+        if (coalesceKey == null) {
+            return false;
+        }
+        final byte[] coalesceKeyBytes = bytes(coalesceKey);
+        final byte[] workBytes = serializeWork(work);
+        return redisExecutor.execute(new RedisCallable<Boolean>() {
+
+            @Override
+            public Boolean call(Jedis jedis) {
+                byte[] scheduledIdBytes = jedis.hget(coalesceKey(queueId), coalesceKeyBytes);
+                if (scheduledIdBytes == null) {
+                    return Boolean.FALSE;
+                }
+                // only appends if the list still exists
+                Long n = jedis.rpushx(mergedKey(string(scheduledIdBytes)), workBytes);
+                return Boolean.valueOf(n != null && n.longValue() > 0);
+            }
+
+        }).booleanValue();
+    }
+
+    /**
+     * Takes the work instances merged into a work instance that was just removed from its scheduled queue, and merges
+     * them into it. The ones that it refuses are scheduled again.
+     * <p>
+     * The list of merged work is kept until the merged work instance has been saved, so that it's not lost if this
+     * node stops in the meantime.
+     *
+     * @since 7.1
+     */
+    protected void takeMergedWork(final String queueId, final CoalescingWork work) throws IOException {
+        List<byte[]> merged = closeMergedWork(queueId, work.getId(), work.getCoalesceKey());
+        if (merged == null) {
+            return;
+        }
+        for (byte[] workBytes : merged) {
+            if (workBytes.length == 0) {
+                continue;
+            }
+            CoalescingWork other = (CoalescingWork) deserializeWork(workBytes);
+            if (!work.merge(other)) {
+                mgr.schedule(other);
+            }
+        }
+        final byte[] workIdBytes = bytes(work.getId());
+        final byte[] workBytes = serializeWork(work);
+        final byte[] takingKey = takingKey(queueId, work.getId());
+        redisExecutor.execute(new RedisCallable<Void>() {
+
+            @Override
+            public Void call(Jedis jedis) {
+                // the merged work is now saved with the work instance
+                jedis.hset(dataKey(), workIdBytes, workBytes);
+                jedis.del(takingKey);
+                jedis.srem(takingSetKey(queueId), workIdBytes);
+                return null;
+            }
+
+        });
+    }
+
+    /**
+     * Closes the list of work instances merged into a scheduled work instance to further merges, and returns its
+     * content. If the list holds merged work, it's kept as a taking list until {@link #takeMergedWork} is done with it.
+     *
+     * @return the serialized merged work instances, or {@code null} if there are none
+     * @since 7.1
+     */
+    protected List<byte[]> closeMergedWork(final String queueId, String workId, final String coalesceKey)
+            throws IOException {
+        final byte[] workIdBytes = bytes(workId);
+        final byte[] mergedKey = mergedKey(workId);
+        final byte[] takingKey = takingKey(queueId, workId);
+        return redisExecutor.execute(new RedisCallable<List<byte[]>>() {
+
+            @Override
+            public List<byte[]> call(Jedis jedis) {
+                // tracked first, so that the list is found again if this node stops once it's renamed
+                jedis.sadd(takingSetKey(queueId), workIdBytes);
+                try {
+                    // atomically close the list to further merges
+                    jedis.rename(mergedKey, takingKey);
+                } catch (JedisDataException e) {
+                    // no list, work was not scheduled with coalescing
+                    jedis.srem(takingSetKey(queueId), workIdBytes);
+                    return null;
+                }
+                if (coalesceKey != null) {
+                    byte[] coalesceKeyBytes = bytes(coalesceKey);
+                    if (Arrays.equals(workIdBytes, jedis.hget(coalesceKey(queueId), coalesceKeyBytes))) {
+                        jedis.hdel(coalesceKey(queueId), coalesceKeyBytes);
+                    }
+                }
+                List<byte[]> list = jedis.lrange(takingKey, 0, -1);
+                if (list.size() <= 1) {
+                    // only the initial empty element, nothing was merged
+                    jedis.del(takingKey);
+                    jedis.srem(takingSetKey(queueId), workIdBytes);
+                    return null;
+                }
+                return list;
+            }
+
+        });
+    }
+
+    /**
+     * Schedules again the work instances of the taking lists left behind by nodes that stopped while taking merged
+     * work from the given queue.
+     * <p>
+     * A list still being taken by a running node is scheduled again as well, which may run its work instances twice
+     * but doesn't lose them. The lists are found from the taking set of the queue, an id left there without its list
+     * is just removed.
+     *
+     * @param queueId the queue id
+     * @return the number of work instances scheduled
+     * @since 7.1
+     */
+    protected int scheduleTakingWork(final String queueId) throws IOException {
+        Set<byte[]> workIds = redisExecutor.execute(new RedisCallable<Set<byte[]>>() {
+
+            @Override
+            public Set<byte[]> call(Jedis jedis) {
+                return jedis.smembers(takingSetKey(queueId));
+            }
+
+        });
+        int n = 0;
+        for (final byte[] workIdBytes : workIds) {
+            final byte[] takingKey = takingKey(queueId, string(workIdBytes));
+            List<byte[]> list = redisExecutor.execute(new RedisCallable<List<byte[]>>() {
+
+                @Override
+                public List<byte[]> call(Jedis jedis) {
+                    return jedis.lrange(takingKey, 0, -1);
+                }
+
+            });
+            for (byte[] workBytes : list) {
+                if (workBytes.length == 0) {
+                    continue;
+                }
+                addScheduledWork(queueId, deserializeWork(workBytes));
+                n++;
+            }
+            redisExecutor.execute(new RedisCallable<Void>() {
+
+                @Override
+                public Void call(Jedis jedis) {
+                    jedis.del(takingKey);
+                    jedis.srem(takingSetKey(queueId), workIdBytes);
+                    return null;
+                }
+
+            });
+        }
+        return n;
+    }
+
     /**
      * Finds which queues have suspended work.
      *
@@ -603,6 +933,11 @@ public class RedisWorkQueuing implements WorkQueuing {
 
             @Override
             public Void call(Jedis jedis) throws IOException {
+                if (useScripts) {
+                    jedis.evalsha(runningSha, Arrays.asList(runningKey(queueId), stateKey()),
+                            Arrays.asList(workIdBytes, STATE_RUNNING));
+                    return null;
+                }
                 jedis.sadd(runningKey(queueId), workIdBytes);
                 jedis.hset(stateKey(), workIdBytes, STATE_RUNNING);
                 return null;
@@ -620,10 +955,17 @@ public class RedisWorkQueuing implements WorkQueuing {
     protected void workSetCompleted(final String queueId, final Work work) throws IOException {
         final byte[] workIdBytes = bytes(work.getId());
         final byte[] workBytes = serializeWork(work);
+        final byte[] completedBytes = bytes(((char) STATE_COMPLETED_B) + String.valueOf(work.getCompletionTime()));
         redisExecutor.execute(new RedisCallable<Void>() {
 
             @Override
             public Void call(Jedis jedis) throws IOException {
+                if (useScripts) {
+                    jedis.evalsha(completedSha,
+                            Arrays.asList(dataKey(), runningKey(queueId), completedKey(queueId), stateKey()),
+                            Arrays.asList(workIdBytes, workBytes, completedBytes));
+                    return null;
+                }
                 // store (updated) content in hash
                 jedis.hset(dataKey(), workIdBytes, workBytes);
                 // remove key from running set
@@ -631,7 +973,6 @@ public class RedisWorkQueuing implements WorkQueuing {
                 // put key in completed set
                 jedis.sadd(completedKey(queueId), workIdBytes);
                 // set state to completed
-                byte[] completedBytes = bytes(((char) STATE_COMPLETED_B) + String.valueOf(work.getCompletionTime()));
                 jedis.hset(stateKey(), workIdBytes, completedBytes);
                 return null;
             }
@@ -712,14 +1053,7 @@ public class RedisWorkQueuing implements WorkQueuing {
             @Override
             public List<Work> call(Jedis jedis) throws IOException {
                 List<byte[]> keys = jedis.lrange(queueBytes, 0, -1);
-                List<Work> list = new ArrayList<Work>(keys.size());
-                for (byte[] workIdBytes : keys) {
-                    // get data
-                    byte[] workBytes = jedis.hget(dataKey(), workIdBytes);
-                    Work work = deserializeWork(workBytes);
-                    list.add(work);
-                }
-                return list;
+                return getWorks(jedis, keys);
             }
         });
     }
@@ -729,18 +1063,28 @@ public class RedisWorkQueuing implements WorkQueuing {
             @Override
             public List<Work> call(Jedis jedis) {
                 Set<byte[]> keys = jedis.smembers(queueBytes);
-                List<Work> list = new ArrayList<Work>(keys.size());
-                for (byte[] workIdBytes : keys) {
-                    // get data
-                    byte[] workBytes = jedis.hget(dataKey(), workIdBytes);
-                    Work work = deserializeWork(workBytes);
-                    list.add(work);
-                }
-                return list;
+                return getWorks(jedis, keys);
             }
         });
     }
 
+    /**
+     * Gets the work instances for the given ids, fetching their data in a single command.
+     *
+     * @since 7.1
+     */
+    protected List<Work> getWorks(Jedis jedis, Collection<byte[]> workIds) {
+        if (workIds.isEmpty()) {
+            return new ArrayList<Work>(0);
+        }
+        List<byte[]> data = jedis.hmget(dataKey(), workIds.toArray(new byte[workIds.size()][]));
+        List<Work> list = new ArrayList<Work>(data.size());
+        for (byte[] workBytes : data) {
+            list.add(deserializeWork(workBytes));
+        }
+        return list;
+    }
+
     protected Work getWork(byte[] workIdBytes) {
         try {
             return getWorkData(workIdBytes);
@@ -768,10 +1112,15 @@ public class RedisWorkQueuing implements WorkQueuing {
      * @return the work, or {@code null} if the scheduled queue is empty
      */
     protected Work removeScheduledWork(final String queueId) throws IOException {
-        return redisExecutor.execute(new RedisCallable<Work>() {
+        Work work = redisExecutor.execute(new RedisCallable<Work>() {
 
             @Override
             public Work call(Jedis jedis) throws IOException {
+                if (useScripts) {
+                    byte[] workBytes = (byte[]) jedis.evalsha(popSha,
+                            Arrays.asList(scheduledKey(queueId), dataKey()), Collections.<byte[]> emptyList());
+                    return deserializeWork(workBytes);
+                }
                 // pop from queue
                 byte[] workIdBytes = jedis.rpop(scheduledKey(queueId));
                 if (workIdBytes == null) {
@@ -783,6 +1132,10 @@ public class RedisWorkQueuing implements WorkQueuing {
             }
 
         });
+        if (work instanceof CoalescingWork) {
+            takeMergedWork(queueId, (CoalescingWork) work);
+        }
+        return work;
     }
 
     /**
@@ -796,17 +1149,39 @@ public class RedisWorkQueuing implements WorkQueuing {
 
             @Override
             public Work call(Jedis jedis) throws IOException {
-                // remove from queue
-                Long n = jedis.lrem(scheduledKey(queueId), 0, workIdBytes);
-                if (n == null || n.intValue() == 0) {
-                    return null;
-                }
                 // set state to completed at current time
                 byte[] completedBytes = bytes(String.valueOf(System.currentTimeMillis()));
-                jedis.hset(stateKey(), workIdBytes, completedBytes);
-                // get data
-                byte[] workBytes = jedis.hget(dataKey(), workIdBytes);
-                return deserializeWork(workBytes);
+                byte[] workBytes;
+                if (useScripts) {
+                    workBytes = (byte[]) jedis.evalsha(removeSha,
+                            Arrays.asList(scheduledKey(queueId), stateKey(), dataKey()),
+                            Arrays.asList(workIdBytes, completedBytes));
+                    if (workBytes == null) {
+                        return null;
+                    }
+                } else {
+                    // remove from queue
+                    Long n = jedis.lrem(scheduledKey(queueId), 0, workIdBytes);
+                    if (n == null || n.intValue() == 0) {
+                        return null;
+                    }
+                    jedis.hset(stateKey(), workIdBytes, completedBytes);
+                    // get data
+                    workBytes = jedis.hget(dataKey(), workIdBytes);
+                }
+                Work work = deserializeWork(workBytes);
+                if (work instanceof CoalescingWork) {
+                    // merged work is canceled with it
+                    jedis.del(mergedKey(workId));
+                    String coalesceKey = ((CoalescingWork) work).getCoalesceKey();
+                    if (coalesceKey != null) {
+                        byte[] coalesceKeyBytes = bytes(coalesceKey);
+                        if (Arrays.equals(workIdBytes, jedis.hget(coalesceKey(queueId), coalesceKeyBytes))) {
+                            jedis.hdel(coalesceKey(queueId), coalesceKeyBytes);
+                        }
+                    }
+                }
+                return work;
             }
 
         });
@@ -0,0 +1,36 @@
+/*
+ * (C) Copyright 2014 Nuxeo SA (http://nuxeo.com/) and contributors.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser General Public License
+ * (LGPL) version 2.1 which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl-2.1.html
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * Contributors:
+ *     Florent Guillaume
+ */
+package org.nuxeo.ecm.core.redis.contribs;
+
+import java.io.IOException;
+
+import org.nuxeo.ecm.core.work.api.Work;
+
+/**
+ * Encodes {@link Work} instances to the bytes stored by {@link RedisWorkQueuing}, and back.
+ * <p>
+ * Implementations must have a public no-argument constructor, and must be thread-safe.
+ *
+ * @since 7.1
+ */
+public interface WorkCodec {
+
+    byte[] encode(Work work) throws IOException;
+
+    Work decode(byte[] bytes) throws IOException;
+
+}
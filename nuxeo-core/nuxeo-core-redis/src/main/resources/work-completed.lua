@@ -0,0 +1,4 @@
+redis.call('HSET', KEYS[1], ARGV[1], ARGV[2])
+redis.call('SREM', KEYS[2], ARGV[1])
+redis.call('SADD', KEYS[3], ARGV[1])
+return redis.call('HSET', KEYS[4], ARGV[1], ARGV[3])
@@ -0,0 +1,5 @@
+local id = redis.call('RPOP', KEYS[1])
+if id == false then
+  return nil
+end
+return redis.call('HGET', KEYS[2], id)
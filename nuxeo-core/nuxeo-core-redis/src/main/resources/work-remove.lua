@@ -0,0 +1,5 @@
+if redis.call('LREM', KEYS[1], 0, ARGV[1]) == 0 then
+  return nil
+end
+redis.call('HSET', KEYS[2], ARGV[1], ARGV[2])
+return redis.call('HGET', KEYS[3], ARGV[1])
@@ -0,0 +1,2 @@
+redis.call('SADD', KEYS[1], ARGV[1])
+return redis.call('HSET', KEYS[2], ARGV[1], ARGV[2])
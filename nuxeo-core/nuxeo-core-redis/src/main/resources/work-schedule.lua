@@ -0,0 +1,9 @@
+redis.call('HSET', KEYS[1], ARGV[1], ARGV[2])
+redis.call('HSET', KEYS[2], ARGV[1], ARGV[3])
+if #KEYS > 3 then
+  -- open the list receiving merged work, then advertise it
+  redis.call('DEL', KEYS[5])
+  redis.call('RPUSH', KEYS[5], '')
+  redis.call('HSET', KEYS[4], ARGV[4], ARGV[1])
+end
+return redis.call('LPUSH', KEYS[3], ARGV[1])
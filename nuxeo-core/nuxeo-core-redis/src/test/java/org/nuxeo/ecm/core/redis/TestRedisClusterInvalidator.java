@@ -0,0 +1,132 @@
+/*
+ * (C) Copyright 2014 Nuxeo SA (http://nuxeo.com/) and contributors.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser General Public License
+ * (LGPL) version 2.1 which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl-2.1.html
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * Contributors:
+ *     Florent Guillaume
+ */
+package org.nuxeo.ecm.core.redis;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.UUID;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.nuxeo.ecm.core.cache.CacheFeature;
+import org.nuxeo.ecm.core.redis.contribs.RedisClusterInvalidator;
+import org.nuxeo.ecm.core.storage.StorageException;
+import org.nuxeo.ecm.core.storage.sql.Invalidations;
+import org.nuxeo.ecm.core.storage.sql.RowId;
+import org.nuxeo.ecm.core.test.CoreFeature;
+import org.nuxeo.runtime.test.runner.Features;
+import org.nuxeo.runtime.test.runner.FeaturesRunner;
+
+@RunWith(FeaturesRunner.class)
+@Features({ CoreFeature.class, CacheFeature.class, RedisFeature.class })
+public class TestRedisClusterInvalidator {
+
+    protected static class Invalidator extends RedisClusterInvalidator {
+
+        public Invalidator() {
+        }
+
+        public Invalidator(String nodeId) {
+            this.nodeId = nodeId;
+        }
+
+        public void waitForSubscription() throws InterruptedException {
+            for (int i = 0; i < 100 && !subscriber.isSubscribed(); i++) {
+                Thread.sleep(100);
+            }
+            assertTrue("Not subscribed", subscriber.isSubscribed());
+            // a new subscription invalidates everything
+            assertTrue(receiveInvalidations().all);
+        }
+
+        @Override
+        public String serialize(Invalidations invalidations) throws IOException {
+            return super.serialize(invalidations);
+        }
+
+        @Override
+        public Invalidations deserialize(String message) {
+            return super.deserialize(message);
+        }
+    }
+
+    @Test
+    public void testSerialization() throws Exception {
+        Invalidator node1 = new Invalidator(UUID.randomUUID().toString());
+        Invalidator node2 = new Invalidator(UUID.randomUUID().toString());
+
+        Invalidations invalidations = new Invalidations();
+        invalidations.addModified(new RowId("hierarchy", "id1"));
+        invalidations.addDeleted(new RowId("dublincore", "id2"));
+        String message = node1.serialize(invalidations);
+
+        // ignored by the sending node
+        assertNull(node1.deserialize(message));
+
+        Invalidations received = node2.deserialize(message);
+        assertFalse(received.all);
+        assertEquals(Collections.singleton(new RowId("hierarchy", "id1")), received.modified);
+        assertEquals(Collections.singleton(new RowId("dublincore", "id2")), received.deleted);
+
+        // invalid payload invalidates everything
+        received = node2.deserialize("1\tfoo");
+        assertTrue(received.all);
+    }
+
+    @Test
+    public void testNodeIdRequired() throws Exception {
+        try {
+            new Invalidator().initialize(null, "test");
+            fail("null node id should be rejected");
+        } catch (StorageException e) {
+            // ok
+        }
+    }
+
+    @Test
+    public void testInvalidations() throws Exception {
+        Invalidator node1 = new Invalidator();
+        Invalidator node2 = new Invalidator();
+        node1.initialize(UUID.randomUUID().toString(), "test");
+        node2.initialize(UUID.randomUUID().toString(), "test");
+        try {
+            node1.waitForSubscription();
+            node2.waitForSubscription();
+
+            Invalidations invalidations = new Invalidations();
+            invalidations.addModified(new RowId("hierarchy", "id1"));
+            node1.sendInvalidations(invalidations);
+
+            // not received by the sending node
+            assertNull(node1.receiveInvalidations());
+            Invalidations received = node2.receiveInvalidations();
+            assertFalse(received.all);
+            assertEquals(Collections.singleton(new RowId("hierarchy", "id1")), received.modified);
+            assertNull(node2.receiveInvalidations());
+        } finally {
+            node1.close();
+            node2.close();
+        }
+    }
+
+}
@@ -0,0 +1,125 @@
+/*
+ * (C) Copyright 2014 Nuxeo SA (http://nuxeo.com/) and contributors.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser General Public License
+ * (LGPL) version 2.1 which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl-2.1.html
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * Contributors:
+ *     Florent Guillaume
+ */
+package org.nuxeo.ecm.core.redis;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.Collections;
+import java.util.UUID;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.nuxeo.ecm.core.cache.CacheFeature;
+import org.nuxeo.ecm.core.redis.contribs.RedisDBSClusterInvalidator;
+import org.nuxeo.ecm.core.storage.State;
+import org.nuxeo.ecm.core.storage.State.StateDiff;
+import org.nuxeo.ecm.core.storage.dbs.DBSCachingRepository;
+import org.nuxeo.ecm.core.storage.dbs.DBSInvalidations;
+import org.nuxeo.ecm.core.storage.dbs.DBSRepository;
+import org.nuxeo.ecm.core.test.CoreFeature;
+import org.nuxeo.runtime.test.runner.Features;
+import org.nuxeo.runtime.test.runner.FeaturesRunner;
+
+@RunWith(FeaturesRunner.class)
+@Features({ CoreFeature.class, CacheFeature.class, RedisFeature.class })
+public class TestRedisDBSClusterInvalidator {
+
+    protected static class Invalidator extends RedisDBSClusterInvalidator {
+
+        public Invalidator() {
+            initialize(UUID.randomUUID().toString(), "test");
+        }
+
+        public void waitForSubscription() throws InterruptedException {
+            for (int i = 0; i < 100 && !subscriber.isSubscribed(); i++) {
+                Thread.sleep(100);
+            }
+            assertTrue("Not subscribed", subscriber.isSubscribed());
+            // a new subscription invalidates everything
+            DBSInvalidations invalidations = receiveInvalidations();
+            assertTrue(invalidations.all);
+        }
+    }
+
+    @Test
+    public void testInvalidations() throws Exception {
+        Invalidator node1 = new Invalidator();
+        Invalidator node2 = new Invalidator();
+        try {
+            node1.waitForSubscription();
+            node2.waitForSubscription();
+            assertNull(node1.receiveInvalidations());
+            assertNull(node2.receiveInvalidations());
+
+            DBSInvalidations invalidations = new DBSInvalidations();
+            invalidations.add("id1");
+            invalidations.add("id2");
+            node1.sendInvalidations(invalidations);
+
+            // not received by the sending node
+            assertNull(node1.receiveInvalidations());
+            DBSInvalidations received = node2.receiveInvalidations();
+            assertFalse(received.all);
+            assertEquals(invalidations.ids, received.ids);
+            assertNull(node2.receiveInvalidations());
+
+            node2.sendInvalidations(new DBSInvalidations(true));
+            assertTrue(node1.receiveInvalidations().all);
+            assertNull(node2.receiveInvalidations());
+        } finally {
+            node1.close();
+            node2.close();
+        }
+    }
+
+    @Test
+    public void testCachingRepositories() throws Exception {
+        DBSRepository repository = mock(DBSRepository.class);
+        when(repository.getName()).thenReturn("test");
+        when(repository.readState("id1")).thenReturn(new State());
+        Invalidator invalidator1 = new Invalidator();
+        Invalidator invalidator2 = new Invalidator();
+        invalidator1.waitForSubscription();
+        invalidator2.waitForSubscription();
+        DBSCachingRepository node1 = new DBSCachingRepository(repository, 100, 0, invalidator1);
+        DBSCachingRepository node2 = new DBSCachingRepository(repository, 100, 0, invalidator2);
+        try {
+            node1.readState("id1");
+            node2.readState("id1");
+            node2.readState("id1");
+            verify(repository, times(2)).readState("id1");
+
+            // a write on node 1 invalidates node 2 through Redis
+            node1.updateStates(Collections.singletonMap("id1", new StateDiff()));
+            node2.readState("id1");
+            verify(repository, times(3)).readState("id1");
+            node2.readState("id1");
+            verify(repository, times(3)).readState("id1");
+        } finally {
+            node1.close();
+            node2.close();
+        }
+    }
+
+}
@@ -0,0 +1,167 @@
+/*
+ * (C) Copyright 2014 Nuxeo SA (http://nuxeo.com/) and contributors.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser General Public License
+ * (LGPL) version 2.1 which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl-2.1.html
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * Contributors:
+ *     Florent Guillaume
+ */
+package org.nuxeo.ecm.core.redis;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.commons.pool2.impl.GenericObjectPoolConfig;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.nuxeo.ecm.core.cache.CacheDescriptor;
+import org.nuxeo.ecm.core.cache.CacheFeature;
+import org.nuxeo.ecm.core.redis.contribs.RedisNearCache;
+import org.nuxeo.ecm.core.redis.contribs.RedisNearCacheSubscriber;
+import org.nuxeo.ecm.core.test.CoreFeature;
+import org.nuxeo.runtime.test.runner.Features;
+import org.nuxeo.runtime.test.runner.FeaturesRunner;
+
+@RunWith(FeaturesRunner.class)
+@Features({ CoreFeature.class, CacheFeature.class, RedisFeature.class })
+public class TestRedisNearCache {
+
+    protected static class NearCache extends RedisNearCache {
+        public NearCache(CacheDescriptor desc) {
+            super(desc);
+        }
+
+        public void waitForSubscription() throws InterruptedException {
+            for (int i = 0; i < 100 && !subscriber.isSubscribed(); i++) {
+                Thread.sleep(100);
+            }
+            assertTrue("Not subscribed", subscriber.isSubscribed());
+        }
+
+        public boolean isNear(String key) {
+            return nearCache.getIfPresent(key) != null;
+        }
+
+        public RedisNearCacheSubscriber getSubscriber() {
+            return subscriber;
+        }
+
+        public static String format(String nodeId, Collection<String> keys) {
+            return formatMessage(nodeId, keys);
+        }
+
+        public static List<String> parse(String message) {
+            return parseKeys(message);
+        }
+    }
+
+    @Test
+    public void testMessages() throws Exception {
+        String message = NearCache.format("node1", Collections.singleton("key1"));
+        assertEquals(Collections.singletonList("key1"), NearCache.parse(message));
+
+        message = NearCache.format("node1", Arrays.asList("key1", "key2"));
+        assertEquals(Arrays.asList("key1", "key2"), NearCache.parse(message));
+
+        // all keys
+        message = NearCache.format("node1", null);
+        assertNull(NearCache.parse(message));
+
+        // empty key is kept
+        message = NearCache.format("node1", Collections.singleton(""));
+        assertEquals(Collections.singletonList(""), NearCache.parse(message));
+
+        // separators and digits in keys
+        List<String> keys = Arrays.asList("a\tb", "12:3", "", "\t");
+        message = NearCache.format("node1", keys);
+        assertEquals(keys, NearCache.parse(message));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidMessage() throws Exception {
+        NearCache.parse("node1\t5:abc");
+    }
+
+    @Test
+    public void testInvalidationFromOtherNode() throws Exception {
+        CacheDescriptor desc = new CacheDescriptor();
+        desc.name = "neartest";
+        NearCache cache1 = new NearCache(desc);
+        NearCache cache2 = new NearCache(desc);
+        try {
+            cache1.waitForSubscription();
+            cache2.waitForSubscription();
+
+            cache1.put("key1", "value1");
+            // only reads populate the near cache
+            assertFalse(cache1.isNear("key1"));
+            assertEquals("value1", cache2.get("key1"));
+            assertTrue(cache2.isNear("key1"));
+
+            // a put on another node evicts the near entry
+            cache1.put("key1", "value2");
+            assertFalse(cache2.isNear("key1"));
+            assertEquals("value2", cache2.get("key1"));
+
+            // so does an invalidation
+            cache1.invalidate("key1");
+            assertFalse(cache2.isNear("key1"));
+            assertNull(cache2.get("key1"));
+
+            // keys with separators
+            String key = "a\tb";
+            cache1.put(key, "value3");
+            assertEquals("value3", cache2.get(key));
+            cache1.invalidate(key);
+            assertNull(cache2.get(key));
+        } finally {
+            cache1.close();
+            cache2.close();
+        }
+    }
+
+    @Test(timeout = 60000)
+    public void testMoreNearCachesThanPoolSize() throws Exception {
+        List<NearCache> caches = new ArrayList<NearCache>();
+        try {
+            for (int i = 0; i < GenericObjectPoolConfig.DEFAULT_MAX_TOTAL + 2; i++) {
+                CacheDescriptor desc = new CacheDescriptor();
+                desc.name = "neartest" + i;
+                caches.add(new NearCache(desc));
+            }
+            for (NearCache cache : caches) {
+                cache.waitForSubscription();
+                // a single subscription holds a connection
+                assertSame(caches.get(0).getSubscriber(), cache.getSubscriber());
+            }
+            // the pool is not exhausted by the subscriptions
+            for (NearCache cache : caches) {
+                cache.put("key1", cache.getName());
+                assertEquals(cache.getName(), cache.get("key1"));
+                assertTrue(cache.isNear("key1"));
+            }
+        } finally {
+            for (NearCache cache : caches) {
+                cache.close();
+            }
+        }
+    }
+
+}
@@ -0,0 +1,426 @@
+/*
+ * (C) Copyright 2014 Nuxeo SA (http://nuxeo.com/) and contributors.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser General Public License
+ * (LGPL) version 2.1 which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl-2.1.html
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * Contributors:
+ *     Florent Guillaume
+ */
+package org.nuxeo.ecm.core.redis;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.InvalidClassException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.junit.Ignore;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.nuxeo.ecm.core.cache.CacheFeature;
+import org.nuxeo.ecm.core.redis.contribs.CompactWorkCodec;
+import org.nuxeo.ecm.core.redis.contribs.JavaWorkCodec;
+import org.nuxeo.ecm.core.redis.contribs.RedisWorkQueuing;
+import org.nuxeo.ecm.core.redis.contribs.WorkCodec;
+import org.nuxeo.ecm.core.test.CoreFeature;
+import org.nuxeo.ecm.core.work.AbstractWork;
+import org.nuxeo.ecm.core.work.SleepWork;
+import org.nuxeo.ecm.core.work.WorkManagerImpl;
+import org.nuxeo.ecm.core.work.api.CoalescingWork;
+import org.nuxeo.ecm.core.work.api.Work;
+import org.nuxeo.ecm.core.work.api.Work.State;
+import org.nuxeo.ecm.core.work.api.WorkManager;
+import org.nuxeo.runtime.api.Framework;
+import org.nuxeo.runtime.test.runner.Features;
+import org.nuxeo.runtime.test.runner.FeaturesRunner;
+
+import redis.clients.jedis.Jedis;
+
+@RunWith(FeaturesRunner.class)
+@Features({ CoreFeature.class, CacheFeature.class, RedisFeature.class })
+public class TestRedisWorkQueuing {
+
+    private static final Log log = LogFactory.getLog(TestRedisWorkQueuing.class);
+
+    protected static final String QUEUE = "codec-test";
+
+    /**
+     * Queuing with a given codec, with or without scripts.
+     */
+    protected static class Queuing extends RedisWorkQueuing {
+
+        protected final WorkCodec workCodec;
+
+        protected final boolean scripts;
+
+        public Queuing(WorkCodec workCodec, boolean scripts) {
+            super((WorkManagerImpl) Framework.getLocalService(WorkManager.class), null);
+            this.workCodec = workCodec;
+            this.scripts = scripts;
+        }
+
+        @Override
+        public void init() {
+            super.init();
+            codec = workCodec;
+            useScripts = scripts;
+        }
+
+        public Work pop(String queueId) throws Exception {
+            return removeScheduledWork(queueId);
+        }
+
+        @Override
+        protected String getCoalesceKey(String queueId, Work work) {
+            // the test queue is not configured, always coalesce
+            return work instanceof CoalescingWork ? ((CoalescingWork) work).getCoalesceKey() : null;
+        }
+
+        /**
+         * Closes the list of merged work like a node stopped before saving the merged work.
+         */
+        public void stopWhileTaking(String queueId, CoalescingWork work) throws Exception {
+            closeMergedWork(queueId, work.getId(), work.getCoalesceKey());
+        }
+
+        public int recover(String queueId) throws Exception {
+            return scheduleTakingWork(queueId);
+        }
+
+        public long getTakingCount(final String queueId) throws Exception {
+            return redisExecutor.execute(new RedisCallable<Long>() {
+
+                @Override
+                public Long call(Jedis jedis) {
+                    return jedis.scard(takingSetKey(queueId));
+                }
+
+            }).longValue();
+        }
+
+    }
+
+    /**
+     * Work merging the values of the work instances with the same key.
+     */
+    protected static class ValuesWork extends AbstractWork implements CoalescingWork {
+
+        private static final long serialVersionUID = 1L;
+
+        protected final String key;
+
+        protected final List<String> values;
+
+        protected ValuesWork(String key, String value) {
+            this.key = key;
+            values = new ArrayList<String>(Collections.singletonList(value));
+        }
+
+        @Override
+        public String getTitle() {
+            return "values";
+        }
+
+        @Override
+        public String getCoalesceKey() {
+            return key;
+        }
+
+        @Override
+        public boolean merge(CoalescingWork other) {
+            values.addAll(((ValuesWork) other).values);
+            return true;
+        }
+
+        @Override
+        public void work() {
+        }
+    }
+
+    /**
+     * Work whose class evolves into {@link NewWork} or {@link BadWork}, the class names have the same length.
+     */
+    protected static class OldWork extends AbstractWork {
+
+        private static final long serialVersionUID = 1L;
+
+        protected final String key;
+
+        protected final int count;
+
+        protected OldWork(String key, int count) {
+            this.key = key;
+            this.count = count;
+        }
+
+        @Override
+        public String getTitle() {
+            return "old";
+        }
+
+        @Override
+        public void work() {
+        }
+    }
+
+    /**
+     * {@link OldWork} with a field removed and a field added, but the same serial version UID.
+     */
+    protected static class NewWork extends AbstractWork {
+
+        private static final long serialVersionUID = 1L;
+
+        protected final String key;
+
+        protected String comment;
+
+        protected NewWork(String key) {
+            this.key = key;
+        }
+
+        @Override
+        public String getTitle() {
+            return "new";
+        }
+
+        @Override
+        public void work() {
+        }
+    }
+
+    /**
+     * {@link OldWork} with another serial version UID.
+     */
+    protected static class BadWork extends AbstractWork {
+
+        private static final long serialVersionUID = 2L;
+
+        protected final String key;
+
+        protected final int count;
+
+        protected BadWork(String key, int count) {
+            this.key = key;
+            this.count = count;
+        }
+
+        @Override
+        public String getTitle() {
+            return "bad";
+        }
+
+        @Override
+        public void work() {
+        }
+    }
+
+    protected static byte[] replaceClass(byte[] bytes, Class<?> from, Class<?> to) {
+        byte[] fromName = from.getName().getBytes(StandardCharsets.UTF_8);
+        byte[] toName = to.getName().getBytes(StandardCharsets.UTF_8);
+        assertEquals(fromName.length, toName.length);
+        byte[] res = bytes.clone();
+        int replaced = 0;
+        for (int i = 0; i + fromName.length <= res.length; i++) {
+            int j = 0;
+            while (j < fromName.length && res[i + j] == fromName[j]) {
+                j++;
+            }
+            if (j == fromName.length) {
+                System.arraycopy(toName, 0, res, i, toName.length);
+                replaced++;
+            }
+        }
+        assertEquals(1, replaced);
+        return res;
+    }
+
+    protected static SleepWork newWork(int i) {
+        SleepWork work = new SleepWork(0, false, "work" + i);
+        List<String> docIds = new ArrayList<>();
+        for (int j = 0; j < 10; j++) {
+            docIds.add("00000000-0000-0000-0000-00000000000" + j);
+        }
+        work.setDocuments("test", docIds);
+        return work;
+    }
+
+    protected static void assertWork(SleepWork expected, Work work) {
+        assertNotNull(work);
+        assertEquals(SleepWork.class, work.getClass());
+        assertEquals(expected.getId(), work.getId());
+        assertEquals(expected.getCategory(), work.getCategory());
+        assertEquals(expected.getSchedulingTime(), work.getSchedulingTime());
+        assertEquals(expected.getDocuments(), work.getDocuments());
+    }
+
+    @Test
+    public void testCodecs() throws Exception {
+        SleepWork work = newWork(0);
+        WorkCodec java = new JavaWorkCodec();
+        WorkCodec compact = new CompactWorkCodec(-1);
+        WorkCodec compressed = new CompactWorkCodec(0);
+
+        byte[] javaBytes = java.encode(work);
+        byte[] compactBytes = compact.encode(work);
+        byte[] compressedBytes = compressed.encode(work);
+        assertTrue(compactBytes.length < javaBytes.length);
+        assertTrue(compressedBytes.length < compactBytes.length);
+
+        assertWork(work, java.decode(javaBytes));
+        assertWork(work, compact.decode(compactBytes));
+        assertWork(work, compact.decode(compressedBytes));
+        // work stored before 7.1
+        assertWork(work, compressed.decode(javaBytes));
+    }
+
+    @Test
+    public void testCompactCodecEvolvedClass() throws Exception {
+        WorkCodec codec = new CompactWorkCodec(-1);
+        OldWork work = new OldWork("foo", 3);
+        byte[] bytes = codec.encode(work);
+
+        // same serial version UID: removed field skipped, added field with its default value
+        Work decoded = codec.decode(replaceClass(bytes, OldWork.class, NewWork.class));
+        assertEquals(NewWork.class, decoded.getClass());
+        assertEquals(work.getId(), decoded.getId());
+        assertEquals("foo", ((NewWork) decoded).key);
+        assertNull(((NewWork) decoded).comment);
+
+        // different serial version UID
+        try {
+            codec.decode(replaceClass(bytes, OldWork.class, BadWork.class));
+            fail("should fail on incompatible class");
+        } catch (InvalidClassException e) {
+            assertEquals(BadWork.class.getName(), e.classname);
+        }
+    }
+
+    @Test
+    public void testScriptedTransitions() throws Exception {
+        Queuing queuing = new Queuing(new CompactWorkCodec(), true);
+        queuing.init();
+        SleepWork work0 = newWork(0);
+        SleepWork work1 = newWork(1);
+        queuing.addScheduledWork(QUEUE, work0);
+        queuing.addScheduledWork(QUEUE, work1);
+        assertEquals(2, queuing.getQueueSize(QUEUE, State.SCHEDULED));
+        assertEquals(State.SCHEDULED, queuing.getWorkState(work0.getId()));
+        assertEquals(2, queuing.listWork(QUEUE, State.SCHEDULED).size());
+
+        Work work = queuing.pop(QUEUE);
+        assertWork(work0, work);
+        queuing.workRunning(QUEUE, work);
+        assertEquals(State.RUNNING, queuing.getWorkState(work0.getId()));
+        assertEquals(1, queuing.getQueueSize(QUEUE, State.RUNNING));
+        queuing.workCompleted(QUEUE, work);
+        assertEquals(State.COMPLETED, queuing.getWorkState(work0.getId()));
+        assertEquals(0, queuing.getQueueSize(QUEUE, State.RUNNING));
+        assertEquals(1, queuing.getQueueSize(QUEUE, State.COMPLETED));
+        assertWork(work0, queuing.listWork(QUEUE, State.COMPLETED).get(0));
+
+        assertWork(work1, queuing.removeScheduled(QUEUE, work1.getId()));
+        assertNull(queuing.removeScheduled(QUEUE, work1.getId()));
+        assertEquals(0, queuing.getQueueSize(QUEUE, State.SCHEDULED));
+        assertNull(queuing.pop(QUEUE));
+    }
+
+    @Test
+    public void testCoalescing() throws Exception {
+        for (boolean scripts : new boolean[] { true, false }) {
+            RedisFeature.clear();
+            Queuing queuing = new Queuing(new CompactWorkCodec(), scripts);
+            queuing.init();
+            ValuesWork work0 = new ValuesWork("key", "a");
+            queuing.addScheduledWork(QUEUE, work0);
+            assertTrue(queuing.coalesceScheduled(QUEUE, new ValuesWork("key", "b")));
+            assertFalse(queuing.coalesceScheduled(QUEUE, new ValuesWork("otherkey", "c")));
+            assertEquals(1, queuing.getQueueSize(QUEUE, State.SCHEDULED));
+
+            ValuesWork work = (ValuesWork) queuing.pop(QUEUE);
+            assertEquals(work0.getId(), work.getId());
+            assertEquals(Arrays.asList("a", "b"), work.values);
+            // no more merges once taken
+            assertFalse(queuing.coalesceScheduled(QUEUE, new ValuesWork("key", "d")));
+
+            // the merged work is saved with the work instance
+            queuing.workRunning(QUEUE, work);
+            List<Work> running = queuing.listWork(QUEUE, State.RUNNING);
+            assertEquals(1, running.size());
+            assertEquals(Arrays.asList("a", "b"), ((ValuesWork) running.get(0)).values);
+            assertEquals(0, queuing.getTakingCount(QUEUE));
+            assertEquals(0, queuing.recover(QUEUE));
+        }
+    }
+
+    @Test
+    public void testCoalescingRecovery() throws Exception {
+        RedisFeature.clear();
+        Queuing queuing = new Queuing(new CompactWorkCodec(), true);
+        queuing.init();
+        ValuesWork work0 = new ValuesWork("key", "a");
+        queuing.addScheduledWork(QUEUE, work0);
+        assertTrue(queuing.coalesceScheduled(QUEUE, new ValuesWork("key", "b")));
+        queuing.stopWhileTaking(QUEUE, work0);
+        assertFalse(queuing.coalesceScheduled(QUEUE, new ValuesWork("key", "c")));
+        assertEquals(1, queuing.getTakingCount(QUEUE));
+
+        // the merged work is scheduled again on its own
+        assertEquals(1, queuing.recover(QUEUE));
+        assertEquals(0, queuing.getTakingCount(QUEUE));
+        assertEquals(0, queuing.recover(QUEUE));
+        assertEquals(2, queuing.getQueueSize(QUEUE, State.SCHEDULED));
+        ValuesWork work = (ValuesWork) queuing.pop(QUEUE);
+        assertEquals(work0.getId(), work.getId());
+        assertEquals(Arrays.asList("a"), work.values);
+        work = (ValuesWork) queuing.pop(QUEUE);
+        assertEquals(Arrays.asList("b"), work.values);
+    }
+
+    @Ignore("benchmark")
+    @Test
+    public void benchmark() throws Exception {
+        int n = 10000;
+        for (int round = 0; round < 3; round++) {
+            run(new Queuing(new JavaWorkCodec(), false), "java codec, commands", n);
+            run(new Queuing(new CompactWorkCodec(), true), "compact codec, scripts", n);
+        }
+    }
+
+    protected void run(Queuing queuing, String name, int n) throws Exception {
+        RedisFeature.clear();
+        queuing.init();
+        long t0 = System.nanoTime();
+        for (int i = 0; i < n; i++) {
+            queuing.addScheduledWork(QUEUE, newWork(i));
+        }
+        for (int i = 0; i < n; i++) {
+            Work work = queuing.pop(QUEUE);
+            queuing.workRunning(QUEUE, work);
+            queuing.workCompleted(QUEUE, work);
+        }
+        long t = System.nanoTime() - t0;
+        assertEquals(n, queuing.getQueueSize(QUEUE, State.COMPLETED));
+        queuing.clearCompletedWork(QUEUE, 0);
+        log.warn(String.format("%s: %d work instances in %d ms, %.0f/s", name, Integer.valueOf(n),
+                Long.valueOf(t / 1000000), Double.valueOf(n * 1e9 / t)));
+    }
+
+}
@@ -8,10 +8,17 @@
  ******************************************************************************/
 package org.nuxeo.ecm.core.redis.embedded;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import javax.script.ScriptException;
 
+import org.luaj.vm2.LuaError;
+
+import redis.clients.jedis.JedisPubSub;
 import redis.clients.jedis.exceptions.JedisException;
 
 import com.lordofthejars.nosqlunit.redis.embedded.EmbeddedJedis;
@@ -20,6 +27,11 @@ public class RedisEmbeddedConnection extends EmbeddedJedis {
 
     protected final RedisEmbeddedLuaEngine lua;
 
+    /**
+     * Subscribers by channel, the embedded server does not implement pub/sub.
+     */
+    protected final Map<String, List<JedisPubSub>> subscribers = new HashMap<>();
+
     RedisEmbeddedConnection(RedisEmbeddedFactory reddisEmbeddedFactory) {
         lua = new RedisEmbeddedLuaEngine(this);
     }
@@ -51,6 +63,19 @@ public class RedisEmbeddedConnection extends EmbeddedJedis {
         return super.lrem(key, (int) count, value);
     }
 
+    @Override
+    public Long del(byte[] key) {
+        return del(new byte[][] { key });
+    }
+
+    @Override
+    public Long rpushx(byte[] key, byte[]... values) {
+        if (llen(key).longValue() == 0) {
+            return Long.valueOf(0);
+        }
+        return rpush(key, values);
+    }
+
     @Override
     public String scriptLoad(String content) {
         try {
@@ -68,4 +93,66 @@ public class RedisEmbeddedConnection extends EmbeddedJedis {
             throw new JedisException("Cannot evaluate script " + sha);
         }
     }
+
+    @Override
+    public Object evalsha(byte[] sha, List<byte[]> keys, List<byte[]> args) {
+        try {
+            return lua.evalsha(sha, keys, args);
+        } catch (LuaError e) {
+            throw new JedisException("Cannot evaluate script " + new String(sha), e);
+        }
+    }
+
+    /**
+     * Delivers the message synchronously to the current subscribers of the channel.
+     */
+    @Override
+    public Long publish(String channel, String message) {
+        List<JedisPubSub> pubSubs;
+        synchronized (subscribers) {
+            List<JedisPubSub> list = subscribers.get(channel);
+            pubSubs = list == null ? Collections.<JedisPubSub> emptyList() : new ArrayList<>(list);
+        }
+        for (JedisPubSub pubSub : pubSubs) {
+            pubSub.onMessage(channel, message);
+        }
+        return Long.valueOf(pubSubs.size());
+    }
+
+    /**
+     * Subscribes to the channels, blocking until the calling thread is interrupted.
+     */
+    @Override
+    public void subscribe(JedisPubSub pubSub, String... channels) {
+        synchronized (subscribers) {
+            for (String channel : channels) {
+                List<JedisPubSub> list = subscribers.get(channel);
+                if (list == null) {
+                    subscribers.put(channel, list = new ArrayList<>());
+                }
+                list.add(pubSub);
+            }
+        }
+        for (String channel : channels) {
+            pubSub.onSubscribe(channel, channels.length);
+        }
+        try {
+            synchronized (pubSub) {
+                for (;;) {
+                    pubSub.wait();
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            synchronized (subscribers) {
+                for (String channel : channels) {
+                    subscribers.get(channel).remove(pubSub);
+                }
+            }
+            for (String channel : channels) {
+                pubSub.onUnsubscribe(channel, 0);
+            }
+        }
+    }
 }
@@ -8,6 +8,7 @@
  ******************************************************************************/
 package org.nuxeo.ecm.core.redis.embedded;
 
+import java.nio.charset.StandardCharsets;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.util.HashMap;
@@ -19,6 +20,8 @@ import javax.script.CompiledScript;
 import javax.script.ScriptException;
 
 import org.apache.commons.codec.binary.Hex;
+import org.luaj.vm2.Globals;
+import org.luaj.vm2.LuaTable;
 import org.luaj.vm2.LuaValue;
 import org.luaj.vm2.script.LuaScriptEngine;
 import org.luaj.vm2.script.LuaScriptEngineFactory;
@@ -29,6 +32,10 @@ public class RedisEmbeddedLuaEngine {
 
     protected final Map<String, CompiledScript> binaries = new HashMap<>();
 
+    protected final Map<String, String> sources = new HashMap<>();
+
+    protected final Map<String, LuaValue> functions = new HashMap<>();
+
     protected final LuaScriptEngine engine;
 
     public RedisEmbeddedLuaEngine(RedisEmbeddedConnection connection) {
@@ -44,6 +51,7 @@ public class RedisEmbeddedLuaEngine {
             throw cause;
         }
         binaries.put(md5, chunk);
+        sources.put(md5, content);
         return md5;
     }
 
@@ -72,6 +80,8 @@ public class RedisEmbeddedLuaEngine {
 
     public void flush() {
         binaries.clear();
+        sources.clear();
+        functions.clear();
     }
 
     public Object evalsha(String sha, List<String> keys, List<String> args) throws ScriptException {
@@ -89,4 +99,40 @@ public class RedisEmbeddedLuaEngine {
         }
         return result;
     }
+
+    /**
+     * Evaluates a script with binary keys and arguments. The script is run directly in the Lua globals, so that
+     * strings are returned as bytes.
+     */
+    public Object evalsha(byte[] sha, List<byte[]> keys, List<byte[]> args) {
+        String key = new String(sha, StandardCharsets.US_ASCII);
+        Globals globals = ((LuajContext) engine.getContext()).globals;
+        LuaValue function = functions.get(key);
+        if (function == null) {
+            function = globals.load(sources.get(key), key);
+            functions.put(key, function);
+        }
+        globals.set("KEYS", tableOf(keys));
+        globals.set("ARGV", tableOf(args));
+        LuaValue value = function.call();
+        switch (value.type()) {
+        case LuaValue.TNIL:
+            return null;
+        case LuaValue.TBOOLEAN:
+            return value.toboolean() ? Long.valueOf(1) : null;
+        case LuaValue.TNUMBER:
+            return Long.valueOf(value.tolong());
+        default:
+            return RedisEmbeddedLuaLibrary.bytes(value);
+        }
+    }
+
+    protected LuaTable tableOf(List<byte[]> values) {
+        LuaTable table = LuaValue.tableOf();
+        int i = 0;
+        for (byte[] value : values) {
+            table.rawset(++i, LuaValue.valueOf(value));
+        }
+        return table;
+    }
 }
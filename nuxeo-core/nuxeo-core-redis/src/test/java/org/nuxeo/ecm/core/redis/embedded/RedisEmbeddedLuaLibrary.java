@@ -8,8 +8,13 @@
  ******************************************************************************/
 package org.nuxeo.ecm.core.redis.embedded;
 
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
 
+import org.luaj.vm2.LuaInteger;
+import org.luaj.vm2.LuaString;
 import org.luaj.vm2.LuaTable;
 import org.luaj.vm2.LuaValue;
 import org.luaj.vm2.Varargs;
@@ -20,6 +25,12 @@ import org.luaj.vm2.lib.jse.CoerceLuaToJava;
 
 public class RedisEmbeddedLuaLibrary extends TwoArgFunction {
 
+    /**
+     * Commands run with binary keys and values, as used by the work queuing scripts.
+     */
+    protected static final Set<String> BINARY_OPCODES = new HashSet<>(Arrays.asList("hset", "hget", "hdel", "sadd",
+            "srem", "lpush", "rpush", "rpop", "lrem"));
+
     protected final RedisEmbeddedConnection connection;
 
     public RedisEmbeddedLuaLibrary(RedisEmbeddedConnection connection) {
@@ -45,6 +56,58 @@ public class RedisEmbeddedLuaLibrary extends TwoArgFunction {
         return CoerceJavaToLua.coerce(value);
     }
 
+    protected static byte[] bytes(LuaValue value) {
+        LuaString string = value.checkstring();
+        byte[] bytes = new byte[string.length()];
+        string.copyInto(0, bytes, 0, bytes.length);
+        return bytes;
+    }
+
+    protected static LuaValue luaOf(Long value) {
+        return value == null ? LuaValue.valueOf(false) : LuaInteger.valueOf(value.longValue());
+    }
+
+    protected static LuaValue luaOf(byte[] value) {
+        return value == null ? LuaValue.valueOf(false) : LuaValue.valueOf(value);
+    }
+
+    protected static boolean isBinary(String opcode, LuaValue luaKey) {
+        return BINARY_OPCODES.contains(opcode) || ("del".equals(opcode) && !luaKey.istable());
+    }
+
+    protected LuaValue binaryCall(String opcode, LuaValue... args) {
+        byte[] key = bytes(args[0]);
+        switch (opcode) {
+        case "del": {
+            byte[][] keys = new byte[args.length][];
+            for (int i = 0; i < args.length; i++) {
+                keys[i] = bytes(args[i]);
+            }
+            return luaOf(connection.del(keys));
+        }
+        case "hset":
+            return luaOf(connection.hset(key, bytes(args[1]), bytes(args[2])));
+        case "hget":
+            return luaOf(connection.hget(key, bytes(args[1])));
+        case "hdel":
+            return luaOf(connection.hdel(key, bytes(args[1])));
+        case "sadd":
+            return luaOf(connection.sadd(key, bytes(args[1])));
+        case "srem":
+            return luaOf(connection.srem(key, bytes(args[1])));
+        case "lpush":
+            return luaOf(connection.lpush(key, bytes(args[1])));
+        case "rpush":
+            return luaOf(connection.rpush(key, bytes(args[1])));
+        case "rpop":
+            return luaOf(connection.rpop(key));
+        case "lrem":
+            return luaOf(connection.lrem(key, args[1].checklong(), bytes(args[2])));
+        default:
+            throw new UnsupportedOperationException(opcode);
+        }
+    }
+
     public class RedisCall extends LibFunction {
 
         @Override
@@ -56,6 +119,13 @@ public class RedisEmbeddedLuaLibrary extends TwoArgFunction {
                 return call(varargs.arg(1), LuaValue.tableOf(varargs, 1));
             }
 
+            }
+            if (isBinary(opcode.toLowerCase(), varargs.arg(2))) {
+                LuaValue[] args = new LuaValue[varargs.narg() - 1];
+                for (int i = 0; i < args.length; i++) {
+                    args[i] = varargs.arg(i + 2);
+                }
+                return binaryCall(opcode.toLowerCase(), args);
             }
             throw new UnsupportedOperationException(opcode);
         }
@@ -63,8 +133,11 @@ public class RedisEmbeddedLuaLibrary extends TwoArgFunction {
         @Override
         public LuaValue call(LuaValue luaOpcode, LuaValue luaKey) {
             String opcode = (String) CoerceLuaToJava.coerce(luaOpcode, String.class);
-            String key = (String) CoerceLuaToJava.coerce(luaKey, String.class);
             opcode = opcode.toLowerCase();
+            if (isBinary(opcode, luaKey)) {
+                return binaryCall(opcode, luaKey);
+            }
+            String key = (String) CoerceLuaToJava.coerce(luaKey, String.class);
             if ("get".equals(opcode)) {
                 return valueOfOrFalse(connection.get(key));
             }
@@ -84,7 +157,10 @@ public class RedisEmbeddedLuaLibrary extends TwoArgFunction {
 
         @Override
         public LuaValue call(LuaValue luaOpcode, LuaValue luaKey, LuaValue luaArg) {
-            String opcode = (String) CoerceLuaToJava.coerce(luaOpcode, String.class);
+            String opcode = ((String) CoerceLuaToJava.coerce(luaOpcode, String.class)).toLowerCase();
+            if (isBinary(opcode, luaKey)) {
+                return binaryCall(opcode, luaKey, luaArg);
+            }
             String key = (String) CoerceLuaToJava.coerce(luaKey, String.class);
             String arg = (String) CoerceLuaToJava.coerce(luaArg, String.class);
             switch (opcode.toLowerCase()) {
@@ -95,6 +171,12 @@ public class RedisEmbeddedLuaLibrary extends TwoArgFunction {
             throw new UnsupportedOperationException(opcode);
         }
 
+        @Override
+        public LuaValue call(LuaValue luaOpcode, LuaValue luaKey, LuaValue luaArg1, LuaValue luaArg2) {
+            String opcode = ((String) CoerceLuaToJava.coerce(luaOpcode, String.class)).toLowerCase();
+            return binaryCall(opcode, luaKey, luaArg1, luaArg2);
+        }
+
     }
 
 }
@@ -0,0 +1,391 @@
+/*
+ * Copyright (c) 2014 Nuxeo SA (http://nuxeo.com/) and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Florent Guillaume
+ */
+package org.nuxeo.ecm.core.storage.dbs;
+
+import static org.nuxeo.ecm.core.storage.dbs.DBSDocument.KEY_ID;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.nuxeo.ecm.core.api.DocumentException;
+import org.nuxeo.ecm.core.model.Session;
+import org.nuxeo.ecm.core.query.sql.model.Expression;
+import org.nuxeo.ecm.core.query.sql.model.OrderByClause;
+import org.nuxeo.ecm.core.storage.PartialList;
+import org.nuxeo.ecm.core.storage.State;
+import org.nuxeo.ecm.core.storage.State.StateDiff;
+import org.nuxeo.ecm.core.storage.binary.BinaryManager;
+import org.nuxeo.runtime.metrics.MetricsService;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.SharedMetricRegistries;
+import com.codahale.metrics.Timer;
+import com.codahale.metrics.Timer.Context;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.RemovalListener;
+import com.google.common.cache.RemovalNotification;
+
+/**
+ * A {@link DBSRepository} that caches the document states read from an underlying {@link DBSRepository}.
+ * <p>
+ * The cache is shared by all the sessions of the repository. It only holds {@link State}s that are known to be
+ * identical to what's in the underlying repository: writes done through this repository invalidate the corresponding
+ * entries, and the invalidations are propagated to the other cluster nodes through a {@link DBSClusterInvalidator}.
+ * <p>
+ * Cached states are shared and must not be modified by callers.
+ *
+ * @since 7.1
+ */
+public class DBSCachingRepository implements DBSRepository {
+
+    private static final Log log = LogFactory.getLog(DBSCachingRepository.class);
+
+    /**
+     * The {@link DBSRepository} to which operations that cannot be processed from the cache are delegated.
+     */
+    protected final DBSRepository repository;
+
+    protected final Cache<String, State> cache;
+
+    /**
+     * The cluster invalidator, or {@code null} if there is no clustering.
+     */
+    protected final DBSClusterInvalidator clusterInvalidator;
+
+    /**
+     * Incremented at each invalidation, so that a state read from the underlying repository concurrently with an
+     * invalidation is not put in the cache.
+     */
+    protected final AtomicLong invalidationGeneration = new AtomicLong();
+
+    protected final MetricRegistry registry = SharedMetricRegistries.getOrCreate(MetricsService.class.getName());
+
+    protected Counter cacheHitCount;
+
+    protected Counter cacheMissCount;
+
+    protected Counter cacheEvictionCount;
+
+    protected Timer cacheGetTimer;
+
+    // sor means system of record (database access)
+    protected Timer sorGetTimer;
+
+    /**
+     * Constructs a caching repository.
+     *
+     * @param repository the underlying repository
+     * @param maxSize the maximum number of states in the cache
+     * @param ttl the time to live of a state in the cache, in minutes, or {@code 0} for no expiration
+     * @param clusterInvalidator the cluster invalidator, or {@code null} if there is no clustering
+     */
+    public DBSCachingRepository(DBSRepository repository, long maxSize, long ttl,
+            DBSClusterInvalidator clusterInvalidator) {
+        this.repository = repository;
+        this.clusterInvalidator = clusterInvalidator;
+        CacheBuilder<Object, Object> builder = CacheBuilder.newBuilder();
+        builder.maximumSize(maxSize);
+        if (ttl > 0) {
+            builder.expireAfterWrite(ttl, TimeUnit.MINUTES);
+        }
+        cache = builder.removalListener(new RemovalListener<String, State>() {
+            @Override
+            public void onRemoval(RemovalNotification<String, State> notification) {
+                if (notification.wasEvicted()) {
+                    cacheEvictionCount.inc();
+                }
+            }
+        }).build();
+        setMetrics(repository.getName());
+    }
+
+    protected void setMetrics(String repositoryName) {
+        cacheHitCount = registry.counter(MetricRegistry.name("nuxeo", "repositories", repositoryName, "caches", "dbs",
+                "hits"));
+        cacheMissCount = registry.counter(MetricRegistry.name("nuxeo", "repositories", repositoryName, "caches",
+                "dbs", "misses"));
+        cacheEvictionCount = registry.counter(MetricRegistry.name("nuxeo", "repositories", repositoryName, "caches",
+                "dbs", "evictions"));
+        cacheGetTimer = registry.timer(MetricRegistry.name("nuxeo", "repositories", repositoryName, "caches", "dbs",
+                "get"));
+        sorGetTimer = registry.timer(MetricRegistry.name("nuxeo", "repositories", repositoryName, "caches", "dbs",
+                "sor", "get"));
+        String gaugeName = MetricRegistry.name("nuxeo", "repositories", repositoryName, "caches", "dbs",
+                "cache-size");
+        // replace any gauge left by a previous instance of the repository
+        registry.remove(gaugeName);
+        registry.register(gaugeName, new Gauge<Long>() {
+            @Override
+            public Long getValue() {
+                return Long.valueOf(cache.size());
+            }
+        });
+    }
+
+    /**
+     * Closes the cache and the cluster invalidator.
+     */
+    public void close() {
+        cache.invalidateAll();
+        if (clusterInvalidator != null) {
+            clusterInvalidator.close();
+        }
+    }
+
+    /*
+     * ----- cache -----
+     */
+
+    /**
+     * Processes the invalidations received from other cluster nodes.
+     */
+    protected void receiveClusterInvalidations() {
+        if (clusterInvalidator == null) {
+            return;
+        }
+        DBSInvalidations invalidations = clusterInvalidator.receiveInvalidations();
+        if (invalidations == null || invalidations.isEmpty()) {
+            return;
+        }
+        if (log.isTraceEnabled()) {
+            log.trace("Received cluster invalidations: " + invalidations);
+        }
+        invalidationGeneration.incrementAndGet();
+        if (invalidations.all) {
+            cache.invalidateAll();
+        } else {
+            cache.invalidateAll(invalidations.ids);
+        }
+    }
+
+    /**
+     * Invalidates the given ids locally, and sends the invalidations to other cluster nodes.
+     */
+    protected void invalidate(DBSInvalidations invalidations) {
+        invalidationGeneration.incrementAndGet();
+        if (invalidations.all) {
+            cache.invalidateAll();
+        } else {
+            cache.invalidateAll(invalidations.ids);
+        }
+        if (clusterInvalidator != null) {
+            clusterInvalidator.sendInvalidations(invalidations);
+        }
+    }
+
+    protected void invalidate(String id) {
+        DBSInvalidations invalidations = new DBSInvalidations();
+        invalidations.add(id);
+        invalidate(invalidations);
+    }
+
+    protected State getFromCache(String id) {
+        Context context = cacheGetTimer.time();
+        try {
+            State state = cache.getIfPresent(id);
+            if (state == null) {
+                cacheMissCount.inc();
+            } else {
+                cacheHitCount.inc();
+            }
+            return state;
+        } finally {
+            context.stop();
+        }
+    }
+
+    /*
+     * ----- DBSRepository -----
+     */
+
+    @Override
+    public State readState(String id) {
+        receiveClusterInvalidations();
+        State state = getFromCache(id);
+        if (state != null) {
+            return state;
+        }
+        long generation = invalidationGeneration.get();
+        Context context = sorGetTimer.time();
+        try {
+            state = repository.readState(id);
+        } finally {
+            context.stop();
+        }
+        if (state != null && generation == invalidationGeneration.get()) {
+            cache.put(id, state);
+        }
+        return state;
+    }
+
+    @Override
+    public List<State> readStates(List<String> ids) {
+        receiveClusterInvalidations();
+        List<State> states = new ArrayList<>(ids.size());
+        List<String> idsToFetch = new ArrayList<>();
+        for (String id : ids) {
+            State state = getFromCache(id);
+            if (state == null) {
+                idsToFetch.add(id);
+            } else {
+                states.add(state);
+            }
+        }
+        if (!idsToFetch.isEmpty()) {
+            long generation = invalidationGeneration.get();
+            List<State> fetched;
+            Context context = sorGetTimer.time();
+            try {
+                fetched = repository.readStates(idsToFetch);
+            } finally {
+                context.stop();
+            }
+            boolean cacheable = generation == invalidationGeneration.get();
+            for (State state : fetched) {
+                if (state != null && cacheable) {
+                    cache.put((String) state.get(KEY_ID), state);
+                }
+                states.add(state);
+            }
+        }
+        return states;
+    }
+
+    @Override
+    public void createState(State state) throws DocumentException {
+        // absent states are not cached, nothing to invalidate
+        repository.createState(state);
+    }
+
+    @Override
+    public void createStates(List<State> states) throws DocumentException {
+        repository.createStates(states);
+    }
+
+    @Override
+    public void updateState(String id, StateDiff diff) throws DocumentException {
+        try {
+            repository.updateState(id, diff);
+        } finally {
+            invalidate(id);
+        }
+    }
+
+    @Override
+    public void updateStates(Map<String, StateDiff> diffs) throws DocumentException {
+        DBSInvalidations invalidations = new DBSInvalidations();
+        invalidations.add(diffs.keySet());
+        try {
+            repository.updateStates(diffs);
+        } finally {
+            invalidate(invalidations);
+        }
+    }
+
+    @Override
+    public void deleteStates(Set<String> ids) throws DocumentException {
+        DBSInvalidations invalidations = new DBSInvalidations();
+        invalidations.add(ids);
+        try {
+            repository.deleteStates(ids);
+        } finally {
+            invalidate(invalidations);
+        }
+    }
+
+    /*
+     * ----- delegated -----
+     */
+
+    @Override
+    public String getName() {
+        return repository.getName();
+    }
+
+    @Override
+    public Session getSession(String sessionId) throws DocumentException {
+        return repository.getSession(sessionId);
+    }
+
+    @Override
+    public void shutdown() {
+        repository.shutdown();
+    }
+
+    @Override
+    public int getActiveSessionsCount() {
+        return repository.getActiveSessionsCount();
+    }
+
+    @Override
+    public BinaryManager getBinaryManager() {
+        return repository.getBinaryManager();
+    }
+
+    @Override
+    public boolean isFulltextDisabled() {
+        return repository.isFulltextDisabled();
+    }
+
+    @Override
+    public String getRootId() {
+        return repository.getRootId();
+    }
+
+    @Override
+    public String generateNewId() {
+        return repository.generateNewId();
+    }
+
+    @Override
+    public State readChildState(String parentId, String name, Set<String> ignored) {
+        return repository.readChildState(parentId, name, ignored);
+    }
+
+    @Override
+    public boolean hasChild(String parentId, String name, Set<String> ignored) {
+        return repository.hasChild(parentId, name, ignored);
+    }
+
+    @Override
+    public List<State> queryKeyValue(String key, String value, Set<String> ignored) {
+        return repository.queryKeyValue(key, value, ignored);
+    }
+
+    @Override
+    public void queryKeyValueArray(String key, Object value, Set<String> ids, Map<String, String> proxyTargets,
+            Map<String, Object[]> targetProxies) {
+        repository.queryKeyValueArray(key, value, ids, proxyTargets, targetProxies);
+    }
+
+    @Override
+    public boolean queryKeyValuePresence(String key, String value, Set<String> ignored) {
+        return repository.queryKeyValuePresence(key, value, ignored);
+    }
+
+    @Override
+    public PartialList<State> queryAndFetch(Expression expression, DBSExpressionEvaluator evaluator,
+            OrderByClause orderByClause, int limit, int offset, int countUpTo, boolean deepCopy, boolean fulltextScore) {
+        return repository.queryAndFetch(expression, evaluator, orderByClause, limit, offset, countUpTo, deepCopy,
+                fulltextScore);
+    }
+
+}
@@ -0,0 +1,51 @@
+/*
+ * Copyright (c) 2014 Nuxeo SA (http://nuxeo.com/) and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Florent Guillaume
+ */
+package org.nuxeo.ecm.core.storage.dbs;
+
+/**
+ * Interface for cluster invalidators, which propagate invalidations of the {@link DBSCachingRepository} to the other
+ * nodes of the cluster.
+ *
+ * @since 7.1
+ */
+public interface DBSClusterInvalidator {
+
+    /**
+     * Initializes the cluster invalidator.
+     *
+     * @param nodeId the cluster node id
+     * @param repositoryName the repository name
+     */
+    void initialize(String nodeId, String repositoryName);
+
+    /**
+     * Closes this cluster invalidator and releases resources.
+     */
+    void close();
+
+    /**
+     * Receives invalidations from other cluster nodes.
+     * <p>
+     * Must be cheap to call, as it's called before each cache access.
+     *
+     * @return the received invalidations, or {@code null} if there are none
+     */
+    DBSInvalidations receiveInvalidations();
+
+    /**
+     * Sends invalidations to other cluster nodes.
+     *
+     * @param invalidations the invalidations to send
+     */
+    void sendInvalidations(DBSInvalidations invalidations);
+
+}
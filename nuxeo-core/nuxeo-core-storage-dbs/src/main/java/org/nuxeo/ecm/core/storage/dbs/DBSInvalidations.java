@@ -0,0 +1,122 @@
+/*
+ * Copyright (c) 2014 Nuxeo SA (http://nuxeo.com/) and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Florent Guillaume
+ */
+package org.nuxeo.ecm.core.storage.dbs;
+
+import java.io.Serializable;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * A set of invalidations for a given repository.
+ * <p>
+ * Records document ids that have been modified or deleted, or that everything must be invalidated.
+ *
+ * @since 7.1
+ */
+public class DBSInvalidations implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Maximum number of invalidated ids stored in the set, over which the invalidations are converted to "invalidate
+     * all".
+     */
+    protected static final int MAX_SIZE = 10000;
+
+    /**
+     * Whether all documents must be invalidated.
+     */
+    public boolean all;
+
+    /**
+     * Invalidated document ids, or {@code null} if empty or if {@link #all} is set.
+     */
+    public Set<String> ids;
+
+    public DBSInvalidations() {
+    }
+
+    public DBSInvalidations(boolean all) {
+        this.all = all;
+    }
+
+    public boolean isEmpty() {
+        return ids == null && !all;
+    }
+
+    public void clear() {
+        all = false;
+        ids = null;
+    }
+
+    public void setAll() {
+        all = true;
+        ids = null;
+    }
+
+    public void add(DBSInvalidations other) {
+        if (other == null || all) {
+            return;
+        }
+        if (other.all) {
+            setAll();
+            return;
+        }
+        if (other.ids != null) {
+            add(other.ids);
+        }
+    }
+
+    public void add(String id) {
+        if (all) {
+            return;
+        }
+        if (ids == null) {
+            ids = new HashSet<>();
+        }
+        ids.add(id);
+        checkMaxSize();
+    }
+
+    public void add(Collection<String> idsToAdd) {
+        if (all) {
+            return;
+        }
+        if (ids == null) {
+            ids = new HashSet<>();
+        }
+        ids.addAll(idsToAdd);
+        checkMaxSize();
+    }
+
+    protected void checkMaxSize() {
+        if (ids.size() > MAX_SIZE) {
+            setAll();
+        }
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder(getClass().getSimpleName());
+        sb.append('(');
+        if (all) {
+            sb.append("all=true");
+        } else {
+            sb.append("ids=");
+            sb.append(ids);
+        }
+        sb.append(')');
+        return sb.toString();
+    }
+
+}
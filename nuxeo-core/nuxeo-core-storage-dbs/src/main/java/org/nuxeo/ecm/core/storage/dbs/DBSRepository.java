@@ -86,6 +86,18 @@ public interface DBSRepository extends Repository {
      */
     void createState(State state) throws DocumentException;
 
+    /**
+     * Creates several documents.
+     * <p>
+     * Equivalent to calling {@link #createState} for each state, but allows the implementation to batch the writes.
+     * The states are created in the order of the list.
+     *
+     * @param states the document states
+     * @throws DocumentException if a document already exists
+     * @since 7.1
+     */
+    void createStates(List<State> states) throws DocumentException;
+
     /**
      * Updates a document.
      *
@@ -95,6 +107,17 @@ public interface DBSRepository extends Repository {
      */
     void updateState(String id, StateDiff diff) throws DocumentException;
 
+    /**
+     * Updates several documents.
+     * <p>
+     * Equivalent to calling {@link #updateState} for each entry, but allows the implementation to batch the writes.
+     *
+     * @param diffs the map of document id to diff to apply
+     * @throws DocumentException if a document does not exist
+     * @since 7.1
+     */
+    void updateStates(Map<String, StateDiff> diffs) throws DocumentException;
+
     /**
      * Deletes a set of document.
      *
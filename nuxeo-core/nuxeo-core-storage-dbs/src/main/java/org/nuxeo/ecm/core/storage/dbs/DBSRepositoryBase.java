@@ -21,8 +21,11 @@ import java.lang.reflect.Method;
 import java.lang.reflect.Proxy;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Map.Entry;
 import java.util.Set;
+import java.util.UUID;
 import java.util.concurrent.ConcurrentHashMap;
 
 import javax.naming.NamingException;
@@ -40,6 +43,8 @@ import org.nuxeo.ecm.core.api.security.impl.ACLImpl;
 import org.nuxeo.ecm.core.api.security.impl.ACPImpl;
 import org.nuxeo.ecm.core.model.Document;
 import org.nuxeo.ecm.core.model.Session;
+import org.nuxeo.ecm.core.storage.State;
+import org.nuxeo.ecm.core.storage.State.StateDiff;
 import org.nuxeo.ecm.core.storage.binary.BinaryManager;
 import org.nuxeo.ecm.core.storage.binary.BinaryManagerDescriptor;
 import org.nuxeo.ecm.core.storage.binary.BinaryManagerService;
@@ -69,6 +74,13 @@ public abstract class DBSRepositoryBase implements DBSRepository {
 
     protected final BinaryManager binaryManager;
 
+    /**
+     * The caching repository used by sessions, or {@code null} if there is no cache.
+     *
+     * @since 7.1
+     */
+    protected DBSCachingRepository cachingRepository;
+
     public DBSRepositoryBase(String repositoryName, boolean fulltextDisabled) {
         this.repositoryName = repositoryName;
         this.fulltextDisabled = fulltextDisabled;
@@ -77,9 +89,37 @@ public abstract class DBSRepositoryBase implements DBSRepository {
 
     @Override
     public void shutdown() {
+        if (cachingRepository != null) {
+            cachingRepository.close();
+            cachingRepository = null;
+        }
         binaryManager.close();
     }
 
+    /**
+     * Enables a shared cache of document states between the sessions and this repository.
+     *
+     * @param maxSize the maximum number of states in the cache
+     * @param ttl the time to live of a state in the cache, in minutes, or {@code 0} for no expiration
+     * @param clusterInvalidatorClass the class of the cluster invalidator, or {@code null} if there is no clustering
+     * @since 7.1
+     */
+    protected void initCache(long maxSize, long ttl, Class<? extends DBSClusterInvalidator> clusterInvalidatorClass) {
+        DBSClusterInvalidator clusterInvalidator;
+        if (clusterInvalidatorClass == null) {
+            clusterInvalidator = null;
+        } else {
+            try {
+                clusterInvalidator = clusterInvalidatorClass.newInstance();
+            } catch (ReflectiveOperationException e) {
+                throw new RuntimeException("Cannot instantiate cluster invalidator: " + clusterInvalidatorClass, e);
+            }
+            String nodeId = UUID.randomUUID().toString();
+            clusterInvalidator.initialize(nodeId, repositoryName);
+        }
+        cachingRepository = new DBSCachingRepository(this, maxSize, ttl, clusterInvalidator);
+    }
+
     @Override
     public String getName() {
         return repositoryName;
@@ -141,6 +181,30 @@ public abstract class DBSRepositoryBase implements DBSRepository {
         return binaryManager;
     }
 
+    /**
+     * Creates several documents by creating them one at a time.
+     * <p>
+     * Implementations able to do batched writes should override this.
+     */
+    @Override
+    public void createStates(List<State> states) throws DocumentException {
+        for (State state : states) {
+            createState(state);
+        }
+    }
+
+    /**
+     * Updates several documents by updating them one at a time.
+     * <p>
+     * Implementations able to do batched writes should override this.
+     */
+    @Override
+    public void updateStates(Map<String, StateDiff> diffs) throws DocumentException {
+        for (Entry<String, StateDiff> en : diffs.entrySet()) {
+            updateState(en.getKey(), en.getValue());
+        }
+    }
+
     @Override
     public int getActiveSessionsCount() {
         return 0;
@@ -172,7 +236,8 @@ public abstract class DBSRepositoryBase implements DBSRepository {
     }
 
     protected DBSSession newSession(String sessionId) {
-        return new DBSSession(this, sessionId);
+        DBSRepository repository = cachingRepository == null ? this : cachingRepository;
+        return new DBSSession(repository, sessionId);
     }
 
     public Map<Transaction, TransactionContext> transactionContexts = new ConcurrentHashMap<>();
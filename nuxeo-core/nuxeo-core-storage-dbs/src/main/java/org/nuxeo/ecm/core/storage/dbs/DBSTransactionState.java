@@ -50,6 +50,7 @@ import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
 import java.util.LinkedList;
 import java.util.List;
@@ -496,24 +497,33 @@ public class DBSTransactionState {
         } else {
             works = Collections.emptyList();
         }
+        // batch creations and updates to limit the number of round trips
+        List<State> created = new ArrayList<State>(transientCreated.size());
         for (String id : transientCreated) { // ordered
             DBSDocumentState docState = transientStates.get(id);
             docState.setNotDirty();
-            repository.createState(docState.getState());
-            // TODO undo log
+            created.add(docState.getState());
         }
+        Map<String, StateDiff> diffs = new LinkedHashMap<String, StateDiff>();
         for (DBSDocumentState docState : transientStates.values()) {
             String id = docState.getId();
             if (transientCreated.contains(id)) {
-                continue; // already done
+                continue; // created above
             }
             StateDiff diff = docState.getStateChange();
             docState.setNotDirty();
             if (diff != null) {
-                repository.updateState(id, diff);
-                // TODO undo log
+                diffs.put(id, diff);
             }
         }
+        if (!created.isEmpty()) {
+            repository.createStates(created);
+            // TODO undo log
+        }
+        if (!diffs.isEmpty()) {
+            repository.updateStates(diffs);
+            // TODO undo log
+        }
         transientCreated.clear();
         scheduleWork(works);
     }
@@ -0,0 +1,181 @@
+/*
+ * Copyright (c) 2014 Nuxeo SA (http://nuxeo.com/) and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Florent Guillaume
+ */
+package org.nuxeo.ecm.core.storage.dbs;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.nuxeo.ecm.core.storage.dbs.DBSDocument.KEY_ID;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.nuxeo.ecm.core.storage.State;
+import org.nuxeo.ecm.core.storage.State.StateDiff;
+
+public class TestDBSCachingRepository {
+
+    /**
+     * Cluster invalidator delivering invalidations in memory to the other invalidators of the same cluster.
+     */
+    protected static class MemClusterInvalidator implements DBSClusterInvalidator {
+
+        protected final List<MemClusterInvalidator> cluster;
+
+        protected final Queue<DBSInvalidations> received = new ConcurrentLinkedQueue<>();
+
+        public MemClusterInvalidator(List<MemClusterInvalidator> cluster) {
+            this.cluster = cluster;
+            cluster.add(this);
+        }
+
+        @Override
+        public void initialize(String nodeId, String repositoryName) {
+        }
+
+        @Override
+        public void close() {
+            cluster.remove(this);
+        }
+
+        @Override
+        public DBSInvalidations receiveInvalidations() {
+            DBSInvalidations invalidations = new DBSInvalidations();
+            DBSInvalidations more;
+            while ((more = received.poll()) != null) {
+                invalidations.add(more);
+            }
+            return invalidations.isEmpty() ? null : invalidations;
+        }
+
+        @Override
+        public void sendInvalidations(DBSInvalidations invalidations) {
+            for (MemClusterInvalidator other : cluster) {
+                if (other != this) {
+                    other.received.add(invalidations);
+                }
+            }
+        }
+    }
+
+    protected DBSRepository repository;
+
+    protected State state1;
+
+    protected State state2;
+
+    @Before
+    public void setUp() {
+        repository = mock(DBSRepository.class);
+        when(repository.getName()).thenReturn("test");
+        state1 = newState("id1");
+        state2 = newState("id2");
+        when(repository.readState("id1")).thenReturn(state1);
+        when(repository.readState("id2")).thenReturn(state2);
+    }
+
+    protected static State newState(String id) {
+        State state = new State();
+        state.put(KEY_ID, id);
+        return state;
+    }
+
+    @Test
+    public void testCacheHitAndMiss() throws Exception {
+        DBSCachingRepository cachingRepository = new DBSCachingRepository(repository, 100, 0, null);
+        long hits = cachingRepository.cacheHitCount.getCount();
+        long misses = cachingRepository.cacheMissCount.getCount();
+
+        assertSame(state1, cachingRepository.readState("id1"));
+        assertSame(state1, cachingRepository.readState("id1"));
+        verify(repository, times(1)).readState("id1");
+        assertEquals(hits + 1, cachingRepository.cacheHitCount.getCount());
+        assertEquals(misses + 1, cachingRepository.cacheMissCount.getCount());
+
+        // absent states are not cached
+        assertNull(cachingRepository.readState("nosuchid"));
+        assertNull(cachingRepository.readState("nosuchid"));
+        verify(repository, times(2)).readState("nosuchid");
+
+        // only the missing states are fetched
+        when(repository.readStates(Collections.singletonList("id2"))).thenReturn(Arrays.asList(state2));
+        List<State> states = cachingRepository.readStates(Arrays.asList("id1", "id2"));
+        assertEquals(2, states.size());
+        assertTrue(states.contains(state1));
+        assertTrue(states.contains(state2));
+        verify(repository).readStates(Collections.singletonList("id2"));
+        assertSame(state2, cachingRepository.readState("id2"));
+        verify(repository, never()).readState("id2");
+        cachingRepository.close();
+    }
+
+    @Test
+    public void testInvalidationOnWrite() throws Exception {
+        DBSCachingRepository cachingRepository = new DBSCachingRepository(repository, 100, 0, null);
+        cachingRepository.readState("id1");
+        cachingRepository.readState("id2");
+
+        cachingRepository.updateState("id1", new StateDiff());
+        cachingRepository.readState("id1");
+        verify(repository, times(2)).readState("id1");
+
+        cachingRepository.deleteStates(Collections.singleton("id2"));
+        cachingRepository.readState("id2");
+        verify(repository, times(2)).readState("id2");
+
+        // still cached
+        cachingRepository.readState("id1");
+        verify(repository, times(2)).readState("id1");
+        cachingRepository.close();
+    }
+
+    @Test
+    public void testClusterInvalidation() throws Exception {
+        List<MemClusterInvalidator> cluster = new CopyOnWriteArrayList<>();
+        DBSCachingRepository node1 = new DBSCachingRepository(repository, 100, 0, new MemClusterInvalidator(
+                cluster));
+        DBSCachingRepository node2 = new DBSCachingRepository(repository, 100, 0, new MemClusterInvalidator(
+                cluster));
+        node1.readState("id1");
+        node2.readState("id1");
+        verify(repository, times(2)).readState("id1");
+
+        // a write on node 1 invalidates node 2
+        node1.updateState("id1", new StateDiff());
+        node2.readState("id1");
+        verify(repository, times(3)).readState("id1");
+        node1.readState("id1");
+        verify(repository, times(4)).readState("id1");
+
+        // nothing else is invalidated
+        node1.readState("id1");
+        node2.readState("id1");
+        verify(repository, times(4)).readState("id1");
+
+        node1.close();
+        node2.close();
+        assertTrue(cluster.isEmpty());
+    }
+
+}
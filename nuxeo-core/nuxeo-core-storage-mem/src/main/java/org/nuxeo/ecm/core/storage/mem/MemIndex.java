@@ -0,0 +1,189 @@
+/*
+ * Copyright (c) 2014 Nuxeo SA (http://nuxeo.com/) and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Florent Guillaume
+ */
+package org.nuxeo.ecm.core.storage.mem;
+
+import java.io.Serializable;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.nuxeo.ecm.core.storage.State;
+
+/**
+ * In-memory secondary index of the {@link MemRepository}, mapping the values of a given key to the ids of the
+ * documents having this value.
+ * <p>
+ * For array values, each element of the array is indexed. Documents without a value can optionally be indexed too,
+ * see {@link #getNulls}.
+ * <p>
+ * The index is thread-safe. Concurrent readers may transiently see a document under both its old and new value, but
+ * never under none of them; callers must therefore still check the candidate documents returned by the index.
+ *
+ * @since 7.1
+ */
+public class MemIndex {
+
+    /** Marker under which documents without a value are indexed, as the map cannot hold null keys. */
+    protected static final Object NULL = new Object();
+
+    protected final String key;
+
+    protected final boolean indexNulls;
+
+    protected final ConcurrentMap<Object, Set<String>> index = new ConcurrentHashMap<>();
+
+    public MemIndex(String key) {
+        this(key, false);
+    }
+
+    /**
+     * @param indexNulls whether documents without a value are indexed, to be returned by {@link #getNulls}
+     */
+    public MemIndex(String key, boolean indexNulls) {
+        this.key = key;
+        this.indexNulls = indexNulls;
+    }
+
+    public String getKey() {
+        return key;
+    }
+
+    /**
+     * Gets the ids of the documents having the given value.
+     *
+     * @return the ids (never {@code null})
+     */
+    public Set<String> get(Object value) {
+        Set<String> ids = index.get(value);
+        return ids == null ? Collections.<String> emptySet() : ids;
+    }
+
+    /**
+     * Gets the ids of the documents having no value, if nulls are indexed.
+     *
+     * @return the ids (never {@code null})
+     */
+    public Set<String> getNulls() {
+        return get(NULL);
+    }
+
+    /**
+     * Indexes a new document.
+     */
+    public void add(String id, State state) {
+        add(id, state.get(key));
+    }
+
+    /**
+     * Unindexes a removed document.
+     */
+    public void remove(String id, State state) {
+        remove(id, state.get(key));
+    }
+
+    /**
+     * Updates the index for a document whose value changed from oldValue to the value currently in the state.
+     * <p>
+     * New values are indexed before old ones are removed, so that the document is always findable.
+     */
+    public void update(String id, Serializable oldValue, State state) {
+        Serializable newValue = state.get(key);
+        add(id, newValue);
+        if (oldValue == null) {
+            if (newValue != null && indexNulls) {
+                removeValue(id, NULL);
+            }
+        } else if (oldValue instanceof Object[]) {
+            Set<Object> newValues = asSet(newValue);
+            for (Object v : (Object[]) oldValue) {
+                if (!newValues.contains(v)) {
+                    removeValue(id, v);
+                }
+            }
+        } else if (!oldValue.equals(newValue)) {
+            removeValue(id, oldValue);
+        }
+    }
+
+    public void clear() {
+        index.clear();
+    }
+
+    protected static Set<Object> asSet(Serializable value) {
+        if (value == null) {
+            return Collections.emptySet();
+        } else if (value instanceof Object[]) {
+            Set<Object> set = new HashSet<>();
+            Collections.addAll(set, (Object[]) value);
+            return set;
+        } else {
+            return Collections.<Object> singleton(value);
+        }
+    }
+
+    protected void add(String id, Serializable value) {
+        if (value == null) {
+            if (indexNulls) {
+                addValue(id, NULL);
+            }
+        } else if (value instanceof Object[]) {
+            for (Object v : (Object[]) value) {
+                addValue(id, v);
+            }
+        } else {
+            addValue(id, value);
+        }
+    }
+
+    protected void remove(String id, Serializable value) {
+        if (value == null) {
+            if (indexNulls) {
+                removeValue(id, NULL);
+            }
+        } else if (value instanceof Object[]) {
+            for (Object v : (Object[]) value) {
+                removeValue(id, v);
+            }
+        } else {
+            removeValue(id, value);
+        }
+    }
+
+    protected void addValue(String id, Object value) {
+        if (value == null) {
+            return;
+        }
+        Set<String> ids = index.get(value);
+        if (ids == null) {
+            Set<String> newIds = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+            ids = index.putIfAbsent(value, newIds);
+            if (ids == null) {
+                ids = newIds;
+            }
+        }
+        ids.add(id);
+    }
+
+    protected void removeValue(String id, Object value) {
+        if (value == null) {
+            return;
+        }
+        Set<String> ids = index.get(value);
+        if (ids != null) {
+            ids.remove(id);
+            // empty sets are kept, to avoid racing with a concurrent addValue
+        }
+    }
+
+}
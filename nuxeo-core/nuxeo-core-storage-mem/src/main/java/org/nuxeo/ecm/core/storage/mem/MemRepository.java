@@ -13,17 +13,23 @@ package org.nuxeo.ecm.core.storage.mem;
 
 import static java.lang.Boolean.TRUE;
 import static org.nuxeo.ecm.core.storage.State.NOP;
+import static org.nuxeo.ecm.core.storage.dbs.DBSDocument.KEY_ANCESTOR_IDS;
 import static org.nuxeo.ecm.core.storage.dbs.DBSDocument.KEY_ID;
 import static org.nuxeo.ecm.core.storage.dbs.DBSDocument.KEY_IS_PROXY;
 import static org.nuxeo.ecm.core.storage.dbs.DBSDocument.KEY_NAME;
 import static org.nuxeo.ecm.core.storage.dbs.DBSDocument.KEY_PARENT_ID;
 import static org.nuxeo.ecm.core.storage.dbs.DBSDocument.KEY_PROXY_IDS;
 import static org.nuxeo.ecm.core.storage.dbs.DBSDocument.KEY_PROXY_TARGET_ID;
+import static org.nuxeo.ecm.core.storage.dbs.DBSDocument.KEY_READ_ACL;
+import static org.nuxeo.ecm.core.storage.dbs.DBSDocument.KEY_VERSION_SERIES_ID;
 
 import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -39,8 +45,14 @@ import org.nuxeo.ecm.core.api.ConcurrentUpdateDocumentException;
 import org.nuxeo.ecm.core.api.DocumentException;
 import org.nuxeo.ecm.core.api.model.Delta;
 import org.nuxeo.ecm.core.model.Repository;
+import org.nuxeo.ecm.core.query.sql.NXQL;
 import org.nuxeo.ecm.core.query.sql.model.Expression;
+import org.nuxeo.ecm.core.query.sql.model.MultiExpression;
+import org.nuxeo.ecm.core.query.sql.model.Operand;
+import org.nuxeo.ecm.core.query.sql.model.Operator;
 import org.nuxeo.ecm.core.query.sql.model.OrderByClause;
+import org.nuxeo.ecm.core.query.sql.model.Reference;
+import org.nuxeo.ecm.core.query.sql.model.StringLiteral;
 import org.nuxeo.ecm.core.storage.State.ListDiff;
 import org.nuxeo.ecm.core.storage.State.StateDiff;
 import org.nuxeo.ecm.core.storage.StateHelper;
@@ -58,6 +70,9 @@ import org.nuxeo.ecm.core.storage.dbs.DBSRepositoryBase;
  * <p>
  * A document object is a JSON-like document stored as a Map recursively containing the data, see {@link DBSDocument}
  * for the description of the document.
+ * <p>
+ * Secondary {@link MemIndex indexes} are maintained on the keys most used by queries (parent, ancestors, proxy target,
+ * version series and read ACL), so that queries constrained on them don't have to scan all the documents.
  *
  * @since 5.9.4
  */
@@ -73,6 +88,21 @@ public class MemRepository extends DBSRepositoryBase {
      */
     protected Map<String, State> states;
 
+    /**
+     * The keys for which a secondary index is maintained.
+     *
+     * @since 7.1
+     */
+    protected static final String[] INDEXED_KEYS = { KEY_PARENT_ID, KEY_ANCESTOR_IDS, KEY_PROXY_TARGET_ID,
+            KEY_VERSION_SERIES_ID, KEY_READ_ACL };
+
+    /**
+     * The secondary indexes, a map of key -> index.
+     *
+     * @since 7.1
+     */
+    protected Map<String, MemIndex> indexes;
+
     public MemRepository(String repositoryName) {
         super(repositoryName, false);
         initRepository();
@@ -82,13 +112,31 @@ public class MemRepository extends DBSRepositoryBase {
     public void shutdown() {
         super.shutdown();
         states = null;
+        indexes = null;
     }
 
     protected void initRepository() {
         states = new ConcurrentHashMap<>();
+        indexes = new HashMap<>();
+        for (String key : INDEXED_KEYS) {
+            // documents without a read ACL are not filtered by the security check, they must be found
+            indexes.put(key, new MemIndex(key, KEY_READ_ACL.equals(key)));
+        }
         initRoot();
     }
 
+    protected void indexAdd(String id, State state) {
+        for (MemIndex index : indexes.values()) {
+            index.add(id, state);
+        }
+    }
+
+    protected void indexRemove(String id, State state) {
+        for (MemIndex index : indexes.values()) {
+            index.remove(id, state);
+        }
+    }
+
     @Override
     public String generateNewId() {
         if (DEBUG_UUIDS) {
@@ -130,6 +178,35 @@ public class MemRepository extends DBSRepositoryBase {
         state = StateHelper.deepCopy(state, true); // thread-safe
         StateHelper.resetDeltas(state);
         states.put(id, state);
+        indexAdd(id, state);
+    }
+
+    @Override
+    public void createStates(List<State> states) throws DocumentException {
+        // check all first so that nothing is created if one already exists
+        Set<String> ids = new HashSet<>();
+        for (State state : states) {
+            String id = (String) state.get(KEY_ID);
+            if (!ids.add(id) || this.states.containsKey(id)) {
+                throw new DocumentException("Already exists: " + id);
+            }
+        }
+        for (State state : states) {
+            createState(state);
+        }
+    }
+
+    @Override
+    public void updateStates(Map<String, StateDiff> diffs) throws DocumentException {
+        // check all first so that nothing is updated if one is missing
+        for (String id : diffs.keySet()) {
+            if (!states.containsKey(id)) {
+                throw new ConcurrentUpdateDocumentException("Missing: " + id);
+            }
+        }
+        for (Entry<String, StateDiff> en : diffs.entrySet()) {
+            updateState(en.getKey(), en.getValue());
+        }
     }
 
     @Override
@@ -141,7 +218,22 @@ public class MemRepository extends DBSRepositoryBase {
         if (state == null) {
             throw new ConcurrentUpdateDocumentException("Missing: " + id);
         }
+        // remember old indexed values
+        Map<String, Serializable> oldValues = null;
+        for (String key : INDEXED_KEYS) {
+            if (diff.containsKey(key)) {
+                if (oldValues == null) {
+                    oldValues = new HashMap<>();
+                }
+                oldValues.put(key, state.get(key));
+            }
+        }
         applyDiff(state, diff);
+        if (oldValues != null) {
+            for (Entry<String, Serializable> en : oldValues.entrySet()) {
+                indexes.get(en.getKey()).update(id, en.getValue(), state);
+            }
+        }
     }
 
     @Override
@@ -150,16 +242,18 @@ public class MemRepository extends DBSRepositoryBase {
             log.trace("delete " + ids);
         }
         for (String id : ids) {
-            if (states.remove(id) == null) {
+            State state = states.remove(id);
+            if (state == null) {
                 log.debug("Missing on remove: " + id);
+            } else {
+                indexRemove(id, state);
             }
         }
     }
 
     @Override
     public State readChildState(String parentId, String name, Set<String> ignored) {
-        // TODO optimize by maintaining a parent/child index
-        for (State state : states.values()) {
+        for (State state : getStates(indexes.get(KEY_PARENT_ID).get(parentId))) {
             if (ignored.contains(state.get(KEY_ID))) {
                 continue;
             }
@@ -182,7 +276,7 @@ public class MemRepository extends DBSRepositoryBase {
     @Override
     public List<State> queryKeyValue(String key, String value, Set<String> ignored) {
         List<State> list = new ArrayList<>();
-        for (State state : states.values()) {
+        for (State state : getStatesForKeyValue(key, value)) {
             String id = (String) state.get(KEY_ID);
             if (ignored.contains(id)) {
                 continue;
@@ -198,7 +292,7 @@ public class MemRepository extends DBSRepositoryBase {
     @Override
     public void queryKeyValueArray(String key, Object value, Set<String> ids, Map<String, String> proxyTargets,
             Map<String, Object[]> targetProxies) {
-        STATE: for (State state : states.values()) {
+        STATE: for (State state : getStatesForKeyValue(key, value)) {
             Object[] array = (Object[]) state.get(key);
             String id = (String) state.get(KEY_ID);
             if (array != null) {
@@ -224,7 +318,7 @@ public class MemRepository extends DBSRepositoryBase {
 
     @Override
     public boolean queryKeyValuePresence(String key, String value, Set<String> ignored) {
-        for (State state : states.values()) {
+        for (State state : getStatesForKeyValue(key, value)) {
             String id = (String) state.get(KEY_ID);
             if (ignored.contains(id)) {
                 continue;
@@ -239,13 +333,28 @@ public class MemRepository extends DBSRepositoryBase {
     @Override
     public PartialList<State> queryAndFetch(Expression expression, DBSExpressionEvaluator evaluator,
             OrderByClause orderByClause, int limit, int offset, int countUpTo, boolean deepCopy, boolean fulltextScore) {
+        // without ORDER BY we can stop as soon as we have enough matches
+        int maxMatches;
+        if (orderByClause != null || limit == 0 || countUpTo == -1) {
+            maxMatches = -1; // no early termination
+        } else {
+            maxMatches = offset + limit;
+            if (countUpTo > 0) {
+                // count up to countUpTo, and one more to detect truncation
+                maxMatches = Math.max(maxMatches, countUpTo + 1);
+            }
+        }
+        Collection<State> candidates = getStates(getIndexedCandidates(expression, evaluator));
         List<State> maps = new ArrayList<>();
-        for (State state : states.values()) {
+        for (State state : candidates) {
             if (evaluator.matches(state)) {
                 if (deepCopy) {
                     state = StateHelper.deepCopy(state);
                 }
                 maps.add(state);
+                if (maps.size() == maxMatches) {
+                    break;
+                }
             }
         }
         // ORDER BY
@@ -278,6 +387,125 @@ public class MemRepository extends DBSRepositoryBase {
         return new PartialList<>(maps, totalSize);
     }
 
+    /**
+     * Gets the states for the given ids, or all the states if ids is {@code null}.
+     * <p>
+     * Ids for which there is no state (concurrently deleted) are skipped.
+     */
+    protected Collection<State> getStates(Set<String> ids) {
+        if (ids == null) {
+            return states.values();
+        }
+        List<State> list = new ArrayList<>(ids.size());
+        for (String id : ids) {
+            State state = states.get(id);
+            if (state != null) {
+                list.add(state);
+            }
+        }
+        return list;
+    }
+
+    /**
+     * Gets the candidate states having the given value for a key, using an index if possible.
+     * <p>
+     * The candidates must still be checked by the caller.
+     */
+    protected Collection<State> getStatesForKeyValue(String key, Object value) {
+        MemIndex index = indexes.get(key);
+        return getStates(index == null ? null : index.get(value));
+    }
+
+    /**
+     * Finds the smallest set of candidate document ids for a query expression using the indexes.
+     * <p>
+     * Only top-level AND clauses of the form {@code ecm:uuid = 'x'}, {@code ecm:parentId = 'x'},
+     * {@code ecm:ancestorId = 'x'}, {@code ecm:path STARTSWITH '/x'}, {@code ecm:proxyTargetId = 'x'} and
+     * {@code ecm:versionVersionableId = 'x'} are considered, as well as the security check on the read ACL. The
+     * candidates must still be checked against the full expression.
+     *
+     * @return the candidate ids, or {@code null} if the indexes cannot be used and a full scan is needed
+     * @since 7.1
+     */
+    protected Set<String> getIndexedCandidates(Expression expression, DBSExpressionEvaluator evaluator) {
+        Set<String> best = null;
+        List<Operand> operands;
+        if (expression instanceof MultiExpression && expression.operator == Operator.AND) {
+            operands = ((MultiExpression) expression).values;
+        } else {
+            operands = Collections.<Operand> singletonList(expression);
+        }
+        for (Operand operand : operands) {
+            if (!(operand instanceof Expression)) {
+                continue;
+            }
+            Set<String> ids = getIndexedCandidatesForClause((Expression) operand, evaluator);
+            if (ids != null && (best == null || ids.size() < best.size())) {
+                best = ids;
+            }
+        }
+        if (evaluator.principals != null) {
+            MemIndex index = indexes.get(KEY_READ_ACL);
+            // documents without a read ACL pass the security check
+            Set<String> ids = new HashSet<>(index.getNulls());
+            for (String principal : evaluator.principals) {
+                ids.addAll(index.get(principal));
+                if (best != null && ids.size() >= best.size()) {
+                    break; // not better
+                }
+            }
+            if (best == null || ids.size() < best.size()) {
+                best = ids;
+            }
+        }
+        return best;
+    }
+
+    protected Set<String> getIndexedCandidatesForClause(Expression expr, DBSExpressionEvaluator evaluator) {
+        if (!(expr.lvalue instanceof Reference) || !(expr.rvalue instanceof StringLiteral)) {
+            return null;
+        }
+        String name = ((Reference) expr.lvalue).name;
+        String value = ((StringLiteral) expr.rvalue).value;
+        if (expr.operator == Operator.STARTSWITH) {
+            if (!NXQL.ECM_PATH.equals(name)) {
+                return null;
+            }
+            String path = value;
+            if (path.length() > 1 && path.endsWith("/")) {
+                path = path.substring(0, path.length() - 1);
+            }
+            String id = evaluator.pathResolver.getIdForPath(path);
+            if (id == null) {
+                return Collections.emptySet();
+            }
+            return indexes.get(KEY_ANCESTOR_IDS).get(id);
+        }
+        if (expr.operator != Operator.EQ) {
+            return null;
+        }
+        String key;
+        switch (name) {
+        case NXQL.ECM_UUID:
+            return Collections.singleton(value);
+        case NXQL.ECM_PARENTID:
+            key = KEY_PARENT_ID;
+            break;
+        case NXQL.ECM_ANCESTORID:
+            key = KEY_ANCESTOR_IDS;
+            break;
+        case NXQL.ECM_PROXY_TARGETID:
+            key = KEY_PROXY_TARGET_ID;
+            break;
+        case NXQL.ECM_VERSION_VERSIONABLEID:
+            key = KEY_VERSION_SERIES_ID;
+            break;
+        default:
+            return null;
+        }
+        return indexes.get(key).get(value);
+    }
+
     /**
      * Applies a {@link StateDiff} in-place onto a base {@link State}.
      * <p>
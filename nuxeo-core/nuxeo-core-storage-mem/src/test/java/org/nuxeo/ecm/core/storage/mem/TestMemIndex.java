@@ -0,0 +1,90 @@
+/*
+ * Copyright (c) 2014 Nuxeo SA (http://nuxeo.com/) and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Florent Guillaume
+ */
+package org.nuxeo.ecm.core.storage.mem;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+
+import org.junit.Test;
+import org.nuxeo.ecm.core.storage.State;
+
+public class TestMemIndex {
+
+    @Test
+    public void testScalar() {
+        MemIndex index = new MemIndex("parent");
+        State state = new State();
+        state.put("parent", "p1");
+        index.add("id1", state);
+        assertEquals(Collections.singleton("id1"), index.get("p1"));
+
+        state.put("parent", "p2");
+        index.update("id1", "p1", state);
+        assertTrue(index.get("p1").isEmpty());
+        assertEquals(Collections.singleton("id1"), index.get("p2"));
+
+        index.remove("id1", state);
+        assertTrue(index.get("p2").isEmpty());
+    }
+
+    @Test
+    public void testArray() {
+        MemIndex index = new MemIndex("ancestors");
+        State state = new State();
+        state.put("ancestors", new Object[] { "a", "b" });
+        index.add("id1", state);
+        State state2 = new State();
+        state2.put("ancestors", new Object[] { "a" });
+        index.add("id2", state2);
+        assertEquals(new HashSet<>(Arrays.asList("id1", "id2")), index.get("a"));
+        assertEquals(Collections.singleton("id1"), index.get("b"));
+
+        Object[] old = (Object[]) state.get("ancestors");
+        state.put("ancestors", new Object[] { "a", "c" });
+        index.update("id1", old, state);
+        assertEquals(new HashSet<>(Arrays.asList("id1", "id2")), index.get("a"));
+        assertTrue(index.get("b").isEmpty());
+        assertEquals(Collections.singleton("id1"), index.get("c"));
+    }
+
+    @Test
+    public void testNulls() {
+        MemIndex index = new MemIndex("racl", true);
+        State state = new State();
+        index.add("id1", state);
+        assertEquals(Collections.singleton("id1"), index.getNulls());
+
+        state.put("racl", new Object[] { "bob" });
+        index.update("id1", null, state);
+        assertTrue(index.getNulls().isEmpty());
+        assertEquals(Collections.singleton("id1"), index.get("bob"));
+
+        Object[] old = (Object[]) state.get("racl");
+        state.put("racl", null);
+        index.update("id1", old, state);
+        assertEquals(Collections.singleton("id1"), index.getNulls());
+        assertTrue(index.get("bob").isEmpty());
+
+        index.remove("id1", state);
+        assertTrue(index.getNulls().isEmpty());
+
+        // nulls not indexed by default
+        index = new MemIndex("parent");
+        index.add("id1", new State());
+        assertTrue(index.getNulls().isEmpty());
+    }
+
+}
@@ -0,0 +1,154 @@
+/*
+ * Copyright (c) 2014 Nuxeo SA (http://nuxeo.com/) and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Florent Guillaume
+ */
+package org.nuxeo.ecm.core.storage.mem;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+import static org.nuxeo.ecm.core.storage.dbs.DBSDocument.KEY_ID;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.nuxeo.ecm.core.api.ConcurrentUpdateDocumentException;
+import org.nuxeo.ecm.core.api.DocumentException;
+import org.nuxeo.ecm.core.api.DocumentModel;
+import org.nuxeo.ecm.core.api.impl.DocumentModelImpl;
+import org.nuxeo.ecm.core.repository.RepositoryService;
+import org.nuxeo.ecm.core.storage.State;
+import org.nuxeo.ecm.core.storage.State.StateDiff;
+import org.nuxeo.runtime.api.Framework;
+
+/**
+ * Tests the batched writes of the {@link MemRepository}, used when a session saves several documents at once.
+ */
+public class TestMemRepositoryBatchWrites extends MemRepositoryTestCase {
+
+    protected static final String TITLE = "title";
+
+    protected MemRepository repository;
+
+    @Override
+    @Before
+    public void setUp() throws Exception {
+        super.setUp();
+        repository = (MemRepository) Framework.getLocalService(RepositoryService.class).getRepository(repositoryName);
+    }
+
+    protected State newState(String title) {
+        State state = new State();
+        state.put(KEY_ID, repository.generateNewId());
+        state.put(TITLE, title);
+        return state;
+    }
+
+    protected static StateDiff newDiff(String title) {
+        StateDiff diff = new StateDiff();
+        diff.put(TITLE, title);
+        return diff;
+    }
+
+    protected String getTitle(String id) {
+        State state = repository.readState(id);
+        assertNotNull(id, state);
+        return (String) state.get(TITLE);
+    }
+
+    @Test
+    public void testCreatesAndUpdates() throws Exception {
+        State state1 = newState("one");
+        State state2 = newState("two");
+        repository.createStates(Arrays.asList(state1, state2));
+        String id1 = (String) state1.get(KEY_ID);
+        String id2 = (String) state2.get(KEY_ID);
+
+        // a save batches the creations, then the updates of the other documents
+        State state3 = newState("three");
+        repository.createStates(Arrays.asList(state3));
+        Map<String, StateDiff> diffs = new LinkedHashMap<>();
+        diffs.put(id1, newDiff("one bis"));
+        diffs.put(id2, newDiff("two bis"));
+        repository.updateStates(diffs);
+
+        assertEquals("one bis", getTitle(id1));
+        assertEquals("two bis", getTitle(id2));
+        assertEquals("three", getTitle((String) state3.get(KEY_ID)));
+    }
+
+    @Test
+    public void testCreateExisting() throws Exception {
+        State state1 = newState("one");
+        repository.createStates(Arrays.asList(state1));
+
+        State state2 = newState("two");
+        try {
+            repository.createStates(Arrays.asList(state2, state1));
+            fail("should fail on existing document");
+        } catch (DocumentException e) {
+            // ok
+        }
+        // nothing created
+        assertNull(repository.readState((String) state2.get(KEY_ID)));
+    }
+
+    @Test
+    public void testUpdateMissing() throws Exception {
+        State state1 = newState("one");
+        repository.createStates(Arrays.asList(state1));
+        String id1 = (String) state1.get(KEY_ID);
+
+        Map<String, StateDiff> diffs = new LinkedHashMap<>();
+        diffs.put(id1, newDiff("one bis"));
+        diffs.put(repository.generateNewId(), newDiff("missing"));
+        try {
+            repository.updateStates(diffs);
+            fail("should fail on missing document");
+        } catch (ConcurrentUpdateDocumentException e) {
+            // ok
+        }
+        // nothing updated
+        assertEquals("one", getTitle(id1));
+    }
+
+    @Test
+    public void testSaveMixingCreatesAndUpdates() throws Exception {
+        DocumentModel doc1 = session.createDocument(new DocumentModelImpl("/", "doc1", "File"));
+        DocumentModel doc2 = session.createDocument(new DocumentModelImpl("/", "doc2", "File"));
+        session.save();
+
+        // one save with two updates and two creations
+        doc1.setPropertyValue("dc:title", "title1");
+        session.saveDocument(doc1);
+        doc2.setPropertyValue("dc:title", "title2");
+        session.saveDocument(doc2);
+        DocumentModel doc3 = new DocumentModelImpl("/", "doc3", "File");
+        doc3.setPropertyValue("dc:title", "title3");
+        doc3 = session.createDocument(doc3);
+        DocumentModel doc4 = new DocumentModelImpl("/", "doc4", "File");
+        doc4.setPropertyValue("dc:title", "title4");
+        doc4 = session.createDocument(doc4);
+        session.save();
+        closeSession();
+
+        // ----- new session -----
+        openSession();
+        assertEquals("title1", session.getDocument(doc1.getRef()).getPropertyValue("dc:title"));
+        assertEquals("title2", session.getDocument(doc2.getRef()).getPropertyValue("dc:title"));
+        assertEquals("title3", session.getDocument(doc3.getRef()).getPropertyValue("dc:title"));
+        assertEquals("title4", session.getDocument(doc4.getRef()).getPropertyValue("dc:title"));
+    }
+
+}
@@ -0,0 +1,176 @@
+/*
+ * Copyright (c) 2014 Nuxeo SA (http://nuxeo.com/) and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Florent Guillaume
+ */
+package org.nuxeo.ecm.core.storage.mem;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.nuxeo.ecm.core.storage.dbs.DBSDocument.KEY_ID;
+import static org.nuxeo.ecm.core.storage.dbs.DBSDocument.KEY_NAME;
+import static org.nuxeo.ecm.core.storage.dbs.DBSDocument.KEY_PARENT_ID;
+import static org.nuxeo.ecm.core.storage.dbs.DBSDocument.KEY_PRIMARY_TYPE;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.nuxeo.ecm.core.api.DocumentModel;
+import org.nuxeo.ecm.core.api.impl.DocumentModelImpl;
+import org.nuxeo.ecm.core.query.sql.SQLQueryParser;
+import org.nuxeo.ecm.core.query.sql.model.Expression;
+import org.nuxeo.ecm.core.repository.RepositoryService;
+import org.nuxeo.ecm.core.storage.PartialList;
+import org.nuxeo.ecm.core.storage.State;
+import org.nuxeo.ecm.core.storage.dbs.DBSExpressionEvaluator;
+import org.nuxeo.ecm.core.storage.dbs.DBSSession;
+import org.nuxeo.runtime.api.Framework;
+
+/**
+ * Tests the use of the {@link MemIndex indexes} by the {@link MemRepository} query planner.
+ */
+public class TestMemRepositoryIndexes extends MemRepositoryTestCase {
+
+    protected MemRepository repository;
+
+    protected String folderId;
+
+    protected Set<String> childIds;
+
+    /**
+     * Evaluator counting the documents it checks.
+     */
+    protected static class CountingEvaluator extends DBSExpressionEvaluator {
+
+        protected int count;
+
+        public CountingEvaluator(DBSSession session, Expression expr, String[] principals) {
+            super(session, expr, principals);
+        }
+
+        @Override
+        public boolean matches(State state) {
+            count++;
+            return super.matches(state);
+        }
+    }
+
+    @Override
+    @Before
+    public void setUp() throws Exception {
+        super.setUp();
+        repository = (MemRepository) Framework.getLocalService(RepositoryService.class).getRepository(repositoryName);
+        DocumentModel folder = session.createDocument(new DocumentModelImpl("/", "folder", "Folder"));
+        folderId = folder.getId();
+        childIds = new HashSet<>();
+        for (int i = 0; i < 10; i++) {
+            DocumentModel doc = session.createDocument(new DocumentModelImpl("/folder", "doc" + i, "File"));
+            childIds.add(doc.getId());
+        }
+        session.createDocument(new DocumentModelImpl("/", "other", "File"));
+        session.save();
+    }
+
+    protected static Expression parse(String where) {
+        return SQLQueryParser.parse("SELECT * FROM Document WHERE " + where).where.predicate;
+    }
+
+    protected CountingEvaluator newEvaluator(Expression expr, String... principals) {
+        return new CountingEvaluator(new DBSSession(repository, "test"), expr, principals.length == 0 ? null
+                : principals);
+    }
+
+    protected Set<String> getCandidates(String where, String... principals) {
+        Expression expr = parse(where);
+        return repository.getIndexedCandidates(expr, newEvaluator(expr, principals));
+    }
+
+    @Test
+    public void testIndexedCandidates() throws Exception {
+        // not indexed, full scan
+        assertNull(getCandidates("ecm:name = 'doc1'"));
+
+        assertEquals(childIds, getCandidates("ecm:parentId = '" + folderId + "'"));
+        assertEquals(childIds, getCandidates("ecm:ancestorId = '" + folderId + "'"));
+        assertEquals(childIds, getCandidates("ecm:path STARTSWITH '/folder/'"));
+        assertTrue(getCandidates("ecm:path STARTSWITH '/nosuchfolder'").isEmpty());
+
+        // the smallest AND clause is used
+        String childId = childIds.iterator().next();
+        assertEquals(Collections.singleton(childId), getCandidates("ecm:parentId = '" + folderId
+                + "' AND ecm:uuid = '" + childId + "'"));
+        assertEquals(childIds, getCandidates("ecm:parentId = '" + folderId + "' AND ecm:name = 'doc1'"));
+
+        // OR cannot use the indexes
+        assertNull(getCandidates("ecm:parentId = '" + folderId + "' OR ecm:name = 'doc1'"));
+
+        // security check on the read ACL
+        assertTrue(getCandidates("ecm:name = 'doc1'", "nosuchuser").isEmpty());
+        assertTrue(getCandidates("ecm:name = 'doc1'", "Administrator", "administrators").containsAll(childIds));
+    }
+
+    @Test
+    public void testNullReadAclIsCandidate() throws Exception {
+        // a document without read ACL is accepted by the security check, so must be a candidate too
+        State state = new State();
+        state.put(KEY_ID, "noracl");
+        state.put(KEY_PARENT_ID, folderId);
+        state.put(KEY_NAME, "noracl");
+        state.put(KEY_PRIMARY_TYPE, "File");
+        repository.createState(state);
+
+        assertTrue(getCandidates("ecm:name = 'noracl'", "nosuchuser").contains("noracl"));
+        Expression expr = parse("ecm:name = 'noracl'");
+        PartialList<State> res = repository.queryAndFetch(expr, newEvaluator(expr, "nosuchuser"), null, 0, 0, -1,
+                false, false);
+        assertEquals(1, res.list.size());
+
+        repository.deleteStates(Collections.singleton("noracl"));
+        assertTrue(getCandidates("ecm:name = 'noracl'", "nosuchuser").isEmpty());
+    }
+
+    @Test
+    public void testEarlyTermination() throws Exception {
+        Expression expr = parse("ecm:parentId = '" + folderId + "'");
+
+        // without ORDER BY, stop as soon as LIMIT is reached
+        CountingEvaluator evaluator = newEvaluator(expr);
+        PartialList<State> res = repository.queryAndFetch(expr, evaluator, null, 3, 0, 0, false, false);
+        assertEquals(3, res.list.size());
+        assertEquals(-1, res.totalSize);
+        assertEquals(3, evaluator.count);
+
+        // counting up to a limit checks one more than the limit
+        evaluator = newEvaluator(expr);
+        res = repository.queryAndFetch(expr, evaluator, null, 3, 0, 5, false, false);
+        assertEquals(3, res.list.size());
+        assertEquals(-2, res.totalSize); // truncated
+        assertEquals(6, evaluator.count);
+
+        // full count checks all the candidates, and only them
+        evaluator = newEvaluator(expr);
+        res = repository.queryAndFetch(expr, evaluator, null, 3, 0, -1, false, false);
+        assertEquals(3, res.list.size());
+        assertEquals(10, res.totalSize);
+        assertEquals(10, evaluator.count);
+
+        // ORDER BY needs all the matches
+        evaluator = newEvaluator(expr);
+        res = repository.queryAndFetch(expr, evaluator,
+                SQLQueryParser.parse("SELECT * FROM Document ORDER BY ecm:name").orderBy, 3, 0, 0, false, false);
+        assertEquals(3, res.list.size());
+        assertEquals("doc0", res.list.get(0).get(KEY_NAME));
+        assertEquals(10, evaluator.count);
+    }
+
+}
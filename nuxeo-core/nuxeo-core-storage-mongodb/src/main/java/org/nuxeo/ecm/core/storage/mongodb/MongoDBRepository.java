@@ -38,6 +38,7 @@ import java.util.UUID;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
+import org.nuxeo.ecm.core.api.ConcurrentUpdateDocumentException;
 import org.nuxeo.ecm.core.api.DocumentException;
 import org.nuxeo.ecm.core.api.model.Delta;
 import org.nuxeo.ecm.core.model.Repository;
@@ -50,11 +51,14 @@ import org.nuxeo.ecm.core.storage.PartialList;
 import org.nuxeo.ecm.core.storage.State;
 import org.nuxeo.ecm.core.storage.State.ListDiff;
 import org.nuxeo.ecm.core.storage.State.StateDiff;
+import org.nuxeo.ecm.core.storage.dbs.DBSClusterInvalidator;
 import org.nuxeo.ecm.core.storage.dbs.DBSDocument;
 import org.nuxeo.ecm.core.storage.dbs.DBSExpressionEvaluator;
 import org.nuxeo.ecm.core.storage.dbs.DBSRepositoryBase;
 
 import com.mongodb.BasicDBObject;
+import com.mongodb.BulkWriteOperation;
+import com.mongodb.BulkWriteResult;
 import com.mongodb.DB;
 import com.mongodb.DBCollection;
 import com.mongodb.DBCursor;
@@ -126,6 +130,13 @@ public class MongoDBRepository extends DBSRepositoryBase {
         } catch (UnknownHostException e) {
             throw new RuntimeException(e);
         }
+        if (descriptor.getCacheEnabled()) {
+            Class<? extends DBSClusterInvalidator> clusterInvalidatorClass = null;
+            if (descriptor.getClusteringEnabled()) {
+                clusterInvalidatorClass = descriptor.clusterInvalidatorClass;
+            }
+            initCache(descriptor.getCacheMaxSize(), descriptor.getCacheTTL(), clusterInvalidatorClass);
+        }
         initRepository();
     }
 
@@ -449,6 +460,19 @@ public class MongoDBRepository extends DBSRepositoryBase {
         // throw new DocumentException("Already exists: " + id);
     }
 
+    @Override
+    public void createStates(List<State> states) throws DocumentException {
+        List<DBObject> obs = new ArrayList<>(states.size());
+        for (State state : states) {
+            obs.add(stateToBson(state));
+        }
+        if (log.isTraceEnabled()) {
+            log.trace("MongoDB: CREATE " + obs);
+        }
+        coll.insert(obs);
+        // TODO dupe exception
+    }
+
     @Override
     public State readState(String id) {
         DBObject query = new BasicDBObject(KEY_ID, id);
@@ -468,9 +492,37 @@ public class MongoDBRepository extends DBSRepositoryBase {
             if (log.isTraceEnabled()) {
                 log.trace("MongoDB: UPDATE " + id + ": " + update);
             }
-            coll.update(query, update);
-            // TODO dupe exception
-            // throw new DocumentException("Missing: " + id);
+            WriteResult w = coll.update(query, update);
+            if (w.getN() != 1) {
+                throw new ConcurrentUpdateDocumentException("Missing: " + id);
+            }
+        }
+    }
+
+    @Override
+    public void updateStates(Map<String, StateDiff> diffs) throws DocumentException {
+        // ordered, as a diff may need several updates for the same document
+        BulkWriteOperation bulk = coll.initializeOrderedBulkOperation();
+        int n = 0;
+        for (Entry<String, StateDiff> en : diffs.entrySet()) {
+            String id = en.getKey();
+            DBObject query = new BasicDBObject(KEY_ID, id);
+            for (DBObject update : diffToBson(en.getValue())) {
+                if (log.isTraceEnabled()) {
+                    log.trace("MongoDB: UPDATE " + id + ": " + update);
+                }
+                bulk.find(query).updateOne(update);
+                n++;
+            }
+        }
+        if (n == 0) {
+            return;
+        }
+        BulkWriteResult w = bulk.execute();
+        if (w.getMatchedCount() != n) {
+            // the updates of the other documents are not rolled back, like with updateState
+            throw new ConcurrentUpdateDocumentException("Matched " + w.getMatchedCount() + " docs for " + n
+                    + " updates on ids: " + diffs.keySet());
         }
     }
 
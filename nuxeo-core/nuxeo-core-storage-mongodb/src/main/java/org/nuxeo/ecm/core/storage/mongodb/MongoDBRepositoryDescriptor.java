@@ -13,6 +13,7 @@ package org.nuxeo.ecm.core.storage.mongodb;
 
 import org.nuxeo.common.xmap.annotation.XNode;
 import org.nuxeo.common.xmap.annotation.XObject;
+import org.nuxeo.ecm.core.storage.dbs.DBSClusterInvalidator;
 
 /**
  * MongoDB Repository Descriptor.
@@ -48,6 +49,46 @@ public class MongoDBRepositoryDescriptor {
         return defaultFalse(fulltextDisabled);
     }
 
+    /** @since 7.1 */
+    @XNode("cache@enabled")
+    private Boolean cacheEnabled;
+
+    /** @since 7.1 */
+    public boolean getCacheEnabled() {
+        return defaultFalse(cacheEnabled);
+    }
+
+    /** @since 7.1 */
+    @XNode("cache@maxSize")
+    private Long cacheMaxSize;
+
+    /** @since 7.1 */
+    public long getCacheMaxSize() {
+        return cacheMaxSize == null ? 10000 : cacheMaxSize.longValue();
+    }
+
+    /** Cache time to live, in minutes. @since 7.1 */
+    @XNode("cache@ttl")
+    private Long cacheTTL;
+
+    /** @since 7.1 */
+    public long getCacheTTL() {
+        return cacheTTL == null ? 10 : cacheTTL.longValue();
+    }
+
+    /** @since 7.1 */
+    @XNode("clustering@enabled")
+    private Boolean clusteringEnabled;
+
+    /** @since 7.1 */
+    public boolean getClusteringEnabled() {
+        return defaultFalse(clusteringEnabled);
+    }
+
+    /** @since 7.1 */
+    @XNode("clustering/invalidatorClass")
+    public Class<? extends DBSClusterInvalidator> clusterInvalidatorClass;
+
     // ----- MongoDB specific options -----
 
     @XNode("server")
@@ -60,6 +101,11 @@ public class MongoDBRepositoryDescriptor {
         isDefault = other.isDefault;
         server = other.server;
         fulltextDisabled = other.fulltextDisabled;
+        cacheEnabled = other.cacheEnabled;
+        cacheMaxSize = other.cacheMaxSize;
+        cacheTTL = other.cacheTTL;
+        clusteringEnabled = other.clusteringEnabled;
+        clusterInvalidatorClass = other.clusterInvalidatorClass;
     }
 
     public void merge(MongoDBRepositoryDescriptor other) {
@@ -78,6 +124,21 @@ public class MongoDBRepositoryDescriptor {
         if (other.fulltextDisabled != null) {
             fulltextDisabled = other.fulltextDisabled;
         }
+        if (other.cacheEnabled != null) {
+            cacheEnabled = other.cacheEnabled;
+        }
+        if (other.cacheMaxSize != null) {
+            cacheMaxSize = other.cacheMaxSize;
+        }
+        if (other.cacheTTL != null) {
+            cacheTTL = other.cacheTTL;
+        }
+        if (other.clusteringEnabled != null) {
+            clusteringEnabled = other.clusteringEnabled;
+        }
+        if (other.clusterInvalidatorClass != null) {
+            clusterInvalidatorClass = other.clusterInvalidatorClass;
+        }
     }
 
 }
@@ -41,6 +41,7 @@ import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Random;
 import java.util.Set;
+import java.util.TreeMap;
 import java.util.UUID;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.CyclicBarrier;
@@ -1791,6 +1792,107 @@ public class TestSQLBackend extends SQLBackendTestCase {
         session.save();
     }
 
+    protected void createCopyTree(Session session, Node parent, int depth, int breadth) throws Exception {
+        for (int i = 0; i < breadth; i++) {
+            Node node = session.addChildNode(parent, "node" + i, null, "TestDoc", false);
+            node.setSimpleProperty("tst:title", "title" + i);
+            node.setCollectionProperty("tst:subjects", new String[] { "a" + i, "b" + i });
+            session.addChildNode(node, "node_complex", null, "TestDoc", true);
+            if (depth > 1) {
+                createCopyTree(session, node, depth - 1, breadth);
+            }
+        }
+    }
+
+    protected String dumpCopyTree(Session session, Node node) throws Exception {
+        StringBuilder buf = new StringBuilder();
+        dumpCopyTree(session, node, buf);
+        return buf.toString();
+    }
+
+    protected void dumpCopyTree(Session session, Node node, StringBuilder buf) throws Exception {
+        buf.append(node.getName());
+        buf.append(node.getSimpleProperty("tst:title").getString());
+        buf.append(Arrays.toString(node.getCollectionProperty("tst:subjects").getStrings()));
+        buf.append('(');
+        // children are not ordered, sort them by name
+        Map<String, Node> children = new TreeMap<String, Node>();
+        for (Node child : session.getChildren(node, null, true)) {
+            children.put(child.getName(), null);
+        }
+        for (Node child : session.getChildren(node, null, false)) {
+            children.put(child.getName(), child);
+        }
+        for (Entry<String, Node> es : children.entrySet()) {
+            if (es.getValue() == null) {
+                buf.append(es.getKey());
+            } else {
+                dumpCopyTree(session, es.getValue(), buf);
+            }
+            buf.append(',');
+        }
+        buf.append(')');
+    }
+
+    protected int copyTreeAndCountExecutes(Session session, Node source, Node dest, String name, boolean batched)
+            throws Exception {
+        Framework.getProperties().setProperty(JDBCRowMapper.COPY_BATCHED_PROP, String.valueOf(batched));
+        JDBCConnection jdbc = (JDBCConnection) ((SoftRefCachingMapper) ((SessionImpl) session).getMapper()).mapper;
+        jdbc.countExecutes = true;
+        jdbc.executeCount = 0;
+        try {
+            long t0 = System.currentTimeMillis();
+            session.copy(source, dest, name);
+            long t1 = System.currentTimeMillis();
+            log.info(String.format("Copy (batched=%s): %s statements, %s ms", Boolean.valueOf(batched),
+                    Integer.valueOf(jdbc.executeCount), Long.valueOf(t1 - t0)));
+            return jdbc.executeCount;
+        } finally {
+            jdbc.countExecutes = false;
+            Framework.getProperties().remove(JDBCRowMapper.COPY_BATCHED_PROP);
+        }
+    }
+
+    @Test
+    public void testCopyBatched() throws Exception {
+        Session session = repository.getConnection();
+        Node root = session.getRootNode();
+        Node source = session.addChildNode(root, "source", null, "TestDoc", false);
+        source.setSimpleProperty("tst:title", "source");
+        createCopyTree(session, source, 3, 3);
+        session.save();
+
+        int recursiveCount = copyTreeAndCountExecutes(session, source, root, "recursive", false);
+        int batchedCount = copyTreeAndCountExecutes(session, source, root, "batched", true);
+        session.save();
+
+        // both copies are identical to the source
+        String expected = dumpCopyTree(session, source);
+        String recursive = dumpCopyTree(session, session.getChildNode(root, "recursive", false));
+        String batched = dumpCopyTree(session, session.getChildNode(root, "batched", false));
+        assertEquals(expected.replaceFirst("source", "recursive"), recursive);
+        assertEquals(expected.replaceFirst("source", "batched"), batched);
+        // same count if the database doesn't support batch updates
+        assertTrue(batchedCount + " > " + recursiveCount, batchedCount <= recursiveCount);
+    }
+
+    @Test
+    @Ignore("benchmark")
+    public void testCopyBatchedBenchmark() throws Exception {
+        Session session = repository.getConnection();
+        Node root = session.getRootNode();
+        Node source = session.addChildNode(root, "source", null, "TestDoc", false);
+        source.setSimpleProperty("tst:title", "source");
+        // 5 + 25 + 125 + 625 + 3125 nodes, plus as many complex children
+        createCopyTree(session, source, 5, 5);
+        session.save();
+
+        copyTreeAndCountExecutes(session, source, root, "recursive", false);
+        session.save();
+        copyTreeAndCountExecutes(session, source, root, "batched", true);
+        session.save();
+    }
+
     @Test
     public void testCopyOrdered() throws Exception {
         Session session = repository.getConnection();
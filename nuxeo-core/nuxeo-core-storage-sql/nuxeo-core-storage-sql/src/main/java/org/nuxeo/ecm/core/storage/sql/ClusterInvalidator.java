@@ -0,0 +1,57 @@
+/*
+ * Copyright (c) 2014 Nuxeo SA (http://nuxeo.com/) and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Florent Guillaume
+ */
+package org.nuxeo.ecm.core.storage.sql;
+
+import org.nuxeo.ecm.core.storage.StorageException;
+
+/**
+ * Interface for cluster invalidators, which push the invalidations of a VCS repository to the other nodes of the
+ * cluster.
+ * <p>
+ * When no cluster invalidator is configured, invalidations are exchanged by polling the cluster invalidations table of
+ * the database.
+ *
+ * @since 7.1
+ */
+public interface ClusterInvalidator {
+
+    /**
+     * Initializes the cluster invalidator.
+     *
+     * @param nodeId the cluster node id, unique in the cluster
+     * @param repositoryName the repository name
+     */
+    void initialize(String nodeId, String repositoryName) throws StorageException;
+
+    /**
+     * Closes this cluster invalidator and releases resources.
+     */
+    void close();
+
+    /**
+     * Receives invalidations from other cluster nodes.
+     * <p>
+     * Must be cheap to call, as it's called at the beginning of each transaction. All the invalidations received
+     * since the last call are coalesced into one.
+     *
+     * @return the received invalidations, or {@code null} if there are none
+     */
+    Invalidations receiveInvalidations() throws StorageException;
+
+    /**
+     * Sends invalidations to other cluster nodes.
+     *
+     * @param invalidations the invalidations to send
+     */
+    void sendInvalidations(Invalidations invalidations) throws StorageException;
+
+}
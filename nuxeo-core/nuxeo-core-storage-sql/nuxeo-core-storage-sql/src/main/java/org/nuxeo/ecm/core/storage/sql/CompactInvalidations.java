@@ -0,0 +1,83 @@
+/*
+ * Copyright (c) 2014 Nuxeo SA (http://nuxeo.com/) and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Florent Guillaume
+ */
+package org.nuxeo.ecm.core.storage.sql;
+
+import java.util.Collections;
+import java.util.Set;
+
+/**
+ * Immutable compact form of {@link Invalidations}, used for the invalidations kept in the log of an
+ * {@link InvalidationsPropagator}.
+ * <p>
+ * The row ids are stored in plain arrays instead of hash sets, which is cheaper to build and takes a fraction of the
+ * memory while the entry stays in the log. They are already deduplicated, so merging them into an
+ * {@link Invalidations} reuses the same {@link RowId} instances and allocates no new ones.
+ *
+ * @since 7.1
+ */
+public class CompactInvalidations {
+
+    /** Whether everything is invalidated. */
+    public final boolean all;
+
+    /** null when empty */
+    protected final RowId[] modified;
+
+    /** null when empty */
+    protected final RowId[] deleted;
+
+    /**
+     * Makes a compact copy of the given invalidations, which can be reused by the caller afterwards.
+     */
+    public CompactInvalidations(Invalidations invalidations) {
+        all = invalidations.all;
+        modified = toArray(invalidations.modified);
+        deleted = toArray(invalidations.deleted);
+    }
+
+    protected static RowId[] toArray(Set<RowId> set) {
+        return set == null || set.isEmpty() ? null : set.toArray(new RowId[set.size()]);
+    }
+
+    public boolean isEmpty() {
+        return modified == null && deleted == null && !all;
+    }
+
+    /**
+     * Merges these invalidations into the given ones.
+     */
+    public void addTo(Invalidations invalidations) {
+        if (invalidations.all) {
+            return;
+        }
+        if (all) {
+            invalidations.setAll();
+            return;
+        }
+        if (modified != null) {
+            Collections.addAll(invalidations.getKindSet(Invalidations.MODIFIED), modified);
+        }
+        if (deleted != null) {
+            Collections.addAll(invalidations.getKindSet(Invalidations.DELETED), deleted);
+        }
+        invalidations.checkMaxSize();
+    }
+
+    @Override
+    public String toString() {
+        Invalidations invalidations = new Invalidations();
+        addTo(invalidations);
+        return getClass().getSimpleName() + invalidations.toString().substring(
+                Invalidations.class.getSimpleName().length());
+    }
+
+}
@@ -0,0 +1,137 @@
+/*
+ * Copyright (c) 2006-2014 Nuxeo SA (http://nuxeo.com/) and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Florent Guillaume
+ *     Benoit Delbosc
+ */
+package org.nuxeo.ecm.core.storage.sql;
+
+import java.util.Map;
+
+import javax.management.MBeanServer;
+import javax.transaction.SystemException;
+import javax.transaction.Transaction;
+import javax.transaction.TransactionManager;
+
+import net.sf.ehcache.Cache;
+import net.sf.ehcache.CacheManager;
+import net.sf.ehcache.Element;
+import net.sf.ehcache.management.ManagementService;
+import net.sf.ehcache.transaction.manager.TransactionManagerLookup;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.nuxeo.runtime.api.Framework;
+import org.nuxeo.runtime.management.ServerLocator;
+
+/**
+ * A {@link RowCache} using the unified ehcache "unifiedVCSCache".
+ * <p>
+ * The ehcache manager is configured by the {@code ehcacheFilePath} property, and is shared by all the repositories.
+ *
+ * @since 7.1
+ */
+public class EhcacheRowCache implements RowCache {
+
+    private static final Log log = LogFactory.getLog(EhcacheRowCache.class);
+
+    private static final String CACHE_NAME = "unifiedVCSCache";
+
+    private static final String EHCACHE_FILE_PROP = "ehcacheFilePath";
+
+    private static CacheManager cacheManager = null;
+
+    protected static boolean isXA;
+
+    private Cache cache;
+
+    @Override
+    public void initialize(String repositoryName, Map<String, String> properties) {
+        synchronized (EhcacheRowCache.class) {
+            if (cacheManager == null) {
+                if (properties.containsKey(EHCACHE_FILE_PROP)) {
+                    String value = properties.get(EHCACHE_FILE_PROP);
+                    log.info("Creating ehcache manager for VCS, using ehcache file: " + value);
+                    cacheManager = CacheManager.create(value);
+                } else {
+                    log.info("Creating ehcache manager for VCS, No ehcache file provided");
+                    cacheManager = CacheManager.create();
+                }
+                isXA = cacheManager.getConfiguration().getCacheConfigurations().get(CACHE_NAME).isXaTransactional();
+                // Exposes cache to JMX
+                MBeanServer mBeanServer = Framework.getLocalService(ServerLocator.class).lookupServer();
+                ManagementService.registerMBeans(cacheManager, mBeanServer, true, true, true, true);
+            }
+            cache = cacheManager.getCache(CACHE_NAME);
+        }
+    }
+
+    @Override
+    public void close() {
+        // the cache manager is shared
+    }
+
+    protected boolean hasTransaction() {
+        TransactionManagerLookup transactionManagerLookup = cache.getTransactionManagerLookup();
+        if (transactionManagerLookup == null) {
+            return false;
+        }
+        TransactionManager transactionManager = transactionManagerLookup.getTransactionManager();
+        if (transactionManager == null) {
+            return false;
+        }
+        Transaction transaction;
+        try {
+            transaction = transactionManager.getTransaction();
+        } catch (SystemException e) {
+            throw new RuntimeException(e);
+        }
+        return transaction != null;
+    }
+
+    protected boolean useEhCache() {
+        return !isXA || hasTransaction();
+    }
+
+    @Override
+    public Row get(RowId rowId) {
+        if (!useEhCache()) {
+            return null;
+        }
+        Element element = cache.get(rowId);
+        return element == null ? null : (Row) element.getObjectValue();
+    }
+
+    @Override
+    public void put(RowId rowId, Row row) {
+        if (useEhCache()) {
+            cache.put(new Element(new RowId(rowId), row));
+        }
+    }
+
+    @Override
+    public void remove(RowId rowId) {
+        if (useEhCache()) {
+            cache.remove(rowId);
+        }
+    }
+
+    @Override
+    public void removeAll() {
+        if (useEhCache()) {
+            cache.removeAll();
+        }
+    }
+
+    @Override
+    public long getSize() {
+        return cache.getSize();
+    }
+
+}
@@ -12,44 +12,103 @@
 package org.nuxeo.ecm.core.storage.sql;
 
 import java.util.ArrayList;
-import java.util.Collection;
+import java.util.List;
 
 /**
  * Propagator of invalidations to a set of {@link InvalidationsQueue}s.
+ * <p>
+ * Propagated invalidations are appended to a shared log, ordered by sequence number and holding them in
+ * {@link CompactInvalidations compact form}, instead of being copied into each queue. Each queue keeps a cursor in
+ * the log and reads the entries it hasn't seen yet when asked for its invalidations. Queues lagging too far behind are
+ * fully invalidated, so that the log cannot grow unbounded.
  */
 public class InvalidationsPropagator {
 
+    /**
+     * Maximum number of log entries a queue may lag behind, after which it's fully invalidated.
+     *
+     * @since 7.1
+     */
+    public static final int MAX_LAG = 1000;
+
+    /**
+     * Interval, in number of log entries, between checks for lagging queues.
+     */
+    protected static final int LAG_CHECK_INTERVAL = 100;
+
     public final ArrayList<InvalidationsQueue> queues; // used synchronized
 
     /** used for debugging */
     public final String name;
 
+    /**
+     * Last entry of the log, modified under synchronization.
+     *
+     * @since 7.1
+     */
+    protected volatile LogEntry tail;
+
+    /**
+     * An entry of the invalidations log.
+     *
+     * @since 7.1
+     */
+    protected static class LogEntry {
+
+        protected final long seq;
+
+        protected final CompactInvalidations invalidations;
+
+        /** The queue which doesn't need these invalidations, or {@code null}. */
+        protected final InvalidationsQueue skipQueue;
+
+        protected volatile LogEntry next;
+
+        protected LogEntry(long seq, CompactInvalidations invalidations, InvalidationsQueue skipQueue) {
+            this.seq = seq;
+            this.invalidations = invalidations;
+            this.skipQueue = skipQueue;
+        }
+    }
+
     public InvalidationsPropagator(String name) {
         queues = new ArrayList<InvalidationsQueue>();
         this.name = name;
+        tail = new LogEntry(0, null, null);
     }
 
     public synchronized void addQueue(InvalidationsQueue queue) {
         if (!queues.contains(queue)) {
             queues.add(queue);
+            // only invalidations propagated from now on are seen by the queue
+            queue.attach(tail);
         }
     }
 
     public synchronized void removeQueue(InvalidationsQueue queue) {
-        queues.remove(queue);
+        if (queues.remove(queue)) {
+            queue.detach();
+        }
     }
 
-    @SuppressWarnings("unchecked")
     public void propagateInvalidations(Invalidations invalidations, InvalidationsQueue skipQueue) {
-        Collection<InvalidationsQueue> qq;
+        // the caller may reuse its invalidations, so copy them once for all queues
+        CompactInvalidations copy = new CompactInvalidations(invalidations);
+        LogEntry entry;
+        List<InvalidationsQueue> queuesToCheck = null;
         synchronized (this) {
-            qq = (Collection<InvalidationsQueue>) queues.clone();
+            entry = new LogEntry(tail.seq + 1, copy, skipQueue);
+            tail.next = entry;
+            tail = entry;
+            if (entry.seq % LAG_CHECK_INTERVAL == 0) {
+                queuesToCheck = new ArrayList<InvalidationsQueue>(queues);
+            }
         }
-        int n = 0;
-        for (InvalidationsQueue q : qq) {
-            if (q != skipQueue) {
-                q.addInvalidations(invalidations);
-                n++;
+        // check lagging queues outside of our lock, to not nest the queues locks in it
+        if (queuesToCheck != null) {
+            long minSeq = entry.seq - MAX_LAG;
+            for (InvalidationsQueue q : queuesToCheck) {
+                q.skipIfLagging(minSeq, entry);
             }
         }
     }
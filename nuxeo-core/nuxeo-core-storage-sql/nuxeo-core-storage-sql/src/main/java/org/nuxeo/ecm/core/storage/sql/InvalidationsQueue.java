@@ -11,10 +11,15 @@
  */
 package org.nuxeo.ecm.core.storage.sql;
 
+import org.nuxeo.ecm.core.storage.sql.InvalidationsPropagator.LogEntry;
+
 /**
  * Queue of invalidations.
  * <p>
  * All invalidations added are accumulated (from multiple threads), then returned when asked for.
+ * <p>
+ * When the queue is attached to an {@link InvalidationsPropagator}, the invalidations propagated are read from the log
+ * of the propagator, starting from the last entry read.
  */
 public class InvalidationsQueue {
 
@@ -23,11 +28,39 @@ public class InvalidationsQueue {
     /** used for debugging */
     public final String name;
 
+    /**
+     * Last log entry read, or {@code null} if not attached to a propagator. Used under synchronization.
+     *
+     * @since 7.1
+     */
+    protected LogEntry cursor;
+
     public InvalidationsQueue(String name) {
         queue = new Invalidations();
         this.name = name;
     }
 
+    protected synchronized void attach(LogEntry entry) {
+        cursor = entry;
+    }
+
+    protected synchronized void detach() {
+        cursor = null;
+    }
+
+    /**
+     * Called by the propagator when the log gets long. If this queue hasn't read the log since before the given
+     * sequence number, then it's fully invalidated and its cursor moved to the given entry, to release the log.
+     * <p>
+     * Called without holding the propagator lock, so the queue may have been detached or have read past the entry.
+     */
+    protected synchronized void skipIfLagging(long minSeq, LogEntry entry) {
+        if (cursor != null && cursor.seq < minSeq) {
+            queue.setAll();
+            cursor = entry;
+        }
+    }
+
     /**
      * Adds invalidations.
      * <p>
@@ -43,6 +76,15 @@ public class InvalidationsQueue {
     public synchronized Invalidations getInvalidations() {
         Invalidations invalidations = queue;
         queue = new Invalidations();
+        if (cursor != null) {
+            LogEntry entry;
+            while ((entry = cursor.next) != null) {
+                if (entry.skipQueue != this) {
+                    entry.invalidations.addTo(invalidations);
+                }
+                cursor = entry;
+            }
+        }
         return invalidations;
     }
 
@@ -0,0 +1,318 @@
+/*
+ * Copyright (c) 2014 Nuxeo SA (http://nuxeo.com/) and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Florent Guillaume
+ */
+package org.nuxeo.ecm.core.storage.sql;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.nuxeo.runtime.metrics.MetricsService;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.SharedMetricRegistries;
+
+/**
+ * A {@link RowCache} storing rows outside of the Java heap, in direct {@link ByteBuffer}s, to avoid GC pauses on large
+ * caches.
+ * <p>
+ * Rows are encoded using {@link RowCodec}. The cache is split into segments, each with its own lock and its own direct
+ * buffer. Each buffer is divided into pages, which are themselves split into slots of a given size class (slab
+ * allocation). When no slot is free for a given size class, the least recently used row of this size class is evicted.
+ * <p>
+ * Properties:
+ * <ul>
+ * <li>{@code offHeapMaxBytes}: the total size of the direct buffers, default 256 MB</li>
+ * <li>{@code offHeapSegments}: the number of segments, default 16</li>
+ * </ul>
+ * Only the index (row ids and slot positions) is kept on the heap.
+ *
+ * @since 7.1
+ */
+public class OffHeapRowCache implements RowCache {
+
+    private static final Log log = LogFactory.getLog(OffHeapRowCache.class);
+
+    public static final String MAX_BYTES_PROP = "offHeapMaxBytes";
+
+    public static final String SEGMENTS_PROP = "offHeapSegments";
+
+    public static final long DEFAULT_MAX_BYTES = 256L * 1024 * 1024;
+
+    public static final int DEFAULT_SEGMENTS = 16;
+
+    protected static final int MAX_PAGE_SIZE = 1024 * 1024;
+
+    protected static final int MIN_SLOT_SIZE = 64;
+
+    protected final MetricRegistry registry = SharedMetricRegistries.getOrCreate(MetricsService.class.getName());
+
+    protected Counter evictionCount;
+
+    protected Segment[] segments;
+
+    @Override
+    public void initialize(String repositoryName, Map<String, String> properties) {
+        long maxBytes = getLong(properties, MAX_BYTES_PROP, DEFAULT_MAX_BYTES);
+        int nsegments = (int) getLong(properties, SEGMENTS_PROP, DEFAULT_SEGMENTS);
+        long segmentBytes = maxBytes / nsegments;
+        int pageSize = (int) Math.min(MAX_PAGE_SIZE, segmentBytes);
+        int npages = (int) Math.min(segmentBytes / pageSize, Integer.MAX_VALUE / pageSize);
+        int[] slotSizes = getSlotSizes(pageSize);
+        evictionCount = registry.counter(MetricRegistry.name("nuxeo", "repositories", repositoryName, "caches",
+                "unified", "evictions"));
+        segments = new Segment[nsegments];
+        for (int i = 0; i < nsegments; i++) {
+            segments[i] = new Segment(pageSize, npages, slotSizes);
+        }
+        log.info(String.format("Off-heap row cache for repository %s: %d segments of %d pages of %d bytes",
+                repositoryName, Integer.valueOf(nsegments), Integer.valueOf(npages), Integer.valueOf(pageSize)));
+    }
+
+    protected static long getLong(Map<String, String> properties, String key, long def) {
+        String value = properties.get(key);
+        return value == null ? def : Long.parseLong(value.trim());
+    }
+
+    /**
+     * Computes the size classes, growing by 25% from {@link #MIN_SLOT_SIZE} up to the page size.
+     */
+    protected static int[] getSlotSizes(int pageSize) {
+        List<Integer> sizes = new ArrayList<Integer>();
+        int size = Math.min(MIN_SLOT_SIZE, pageSize);
+        while (size < pageSize) {
+            sizes.add(Integer.valueOf(size));
+            size = ((size + size / 4) + 7) & ~7; // align on 8
+        }
+        sizes.add(Integer.valueOf(pageSize));
+        int[] res = new int[sizes.size()];
+        for (int i = 0; i < res.length; i++) {
+            res[i] = sizes.get(i).intValue();
+        }
+        return res;
+    }
+
+    @Override
+    public void close() {
+        removeAll();
+        // direct buffers are freed when garbage collected
+        segments = null;
+    }
+
+    protected Segment getSegment(RowId rowId) {
+        int h = rowId.hashCode();
+        h ^= (h >>> 16);
+        return segments[(h & Integer.MAX_VALUE) % segments.length];
+    }
+
+    @Override
+    public Row get(RowId rowId) {
+        byte[] bytes = getSegment(rowId).get(rowId);
+        if (bytes == null) {
+            return null;
+        }
+        try {
+            return RowCodec.decode(bytes);
+        } catch (IOException e) {
+            log.error("Cannot decode cached row: " + rowId, e);
+            remove(rowId);
+            return null;
+        }
+    }
+
+    @Override
+    public void put(RowId rowId, Row row) {
+        byte[] bytes;
+        try {
+            bytes = RowCodec.encode(row);
+        } catch (IOException e) {
+            log.error("Cannot encode row: " + rowId, e);
+            remove(rowId);
+            return;
+        }
+        getSegment(rowId).put(new RowId(rowId), bytes);
+    }
+
+    @Override
+    public void remove(RowId rowId) {
+        getSegment(rowId).remove(rowId);
+    }
+
+    @Override
+    public void removeAll() {
+        for (Segment segment : segments) {
+            segment.clear();
+        }
+    }
+
+    @Override
+    public long getSize() {
+        long size = 0;
+        for (Segment segment : segments) {
+            size += segment.size();
+        }
+        return size;
+    }
+
+    /**
+     * Position of a row in a segment buffer.
+     */
+    protected static class Slot {
+
+        protected final int offset;
+
+        protected final int sizeClass;
+
+        protected int length;
+
+        protected Slot(int offset, int sizeClass) {
+            this.offset = offset;
+            this.sizeClass = sizeClass;
+        }
+    }
+
+    /**
+     * A segment of the cache, with its own buffer, all accesses are synchronized.
+     */
+    protected class Segment {
+
+        protected final ByteBuffer buffer;
+
+        protected final int pageSize;
+
+        protected final int npages;
+
+        protected final int[] slotSizes;
+
+        protected int nextPage;
+
+        /** Index of all the rows of the segment. */
+        protected final Map<RowId, Slot> index = new HashMap<RowId, Slot>();
+
+        /** Rows of each size class, in access order (LRU first). */
+        protected final LinkedHashMap<RowId, Slot>[] lrus;
+
+        /** Free slots of each size class. */
+        protected final List<Slot>[] freeSlots;
+
+        @SuppressWarnings("unchecked")
+        protected Segment(int pageSize, int npages, int[] slotSizes) {
+            this.pageSize = pageSize;
+            this.npages = npages;
+            this.slotSizes = slotSizes;
+            buffer = ByteBuffer.allocateDirect(pageSize * npages);
+            lrus = new LinkedHashMap[slotSizes.length];
+            freeSlots = new List[slotSizes.length];
+            for (int i = 0; i < slotSizes.length; i++) {
+                lrus[i] = new LinkedHashMap<RowId, Slot>(16, 0.75f, true);
+                freeSlots[i] = new ArrayList<Slot>();
+            }
+        }
+
+        protected int getSizeClass(int length) {
+            for (int i = 0; i < slotSizes.length; i++) {
+                if (length <= slotSizes[i]) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        public synchronized byte[] get(RowId rowId) {
+            Slot slot = index.get(rowId);
+            if (slot == null) {
+                return null;
+            }
+            lrus[slot.sizeClass].get(rowId); // access order
+            byte[] bytes = new byte[slot.length];
+            ByteBuffer buf = buffer.duplicate();
+            buf.position(slot.offset);
+            buf.get(bytes);
+            return bytes;
+        }
+
+        public synchronized void put(RowId rowId, byte[] bytes) {
+            remove(rowId);
+            int sizeClass = getSizeClass(bytes.length);
+            if (sizeClass == -1) {
+                // too big to be cached
+                return;
+            }
+            Slot slot = allocate(sizeClass);
+            if (slot == null) {
+                return;
+            }
+            slot.length = bytes.length;
+            ByteBuffer buf = buffer.duplicate();
+            buf.position(slot.offset);
+            buf.put(bytes);
+            index.put(rowId, slot);
+            lrus[sizeClass].put(rowId, slot);
+        }
+
+        protected Slot allocate(int sizeClass) {
+            List<Slot> free = freeSlots[sizeClass];
+            if (free.isEmpty() && nextPage < npages) {
+                // split a new page into slots of this size class
+                int slotSize = slotSizes[sizeClass];
+                int pageOffset = nextPage++ * pageSize;
+                for (int offset = 0; offset + slotSize <= pageSize; offset += slotSize) {
+                    free.add(new Slot(pageOffset + offset, sizeClass));
+                }
+            }
+            if (free.isEmpty()) {
+                // evict least recently used of this size class
+                Iterator<Map.Entry<RowId, Slot>> it = lrus[sizeClass].entrySet().iterator();
+                if (!it.hasNext()) {
+                    // all pages are used by other size classes
+                    return null;
+                }
+                Map.Entry<RowId, Slot> es = it.next();
+                it.remove();
+                index.remove(es.getKey());
+                evictionCount.inc();
+                return es.getValue();
+            }
+            return free.remove(free.size() - 1);
+        }
+
+        public synchronized void remove(RowId rowId) {
+            Slot slot = index.remove(rowId);
+            if (slot != null) {
+                lrus[slot.sizeClass].remove(rowId);
+                freeSlots[slot.sizeClass].add(slot);
+            }
+        }
+
+        public synchronized void clear() {
+            index.clear();
+            for (int i = 0; i < slotSizes.length; i++) {
+                lrus[i].clear();
+                freeSlots[i].clear();
+            }
+            // pages will be reassigned to size classes as needed
+            nextPage = 0;
+        }
+
+        public synchronized int size() {
+            return index.size();
+        }
+    }
+
+}
@@ -297,6 +297,15 @@ public class RepositoryDescriptor {
         clusteringDelay = Long.valueOf(delay);
     }
 
+    /**
+     * The class pushing invalidations to the other cluster nodes, or {@code null} to use the cluster invalidations
+     * table.
+     *
+     * @since 7.1
+     */
+    @XNode("clustering/invalidatorClass")
+    public Class<? extends ClusterInvalidator> clusterInvalidatorClass;
+
     @XNodeList(value = "schema/field", type = ArrayList.class, componentType = FieldDescriptor.class)
     public List<FieldDescriptor> schemaFields = new ArrayList<FieldDescriptor>(0);
 
@@ -428,6 +437,7 @@ public class RepositoryDescriptor {
         idType = other.idType;
         clusteringEnabled = other.clusteringEnabled;
         clusteringDelay = other.clusteringDelay;
+        clusterInvalidatorClass = other.clusterInvalidatorClass;
         fulltextDisabled = other.fulltextDisabled;
         fulltextAnalyzer = other.fulltextAnalyzer;
         fulltextParser = other.fulltextParser;
@@ -493,6 +503,9 @@ public class RepositoryDescriptor {
         if (other.clusteringDelay != null) {
             clusteringDelay = other.clusteringDelay;
         }
+        if (other.clusterInvalidatorClass != null) {
+            clusterInvalidatorClass = other.clusterInvalidatorClass;
+        }
         for (FieldDescriptor of : other.schemaFields) {
             boolean append = true;
             for (FieldDescriptor f : schemaFields) {
@@ -381,6 +381,7 @@ public class RepositoryImpl implements Repository {
         binaryManager.close();
         BinaryManagerService bms = Framework.getLocalService(BinaryManagerService.class);
         bms.removeBinaryManager(repositoryDescriptor.name);
+        UnifiedCachingRowMapper.closeRowCache(repositoryDescriptor.name);
 
         registry.remove(MetricRegistry.name(RepositoryImpl.class, getName(), "cache-size"));
         registry.remove(MetricRegistry.name(PersistenceContext.class, getName(), "cache-size"));
@@ -0,0 +1,70 @@
+/*
+ * Copyright (c) 2014 Nuxeo SA (http://nuxeo.com/) and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Florent Guillaume
+ */
+package org.nuxeo.ecm.core.storage.sql;
+
+import java.util.Map;
+
+/**
+ * The storage of the rows cached by a {@link UnifiedCachingRowMapper}.
+ * <p>
+ * A row cache is shared by all the mappers of a repository, and must therefore be thread-safe. It may hold "absent"
+ * marker rows, which must be returned as they were put.
+ *
+ * @since 7.1
+ */
+public interface RowCache {
+
+    /**
+     * Initializes the row cache.
+     *
+     * @param repositoryName the repository name
+     * @param properties the caching mapper properties
+     */
+    void initialize(String repositoryName, Map<String, String> properties);
+
+    /**
+     * Closes the row cache and releases resources.
+     */
+    void close();
+
+    /**
+     * Gets a row from the cache.
+     * <p>
+     * The returned row may be shared, and must be cloned before being modified.
+     *
+     * @return the row, or {@code null} if not in the cache
+     */
+    Row get(RowId rowId);
+
+    /**
+     * Puts a row in the cache.
+     * <p>
+     * The row must not be modified afterwards.
+     */
+    void put(RowId rowId, Row row);
+
+    /**
+     * Removes a row from the cache.
+     */
+    void remove(RowId rowId);
+
+    /**
+     * Removes all the rows from the cache.
+     */
+    void removeAll();
+
+    /**
+     * Gets the number of rows in the cache.
+     */
+    long getSize();
+
+}
@@ -0,0 +1,235 @@
+/*
+ * Copyright (c) 2014 Nuxeo SA (http://nuxeo.com/) and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Florent Guillaume
+ */
+package org.nuxeo.ecm.core.storage.sql;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.lang.reflect.Array;
+import java.nio.charset.Charset;
+import java.util.Calendar;
+import java.util.GregorianCalendar;
+import java.util.TimeZone;
+
+/**
+ * Compact binary encoding of {@link Row}s, used to store them outside of the Java heap.
+ * <p>
+ * The common value types (strings, numbers, booleans, dates, ACLs and arrays of them) have a dedicated encoding, other
+ * values fall back to Java serialization.
+ * <p>
+ * Table names are interned when decoding, which also preserves the identity of the "absent" marker table name of the
+ * {@link UnifiedCachingRowMapper}.
+ *
+ * @since 7.1
+ */
+public class RowCodec {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    protected static final byte TYPE_SIMPLE = 0;
+
+    protected static final byte TYPE_COLLECTION = 1;
+
+    protected static final byte NULL = 0;
+
+    protected static final byte STRING = 1;
+
+    protected static final byte LONG = 2;
+
+    protected static final byte INTEGER = 3;
+
+    protected static final byte BOOLEAN = 4;
+
+    protected static final byte DOUBLE = 5;
+
+    protected static final byte CALENDAR = 6;
+
+    protected static final byte ACL = 7;
+
+    protected static final byte ARRAY = 8;
+
+    protected static final byte SERIALIZED = 9;
+
+    /** Array component types with a dedicated encoding, the index is the encoded value. */
+    protected static final Class<?>[] COMPONENT_TYPES = { Serializable.class, String.class, Long.class,
+            Integer.class, Boolean.class, Double.class, Calendar.class, ACLRow.class, Object.class };
+
+    private RowCodec() {
+        // utility class
+    }
+
+    public static byte[] encode(Row row) throws IOException {
+        ByteArrayOutputStream baout = new ByteArrayOutputStream(128);
+        DataOutputStream out = new DataOutputStream(baout);
+        writeString(out, row.tableName);
+        writeValue(out, row.id);
+        if (row.isCollection()) {
+            out.writeByte(TYPE_COLLECTION);
+            writeValue(out, row.values);
+        } else {
+            out.writeByte(TYPE_SIMPLE);
+            out.writeInt(row.size);
+            for (int i = 0; i < row.size; i++) {
+                writeString(out, row.keys[i]);
+                writeValue(out, row.values[i]);
+            }
+        }
+        out.flush();
+        return baout.toByteArray();
+    }
+
+    public static Row decode(byte[] bytes) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes));
+        String tableName = readString(in).intern();
+        Serializable id = readValue(in);
+        byte type = in.readByte();
+        if (type == TYPE_COLLECTION) {
+            return new Row(tableName, id, (Serializable[]) readValue(in));
+        }
+        Row row = new Row(tableName, id);
+        int size = in.readInt();
+        for (int i = 0; i < size; i++) {
+            String key = readString(in).intern();
+            row.putNew(key, readValue(in));
+        }
+        return row;
+    }
+
+    protected static void writeString(DataOutputStream out, String string) throws IOException {
+        // not writeUTF, which is limited to 64k
+        byte[] bytes = string.getBytes(UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    protected static String readString(DataInputStream in) throws IOException {
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return new String(bytes, UTF_8);
+    }
+
+    protected static int getComponentType(Class<?> klass) {
+        for (int i = 0; i < COMPONENT_TYPES.length; i++) {
+            if (COMPONENT_TYPES[i] == klass) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    protected static void writeValue(DataOutputStream out, Object value) throws IOException {
+        if (value == null) {
+            out.writeByte(NULL);
+        } else if (value instanceof String) {
+            out.writeByte(STRING);
+            writeString(out, (String) value);
+        } else if (value instanceof Long) {
+            out.writeByte(LONG);
+            out.writeLong(((Long) value).longValue());
+        } else if (value instanceof Integer) {
+            out.writeByte(INTEGER);
+            out.writeInt(((Integer) value).intValue());
+        } else if (value instanceof Boolean) {
+            out.writeByte(BOOLEAN);
+            out.writeBoolean(((Boolean) value).booleanValue());
+        } else if (value instanceof Double) {
+            out.writeByte(DOUBLE);
+            out.writeDouble(((Double) value).doubleValue());
+        } else if (value.getClass() == GregorianCalendar.class) {
+            Calendar cal = (Calendar) value;
+            out.writeByte(CALENDAR);
+            out.writeLong(cal.getTimeInMillis());
+            writeString(out, cal.getTimeZone().getID());
+        } else if (value instanceof ACLRow) {
+            ACLRow acl = (ACLRow) value;
+            out.writeByte(ACL);
+            out.writeInt(acl.pos);
+            writeValue(out, acl.name);
+            out.writeBoolean(acl.grant);
+            writeValue(out, acl.permission);
+            writeValue(out, acl.user);
+            writeValue(out, acl.group);
+        } else if (value instanceof Object[] && getComponentType(value.getClass().getComponentType()) >= 0) {
+            Object[] array = (Object[]) value;
+            out.writeByte(ARRAY);
+            out.writeByte(getComponentType(value.getClass().getComponentType()));
+            out.writeInt(array.length);
+            for (Object v : array) {
+                writeValue(out, v);
+            }
+        } else {
+            out.writeByte(SERIALIZED);
+            ByteArrayOutputStream baout = new ByteArrayOutputStream();
+            try (ObjectOutputStream oos = new ObjectOutputStream(baout)) {
+                oos.writeObject(value);
+            }
+            byte[] bytes = baout.toByteArray();
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+    }
+
+    protected static Serializable readValue(DataInputStream in) throws IOException {
+        byte type = in.readByte();
+        switch (type) {
+        case NULL:
+            return null;
+        case STRING:
+            return readString(in);
+        case LONG:
+            return Long.valueOf(in.readLong());
+        case INTEGER:
+            return Integer.valueOf(in.readInt());
+        case BOOLEAN:
+            return Boolean.valueOf(in.readBoolean());
+        case DOUBLE:
+            return Double.valueOf(in.readDouble());
+        case CALENDAR:
+            long millis = in.readLong();
+            Calendar cal = new GregorianCalendar(TimeZone.getTimeZone(readString(in)));
+            cal.setTimeInMillis(millis);
+            return cal;
+        case ACL:
+            int pos = in.readInt();
+            String name = (String) readValue(in);
+            boolean grant = in.readBoolean();
+            String permission = (String) readValue(in);
+            String user = (String) readValue(in);
+            String group = (String) readValue(in);
+            return new ACLRow(pos, name, grant, permission, user, group);
+        case ARRAY:
+            Class<?> componentType = COMPONENT_TYPES[in.readByte()];
+            int length = in.readInt();
+            Object[] array = (Object[]) Array.newInstance(componentType, length);
+            for (int i = 0; i < length; i++) {
+                array[i] = readValue(in);
+            }
+            return (Serializable) array;
+        case SERIALIZED:
+            byte[] bytes = new byte[in.readInt()];
+            in.readFully(bytes);
+            try (ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(bytes))) {
+                return (Serializable) ois.readObject();
+            } catch (ClassNotFoundException e) {
+                throw new IOException(e);
+            }
+        default:
+            throw new IOException("Unknown value type: " + type);
+        }
+    }
+
+}
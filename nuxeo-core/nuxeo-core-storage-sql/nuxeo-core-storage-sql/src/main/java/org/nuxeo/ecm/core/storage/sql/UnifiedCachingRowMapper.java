@@ -17,31 +17,20 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.SortedMap;
 import java.util.concurrent.atomic.AtomicInteger;
 
-import javax.management.MBeanServer;
-import javax.transaction.SystemException;
-import javax.transaction.Transaction;
-import javax.transaction.TransactionManager;
 import javax.transaction.xa.XAException;
 import javax.transaction.xa.Xid;
 
-import net.sf.ehcache.Cache;
-import net.sf.ehcache.CacheManager;
-import net.sf.ehcache.Element;
-import net.sf.ehcache.management.ManagementService;
-import net.sf.ehcache.transaction.manager.TransactionManagerLookup;
-
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.nuxeo.ecm.core.storage.StorageException;
 import org.nuxeo.ecm.core.storage.sql.ACLRow.ACLRowPositionComparator;
-import org.nuxeo.runtime.api.Framework;
-import org.nuxeo.runtime.management.ServerLocator;
 import org.nuxeo.runtime.metrics.MetricsService;
 
 import com.codahale.metrics.Counter;
@@ -52,9 +41,12 @@ import com.codahale.metrics.Timer;
 import com.codahale.metrics.Timer.Context;
 
 /**
- * A {@link RowMapper} that use an unified ehcache.
+ * A {@link RowMapper} that uses a unified cache, shared by all the mappers of a repository.
  * <p>
  * The cache only holds {@link Row}s that are known to be identical to what's in the underlying {@link RowMapper}.
+ * <p>
+ * The rows are stored in a {@link RowCache} whose class is given by the {@code rowCacheClass} property, by default an
+ * {@link EhcacheRowCache}. An {@link OffHeapRowCache} can be used to keep rows out of the Java heap.
  */
 public class UnifiedCachingRowMapper implements RowMapper {
 
@@ -62,11 +54,17 @@ public class UnifiedCachingRowMapper implements RowMapper {
 
     private static final String ABSENT = "__ABSENT__\0\0\0";
 
-    private static CacheManager cacheManager = null;
+    /**
+     * Property holding the {@link RowCache} implementation class.
+     *
+     * @since 7.1
+     */
+    public static final String ROW_CACHE_CLASS_PROP = "rowCacheClass";
 
-    protected static boolean isXA;
+    /** Row caches, per repository. */
+    private static final Map<String, RowCache> rowCaches = new HashMap<String, RowCache>();
 
-    private Cache cache;
+    private RowCache rowCache;
 
     private Model model;
 
@@ -91,10 +89,6 @@ public class UnifiedCachingRowMapper implements RowMapper {
      */
     private InvalidationsPropagator cachePropagator;
 
-    private static final String CACHE_NAME = "unifiedVCSCache";
-
-    private static final String EHCACHE_FILE_PROP = "ehcacheFilePath";
-
     private static AtomicInteger rowMapperCount = new AtomicInteger();
 
     /**
@@ -124,26 +118,72 @@ public class UnifiedCachingRowMapper implements RowMapper {
         this.rowMapper = rowMapper;
         this.cachePropagator = cachePropagator;
         cachePropagator.addQueue(cacheQueue);
-        if (cacheManager == null) {
-            if (properties.containsKey(EHCACHE_FILE_PROP)) {
-                String value = properties.get(EHCACHE_FILE_PROP);
-                log.info("Creating ehcache manager for VCS, using ehcache file: " + value);
-                cacheManager = CacheManager.create(value);
-            } else {
-                log.info("Creating ehcache manager for VCS, No ehcache file provided");
-                cacheManager = CacheManager.create();
-            }
-            isXA = cacheManager.getConfiguration().getCacheConfigurations().get(CACHE_NAME).isXaTransactional();
-            // Exposes cache to JMX
-            MBeanServer mBeanServer = Framework.getLocalService(ServerLocator.class).lookupServer();
-            ManagementService.registerMBeans(cacheManager, mBeanServer, true, true, true, true);
-        }
+        rowCache = getRowCache(repositoryName, properties);
         rowMapperCount.incrementAndGet();
-        cache = cacheManager.getCache(CACHE_NAME);
         setMetrics(repositoryName);
     }
 
-    protected void setMetrics(String repositoryName) {
+    /**
+     * Gets the row cache of a repository, creating it if needed.
+     *
+     * @since 7.1
+     */
+    protected static RowCache getRowCache(String repositoryName, Map<String, String> properties) {
+        synchronized (rowCaches) {
+            RowCache rowCache = rowCaches.get(repositoryName);
+            if (rowCache == null) {
+                String className = properties.get(ROW_CACHE_CLASS_PROP);
+                if (className == null) {
+                    rowCache = new EhcacheRowCache();
+                } else {
+                    try {
+                        ClassLoader cl = Thread.currentThread().getContextClassLoader();
+                        rowCache = (RowCache) cl.loadClass(className.trim()).newInstance();
+                    } catch (ReflectiveOperationException e) {
+                        throw new RuntimeException("Cannot instantiate row cache: " + className, e);
+                    }
+                }
+                log.info("Using row cache " + rowCache.getClass().getName() + " for repository " + repositoryName);
+                rowCache.initialize(repositoryName, properties);
+                rowCaches.put(repositoryName, rowCache);
+            }
+            return rowCache;
+        }
+    }
+
+    /**
+     * Closes and forgets the row cache of a repository, releasing its resources.
+     * <p>
+     * Called when the repository is closed.
+     *
+     * @since 7.1
+     */
+    public static void closeRowCache(String repositoryName) {
+        RowCache rowCache;
+        synchronized (rowCaches) {
+            rowCache = rowCaches.remove(repositoryName);
+        }
+        if (rowCache != null) {
+            rowCache.close();
+        }
+        SharedMetricRegistries.getOrCreate(MetricsService.class.getName()).remove(
+                MetricRegistry.name("nuxeo", "repositories", repositoryName, "caches", "unified", "cache-size"));
+    }
+
+    /**
+     * Gets the size of the row cache of a repository.
+     *
+     * @since 7.1
+     */
+    protected static long getRowCacheSize(String repositoryName) {
+        RowCache rowCache;
+        synchronized (rowCaches) {
+            rowCache = rowCaches.get(repositoryName);
+        }
+        return rowCache == null ? 0 : rowCache.getSize();
+    }
+
+    protected void setMetrics(final String repositoryName) {
         cacheHitCount = registry.counter(MetricRegistry.name("nuxeo", "repositories", repositoryName, "caches",
                 "unified", "hits"));
         cacheGetTimer = registry.timer(MetricRegistry.name("nuxeo", "repositories", repositoryName, "caches",
@@ -156,13 +196,10 @@ public class UnifiedCachingRowMapper implements RowMapper {
                 "cache-size");
         SortedMap<String, Gauge> gauges = registry.getGauges();
         if (!gauges.containsKey(gaugeName)) {
-            registry.register(gaugeName, new Gauge<Integer>() {
+            registry.register(gaugeName, new Gauge<Long>() {
                 @Override
-                public Integer getValue() {
-                    if (cacheManager != null) {
-                        return cacheManager.getCache(CACHE_NAME).getSize();
-                    }
-                    return 0;
+                public Long getValue() {
+                    return Long.valueOf(getRowCacheSize(repositoryName));
                 }
             });
         }
@@ -178,65 +215,6 @@ public class UnifiedCachingRowMapper implements RowMapper {
         return rowMapper.generateNewId();
     }
 
-    /*
-     * ----- ehcache -----
-     */
-
-    protected boolean hasTransaction() {
-        TransactionManagerLookup transactionManagerLookup = cache.getTransactionManagerLookup();
-        if (transactionManagerLookup == null) {
-            return false;
-        }
-        TransactionManager transactionManager = transactionManagerLookup.getTransactionManager();
-        if (transactionManager == null) {
-            return false;
-        }
-        Transaction transaction;
-        try {
-            transaction = transactionManager.getTransaction();
-        } catch (SystemException e) {
-            throw new RuntimeException(e);
-        }
-        return transaction != null;
-    }
-
-    protected boolean useEhCache() {
-        return !isXA || hasTransaction();
-    }
-
-    protected void ehCachePut(Element element) {
-        if (useEhCache()) {
-            cache.put(element);
-        }
-    }
-
-    protected Element ehCacheGet(Serializable key) {
-        if (useEhCache()) {
-            return cache.get(key);
-        }
-        return null;
-    }
-
-    protected int ehCacheGetSize() {
-        if (useEhCache()) {
-            return cache.getSize();
-        }
-        return 0;
-    }
-
-    protected boolean ehCacheRemove(Serializable key) {
-        if (useEhCache()) {
-            return cache.remove(key);
-        }
-        return false;
-    }
-
-    protected void ehCacheRemoveAll() {
-        if (useEhCache()) {
-            cache.removeAll();
-        }
-    }
-
     /*
      * ----- Cache -----
      */
@@ -253,8 +231,7 @@ public class UnifiedCachingRowMapper implements RowMapper {
         if (row.isCollection() && row.values.length > 0 && row.values[0] instanceof ACLRow) {
             row.values = sortACLRows((ACLRow[]) row.values);
         }
-        Element element = new Element(new RowId(row), row);
-        ehCachePut(element);
+        rowCache.put(row, row);
     }
 
     protected ACLRow[] sortACLRows(ACLRow[] acls) {
@@ -265,8 +242,7 @@ public class UnifiedCachingRowMapper implements RowMapper {
     }
 
     protected void cachePutAbsent(RowId rowId) {
-        Element element = new Element(new RowId(rowId), new Row(ABSENT, (Serializable) null));
-        ehCachePut(element);
+        rowCache.put(rowId, new Row(ABSENT, (Serializable) null));
     }
 
     protected void cachePutAbsentIfNull(RowId rowId, Row row) {
@@ -288,11 +264,7 @@ public class UnifiedCachingRowMapper implements RowMapper {
     protected Row cacheGet(RowId rowId) {
         final Context context = cacheGetTimer.time();
         try {
-            Element element = ehCacheGet(rowId);
-            Row row = null;
-            if (element != null) {
-                row = (Row) element.getObjectValue();
-            }
+            Row row = rowCache.get(rowId);
             if (row != null && !isAbsent(row)) {
                 row = row.clone();
             }
@@ -306,7 +278,7 @@ public class UnifiedCachingRowMapper implements RowMapper {
     }
 
     protected void cacheRemove(RowId rowId) {
-        ehCacheRemove(rowId);
+        rowCache.remove(rowId);
     }
 
     /*
@@ -357,7 +329,7 @@ public class UnifiedCachingRowMapper implements RowMapper {
 
     @Override
     public void clearCache() {
-        ehCacheRemoveAll();
+        rowCache.removeAll();
         localInvalidations.clear();
         rowMapper.clearCache();
     }
@@ -367,7 +339,7 @@ public class UnifiedCachingRowMapper implements RowMapper {
         try {
             rowMapper.rollback(xid);
         } finally {
-            ehCacheRemoveAll();
+            rowCache.removeAll();
             localInvalidations.clear();
         }
     }
@@ -12,10 +12,13 @@
 
 package org.nuxeo.ecm.core.storage.sql.jdbc;
 
+import java.util.UUID;
+
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.nuxeo.ecm.core.storage.ConnectionResetException;
 import org.nuxeo.ecm.core.storage.StorageException;
+import org.nuxeo.ecm.core.storage.sql.ClusterInvalidator;
 import org.nuxeo.ecm.core.storage.sql.Invalidations;
 import org.nuxeo.ecm.core.storage.sql.InvalidationsPropagator;
 import org.nuxeo.ecm.core.storage.sql.InvalidationsQueue;
@@ -26,6 +29,9 @@ import org.nuxeo.ecm.core.storage.sql.RepositoryDescriptor;
  * Encapsulates cluster node operations.
  * <p>
  * There is one cluster node handler per cluster node (repository).
+ * <p>
+ * Invalidations are exchanged with the other cluster nodes either through a configured {@link ClusterInvalidator},
+ * which pushes them, or by default by polling the cluster invalidations table.
  */
 public class ClusterNodeHandler {
 
@@ -45,6 +51,13 @@ public class ClusterNodeHandler {
     /** Cluster node id, needed at the Java level for some databases. */
     private String nodeId;
 
+    /**
+     * Cluster invalidator pushing invalidations, or {@code null} if invalidations go through the database.
+     *
+     * @since 7.1
+     */
+    private final ClusterInvalidator clusterInvalidator;
+
     public ClusterNodeHandler(Mapper clusterNodeMapper, RepositoryDescriptor repositoryDescriptor)
             throws StorageException {
         this.clusterNodeMapper = clusterNodeMapper;
@@ -52,6 +65,25 @@ public class ClusterNodeHandler {
         clusteringDelay = repositoryDescriptor.getClusteringDelay();
         processClusterInvalidationsNext();
         propagator = new InvalidationsPropagator("cluster-" + this);
+        clusterInvalidator = createClusterInvalidator(repositoryDescriptor);
+    }
+
+    protected ClusterInvalidator createClusterInvalidator(RepositoryDescriptor repositoryDescriptor)
+            throws StorageException {
+        Class<? extends ClusterInvalidator> klass = repositoryDescriptor.clusterInvalidatorClass;
+        if (klass == null) {
+            return null;
+        }
+        ClusterInvalidator ci;
+        try {
+            ci = klass.newInstance();
+        } catch (ReflectiveOperationException e) {
+            throw new StorageException("Cannot instantiate cluster invalidator: " + klass.getName(), e);
+        }
+        // the database node id is null for most databases and changes on connection reset,
+        // so the invalidator gets its own unique node id
+        ci.initialize(UUID.randomUUID().toString(), repositoryDescriptor.name);
+        return ci;
     }
 
     public JDBCConnection getConnection() {
@@ -59,6 +91,9 @@ public class ClusterNodeHandler {
     }
 
     public void close() throws StorageException {
+        if (clusterInvalidator != null) {
+            clusterInvalidator.close();
+        }
         synchronized (clusterNodeMapper) {
             try {
                 clusterNodeMapper.removeClusterNode();
@@ -73,6 +108,7 @@ public class ClusterNodeHandler {
         synchronized (clusterNodeMapper) {
             // cannot remove, old connection is gone
             // create should do a cleanup anyway
+            // (the cluster invalidator has its own node id, unaffected)
             nodeId = clusterNodeMapper.createClusterNode();
             // but all invalidations queued for us have been lost
             // so reset all
@@ -110,6 +146,10 @@ public class ClusterNodeHandler {
      * Receives cluster invalidations from other cluster nodes.
      */
     public Invalidations receiveClusterInvalidations() throws StorageException {
+        if (clusterInvalidator != null) {
+            // pushed invalidations, no need to wait for the clustering delay
+            return clusterInvalidator.receiveInvalidations();
+        }
         synchronized (clusterNodeMapper) {
             if (clusterNodeLastInvalidationTimeMillis + clusteringDelay > System.currentTimeMillis()) {
                 // delay hasn't expired
@@ -134,6 +174,10 @@ public class ClusterNodeHandler {
         if (invalidations == null || invalidations.isEmpty()) {
             return;
         }
+        if (clusterInvalidator != null) {
+            clusterInvalidator.sendInvalidations(invalidations);
+            return;
+        }
         synchronized (clusterNodeMapper) {
             clusterNodeMapper.insertClusterInvalidations(invalidations, nodeId);
         }
@@ -56,6 +56,7 @@ import org.nuxeo.ecm.core.storage.sql.jdbc.SQLInfo.SQLInfoSelection;
 import org.nuxeo.ecm.core.storage.sql.jdbc.db.Column;
 import org.nuxeo.ecm.core.storage.sql.jdbc.db.Table;
 import org.nuxeo.ecm.core.storage.sql.jdbc.db.Update;
+import org.nuxeo.runtime.api.Framework;
 
 /**
  * A {@link JDBCRowMapper} maps {@link Row}s to and from a JDBC database.
@@ -66,6 +67,15 @@ public class JDBCRowMapper extends JDBCConnection implements RowMapper {
 
     public static final int DEBUG_MAX_TREE = 50;
 
+    /**
+     * Property used to disable the batched level-by-level copy of hierarchies, and fall back to a copy node by node.
+     *
+     * @since 7.1
+     */
+    public static final String COPY_BATCHED_PROP = "org.nuxeo.vcs.copy.batched";
+
+    public static final String COPY_BATCHED_DEFAULT = "true";
+
     /**
      * Cluster node handler, or {@code null} if this {@link Mapper} is not the cluster node mapper.
      */
@@ -1014,8 +1024,14 @@ public class JDBCRowMapper extends JDBCConnection implements RowMapper {
             }
             // create the new hierarchy by copy
             boolean resetVersion = destParentId != null;
-            Serializable newRootId = copyHierRecursive(source, destParentId, destName, overwriteId, resetVersion,
-                    idMap, idToTypes);
+            Serializable newRootId;
+            if (isCopyBatched()) {
+                newRootId = copyHierByLevel(source, destParentId, destName, overwriteId, resetVersion, idMap,
+                        idToTypes);
+            } else {
+                newRootId = copyHierRecursive(source, destParentId, destName, overwriteId, resetVersion, idMap,
+                        idToTypes);
+            }
             // invalidate children
             Serializable invalParentId = overwriteId == null ? destParentId : overwriteId;
             if (invalParentId != null) { // null for a new version
@@ -1059,6 +1075,16 @@ public class JDBCRowMapper extends JDBCConnection implements RowMapper {
         }
     }
 
+    /**
+     * Checks if copies are done one hierarchy level at a time using batched statements.
+     *
+     * @since 7.1
+     */
+    protected boolean isCopyBatched() {
+        return supportsBatchUpdates
+                && Boolean.parseBoolean(Framework.getProperty(COPY_BATCHED_PROP, COPY_BATCHED_DEFAULT));
+    }
+
     /**
      * Updates a row in the database with given explicit values.
      */
@@ -1105,7 +1131,7 @@ public class JDBCRowMapper extends JDBCConnection implements RowMapper {
      * {@code idMap} is filled with info about the correspondence between original and copied ids. {@code idType} is
      * filled with the type of each (source) fragment.
      * <p>
-     * TODO: this should be optimized to use a stored procedure.
+     * This issues two statements per copied node, see {@link #copyHierByLevel} for the batched version.
      *
      * @param overwriteId when not {@code null}, the copy is done onto this existing node (skipped)
      * @return the new root id
@@ -1129,6 +1155,50 @@ public class JDBCRowMapper extends JDBCConnection implements RowMapper {
         return newId;
     }
 
+    /**
+     * Copies hierarchy from id to parentId, one level at a time.
+     * <p>
+     * Instead of walking the tree node by node like {@link #copyHierRecursive}, all the children of a given level are
+     * fetched with a few {@code IN} queries and copied with a single batched statement, so the number of round trips
+     * is proportional to the depth of the tree and not to its size.
+     * <p>
+     * {@code idMap} and {@code idToTypes} are filled as for {@link #copyHierRecursive}.
+     *
+     * @param overwriteId when not {@code null}, the copy is done onto this existing node (skipped)
+     * @return the new root id
+     * @since 7.1
+     */
+    protected Serializable copyHierByLevel(IdWithTypes source, Serializable parentId, String name,
+            Serializable overwriteId, boolean resetVersion, Map<Serializable, Serializable> idMap,
+            Map<Serializable, IdWithTypes> idToTypes) throws SQLException {
+        idToTypes.put(source.id, source);
+        Serializable newId;
+        if (overwriteId == null) {
+            newId = copyHier(source.id, parentId, name, resetVersion, idMap);
+        } else {
+            newId = overwriteId;
+            idMap.put(source.id, newId);
+        }
+        // only the first level is restricted to complex children, as in copyHierRecursive
+        boolean onlyComplex = parentId == null;
+        List<Serializable> parentIds = Collections.singletonList(source.id);
+        while (!parentIds.isEmpty()) {
+            Map<Serializable, Serializable> childToParent = new HashMap<Serializable, Serializable>();
+            List<IdWithTypes> children = getChildrenIdsWithTypes(parentIds, onlyComplex, childToParent);
+            if (children.isEmpty()) {
+                break;
+            }
+            copyHierLevel(children, childToParent, resetVersion, idMap);
+            parentIds = new ArrayList<Serializable>(children.size());
+            for (IdWithTypes child : children) {
+                idToTypes.put(child.id, child);
+                parentIds.add(child.id);
+            }
+            onlyComplex = false;
+        }
+        return newId;
+    }
+
     /**
      * Copies hierarchy from id to a new child of parentId.
      * <p>
@@ -1147,41 +1217,8 @@ public class JDBCRowMapper extends JDBCConnection implements RowMapper {
         PreparedStatement ps = connection.prepareStatement(copy.sql);
         try {
             Serializable newId = generateNewIdInternal();
-
-            List<Serializable> debugValues = null;
-            if (logger.isLogEnabled()) {
-                debugValues = new ArrayList<Serializable>(4);
-            }
-            int i = 1;
-            for (Column column : copy.whatColumns) {
-                String key = column.getKey();
-                Serializable v;
-                if (key.equals(model.HIER_PARENT_KEY)) {
-                    v = parentId;
-                } else if (key.equals(model.HIER_CHILD_NAME_KEY)) {
-                    // present if name explicitely set (first iteration)
-                    v = name;
-                } else if (key.equals(model.MAIN_KEY)) {
-                    // present if APP_UUID generation
-                    v = newId;
-                } else if (key.equals(model.MAIN_BASE_VERSION_KEY) || key.equals(model.MAIN_CHECKED_IN_KEY)) {
-                    v = null;
-                } else if (key.equals(model.MAIN_MINOR_VERSION_KEY) || key.equals(model.MAIN_MAJOR_VERSION_KEY)) {
-                    // present if reset version (regular copy, not checkin)
-                    v = null;
-                } else {
-                    throw new RuntimeException(column.toString());
-                }
-                column.setToPreparedStatement(ps, i++, v);
-                if (debugValues != null) {
-                    debugValues.add(v);
-                }
-            }
-            // last parameter is for 'WHERE "id" = ?'
-            Column whereColumn = copy.whereColumns.get(0);
-            whereColumn.setToPreparedStatement(ps, i, id);
+            List<Serializable> debugValues = setCopyHierValues(ps, copy, id, parentId, name, newId);
             if (debugValues != null) {
-                debugValues.add(id);
                 logger.logSQL(copy.sql, debugValues);
             }
             int count = ps.executeUpdate();
@@ -1198,6 +1235,92 @@ public class JDBCRowMapper extends JDBCConnection implements RowMapper {
         }
     }
 
+    /**
+     * Sets the parameters of a {@link SQLInfo#getCopyHier} statement.
+     *
+     * @return the values set, for debug, or {@code null} if logging is not enabled
+     * @since 7.1
+     */
+    protected List<Serializable> setCopyHierValues(PreparedStatement ps, SQLInfoSelect copy, Serializable id,
+            Serializable parentId, String name, Serializable newId) throws SQLException {
+        List<Serializable> debugValues = null;
+        if (logger.isLogEnabled()) {
+            debugValues = new ArrayList<Serializable>(4);
+        }
+        int i = 1;
+        for (Column column : copy.whatColumns) {
+            String key = column.getKey();
+            Serializable v;
+            if (key.equals(model.HIER_PARENT_KEY)) {
+                v = parentId;
+            } else if (key.equals(model.HIER_CHILD_NAME_KEY)) {
+                // present if name explicitely set (first iteration)
+                v = name;
+            } else if (key.equals(model.MAIN_KEY)) {
+                // present if APP_UUID generation
+                v = newId;
+            } else if (key.equals(model.MAIN_BASE_VERSION_KEY) || key.equals(model.MAIN_CHECKED_IN_KEY)) {
+                v = null;
+            } else if (key.equals(model.MAIN_MINOR_VERSION_KEY) || key.equals(model.MAIN_MAJOR_VERSION_KEY)) {
+                // present if reset version (regular copy, not checkin)
+                v = null;
+            } else {
+                throw new RuntimeException(column.toString());
+            }
+            column.setToPreparedStatement(ps, i++, v);
+            if (debugValues != null) {
+                debugValues.add(v);
+            }
+        }
+        // last parameter is for 'WHERE "id" = ?'
+        Column whereColumn = copy.whereColumns.get(0);
+        whereColumn.setToPreparedStatement(ps, i, id);
+        if (debugValues != null) {
+            debugValues.add(id);
+        }
+        return debugValues;
+    }
+
+    /**
+     * Copies one level of hierarchy, each child being copied under the copy of its parent.
+     * <p>
+     * All the copies are done with a single batched statement.
+     *
+     * @param children the children to copy
+     * @param childToParent the map of child id to (source) parent id
+     * @since 7.1
+     */
+    protected void copyHierLevel(List<IdWithTypes> children, Map<Serializable, Serializable> childToParent,
+            boolean resetVersion, Map<Serializable, Serializable> idMap) throws SQLException {
+        SQLInfoSelect copy = sqlInfo.getCopyHier(false, resetVersion);
+        String loggedSql = children.size() > 1 ? copy.sql + " -- BATCHED" : copy.sql;
+        PreparedStatement ps = connection.prepareStatement(copy.sql);
+        try {
+            int batch = 0;
+            for (IdWithTypes child : children) {
+                batch++;
+                Serializable newParentId = idMap.get(childToParent.get(child.id));
+                Serializable newId = generateNewIdInternal();
+                List<Serializable> debugValues = setCopyHierValues(ps, copy, child.id, newParentId, null, newId);
+                if (debugValues != null) {
+                    logger.logSQL(loggedSql, debugValues);
+                }
+                ps.addBatch();
+                if (batch % UPDATE_BATCH_SIZE == 0) {
+                    logger.logCounts(ps.executeBatch());
+                    countExecute();
+                }
+                idMap.put(child.id, newId);
+            }
+            if (batch % UPDATE_BATCH_SIZE != 0) {
+                logger.logCounts(ps.executeBatch());
+                countExecute();
+            }
+        } finally {
+            closeStatement(ps);
+        }
+    }
+
     /**
      * Gets the children ids and types of a node.
      */
@@ -1247,6 +1370,71 @@ public class JDBCRowMapper extends JDBCConnection implements RowMapper {
         }
     }
 
+    /**
+     * Gets the children ids and types of several nodes.
+     * <p>
+     * The queries are chunked according to the maximum number of arguments for an {@code IN} clause.
+     *
+     * @param childToParent filled with the parent id of each child
+     * @since 7.1
+     */
+    protected List<IdWithTypes> getChildrenIdsWithTypes(List<Serializable> ids, boolean onlyComplex,
+            Map<Serializable, Serializable> childToParent) throws SQLException {
+        List<IdWithTypes> children = new ArrayList<IdWithTypes>();
+        int size = ids.size();
+        int chunkSize = sqlInfo.getMaximumArgsForIn();
+        for (int start = 0; start < size; start += chunkSize) {
+            int end = start + chunkSize;
+            if (end > size) {
+                end = size;
+            }
+            List<Serializable> chunkIds = ids.subList(start, end);
+            SQLInfoSelect select = sqlInfo.getSelectChildrenIdsAndTypesByParentIds(chunkIds.size(), onlyComplex);
+            if (logger.isLogEnabled()) {
+                logger.logSQL(select.sql, chunkIds);
+            }
+            PreparedStatement ps = connection.prepareStatement(select.sql);
+            try {
+                int i = 1;
+                for (Serializable id : chunkIds) {
+                    dialect.setId(ps, i++, id); // parent id
+                }
+                ResultSet rs = ps.executeQuery();
+                countExecute();
+                int n = 0;
+                while (rs.next()) {
+                    Serializable childId = null;
+                    String childPrimaryType = null;
+                    String[] childMixinTypes = null;
+                    Serializable parentId = null;
+                    i = 1;
+                    for (Column column : select.whatColumns) {
+                        String key = column.getKey();
+                        Serializable value = column.getFromResultSet(rs, i++);
+                        if (key.equals(model.MAIN_KEY)) {
+                            childId = value;
+                        } else if (key.equals(model.MAIN_PRIMARY_TYPE_KEY)) {
+                            childPrimaryType = (String) value;
+                        } else if (key.equals(model.MAIN_MIXIN_TYPES_KEY)) {
+                            childMixinTypes = (String[]) value;
+                        } else if (key.equals(model.HIER_PARENT_KEY)) {
+                            parentId = value;
+                        }
+                    }
+                    children.add(new IdWithTypes(childId, childPrimaryType, childMixinTypes));
+                    childToParent.put(childId, parentId);
+                    n++;
+                }
+                if (logger.isLogEnabled()) {
+                    logger.logCount(n);
+                }
+            } finally {
+                closeStatement(ps);
+            }
+        }
+        return children;
+    }
+
     /**
      * Copy the rows from tableName with given ids into new ones with new ids given by idMap.
      * <p>
@@ -1266,6 +1454,9 @@ public class JDBCRowMapper extends JDBCConnection implements RowMapper {
         try {
             boolean before = false;
             boolean after = false;
+            boolean batched = supportsBatchUpdates && ids.size() > 1;
+            String loggedSql = batched ? copySql + " -- BATCHED" : copySql;
+            int batch = 0;
             for (Serializable id : ids) {
                 Serializable newId = idMap.get(id);
                 boolean overwrite = newId.equals(overwriteId);
@@ -1282,15 +1473,32 @@ public class JDBCRowMapper extends JDBCConnection implements RowMapper {
                 }
                 copyIdColumn.setToPreparedStatement(copyPs, 1, newId);
                 copyIdColumn.setToPreparedStatement(copyPs, 2, id);
-                if (logger.isLogEnabled()) {
-                    logger.logSQL(copySql, Arrays.asList(newId, id));
+                if (overwrite || !batched) {
+                    // we need the count for the overwritten row
+                    if (logger.isLogEnabled()) {
+                        logger.logSQL(copySql, Arrays.asList(newId, id));
+                    }
+                    int copyCount = copyPs.executeUpdate();
+                    countExecute();
+                    logger.logCount(copyCount);
+                    if (overwrite) {
+                        after = copyCount > 0;
+                    }
+                } else {
+                    if (logger.isLogEnabled()) {
+                        logger.logSQL(loggedSql, Arrays.asList(newId, id));
+                    }
+                    copyPs.addBatch();
+                    batch++;
+                    if (batch % UPDATE_BATCH_SIZE == 0) {
+                        logger.logCounts(copyPs.executeBatch());
+                        countExecute();
+                    }
                 }
-                int copyCount = copyPs.executeUpdate();
+            }
+            if (batch % UPDATE_BATCH_SIZE != 0) {
+                logger.logCounts(copyPs.executeBatch());
                 countExecute();
-                logger.logCount(copyCount);
-                if (overwrite) {
-                    after = copyCount > 0;
-                }
             }
             // * , n -> mod (TRUE)
             // n , 0 -> del (FALSE)
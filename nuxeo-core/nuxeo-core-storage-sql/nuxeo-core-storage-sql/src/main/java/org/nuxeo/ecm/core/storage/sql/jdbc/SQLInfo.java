@@ -392,6 +392,50 @@ public class SQLInfo {
                 Collections.singletonList(whereColumn), null);
     }
 
+    /**
+     * Select children ids, types and parent ids for several parents.
+     * <p>
+     * Used to walk a hierarchy one level at a time instead of one node at a time.
+     *
+     * @param nids the number of parent ids
+     * @param onlyComplex whether to only return complex properties
+     * @since 7.1
+     */
+    public SQLInfoSelect getSelectChildrenIdsAndTypesByParentIds(int nids, boolean onlyComplex) {
+        String tableName = model.HIER_TABLE_NAME;
+        Table table = database.getTable(tableName);
+        List<Column> whatColumns = new ArrayList<Column>(4);
+        List<String> whats = new ArrayList<String>(4);
+        for (String key : Arrays.asList(model.MAIN_KEY, model.MAIN_PRIMARY_TYPE_KEY, model.MAIN_MIXIN_TYPES_KEY,
+                model.HIER_PARENT_KEY)) {
+            Column column = table.getColumn(key);
+            whatColumns.add(column);
+            whats.add(column.getQuotedName());
+        }
+        Column whereColumn = table.getColumn(model.HIER_PARENT_KEY);
+        StringBuilder wherebuf = new StringBuilder(whereColumn.getQuotedName());
+        wherebuf.append(" IN (");
+        for (int i = 0; i < nids; i++) {
+            if (i != 0) {
+                wherebuf.append(", ");
+            }
+            wherebuf.append('?');
+        }
+        wherebuf.append(')');
+        wherebuf.append(getSoftDeleteClause(tableName));
+        if (onlyComplex) {
+            wherebuf.append(" AND ");
+            wherebuf.append(table.getColumn(model.HIER_CHILD_ISPROPERTY_KEY).getQuotedName());
+            wherebuf.append(" = ");
+            wherebuf.append(dialect.toBooleanValueString(true));
+        }
+        Select select = new Select(table);
+        select.setWhat(StringUtils.join(whats, ", "));
+        select.setFrom(table.getQuotedName());
+        select.setWhere(wherebuf.toString());
+        return new SQLInfoSelect(select.getStatement(), whatColumns, Collections.singletonList(whereColumn), null);
+    }
+
     // ----- delete -----
 
     /**
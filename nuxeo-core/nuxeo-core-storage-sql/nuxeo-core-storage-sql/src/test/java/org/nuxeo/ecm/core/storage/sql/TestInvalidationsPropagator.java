@@ -0,0 +1,169 @@
+/*
+ * Copyright (c) 2014 Nuxeo SA (http://nuxeo.com/) and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Florent Guillaume
+ */
+package org.nuxeo.ecm.core.storage.sql;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.junit.Ignore;
+import org.junit.Test;
+
+public class TestInvalidationsPropagator {
+
+    private static final Log log = LogFactory.getLog(TestInvalidationsPropagator.class);
+
+    protected static Invalidations modified(String id) {
+        Invalidations invalidations = new Invalidations();
+        invalidations.addModified(new RowId("hierarchy", id));
+        return invalidations;
+    }
+
+    @Test
+    public void testPropagate() throws Exception {
+        InvalidationsPropagator propagator = new InvalidationsPropagator("test");
+        InvalidationsQueue q1 = new InvalidationsQueue("q1");
+        InvalidationsQueue q2 = new InvalidationsQueue("q2");
+        propagator.addQueue(q1);
+
+        // sent before q2 is added
+        propagator.propagateInvalidations(modified("a"), null);
+        propagator.addQueue(q2);
+        // skipped for q1
+        Invalidations invalidations = modified("b");
+        propagator.propagateInvalidations(invalidations, q1);
+        // reuse by the caller doesn't change what's propagated
+        invalidations.addModified(new RowId("hierarchy", "c"));
+        // direct add
+        q2.addInvalidations(modified("d"));
+
+        Invalidations i1 = q1.getInvalidations();
+        assertEquals(Collections.singleton(new RowId("hierarchy", "a")), i1.modified);
+        Invalidations i2 = q2.getInvalidations();
+        assertEquals(2, i2.modified.size());
+        assertTrue(i2.modified.contains(new RowId("hierarchy", "b")));
+        assertTrue(i2.modified.contains(new RowId("hierarchy", "d")));
+
+        // everything was consumed
+        assertTrue(q1.getInvalidations().isEmpty());
+        assertTrue(q2.getInvalidations().isEmpty());
+
+        // removed queue doesn't receive anymore
+        propagator.removeQueue(q2);
+        propagator.propagateInvalidations(modified("e"), null);
+        assertTrue(q2.getInvalidations().isEmpty());
+        assertFalse(q1.getInvalidations().isEmpty());
+    }
+
+    @Test
+    public void testLaggingQueue() throws Exception {
+        InvalidationsPropagator propagator = new InvalidationsPropagator("test");
+        InvalidationsQueue q1 = new InvalidationsQueue("q1");
+        InvalidationsQueue q2 = new InvalidationsQueue("q2");
+        propagator.addQueue(q1);
+        propagator.addQueue(q2);
+        int n = InvalidationsPropagator.MAX_LAG + 2 * InvalidationsPropagator.LAG_CHECK_INTERVAL;
+        for (int i = 0; i < n; i++) {
+            propagator.propagateInvalidations(modified("id" + i), null);
+            // q1 keeps up
+            assertFalse(q1.getInvalidations().all);
+        }
+        // q2 was fully invalidated
+        Invalidations i2 = q2.getInvalidations();
+        assertTrue(i2.all);
+        assertNull(i2.modified);
+    }
+
+    @Test
+    public void testCompactInvalidations() throws Exception {
+        Invalidations invalidations = new Invalidations();
+        RowId rowId = new RowId("hierarchy", "a");
+        invalidations.addModified(rowId);
+        invalidations.addDeleted(new RowId("dublincore", "b"));
+        CompactInvalidations compact = new CompactInvalidations(invalidations);
+        assertFalse(compact.isEmpty());
+        // independent of later changes
+        invalidations.clear();
+
+        Invalidations target = new Invalidations();
+        target.addModified(new RowId("hierarchy", "c"));
+        compact.addTo(target);
+        assertEquals(2, target.modified.size());
+        assertTrue(target.modified.contains(rowId));
+        assertEquals(Collections.singleton(new RowId("dublincore", "b")), target.deleted);
+        // row ids are shared, not reallocated
+        Invalidations target2 = new Invalidations();
+        compact.addTo(target2);
+        assertSame(rowId, target2.modified.iterator().next());
+
+        assertTrue(new CompactInvalidations(new Invalidations()).isEmpty());
+        new CompactInvalidations(new Invalidations(true)).addTo(target);
+        assertTrue(target.all);
+        assertNull(target.modified);
+    }
+
+    @Test
+    @Ignore("benchmark")
+    public void testPropagateUnderContention() throws Exception {
+        final InvalidationsPropagator propagator = new InvalidationsPropagator("test");
+        int nqueues = 400;
+        final int nthreads = 8;
+        final int npropagations = 10000;
+        final List<InvalidationsQueue> queues = new ArrayList<InvalidationsQueue>(nqueues);
+        for (int i = 0; i < nqueues; i++) {
+            InvalidationsQueue queue = new InvalidationsQueue("q" + i);
+            queues.add(queue);
+            propagator.addQueue(queue);
+        }
+        final CountDownLatch done = new CountDownLatch(nthreads);
+        final AtomicLong received = new AtomicLong();
+        long t0 = System.currentTimeMillis();
+        for (int t = 0; t < nthreads; t++) {
+            final int tt = t;
+            new Thread() {
+                @Override
+                public void run() {
+                    for (int i = 0; i < npropagations; i++) {
+                        Invalidations invalidations = new Invalidations();
+                        for (int j = 0; j < 10; j++) {
+                            invalidations.addModified(new RowId("hierarchy", tt + "-" + i + "-" + j));
+                        }
+                        InvalidationsQueue queue = queues.get((tt * npropagations + i) % queues.size());
+                        propagator.propagateInvalidations(invalidations, queue);
+                        // each session starts a transaction after its save
+                        Invalidations got = queue.getInvalidations();
+                        if (got.modified != null) {
+                            received.addAndGet(got.modified.size());
+                        }
+                    }
+                    done.countDown();
+                }
+            }.start();
+        }
+        done.await();
+        long t1 = System.currentTimeMillis();
+        log.warn(String.format("%d propagations to %d queues from %d threads: %d ms, %d invalidations received",
+                Integer.valueOf(nthreads * npropagations), Integer.valueOf(nqueues), Integer.valueOf(nthreads),
+                Long.valueOf(t1 - t0), Long.valueOf(received.get())));
+    }
+
+}
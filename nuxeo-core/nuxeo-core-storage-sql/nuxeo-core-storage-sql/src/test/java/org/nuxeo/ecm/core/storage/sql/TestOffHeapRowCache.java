@@ -0,0 +1,149 @@
+/*
+ * Copyright (c) 2014 Nuxeo SA (http://nuxeo.com/) and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Florent Guillaume
+ */
+package org.nuxeo.ecm.core.storage.sql;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.Serializable;
+import java.util.Calendar;
+import java.util.GregorianCalendar;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TimeZone;
+
+import org.junit.Test;
+
+public class TestOffHeapRowCache {
+
+    protected static OffHeapRowCache newCache(long maxBytes, int segments) {
+        Map<String, String> properties = new HashMap<String, String>();
+        properties.put(OffHeapRowCache.MAX_BYTES_PROP, String.valueOf(maxBytes));
+        properties.put(OffHeapRowCache.SEGMENTS_PROP, String.valueOf(segments));
+        OffHeapRowCache cache = new OffHeapRowCache();
+        cache.initialize("test", properties);
+        return cache;
+    }
+
+    @Test
+    public void testCodec() throws Exception {
+        Calendar cal = new GregorianCalendar(TimeZone.getTimeZone("Europe/Paris"));
+        cal.setTimeInMillis(1234567890000L);
+        Row row = new Row("dublincore", "id1");
+        row.putNew("title", "hello");
+        row.putNew("count", Long.valueOf(123));
+        row.putNew("flag", Boolean.TRUE);
+        row.putNew("modified", cal);
+        row.putNew("nothing", null);
+        row.putNew("subjects", new String[] { "a", "b" });
+        Row row2 = RowCodec.decode(RowCodec.encode(row));
+        assertEquals("dublincore", row2.tableName);
+        assertEquals("id1", row2.id);
+        assertEquals("hello", row2.get("title"));
+        assertEquals(Long.valueOf(123), row2.get("count"));
+        assertEquals(Boolean.TRUE, row2.get("flag"));
+        assertEquals(cal, row2.get("modified"));
+        assertNull(row2.get("nothing"));
+        assertArrayEquals(new String[] { "a", "b" }, (String[]) row2.get("subjects"));
+
+        // collection
+        ACLRow acl = new ACLRow(0, "local", true, "Read", "bob", null);
+        row = new Row("acls", "id2", new ACLRow[] { acl });
+        row2 = RowCodec.decode(RowCodec.encode(row));
+        assertTrue(row2.isCollection());
+        ACLRow acl2 = ((ACLRow[]) row2.values)[0];
+        assertEquals(acl.toString(), acl2.toString());
+
+        // absent marker identity is kept
+        row = new Row("__ABSENT__\0\0\0", (Serializable) null);
+        row2 = RowCodec.decode(RowCodec.encode(row));
+        assertTrue(UnifiedCachingRowMapper.isAbsent(row2));
+    }
+
+    @Test
+    public void testBasic() throws Exception {
+        OffHeapRowCache cache = newCache(1024 * 1024, 4);
+        RowId rowId = new RowId("dublincore", "id1");
+        assertNull(cache.get(rowId));
+        Row row = new Row("dublincore", "id1");
+        row.putNew("title", "hello");
+        cache.put(rowId, row);
+        assertEquals(1, cache.getSize());
+        Row row2 = cache.get(rowId);
+        assertNotNull(row2);
+        assertEquals("hello", row2.get("title"));
+        // replace
+        row.put("title", "bye");
+        cache.put(rowId, row);
+        assertEquals(1, cache.getSize());
+        assertEquals("bye", cache.get(rowId).get("title"));
+        cache.remove(rowId);
+        assertNull(cache.get(rowId));
+        assertEquals(0, cache.getSize());
+        cache.put(rowId, row);
+        cache.removeAll();
+        assertEquals(0, cache.getSize());
+        cache.close();
+    }
+
+    @Test
+    public void testEviction() throws Exception {
+        // one segment with a single page of 64k
+        OffHeapRowCache cache = newCache(64 * 1024, 1);
+        int n = 5000;
+        for (int i = 0; i < n; i++) {
+            Row row = new Row("dublincore", "id" + i);
+            row.putNew("title", "title" + i);
+            cache.put(new RowId(row), row);
+            if (i > 0) {
+                // keep the first one recently used
+                assertNotNull(cache.get(new RowId("dublincore", "id0")));
+            }
+        }
+        long size = cache.getSize();
+        assertTrue(String.valueOf(size), size < n);
+        assertTrue(String.valueOf(size), size > 0);
+        // first one was kept, an early one was evicted
+        assertNotNull(cache.get(new RowId("dublincore", "id0")));
+        assertNull(cache.get(new RowId("dublincore", "id1")));
+        // last one is present
+        Row row = cache.get(new RowId("dublincore", "id" + (n - 1)));
+        assertEquals("title" + (n - 1), row.get("title"));
+        cache.close();
+    }
+
+    @Test
+    public void testCloseRowCache() throws Exception {
+        Map<String, String> properties = new HashMap<String, String>();
+        properties.put(UnifiedCachingRowMapper.ROW_CACHE_CLASS_PROP, OffHeapRowCache.class.getName());
+        properties.put(OffHeapRowCache.MAX_BYTES_PROP, String.valueOf(1024 * 1024));
+        RowCache cache = UnifiedCachingRowMapper.getRowCache("testclose", properties);
+        assertSame(cache, UnifiedCachingRowMapper.getRowCache("testclose", properties));
+        Row row = new Row("dublincore", "id1");
+        cache.put(new RowId(row), row);
+        assertEquals(1, UnifiedCachingRowMapper.getRowCacheSize("testclose"));
+
+        // closing the repository releases the cache
+        UnifiedCachingRowMapper.closeRowCache("testclose");
+        assertEquals(0, UnifiedCachingRowMapper.getRowCacheSize("testclose"));
+        RowCache cache2 = UnifiedCachingRowMapper.getRowCache("testclose", properties);
+        assertNotSame(cache, cache2);
+        assertEquals(0, cache2.getSize());
+        UnifiedCachingRowMapper.closeRowCache("testclose");
+    }
+
+}
@@ -13,6 +13,8 @@
 package org.nuxeo.ecm.core.storage;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.LinkedList;
 import java.util.List;
 
@@ -30,6 +32,7 @@ import org.nuxeo.ecm.core.convert.api.ConversionService;
 import org.nuxeo.ecm.core.storage.FulltextUpdaterWork.IndexAndText;
 import org.nuxeo.ecm.core.utils.BlobsExtractor;
 import org.nuxeo.ecm.core.work.AbstractWork;
+import org.nuxeo.ecm.core.work.api.CoalescingWork;
 import org.nuxeo.ecm.core.work.api.Work;
 import org.nuxeo.ecm.core.work.api.WorkManager;
 import org.nuxeo.runtime.api.Framework;
@@ -41,10 +44,13 @@ import org.nuxeo.runtime.api.Framework;
  * <p>
  * This base abstract class must be subclassed in order to implement the proper
  * {@link #initFulltextConfigurationAndParser} depending on the storage.
+ * <p>
+ * When scheduled to a queue with coalescing enabled, the extractions of several documents of the same repository are
+ * merged into a single work instance, up to {@link #MAX_COALESCED_DOCUMENTS} documents.
  *
  * @since 5.7
  */
-public abstract class FulltextExtractorWork extends AbstractWork {
+public abstract class FulltextExtractorWork extends AbstractWork implements CoalescingWork {
 
     private static final long serialVersionUID = 1L;
 
@@ -56,6 +62,13 @@ public abstract class FulltextExtractorWork extends AbstractWork {
 
     protected static final String TITLE = "fulltextExtractor";
 
+    /**
+     * Maximum number of documents processed by a single work instance after merges.
+     *
+     * @since 7.1
+     */
+    public static final int MAX_COALESCED_DOCUMENTS = 100;
+
     protected final boolean excludeProxies;
 
     protected transient FulltextConfiguration fulltextConfiguration;
@@ -91,7 +104,14 @@ public abstract class FulltextExtractorWork extends AbstractWork {
 
         setStatus("Extracting");
         setProgress(Progress.PROGRESS_0_PC);
-        extractBinaryText();
+        if (docIds == null) {
+            extractBinaryText();
+        } else {
+            for (int i = 0; i < docIds.size(); i++) {
+                extractBinaryText(docIds.get(i));
+                setProgress(new Progress(100F * (i + 1) / docIds.size()));
+            }
+        }
         setProgress(Progress.PROGRESS_100_PC);
         setStatus("Done");
     }
@@ -103,7 +123,56 @@ public abstract class FulltextExtractorWork extends AbstractWork {
      */
     public abstract void initFulltextConfigurationAndParser();
 
+    @Override
+    public String getCoalesceKey() {
+        return getClass().getName() + ':' + repositoryName;
+    }
+
+    /**
+     * Merges the documents of another extraction work of the same repository into this one, ignoring those already
+     * present.
+     *
+     * @since 7.1
+     */
+    @Override
+    public boolean merge(CoalescingWork other) {
+        if (other.getClass() != getClass()) {
+            return false;
+        }
+        FulltextExtractorWork work = (FulltextExtractorWork) other;
+        if (!repositoryName.equals(work.repositoryName) || excludeProxies != work.excludeProxies) {
+            return false;
+        }
+        List<String> ids = new ArrayList<String>(getDocumentIds());
+        for (String id : work.getDocumentIds()) {
+            if (!ids.contains(id)) {
+                if (ids.size() >= MAX_COALESCED_DOCUMENTS) {
+                    return false;
+                }
+                ids.add(id);
+            }
+        }
+        setDocuments(repositoryName, ids);
+        return true;
+    }
+
+    protected List<String> getDocumentIds() {
+        if (docIds != null) {
+            return docIds;
+        }
+        return docId == null ? Collections.<String> emptyList() : Collections.singletonList(docId);
+    }
+
     protected void extractBinaryText() throws ClientException {
+        extractBinaryText(docId);
+    }
+
+    /**
+     * Extracts the fulltext of the blobs of a given document.
+     *
+     * @since 7.1
+     */
+    protected void extractBinaryText(String docId) throws ClientException {
         IdRef docRef = new IdRef(docId);
         if (!session.exists(docRef)) {
             // doc is gone
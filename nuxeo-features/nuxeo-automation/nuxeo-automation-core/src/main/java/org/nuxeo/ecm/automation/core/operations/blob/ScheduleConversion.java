@@ -0,0 +1,81 @@
+/*
+ * (C) Copyright 2014 Nuxeo SA (http://nuxeo.com/) and contributors.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser General Public License
+ * (LGPL) version 2.1 which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl-2.1.html
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * Contributors:
+ *     Nuxeo
+ */
+package org.nuxeo.ecm.automation.core.operations.blob;
+
+import java.io.Serializable;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import org.nuxeo.ecm.automation.OperationException;
+import org.nuxeo.ecm.automation.core.Constants;
+import org.nuxeo.ecm.automation.core.annotations.Context;
+import org.nuxeo.ecm.automation.core.annotations.Operation;
+import org.nuxeo.ecm.automation.core.annotations.OperationMethod;
+import org.nuxeo.ecm.automation.core.annotations.Param;
+import org.nuxeo.ecm.automation.core.util.Properties;
+import org.nuxeo.ecm.core.api.Blob;
+import org.nuxeo.ecm.core.api.blobholder.BlobHolder;
+import org.nuxeo.ecm.core.api.blobholder.SimpleBlobHolder;
+import org.nuxeo.ecm.core.convert.api.ConversionService;
+
+/**
+ * Schedules the asynchronous conversion of a blob, and returns the conversion id.
+ * <p>
+ * The status and result of the conversion can then be polled through the {@code conversion} REST endpoint.
+ *
+ * @since 7.1
+ */
+@Operation(id = ScheduleConversion.ID, category = Constants.CAT_CONVERSION, label = "Schedule Conversion", description = "Schedule the asynchronous conversion of the input blob, using the converter given by the 'converter' parameter, or else the converter to the 'mimeType' parameter. Return the conversion id, to be used to poll the status and get the result of the conversion.", since = "7.1")
+public class ScheduleConversion {
+
+    public static final String ID = "Blob.ScheduleConversion";
+
+    @Param(name = "converter", description = "The name of the converter to call", required = false)
+    protected String converter;
+
+    @Param(name = "mimeType", description = "The destination mime type, when no converter is given", required = false)
+    protected String mimeType;
+
+    @Param(name = "parameters", description = "The converter parameters to pass", required = false)
+    protected Properties parameters;
+
+    @Context
+    protected ConversionService conversionService;
+
+    @OperationMethod
+    public String run(Blob blob) throws OperationException {
+        BlobHolder holder = new SimpleBlobHolder(blob);
+        if (converter != null) {
+            return conversionService.scheduleConversion(converter, holder, propertiesToMap());
+        } else if (mimeType != null) {
+            return conversionService.scheduleConversionToMimeType(mimeType, holder, propertiesToMap());
+        }
+        throw new OperationException("A converter or a destination mime type is required");
+    }
+
+    protected Map<String, Serializable> propertiesToMap() {
+        Map<String, Serializable> params = new HashMap<>();
+        if (parameters != null) {
+            for (Entry<String, String> entry : parameters.entrySet()) {
+                params.put(entry.getKey(), entry.getValue());
+            }
+        }
+        return params;
+    }
+
+}
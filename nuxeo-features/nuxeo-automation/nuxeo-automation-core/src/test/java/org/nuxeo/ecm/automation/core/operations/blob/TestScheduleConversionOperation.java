@@ -0,0 +1,119 @@
+/*
+ * (C) Copyright 2014 Nuxeo SA (http://nuxeo.com/) and contributors.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser General Public License
+ * (LGPL) version 2.1 which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl-2.1.html
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * Contributors:
+ *     Nuxeo
+ */
+package org.nuxeo.ecm.automation.core.operations.blob;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.nuxeo.ecm.automation.AutomationService;
+import org.nuxeo.ecm.automation.OperationContext;
+import org.nuxeo.ecm.automation.OperationException;
+import org.nuxeo.ecm.core.api.Blob;
+import org.nuxeo.ecm.core.api.CoreSession;
+import org.nuxeo.ecm.core.api.impl.blob.StringBlob;
+import org.nuxeo.ecm.core.convert.api.ConversionService;
+import org.nuxeo.ecm.core.convert.api.ConversionStatus;
+import org.nuxeo.ecm.core.convert.cache.ConversionCacheHolder;
+import org.nuxeo.ecm.core.test.CoreFeature;
+import org.nuxeo.ecm.core.test.TransactionalFeature;
+import org.nuxeo.ecm.core.work.api.Work.State;
+import org.nuxeo.ecm.core.work.api.WorkManager;
+import org.nuxeo.runtime.test.runner.Deploy;
+import org.nuxeo.runtime.test.runner.Features;
+import org.nuxeo.runtime.test.runner.FeaturesRunner;
+import org.nuxeo.runtime.test.runner.LocalDeploy;
+
+import com.google.inject.Inject;
+
+/**
+ * @since 7.1
+ */
+@RunWith(FeaturesRunner.class)
+@Features({ TransactionalFeature.class, CoreFeature.class })
+@Deploy({ "org.nuxeo.ecm.automation.core" })
+@LocalDeploy({ "org.nuxeo.ecm.automation.core:OSGI-INF/test-converter-contrib.xml",
+        "org.nuxeo.ecm.automation.core:OSGI-INF/test-conversion-cache-contrib.xml" })
+public class TestScheduleConversionOperation {
+
+    @Inject
+    protected CoreSession session;
+
+    @Inject
+    protected AutomationService automationService;
+
+    @Inject
+    protected ConversionService conversionService;
+
+    @Inject
+    protected WorkManager workManager;
+
+    protected String scheduleConversion(String content, Map<String, Object> params) throws Exception {
+        Blob blob = new StringBlob(content);
+        blob.setMimeType("text/plain");
+        OperationContext ctx = new OperationContext(session);
+        ctx.setInput(blob);
+        return (String) automationService.run(ctx, ScheduleConversion.ID, params);
+    }
+
+    @Test
+    public void iCanScheduleAConversion() throws Exception {
+        Map<String, Object> params = new HashMap<>();
+        params.put("converter", NOPConverter.ID);
+        String id = scheduleConversion("Test blob", params);
+        assertNotNull(id);
+        assertTrue(workManager.awaitCompletion(10, TimeUnit.SECONDS));
+
+        assertEquals(ConversionStatus.Status.COMPLETED, conversionService.getConversionStatus(id).getStatus());
+        assertEquals("Test blob", conversionService.getConversionResult(id).getBlob().getString());
+
+        // the same conversion from the destination mime type gets the same id
+        params = new HashMap<>();
+        params.put("mimeType", "text/plain");
+        assertEquals(id, scheduleConversion("Test blob", params));
+    }
+
+    @Test
+    public void iCanGetTheResultFromAnotherNode() throws Exception {
+        Map<String, Object> params = new HashMap<>();
+        params.put("converter", NOPConverter.ID);
+        String id = scheduleConversion("Other node blob", params);
+        assertTrue(workManager.awaitCompletion(10, TimeUnit.SECONDS));
+
+        // another node doesn't have the result in its local conversion cache
+        ConversionCacheHolder.deleteCache();
+        assertTrue(ConversionCacheHolder.getCacheKeys().isEmpty());
+        assertEquals(ConversionStatus.Status.COMPLETED, conversionService.getConversionStatus(id).getStatus());
+        assertEquals("Other node blob", conversionService.getConversionResult(id).getBlob().getString());
+
+        // not converted again
+        assertEquals(id, scheduleConversion("Other node blob", params));
+        assertEquals(State.COMPLETED, workManager.getWorkState(id));
+    }
+
+    @Test(expected = OperationException.class)
+    public void iCannotScheduleAConversionWithoutConverter() throws Exception {
+        scheduleConversion("Test blob", new HashMap<String, Object>());
+    }
+
+}
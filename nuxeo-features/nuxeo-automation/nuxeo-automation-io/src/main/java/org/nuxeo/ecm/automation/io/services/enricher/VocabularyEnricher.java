@@ -26,6 +26,7 @@ import org.nuxeo.ecm.core.api.model.PropertyNotFoundException;
 import org.nuxeo.ecm.core.schema.SchemaManager;
 import org.nuxeo.ecm.core.schema.types.Field;
 import org.nuxeo.ecm.core.schema.types.Schema;
+import org.nuxeo.ecm.directory.BaseSession;
 import org.nuxeo.ecm.directory.Directory;
 import org.nuxeo.ecm.directory.DirectoryException;
 import org.nuxeo.ecm.directory.Session;
@@ -34,9 +35,12 @@ import org.nuxeo.runtime.api.Framework;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 /**
  * This enricher adds the labels for each value of a property referencing dbl10n vocabularies.
@@ -124,8 +128,14 @@ public class VocabularyEnricher extends AbstractContentEnricher {
         Session session = null;
         try {
             session = getDirectoryService().open(directoryName);
+            // fetch all the entries and their parents at once
+            Set<String> ids = new LinkedHashSet<>();
             for (String entryId : entriesIds) {
-                Map<String, String> labels = getAbsoluteLabels(entryId, session, labelFields);
+                ids.addAll(Arrays.asList(entryId.split(KEY_SEPARATOR)));
+            }
+            Map<String, DocumentModel> entries = BaseSession.mapEntriesToIds(ids, session.getEntries(ids, false));
+            for (String entryId : entriesIds) {
+                Map<String, String> labels = getAbsoluteLabels(entryId, entries, labelFields);
                 // Write absolute labels (<parent label> / <child label>)
                 jg.writeStartObject();
                 jg.writeStringField("id", entryId);
@@ -200,19 +210,19 @@ public class VocabularyEnricher extends AbstractContentEnricher {
      * Returns absolute labels for a given entry (<parent label> / <child label>)
      *
      * @param entryId
-     * @param session
+     * @param entries the directory entries by id
      * @param labelFields
      * @return a map of field: label
      * @throws ClientException
      */
-    private static Map<String, String> getAbsoluteLabels(final String entryId, final Session session,
+    private static Map<String, String> getAbsoluteLabels(final String entryId, Map<String, DocumentModel> entries,
             List<String> labelFields) throws ClientException {
 
         String[] split = entryId.split(KEY_SEPARATOR);
         Map<String, String> labels = new HashMap<>();
 
         for (int i = 0; i < split.length; i++) {
-            DocumentModel entry = session.getEntry(split[i]);
+            DocumentModel entry = entries.get(split[i]);
             if (entry == null) {
                 continue;
             }
@@ -45,6 +45,7 @@ import org.nuxeo.elasticsearch.api.ElasticSearchAdmin;
 import org.nuxeo.elasticsearch.api.ElasticSearchIndexing;
 import org.nuxeo.elasticsearch.api.ElasticSearchService;
 import org.nuxeo.elasticsearch.api.EsResult;
+import org.nuxeo.elasticsearch.api.ReindexingStatus;
 import org.nuxeo.elasticsearch.commands.IndexingCommand;
 import org.nuxeo.elasticsearch.config.ElasticSearchIndexConfig;
 import org.nuxeo.elasticsearch.config.ElasticSearchLocalConfig;
@@ -242,6 +243,11 @@ public class ElasticSearchComponent extends DefaultComponent implements ElasticS
         return esa.getTotalCommandProcessed();
     }
 
+    @Override
+    public List<ReindexingStatus> getReindexingStatus() {
+        return esa.getReindexingStatus();
+    }
+
     @Override
     public boolean isIndexingInProgress() {
         return (getRunningCommands() > 0 || getPendingCommands() > 0);
@@ -345,6 +351,11 @@ public class ElasticSearchComponent extends DefaultComponent implements ElasticS
         esi.reindex(repositoryName, nxql);
     }
 
+    @Override
+    public int resumeReindex(String repositoryName) {
+        return esi.resumeReindex(repositoryName);
+    }
+
     // ES Search ===============================================================
     @Override
     public DocumentModelList query(NxQueryBuilder queryBuilder) throws ClientException {
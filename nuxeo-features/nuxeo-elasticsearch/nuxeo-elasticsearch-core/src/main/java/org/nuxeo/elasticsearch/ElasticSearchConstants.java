@@ -91,8 +91,69 @@ final public class ElasticSearchConstants {
 
     public static final String FETCH_DOC_FROM_ES_PROPERTY = "elasticsearch.fetchDocFromEs";
 
+    /**
+     * @deprecated since 7.1, use {@link #REINDEX_CHUNK_SIZE_PROPERTY}, this one being its default value when set
+     */
+    @Deprecated
     public static final String REINDEX_BUCKET_READ_PROPERTY = "elasticsearch.reindex.bucketReadSize";
 
     public static final String REINDEX_BUCKET_WRITE_PROPERTY = "elasticsearch.reindex.bucketWriteSize";
 
+    /**
+     * Number of uuid ranges processed in parallel by a reindexing job, up to 256.
+     *
+     * @since 7.1
+     */
+    public static final String REINDEX_PARTITIONS_PROPERTY = "elasticsearch.reindex.partitions";
+
+    /**
+     * Number of documents indexed by a reindexing work before its progress is checkpointed.
+     *
+     * @since 7.1
+     */
+    public static final String REINDEX_CHUNK_SIZE_PROPERTY = "elasticsearch.reindex.chunkSize";
+
+    /**
+     * Name of the index holding the reindexing checkpoints.
+     *
+     * @since 7.1
+     */
+    public static final String REINDEX_CHECKPOINT_INDEX_PROPERTY = "elasticsearch.reindex.checkpointIndex";
+
+    /**
+     * Maximum number of actions sent in a single bulk request when indexing.
+     *
+     * @since 7.1
+     */
+    public static final String INDEXING_BULK_ACTIONS_PROPERTY = "elasticsearch.indexing.bulkActions";
+
+    /**
+     * Maximum size in MB of a single bulk request when indexing.
+     *
+     * @since 7.1
+     */
+    public static final String INDEXING_BULK_SIZE_PROPERTY = "elasticsearch.indexing.bulkSizeMB";
+
+    /**
+     * Interval in milliseconds after which a pending bulk request is sent, 0 to flush only on size.
+     *
+     * @since 7.1
+     */
+    public static final String INDEXING_BULK_FLUSH_INTERVAL_PROPERTY = "elasticsearch.indexing.bulkFlushIntervalMs";
+
+    /**
+     * Number of bulk requests that can be executed concurrently while new ones are accumulated, 0 to send them
+     * synchronously.
+     *
+     * @since 7.1
+     */
+    public static final String INDEXING_BULK_CONCURRENT_PROPERTY = "elasticsearch.indexing.concurrentBulks";
+
+    /**
+     * Number of times an action that failed with a transient error is retried.
+     *
+     * @since 7.1
+     */
+    public static final String INDEXING_MAX_RETRIES_PROPERTY = "elasticsearch.indexing.maxRetries";
+
 }
@@ -128,4 +128,11 @@ public interface ElasticSearchAdmin {
      */
     int getTotalCommandProcessed();
 
+    /**
+     * Returns the progress of the reindexing jobs, including their indexing rate and estimated remaining time.
+     *
+     * @since 7.1
+     */
+    List<ReindexingStatus> getReindexingStatus();
+
 }
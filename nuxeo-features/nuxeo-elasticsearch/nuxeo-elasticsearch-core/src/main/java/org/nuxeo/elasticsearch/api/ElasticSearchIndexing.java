@@ -66,4 +66,12 @@ public interface ElasticSearchIndexing {
      */
     void reindex(String repositoryName, String nxql);
 
+    /**
+     * Resumes the reindexing jobs of the repository that have been interrupted, from their last checkpoint.
+     *
+     * @return the number of partitions rescheduled
+     * @since 7.1
+     */
+    int resumeReindex(String repositoryName);
+
 }
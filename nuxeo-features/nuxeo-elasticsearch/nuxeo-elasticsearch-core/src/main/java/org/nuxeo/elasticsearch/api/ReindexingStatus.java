@@ -0,0 +1,136 @@
+/*
+ * (C) Copyright 2014 Nuxeo SA (http://nuxeo.com/) and contributors.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser General Public License
+ * (LGPL) version 2.1 which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl-2.1.html
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * Contributors:
+ *     Nuxeo
+ */
+package org.nuxeo.elasticsearch.api;
+
+import java.io.Serializable;
+
+/**
+ * Progress of a reindexing job, aggregated over all its partitions.
+ *
+ * @since 7.1
+ */
+public class ReindexingStatus implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private final String jobId;
+
+    private final String repositoryName;
+
+    private final String nxql;
+
+    private final int partitions;
+
+    private final int completedPartitions;
+
+    private final long totalDocuments;
+
+    private final long processedDocuments;
+
+    private final long startTime;
+
+    private final long lastUpdateTime;
+
+    public ReindexingStatus(String jobId, String repositoryName, String nxql, int partitions,
+            int completedPartitions, long totalDocuments, long processedDocuments, long startTime, long lastUpdateTime) {
+        this.jobId = jobId;
+        this.repositoryName = repositoryName;
+        this.nxql = nxql;
+        this.partitions = partitions;
+        this.completedPartitions = completedPartitions;
+        this.totalDocuments = totalDocuments;
+        this.processedDocuments = processedDocuments;
+        this.startTime = startTime;
+        this.lastUpdateTime = lastUpdateTime;
+    }
+
+    public String getJobId() {
+        return jobId;
+    }
+
+    public String getRepositoryName() {
+        return repositoryName;
+    }
+
+    public String getNxql() {
+        return nxql;
+    }
+
+    public int getPartitions() {
+        return partitions;
+    }
+
+    public int getCompletedPartitions() {
+        return completedPartitions;
+    }
+
+    public boolean isCompleted() {
+        return completedPartitions == partitions;
+    }
+
+    /**
+     * Returns the number of documents matching the query when the job started, or -1 if unknown.
+     */
+    public long getTotalDocuments() {
+        return totalDocuments;
+    }
+
+    public long getProcessedDocuments() {
+        return processedDocuments;
+    }
+
+    public long getStartTime() {
+        return startTime;
+    }
+
+    public long getLastUpdateTime() {
+        return lastUpdateTime;
+    }
+
+    /**
+     * Returns the average indexing rate since the start of the job.
+     */
+    public double getDocumentsPerSecond() {
+        long elapsed = lastUpdateTime - startTime;
+        if (elapsed <= 0) {
+            return 0;
+        }
+        return processedDocuments * 1000.0 / elapsed;
+    }
+
+    /**
+     * Returns the estimated number of seconds before the end of the job, or -1 if unknown.
+     */
+    public long getEstimatedRemainingSeconds() {
+        if (isCompleted()) {
+            return 0;
+        }
+        double rate = getDocumentsPerSecond();
+        if (totalDocuments < 0 || rate <= 0) {
+            return -1;
+        }
+        return (long) (Math.max(0, totalDocuments - processedDocuments) / rate);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("Reindexing job %s on %s: %d/%d documents, %d/%d partitions, %.1f docs/s, ETA %ds",
+                jobId, repositoryName, processedDocuments, totalDocuments, completedPartitions, partitions,
+                getDocumentsPerSecond(), getEstimatedRemainingSeconds());
+    }
+
+}
@@ -50,6 +50,7 @@ import org.elasticsearch.common.transport.InetSocketTransportAddress;
 import org.elasticsearch.node.Node;
 import org.elasticsearch.node.NodeBuilder;
 import org.nuxeo.elasticsearch.api.ElasticSearchAdmin;
+import org.nuxeo.elasticsearch.api.ReindexingStatus;
 import org.nuxeo.elasticsearch.config.ElasticSearchIndexConfig;
 import org.nuxeo.elasticsearch.config.ElasticSearchLocalConfig;
 import org.nuxeo.elasticsearch.config.ElasticSearchRemoteConfig;
@@ -371,6 +372,11 @@ public class ElasticSearchAdminImpl implements ElasticSearchAdmin {
         return totalCommandRunning.get();
     }
 
+    @Override
+    public List<ReindexingStatus> getReindexingStatus() {
+        return new ReindexingCheckpointStore(getClient()).getStatus();
+    }
+
     @Override
     public boolean isIndexingInProgress() {
         // impl of scheduling is left to the ESService
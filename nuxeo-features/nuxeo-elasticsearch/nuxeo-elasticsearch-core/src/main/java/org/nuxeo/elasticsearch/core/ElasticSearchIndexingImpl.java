@@ -21,38 +21,64 @@ package org.nuxeo.elasticsearch.core;
 import static org.elasticsearch.common.xcontent.XContentFactory.jsonBuilder;
 import static org.nuxeo.elasticsearch.ElasticSearchConstants.CHILDREN_FIELD;
 import static org.nuxeo.elasticsearch.ElasticSearchConstants.DOC_TYPE;
+import static org.nuxeo.elasticsearch.ElasticSearchConstants.INDEXING_BULK_ACTIONS_PROPERTY;
+import static org.nuxeo.elasticsearch.ElasticSearchConstants.INDEXING_BULK_CONCURRENT_PROPERTY;
+import static org.nuxeo.elasticsearch.ElasticSearchConstants.INDEXING_BULK_FLUSH_INTERVAL_PROPERTY;
+import static org.nuxeo.elasticsearch.ElasticSearchConstants.INDEXING_BULK_SIZE_PROPERTY;
+import static org.nuxeo.elasticsearch.ElasticSearchConstants.INDEXING_MAX_RETRIES_PROPERTY;
 import static org.nuxeo.elasticsearch.ElasticSearchConstants.PATH_FIELD;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.codehaus.jackson.JsonFactory;
 import org.codehaus.jackson.JsonGenerator;
+import org.elasticsearch.ElasticsearchException;
+import org.elasticsearch.action.ActionRequest;
+import org.elasticsearch.action.bulk.BulkItemResponse;
+import org.elasticsearch.action.bulk.BulkProcessor;
+import org.elasticsearch.action.bulk.BulkRequest;
 import org.elasticsearch.action.bulk.BulkRequestBuilder;
 import org.elasticsearch.action.bulk.BulkResponse;
+import org.elasticsearch.action.delete.DeleteRequest;
 import org.elasticsearch.action.delete.DeleteRequestBuilder;
 import org.elasticsearch.action.deletebyquery.DeleteByQueryRequestBuilder;
 import org.elasticsearch.action.deletebyquery.DeleteByQueryResponse;
 import org.elasticsearch.action.deletebyquery.IndexDeleteByQueryResponse;
-import org.elasticsearch.action.get.GetRequestBuilder;
-import org.elasticsearch.action.get.GetResponse;
+import org.elasticsearch.action.get.MultiGetItemResponse;
+import org.elasticsearch.action.get.MultiGetRequest;
+import org.elasticsearch.action.get.MultiGetRequestBuilder;
+import org.elasticsearch.action.index.IndexRequest;
 import org.elasticsearch.action.index.IndexRequestBuilder;
+import org.elasticsearch.common.unit.ByteSizeUnit;
+import org.elasticsearch.common.unit.ByteSizeValue;
+import org.elasticsearch.common.unit.TimeValue;
 import org.elasticsearch.common.xcontent.XContentBuilder;
 import org.elasticsearch.index.query.FilterBuilders;
 import org.elasticsearch.index.query.QueryBuilder;
 import org.elasticsearch.index.query.QueryBuilders;
+import org.elasticsearch.rest.RestStatus;
 import org.nuxeo.ecm.automation.jaxrs.io.documents.JsonESDocumentWriter;
 import org.nuxeo.ecm.core.api.ClientException;
 import org.nuxeo.ecm.core.api.DocumentModel;
+import org.nuxeo.ecm.core.work.api.Work.State;
 import org.nuxeo.ecm.core.work.api.WorkManager;
 import org.nuxeo.elasticsearch.api.ElasticSearchIndexing;
 import org.nuxeo.elasticsearch.commands.IndexingCommand;
+import org.nuxeo.elasticsearch.work.ReindexingCheckpoint;
 import org.nuxeo.elasticsearch.work.ScrollingIndexingWorker;
 import org.nuxeo.runtime.api.Framework;
 import org.nuxeo.runtime.metrics.MetricsService;
 
+import com.codahale.metrics.Counter;
 import com.codahale.metrics.MetricRegistry;
 import com.codahale.metrics.SharedMetricRegistries;
 import com.codahale.metrics.Timer;
@@ -72,12 +98,50 @@ public class ElasticSearchIndexingImpl implements ElasticSearchIndexing {
 
     private final Timer bulkIndexTimer;
 
+    private final Counter bulkRetryCount;
+
+    private final Counter bulkFailureCount;
+
+    private static final String DEFAULT_BULK_ACTIONS = "500";
+
+    private static final String DEFAULT_BULK_SIZE_MB = "5";
+
+    private static final String DEFAULT_BULK_FLUSH_INTERVAL_MS = "0";
+
+    private static final String DEFAULT_CONCURRENT_BULKS = "1";
+
+    private static final String DEFAULT_MAX_RETRIES = "3";
+
+    private static final long RETRY_DELAY_MS = 100;
+
+    private final int bulkActions;
+
+    private final long bulkSizeInMB;
+
+    private final long bulkFlushIntervalMs;
+
+    private final int concurrentBulks;
+
+    private final int maxRetries;
+
+    private final ReindexingCheckpointStore checkpointStore;
+
     public ElasticSearchIndexingImpl(ElasticSearchAdminImpl esa) {
         this.esa = esa;
+        checkpointStore = new ReindexingCheckpointStore(esa.getClient());
         MetricRegistry registry = SharedMetricRegistries.getOrCreate(MetricsService.class.getName());
         indexTimer = registry.timer(MetricRegistry.name("nuxeo", "elasticsearch", "service", "index"));
         deleteTimer = registry.timer(MetricRegistry.name("nuxeo", "elasticsearch", "service", "delete"));
         bulkIndexTimer = registry.timer(MetricRegistry.name("nuxeo", "elasticsearch", "service", "bulkIndex"));
+        bulkRetryCount = registry.counter(MetricRegistry.name("nuxeo", "elasticsearch", "service", "bulkRetry"));
+        bulkFailureCount = registry.counter(MetricRegistry.name("nuxeo", "elasticsearch", "service", "bulkFailure"));
+        bulkActions = Integer.parseInt(Framework.getProperty(INDEXING_BULK_ACTIONS_PROPERTY, DEFAULT_BULK_ACTIONS));
+        bulkSizeInMB = Long.parseLong(Framework.getProperty(INDEXING_BULK_SIZE_PROPERTY, DEFAULT_BULK_SIZE_MB));
+        bulkFlushIntervalMs = Long.parseLong(Framework.getProperty(INDEXING_BULK_FLUSH_INTERVAL_PROPERTY,
+                DEFAULT_BULK_FLUSH_INTERVAL_MS));
+        concurrentBulks = Integer.parseInt(Framework.getProperty(INDEXING_BULK_CONCURRENT_PROPERTY,
+                DEFAULT_CONCURRENT_BULKS));
+        maxRetries = Integer.parseInt(Framework.getProperty(INDEXING_MAX_RETRIES_PROPERTY, DEFAULT_MAX_RETRIES));
     }
 
     @Override
@@ -117,51 +181,211 @@ public class ElasticSearchIndexingImpl implements ElasticSearchIndexing {
         }
     }
 
+    @Override
+    public int resumeReindex(String repositoryName) {
+        WorkManager wm = Framework.getLocalService(WorkManager.class);
+        int count = 0;
+        for (ReindexingCheckpoint checkpoint : checkpointStore.getUncompletedCheckpoints(repositoryName)) {
+            State state = checkpoint.getWorkId() == null ? null : wm.getWorkState(checkpoint.getWorkId());
+            if (state == State.SCHEDULED || state == State.RUNNING) {
+                // still in progress
+                continue;
+            }
+            log.warn("Resuming re-indexing " + checkpoint);
+            ScrollingIndexingWorker worker = new ScrollingIndexingWorker(checkpoint);
+            checkpoint.setWorkId(worker.getId());
+            checkpointStore.save(checkpoint);
+            wm.schedule(worker);
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * Removes the trees of the recursive delete commands, using a single delete by query per repository.
+     */
     void processBulkDeleteCommands(List<IndexingCommand> cmds) {
-        // Can be optimized with a single delete by query
+        Map<String, List<String>> idsByRepository = new HashMap<>();
         for (IndexingCommand cmd : cmds) {
-            if (IndexingCommand.DELETE.equals(cmd.getName())) {
-                Context stopWatch = deleteTimer.time();
-                try {
-                    processDeleteCommand(cmd);
-                } finally {
-                    stopWatch.stop();
+            if (IndexingCommand.DELETE.equals(cmd.getName()) && cmd.isRecurse()) {
+                List<String> ids = idsByRepository.get(cmd.getRepository());
+                if (ids == null) {
+                    ids = new ArrayList<>();
+                    idsByRepository.put(cmd.getRepository(), ids);
                 }
+                ids.add(cmd.getDocId());
+            }
+        }
+        for (Map.Entry<String, List<String>> entry : idsByRepository.entrySet()) {
+            Context stopWatch = deleteTimer.time();
+            try {
+                processDeleteRecursive(entry.getKey(), entry.getValue());
+            } finally {
+                stopWatch.stop();
             }
         }
     }
 
+    /**
+     * Sends the index and non recursive delete commands through a bulk processor, then retries the actions that
+     * failed with a transient error.
+     */
+    @SuppressWarnings("rawtypes")
     void processBulkIndexCommands(List<IndexingCommand> cmds) throws ClientException {
-        BulkRequestBuilder bulkRequest = esa.getClient().prepareBulk();
-        for (IndexingCommand cmd : cmds) {
-            String id = cmd.getDocId();
-            if (IndexingCommand.UNKOWN_DOCUMENT_ID.equals(id) || (IndexingCommand.DELETE.equals(cmd.getName()))) {
-                continue;
-            }
-            if (log.isTraceEnabled()) {
-                log.trace("Sending bulk indexing request to Elasticsearch: " + cmd);
+        BulkListener listener = new BulkListener();
+        BulkProcessor.Builder builder = BulkProcessor.builder(esa.getClient(), listener).setName("nuxeo-indexing").setBulkActions(
+                bulkActions).setBulkSize(new ByteSizeValue(bulkSizeInMB, ByteSizeUnit.MB)).setConcurrentRequests(
+                concurrentBulks);
+        if (bulkFlushIntervalMs > 0) {
+            builder.setFlushInterval(TimeValue.timeValueMillis(bulkFlushIntervalMs));
+        }
+        BulkProcessor processor = builder.build();
+        try {
+            // deletes first, as they were processed before indexing
+            for (IndexingCommand cmd : cmds) {
+                if (IndexingCommand.DELETE.equals(cmd.getName()) && !cmd.isRecurse()) {
+                    processor.add(buildEsDeleteRequest(cmd));
+                }
             }
-            if (cmd.getTargetDocument() == null) {
-                log.warn("Skipping cmd because targetDocument is null " + cmd);
-                continue;
+            for (IndexingCommand cmd : cmds) {
+                String id = cmd.getDocId();
+                if (IndexingCommand.UNKOWN_DOCUMENT_ID.equals(id) || (IndexingCommand.DELETE.equals(cmd.getName()))) {
+                    continue;
+                }
+                if (log.isTraceEnabled()) {
+                    log.trace("Sending bulk indexing request to Elasticsearch: " + cmd);
+                }
+                if (cmd.getTargetDocument() == null) {
+                    log.warn("Skipping cmd because targetDocument is null " + cmd);
+                    continue;
+                }
+                try {
+                    processor.add(buildEsIndexingRequest(cmd).request());
+                } catch (ClientException e) {
+                    log.error("Fail to create indexing request for cmd: " + cmd, e);
+                }
             }
+        } finally {
+            processor.close();
+        }
+        List<ActionRequest> failed = listener.awaitCompletion();
+        for (int retry = 1; retry <= maxRetries && !failed.isEmpty(); retry++) {
             try {
-                IndexRequestBuilder idxRequest = buildEsIndexingRequest(cmd);
-                bulkRequest.add(idxRequest);
-            } catch (ClientException e) {
-                log.error("Fail to create indexing request for cmd: " + cmd, e);
+                Thread.sleep(RETRY_DELAY_MS << (retry - 1));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
             }
+            bulkRetryCount.inc(failed.size());
+            log.warn(String.format("Retrying %d failed bulk actions, attempt %d/%d", failed.size(), retry,
+                    maxRetries));
+            failed = executeBulk(failed, listener);
         }
-        if (bulkRequest.numberOfActions() > 0) {
-            if (log.isDebugEnabled()) {
-                log.debug(String.format(
-                        "Index %d docs in bulk request: curl -XPOST 'http://localhost:9200/_bulk' -d '%s'",
-                        bulkRequest.numberOfActions(), bulkRequest.request().requests().toString()));
+        if (!failed.isEmpty()) {
+            bulkFailureCount.inc(failed.size());
+            log.error(String.format("Fail to process %d bulk actions: %s", failed.size(), listener.lastFailureMessage));
+        }
+    }
+
+    /**
+     * Executes synchronously a bulk request made of the given actions and returns the ones to retry.
+     */
+    @SuppressWarnings("rawtypes")
+    List<ActionRequest> executeBulk(List<ActionRequest> requests, BulkListener listener) {
+        BulkRequestBuilder bulkRequest = esa.getClient().prepareBulk();
+        for (ActionRequest request : requests) {
+            if (request instanceof IndexRequest) {
+                bulkRequest.add((IndexRequest) request);
+            } else if (request instanceof DeleteRequest) {
+                bulkRequest.add((DeleteRequest) request);
             }
+        }
+        List<ActionRequest> failed = new ArrayList<>();
+        try {
             BulkResponse response = bulkRequest.execute().actionGet();
-            if (response.hasFailures()) {
-                log.error(response.buildFailureMessage());
+            listener.collectFailures(bulkRequest.request(), response, failed);
+        } catch (ElasticsearchException e) {
+            listener.lastFailureMessage = e.getMessage();
+            failed.addAll(requests);
+        }
+        return failed;
+    }
+
+    /**
+     * Tracks the bulk requests executed by a {@link BulkProcessor} and collects their actions that failed with a
+     * transient error.
+     *
+     * @since 7.1
+     */
+    @SuppressWarnings("rawtypes")
+    protected static class BulkListener implements BulkProcessor.Listener {
+
+        protected int pending;
+
+        protected final List<ActionRequest> failed = new ArrayList<>();
+
+        protected volatile String lastFailureMessage;
+
+        @Override
+        public synchronized void beforeBulk(long executionId, BulkRequest request) {
+            pending++;
+            if (log.isDebugEnabled()) {
+                log.debug(String.format("Sending bulk request %d with %d actions (%d bytes)", executionId,
+                        request.numberOfActions(), request.estimatedSizeInBytes()));
+            }
+        }
+
+        @Override
+        public synchronized void afterBulk(long executionId, BulkRequest request, BulkResponse response) {
+            collectFailures(request, response, failed);
+            pending--;
+            notifyAll();
+        }
+
+        @Override
+        public synchronized void afterBulk(long executionId, BulkRequest request, Throwable failure) {
+            log.warn("Bulk request " + executionId + " failed: " + failure.getMessage());
+            lastFailureMessage = failure.getMessage();
+            failed.addAll(request.requests());
+            pending--;
+            notifyAll();
+        }
+
+        protected void collectFailures(BulkRequest request, BulkResponse response, List<ActionRequest> failed) {
+            if (!response.hasFailures()) {
+                return;
+            }
+            for (BulkItemResponse item : response.getItems()) {
+                if (!item.isFailed()) {
+                    continue;
+                }
+                lastFailureMessage = item.getFailureMessage();
+                if (isRetryable(item.getFailure().getStatus())) {
+                    failed.add(request.requests().get(item.getItemId()));
+                } else {
+                    log.error(String.format("Fail to %s doc %s: %s", item.getOpType(), item.getId(),
+                            item.getFailureMessage()));
+                }
+            }
+        }
+
+        protected boolean isRetryable(RestStatus status) {
+            return status == RestStatus.TOO_MANY_REQUESTS || status.getStatus() >= 500;
+        }
+
+        /**
+         * Waits for all the bulk requests sent concurrently to complete, and returns the actions to retry.
+         */
+        public synchronized List<ActionRequest> awaitCompletion() {
+            while (pending > 0) {
+                try {
+                    wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
             }
+            return new ArrayList<>(failed);
         }
     }
 
@@ -224,6 +448,10 @@ public class ElasticSearchIndexingImpl implements ElasticSearchIndexing {
         }
     }
 
+    DeleteRequest buildEsDeleteRequest(IndexingCommand cmd) {
+        return new DeleteRequest(esa.getRepositoryIndex(cmd.getRepository()), DOC_TYPE, cmd.getDocId());
+    }
+
     void processDeleteCommandNonRecursive(IndexingCommand cmd) {
         String indexName = esa.getRepositoryIndex(cmd.getRepository());
         DeleteRequestBuilder request = esa.getClient().prepareDelete(indexName, DOC_TYPE, cmd.getDocId());
@@ -235,17 +463,24 @@ public class ElasticSearchIndexingImpl implements ElasticSearchIndexing {
     }
 
     void processDeleteCommandRecursive(IndexingCommand cmd) {
-        String indexName = esa.getRepositoryIndex(cmd.getRepository());
+        processDeleteRecursive(cmd.getRepository(), Collections.singletonList(cmd.getDocId()));
+    }
+
+    /**
+     * Removes the documents and their descendants with a single delete by query on their recursion roots.
+     */
+    void processDeleteRecursive(String repository, List<String> docIds) {
+        String indexName = esa.getRepositoryIndex(repository);
         // we don't want to rely on target document because the document can be
         // already removed
-        String docPath = getPathOfDocFromEs(cmd.getRepository(), cmd.getDocId());
-        if (docPath == null) {
+        List<String> roots = getRecursionRoots(getPathsOfDocsFromEs(repository, docIds));
+        if (roots.isEmpty()) {
             if (!Framework.isTestModeSet()) {
-                log.warn("Trying to delete a non existing doc: " + cmd.toString());
+                log.warn("Trying to delete non existing docs: " + docIds);
             }
             return;
         }
-        QueryBuilder query = QueryBuilders.constantScoreQuery(FilterBuilders.termFilter(CHILDREN_FIELD, docPath));
+        QueryBuilder query = QueryBuilders.constantScoreQuery(FilterBuilders.termsFilter(CHILDREN_FIELD, roots));
         DeleteByQueryRequestBuilder deleteRequest = esa.getClient().prepareDeleteByQuery(indexName).setTypes(DOC_TYPE).setQuery(
                 query);
         if (log.isDebugEnabled()) {
@@ -264,21 +499,53 @@ public class ElasticSearchIndexingImpl implements ElasticSearchIndexing {
     }
 
     /**
-     * Return the ecm:path of an ES document or null if not found.
+     * Keeps only the paths that are not below another one of the list.
+     */
+    static List<String> getRecursionRoots(List<String> paths) {
+        // ancestors sort before their descendants
+        List<String> sorted = new ArrayList<>(paths);
+        Collections.sort(sorted);
+        Set<String> roots = new LinkedHashSet<>();
+        for (String path : sorted) {
+            if (!hasAncestorIn(path, roots)) {
+                roots.add(path);
+            }
+        }
+        return new ArrayList<>(roots);
+    }
+
+    static boolean hasAncestorIn(String path, Set<String> paths) {
+        if (paths.contains(path)) {
+            return true;
+        }
+        for (int i = path.lastIndexOf('/'); i >= 0; i = path.lastIndexOf('/', i - 1)) {
+            if (paths.contains(i == 0 ? "/" : path.substring(0, i))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns the ecm:path of the ES documents found, using a single multi get request.
      */
-    String getPathOfDocFromEs(String repository, String docId) {
+    List<String> getPathsOfDocsFromEs(String repository, List<String> docIds) {
         String indexName = esa.getRepositoryIndex(repository);
-        GetRequestBuilder getRequest = esa.getClient().prepareGet(indexName, DOC_TYPE, docId).setFields(PATH_FIELD);
+        MultiGetRequestBuilder getRequest = esa.getClient().prepareMultiGet();
+        for (String docId : docIds) {
+            getRequest.add(new MultiGetRequest.Item(indexName, DOC_TYPE, docId).fields(PATH_FIELD));
+        }
         if (log.isDebugEnabled()) {
-            log.debug(String.format("Get path of doc: curl -XGET 'http://localhost:9200/%s/%s/%s?fields=%s'",
-                    indexName, DOC_TYPE, docId, PATH_FIELD));
+            log.debug(String.format("Get path of %d docs from index %s", docIds.size(), indexName));
         }
-        GetResponse ret = getRequest.execute().actionGet();
-        if (!ret.isExists()) {
-            // doc not found
-            return null;
+        List<String> paths = new ArrayList<>(docIds.size());
+        for (MultiGetItemResponse item : getRequest.execute().actionGet()) {
+            if (item.isFailed() || !item.getResponse().isExists()) {
+                continue;
+            }
+            paths.add(item.getResponse().getField(PATH_FIELD).getValue().toString());
         }
-        return ret.getField(PATH_FIELD).getValue().toString();
+        return paths;
     }
 
     IndexRequestBuilder buildEsIndexingRequest(IndexingCommand cmd) throws ClientException {
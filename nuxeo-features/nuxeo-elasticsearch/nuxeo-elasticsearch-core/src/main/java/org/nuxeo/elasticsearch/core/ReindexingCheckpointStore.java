@@ -0,0 +1,203 @@
+/*
+ * (C) Copyright 2014 Nuxeo SA (http://nuxeo.com/) and contributors.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser General Public License
+ * (LGPL) version 2.1 which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl-2.1.html
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * Contributors:
+ *     Nuxeo
+ */
+package org.nuxeo.elasticsearch.core;
+
+import static org.nuxeo.elasticsearch.ElasticSearchConstants.REINDEX_CHECKPOINT_INDEX_PROPERTY;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.elasticsearch.action.bulk.BulkRequestBuilder;
+import org.elasticsearch.action.bulk.BulkResponse;
+import org.elasticsearch.action.get.MultiGetItemResponse;
+import org.elasticsearch.action.get.MultiGetResponse;
+import org.elasticsearch.action.search.SearchResponse;
+import org.elasticsearch.action.search.SearchType;
+import org.elasticsearch.client.Client;
+import org.elasticsearch.common.unit.TimeValue;
+import org.elasticsearch.index.query.QueryBuilders;
+import org.elasticsearch.indices.IndexMissingException;
+import org.elasticsearch.search.SearchHit;
+import org.nuxeo.elasticsearch.api.ReindexingStatus;
+import org.nuxeo.elasticsearch.work.ReindexingCheckpoint;
+import org.nuxeo.runtime.api.Framework;
+
+/**
+ * Stores the {@link ReindexingCheckpoint} of the reindexing jobs in a dedicated Elasticsearch index, so that they are
+ * shared by all the Nuxeo instances and survive a restart.
+ *
+ * @since 7.1
+ */
+public class ReindexingCheckpointStore {
+    private static final Log log = LogFactory.getLog(ReindexingCheckpointStore.class);
+
+    private static final String DEFAULT_CHECKPOINT_INDEX = "nuxeo-reindex";
+
+    private static final String CHECKPOINT_TYPE = "checkpoint";
+
+    private static final int SCROLL_SIZE = 100;
+
+    private static final TimeValue SCROLL_KEEP_ALIVE = new TimeValue(60000);
+
+    private final Client client;
+
+    private final String indexName;
+
+    public ReindexingCheckpointStore(Client client) {
+        this.client = client;
+        indexName = Framework.getProperty(REINDEX_CHECKPOINT_INDEX_PROPERTY, DEFAULT_CHECKPOINT_INDEX);
+    }
+
+    public void save(ReindexingCheckpoint checkpoint) {
+        if (log.isDebugEnabled()) {
+            log.debug("Saving reindexing checkpoint: " + checkpoint);
+        }
+        client.prepareIndex(indexName, CHECKPOINT_TYPE, checkpoint.getId()).setSource(checkpoint.toMap()).setRefresh(
+                true).execute().actionGet();
+    }
+
+    /**
+     * Returns all the checkpoints, ordered by job start time.
+     */
+    public List<ReindexingCheckpoint> getCheckpoints() {
+        List<ReindexingCheckpoint> ret = new ArrayList<>();
+        SearchResponse response;
+        try {
+            response = client.prepareSearch(indexName).setTypes(CHECKPOINT_TYPE).setQuery(
+                    QueryBuilders.matchAllQuery()).setSearchType(SearchType.SCAN).setScroll(SCROLL_KEEP_ALIVE).setSize(
+                    SCROLL_SIZE).execute().actionGet();
+        } catch (IndexMissingException e) {
+            // no reindexing job so far
+            return ret;
+        }
+        // a scan returns no hits in its first response, and cannot be sorted
+        while (true) {
+            response = client.prepareSearchScroll(response.getScrollId()).setScroll(SCROLL_KEEP_ALIVE).execute()
+                    .actionGet();
+            if (response.getHits().getHits().length == 0) {
+                break;
+            }
+            for (SearchHit hit : response.getHits()) {
+                ret.add(ReindexingCheckpoint.fromMap(hit.getSource()));
+            }
+        }
+        Collections.sort(ret, new Comparator<ReindexingCheckpoint>() {
+            @Override
+            public int compare(ReindexingCheckpoint cp1, ReindexingCheckpoint cp2) {
+                return Long.compare(cp1.getStartTime(), cp2.getStartTime());
+            }
+        });
+        return ret;
+    }
+
+    /**
+     * Checks if all the partitions of the job of the given checkpoint are completed.
+     */
+    public boolean isJobCompleted(ReindexingCheckpoint checkpoint) {
+        MultiGetResponse response = client.prepareMultiGet().add(indexName, CHECKPOINT_TYPE,
+                getJobCheckpointIds(checkpoint)).execute().actionGet();
+        for (MultiGetItemResponse item : response.getResponses()) {
+            if (item.isFailed() || !item.getResponse().isExists()) {
+                return false;
+            }
+            if (!ReindexingCheckpoint.fromMap(item.getResponse().getSourceAsMap()).isCompleted()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Deletes the checkpoints of all the partitions of the job of the given checkpoint.
+     */
+    public void deleteJob(ReindexingCheckpoint checkpoint) {
+        if (log.isDebugEnabled()) {
+            log.debug("Deleting reindexing checkpoints of job: " + checkpoint.getJobId());
+        }
+        BulkRequestBuilder bulkRequest = client.prepareBulk().setRefresh(true);
+        for (String id : getJobCheckpointIds(checkpoint)) {
+            bulkRequest.add(client.prepareDelete(indexName, CHECKPOINT_TYPE, id));
+        }
+        BulkResponse response = bulkRequest.execute().actionGet();
+        if (response.hasFailures()) {
+            log.warn("Unable to delete the reindexing checkpoints of job: " + checkpoint.getJobId() + ": "
+                    + response.buildFailureMessage());
+        }
+    }
+
+    protected List<String> getJobCheckpointIds(ReindexingCheckpoint checkpoint) {
+        List<String> ids = new ArrayList<>(checkpoint.getPartitions());
+        for (int i = 0; i < checkpoint.getPartitions(); i++) {
+            ids.add(ReindexingCheckpoint.getId(checkpoint.getJobId(), i));
+        }
+        return ids;
+    }
+
+    /**
+     * Returns the checkpoints of the unfinished partitions of the given repository.
+     */
+    public List<ReindexingCheckpoint> getUncompletedCheckpoints(String repositoryName) {
+        List<ReindexingCheckpoint> ret = new ArrayList<>();
+        for (ReindexingCheckpoint checkpoint : getCheckpoints()) {
+            if (!checkpoint.isCompleted() && repositoryName.equals(checkpoint.getRepositoryName())) {
+                ret.add(checkpoint);
+            }
+        }
+        return ret;
+    }
+
+    /**
+     * Aggregates the checkpoints by job.
+     */
+    public List<ReindexingStatus> getStatus() {
+        Map<String, List<ReindexingCheckpoint>> jobs = new LinkedHashMap<>();
+        for (ReindexingCheckpoint checkpoint : getCheckpoints()) {
+            List<ReindexingCheckpoint> job = jobs.get(checkpoint.getJobId());
+            if (job == null) {
+                job = new ArrayList<>();
+                jobs.put(checkpoint.getJobId(), job);
+            }
+            job.add(checkpoint);
+        }
+        List<ReindexingStatus> ret = new ArrayList<>(jobs.size());
+        for (List<ReindexingCheckpoint> job : jobs.values()) {
+            ReindexingCheckpoint first = job.get(0);
+            int completed = 0;
+            long processed = 0;
+            long startTime = first.getStartTime();
+            long updateTime = first.getUpdateTime();
+            for (ReindexingCheckpoint checkpoint : job) {
+                if (checkpoint.isCompleted()) {
+                    completed++;
+                }
+                processed += checkpoint.getProcessed();
+                startTime = Math.min(startTime, checkpoint.getStartTime());
+                updateTime = Math.max(updateTime, checkpoint.getUpdateTime());
+            }
+            ret.add(new ReindexingStatus(first.getJobId(), first.getRepositoryName(), first.getNxql(),
+                    first.getPartitions(), completed, first.getTotal(), processed, startTime, updateTime));
+        }
+        return ret;
+    }
+
+}
@@ -16,21 +16,50 @@
  */
 package org.nuxeo.elasticsearch.io;
 
+import java.io.Serializable;
+import java.lang.reflect.Array;
+import java.text.ParseException;
+import java.util.Calendar;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.elasticsearch.common.bytes.BytesArray;
 import org.elasticsearch.search.lookup.SourceLookup;
 import org.nuxeo.common.utils.Path;
-import org.nuxeo.ecm.core.api.ClientException;
 import org.nuxeo.ecm.core.api.CoreSession;
 import org.nuxeo.ecm.core.api.DocumentModel;
 import org.nuxeo.ecm.core.api.IdRef;
 import org.nuxeo.ecm.core.api.impl.DocumentModelImpl;
+import org.nuxeo.ecm.core.schema.DocumentType;
+import org.nuxeo.ecm.core.schema.Prefetch;
+import org.nuxeo.ecm.core.schema.SchemaManager;
+import org.nuxeo.ecm.core.schema.types.Field;
+import org.nuxeo.ecm.core.schema.types.ListType;
+import org.nuxeo.ecm.core.schema.types.PrimitiveType;
+import org.nuxeo.ecm.core.schema.types.Schema;
+import org.nuxeo.ecm.core.schema.types.SimpleType;
+import org.nuxeo.ecm.core.schema.types.Type;
+import org.nuxeo.ecm.core.schema.types.primitives.BinaryType;
+import org.nuxeo.ecm.core.schema.types.primitives.BooleanType;
+import org.nuxeo.ecm.core.schema.types.primitives.DateType;
+import org.nuxeo.ecm.core.schema.types.primitives.DoubleType;
+import org.nuxeo.ecm.core.schema.types.primitives.IntegerType;
+import org.nuxeo.ecm.core.schema.types.primitives.LongType;
+import org.nuxeo.ecm.core.schema.utils.DateParser;
+import org.nuxeo.runtime.api.Framework;
 
 /**
  * Read a DocumentModel from an ES Json export.
+ * <p>
+ * The indexed scalar and scalar list properties are converted to the type of their schema field and prefetched, the
+ * other properties (complex ones, or not indexed) are lazily loaded from the repository when first accessed. The
+ * returned document is immutable.
  *
  * @since 5.9.5
  */
@@ -63,54 +92,143 @@ public class JsonDocumentModelReader {
     public DocumentModel getDocumentModel() {
         assert (source != null);
         String type = getType();
-        String name = getPropertyAsString("ecm:name");
         String id = getPropertyAsString("ecm:uuid");
         String path = getPropertyAsString("ecm:path");
         String parentId = getPropertyAsString("ecm:parentId");
         String repository = getPropertyAsString("ecm:repository");
+        boolean isProxy = Boolean.parseBoolean(getPropertyAsString("ecm:isProxy"));
 
-        DocumentModelImpl doc = new DocumentModelImpl(sid, getType(), id, new Path(path), new IdRef(id), new IdRef(
-                parentId), null, null, null, repository, false);
-        for (String prop : source.keySet()) {
-            String schema = prop.split(":")[0];
-            // schema = schema.replace("dc", "dublincore");
-            String key = prop.split(":")[1];
-            if (source.get(prop) == null) {
+        DocumentModelImpl doc = new DocumentModelImpl(sid, type, id, new Path(path), new IdRef(id),
+                parentId.isEmpty() ? null : new IdRef(parentId), null, getInstanceFacets(type), null, repository,
+                isProxy);
+        doc.setIsVersion(Boolean.parseBoolean(getPropertyAsString("ecm:isVersion")));
+        String lifeCycleState = getPropertyAsString("ecm:currentLifeCycleState");
+        if (!lifeCycleState.isEmpty()) {
+            doc.prefetchCurrentLifecycleState(lifeCycleState);
+        }
+        Set<String> docSchemas = new HashSet<>();
+        Collections.addAll(docSchemas, doc.getSchemas());
+        Prefetch prefetch = new Prefetch();
+        String[] returnName = new String[1];
+        for (Map.Entry<String, Object> entry : source.entrySet()) {
+            String prop = entry.getKey();
+            if (prop.startsWith("ecm:")) {
+                // system properties are handled above
+                continue;
+            }
+            String schemaName = DocumentModelImpl.getXPathSchemaName(prop, docSchemas, returnName);
+            if (schemaName == null || !docSchemas.contains(schemaName)) {
                 continue;
             }
-            String value = getPropertyAsString(prop);
-            if (value.isEmpty() || "[]".equals(value)) {
+            Schema schema = Framework.getLocalService(SchemaManager.class).getSchema(schemaName);
+            Field field = schema.getField(returnName[0]);
+            if (field == null || !isScalar(field.getType())) {
+                // complex properties are loaded from the repository when needed
                 continue;
             }
-            // System.out.println( String.format("schema: %s, key %s = %s", schema, key, value));
-            if ("ecm".equals(schema)) {
-                switch (key) {
-                case "isProxy":
-                    doc.setIsProxy(Boolean.valueOf(value));
-                    break;
-                case "currentLifeCycleState":
-                    doc.prefetchCurrentLifecycleState(value);
-                    break;
-                case "versionLabel":
-                case "mixinType":
-                    // Can not be done via API
-                    break;
-                default:
-                    // not taken in account
-                }
-            } else {
-                try {
-                    doc.setPropertyValue(prop, value);
-                    // doc.setProperty(schema, key, value);
-                } catch (ClientException e) {
-                    log.info(String.format("fetchDocFromEs can not set property %s to %s", key, value));
-                }
+            try {
+                prefetch.put(prop, schemaName, returnName[0], convert(field.getType(), entry.getValue()));
+            } catch (IllegalArgumentException e) {
+                log.info(String.format("fetchDocFromEs can not convert property %s value %s: %s", prop,
+                        entry.getValue(), e.getMessage()));
             }
         }
+        if (!prefetch.isEmpty()) {
+            doc.setPrefetch(prefetch);
+        }
         doc.setIsImmutable(true);
         return doc;
     }
 
+    /**
+     * Returns the facets of the document that are not brought by its type.
+     */
+    private Set<String> getInstanceFacets(String type) {
+        Object mixins = source.get("ecm:mixinType");
+        if (!(mixins instanceof Collection)) {
+            return null;
+        }
+        Set<String> facets = new HashSet<>();
+        for (Object facet : (Collection<?>) mixins) {
+            facets.add(facet.toString());
+        }
+        DocumentType docType = Framework.getLocalService(SchemaManager.class).getDocumentType(type);
+        if (docType != null) {
+            facets.removeAll(docType.getFacets());
+        }
+        return facets;
+    }
+
+    protected static boolean isScalar(Type type) {
+        if (type.isListType()) {
+            type = ((ListType) type).getFieldType();
+        }
+        return type.isSimpleType() && !(getPrimitiveType(type) instanceof BinaryType);
+    }
+
+    protected static PrimitiveType getPrimitiveType(Type type) {
+        SimpleType simpleType = (SimpleType) type;
+        return simpleType.isPrimitive() ? (PrimitiveType) simpleType : simpleType.getPrimitiveType();
+    }
+
+    /**
+     * Converts a value decoded from Json to the Java type used by the repository for this property type.
+     */
+    protected static Serializable convert(Type type, Object value) {
+        if (value == null) {
+            return null;
+        }
+        if (!type.isListType()) {
+            return convertScalar(getPrimitiveType(type), value);
+        }
+        PrimitiveType itemType = getPrimitiveType(((ListType) type).getFieldType());
+        List<?> values = value instanceof List ? (List<?>) value : Collections.singletonList(value);
+        Object[] array = (Object[]) Array.newInstance(getJavaClass(itemType), values.size());
+        for (int i = 0; i < array.length; i++) {
+            array[i] = convertScalar(itemType, values.get(i));
+        }
+        return array;
+    }
+
+    protected static Class<?> getJavaClass(PrimitiveType type) {
+        if (type instanceof DateType) {
+            return Calendar.class;
+        } else if (type instanceof LongType || type instanceof IntegerType) {
+            return Long.class;
+        } else if (type instanceof DoubleType) {
+            return Double.class;
+        } else if (type instanceof BooleanType) {
+            return Boolean.class;
+        }
+        return String.class;
+    }
+
+    protected static Serializable convertScalar(PrimitiveType type, Object value) {
+        if (value == null) {
+            return null;
+        }
+        if (type instanceof DateType) {
+            if (value instanceof Number) {
+                Calendar cal = Calendar.getInstance();
+                cal.setTimeInMillis(((Number) value).longValue());
+                return cal;
+            }
+            try {
+                return DateParser.parse(value.toString());
+            } catch (ParseException e) {
+                throw new IllegalArgumentException(e.getMessage(), e);
+            }
+        } else if (type instanceof LongType || type instanceof IntegerType) {
+            return value instanceof Number ? Long.valueOf(((Number) value).longValue()) : Long.valueOf(value.toString());
+        } else if (type instanceof DoubleType) {
+            return value instanceof Number ? Double.valueOf(((Number) value).doubleValue())
+                    : Double.valueOf(value.toString());
+        } else if (type instanceof BooleanType) {
+            return value instanceof Boolean ? (Boolean) value : Boolean.valueOf(value.toString());
+        }
+        return value.toString();
+    }
+
     private String getType() {
         return getPropertyAsString("ecm:primaryType");
     }
@@ -54,6 +54,14 @@ public class ElasticSearchNxqlPageProvider extends CoreQueryDocumentPageProvider
 
     public static final String SEARCH_ON_ALL_REPOSITORIES_PROPERTY = "searchAllRepositories";
 
+    /**
+     * Page provider property to build the documents from the Elasticsearch _source ({@code true}) or to load them from
+     * the repository ({@code false}), overriding the default fetch mode.
+     *
+     * @since 7.1
+     */
+    public static final String FETCH_FROM_ELASTICSEARCH_PROPERTY = "fetchFromElasticsearch";
+
     protected static final Log log = LogFactory.getLog(ElasticSearchNxqlPageProvider.class);
 
     private static final long serialVersionUID = 1L;
@@ -87,6 +95,12 @@ public class ElasticSearchNxqlPageProvider extends CoreQueryDocumentPageProvider
             if (searchOnAllRepositories()) {
                 nxQuery.searchOnAllRepositories();
             }
+            Boolean fetchFromElasticsearch = getFetchFromElasticsearch();
+            if (Boolean.TRUE.equals(fetchFromElasticsearch)) {
+                nxQuery.fetchFromElasticsearch();
+            } else if (Boolean.FALSE.equals(fetchFromElasticsearch)) {
+                nxQuery.fetchFromDatabase();
+            }
             EsResult ret = ess.queryAndAggregate(nxQuery);
             DocumentModelList dmList = ret.getDocuments();
             currentAggregates = new HashMap<String, Aggregate<? extends Bucket>>(ret.getAggregates().size());
@@ -146,6 +160,19 @@ public class ElasticSearchNxqlPageProvider extends CoreQueryDocumentPageProvider
         return Boolean.valueOf(value);
     }
 
+    /**
+     * Returns the fetch mode configured on this page provider, or {@code null} to use the default one.
+     *
+     * @since 7.1
+     */
+    protected Boolean getFetchFromElasticsearch() {
+        Serializable value = getProperties().get(FETCH_FROM_ELASTICSEARCH_PROPERTY);
+        if (value == null) {
+            return null;
+        }
+        return Boolean.valueOf(value.toString());
+    }
+
     @Override
     public boolean hasAggregateSupport() {
         return true;
@@ -87,7 +87,10 @@ public class BucketIndexingWorker extends BaseIndexingWorker implements Work {
         }
     }
 
-    private List<IndexingCommand> getIndexingCommands(CoreSession session, List<String> ids) {
+    /**
+     * @since 7.1
+     */
+    protected static List<IndexingCommand> getIndexingCommands(CoreSession session, List<String> ids) {
         List<IndexingCommand> ret = new ArrayList<>(ids.size());
         for (DocumentModel doc : fetchDocuments(session, ids)) {
             IndexingCommand cmd = new IndexingCommand(doc, false, false);
@@ -96,7 +99,7 @@ public class BucketIndexingWorker extends BaseIndexingWorker implements Work {
         return ret;
     }
 
-    private List<DocumentModel> fetchDocuments(CoreSession session, List<String> ids) {
+    private static List<DocumentModel> fetchDocuments(CoreSession session, List<String> ids) {
         StringBuilder sb = new StringBuilder();
         sb.append("SELECT * FROM Document, Relation WHERE ecm:uuid IN (");
         for (int i = 0; i < ids.size(); i++) {
@@ -0,0 +1,207 @@
+/*
+ * (C) Copyright 2014 Nuxeo SA (http://nuxeo.com/) and contributors.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser General Public License
+ * (LGPL) version 2.1 which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl-2.1.html
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * Contributors:
+ *     Nuxeo
+ */
+package org.nuxeo.elasticsearch.work;
+
+import java.io.Serializable;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Progress of one partition of a reindexing job: the documents having an ecm:uuid in {@code [lowerBound, upperBound)}
+ * are indexed in ecm:uuid order, {@code lastId} being the last one already indexed.
+ *
+ * @since 7.1
+ */
+public class ReindexingCheckpoint implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    protected String jobId;
+
+    protected String repositoryName;
+
+    protected String nxql;
+
+    protected int partition;
+
+    protected int partitions;
+
+    /** Inclusive lower bound, {@code null} for the first partition. */
+    protected String lowerBound;
+
+    /** Exclusive upper bound, {@code null} for the last partition. */
+    protected String upperBound;
+
+    protected String lastId;
+
+    protected long processed;
+
+    protected long total;
+
+    protected long startTime;
+
+    protected long updateTime;
+
+    protected boolean completed;
+
+    /** Id of the work currently in charge of this partition. */
+    protected String workId;
+
+    public ReindexingCheckpoint(String jobId, String repositoryName, String nxql, int partition, int partitions,
+            String lowerBound, String upperBound, long total) {
+        this.jobId = jobId;
+        this.repositoryName = repositoryName;
+        this.nxql = nxql;
+        this.partition = partition;
+        this.partitions = partitions;
+        this.lowerBound = lowerBound;
+        this.upperBound = upperBound;
+        this.total = total;
+        startTime = updateTime = System.currentTimeMillis();
+    }
+
+    protected ReindexingCheckpoint() {
+    }
+
+    public String getId() {
+        return getId(jobId, partition);
+    }
+
+    /**
+     * Gets the id of the checkpoint of a partition of a job.
+     */
+    public static String getId(String jobId, int partition) {
+        return jobId + "-" + partition;
+    }
+
+    public String getJobId() {
+        return jobId;
+    }
+
+    public String getRepositoryName() {
+        return repositoryName;
+    }
+
+    public String getNxql() {
+        return nxql;
+    }
+
+    public int getPartition() {
+        return partition;
+    }
+
+    public int getPartitions() {
+        return partitions;
+    }
+
+    public String getLowerBound() {
+        return lowerBound;
+    }
+
+    public String getUpperBound() {
+        return upperBound;
+    }
+
+    public String getLastId() {
+        return lastId;
+    }
+
+    public long getProcessed() {
+        return processed;
+    }
+
+    public long getTotal() {
+        return total;
+    }
+
+    public long getStartTime() {
+        return startTime;
+    }
+
+    public long getUpdateTime() {
+        return updateTime;
+    }
+
+    public boolean isCompleted() {
+        return completed;
+    }
+
+    public String getWorkId() {
+        return workId;
+    }
+
+    public void setWorkId(String workId) {
+        this.workId = workId;
+    }
+
+    /**
+     * Records that the documents up to {@code lastId} included have been indexed.
+     */
+    public void advance(String lastId, long count, boolean completed) {
+        if (lastId != null) {
+            this.lastId = lastId;
+        }
+        processed += count;
+        this.completed = completed;
+        updateTime = System.currentTimeMillis();
+    }
+
+    public Map<String, Object> toMap() {
+        Map<String, Object> map = new HashMap<>();
+        map.put("jobId", jobId);
+        map.put("repositoryName", repositoryName);
+        map.put("nxql", nxql);
+        map.put("partition", partition);
+        map.put("partitions", partitions);
+        map.put("lowerBound", lowerBound);
+        map.put("upperBound", upperBound);
+        map.put("lastId", lastId);
+        map.put("processed", processed);
+        map.put("total", total);
+        map.put("startTime", startTime);
+        map.put("updateTime", updateTime);
+        map.put("completed", completed);
+        map.put("workId", workId);
+        return map;
+    }
+
+    public static ReindexingCheckpoint fromMap(Map<String, Object> map) {
+        ReindexingCheckpoint cp = new ReindexingCheckpoint();
+        cp.jobId = (String) map.get("jobId");
+        cp.repositoryName = (String) map.get("repositoryName");
+        cp.nxql = (String) map.get("nxql");
+        cp.partition = ((Number) map.get("partition")).intValue();
+        cp.partitions = ((Number) map.get("partitions")).intValue();
+        cp.lowerBound = (String) map.get("lowerBound");
+        cp.upperBound = (String) map.get("upperBound");
+        cp.lastId = (String) map.get("lastId");
+        cp.processed = ((Number) map.get("processed")).longValue();
+        cp.total = ((Number) map.get("total")).longValue();
+        cp.startTime = ((Number) map.get("startTime")).longValue();
+        cp.updateTime = ((Number) map.get("updateTime")).longValue();
+        cp.completed = Boolean.TRUE.equals(map.get("completed"));
+        cp.workId = (String) map.get("workId");
+        return cp;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s partition %d/%d [%s, %s) last: %s processed: %d%s", jobId, partition + 1,
+                partitions, lowerBound, upperBound, lastId, processed, completed ? " completed" : "");
+    }
+
+}
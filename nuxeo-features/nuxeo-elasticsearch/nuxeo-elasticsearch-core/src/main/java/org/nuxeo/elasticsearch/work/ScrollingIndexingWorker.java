@@ -18,6 +18,9 @@
 package org.nuxeo.elasticsearch.work;
 
 import static org.nuxeo.elasticsearch.ElasticSearchConstants.REINDEX_BUCKET_READ_PROPERTY;
+import static org.nuxeo.elasticsearch.ElasticSearchConstants.REINDEX_BUCKET_WRITE_PROPERTY;
+import static org.nuxeo.elasticsearch.ElasticSearchConstants.REINDEX_CHUNK_SIZE_PROPERTY;
+import static org.nuxeo.elasticsearch.ElasticSearchConstants.REINDEX_PARTITIONS_PROPERTY;
 
 import java.io.Serializable;
 import java.util.ArrayList;
@@ -30,12 +33,34 @@ import org.apache.commons.logging.LogFactory;
 import org.nuxeo.ecm.core.api.CoreSession;
 import org.nuxeo.ecm.core.api.IterableQueryResult;
 import org.nuxeo.ecm.core.query.sql.NXQL;
+import org.nuxeo.ecm.core.query.sql.SQLQueryParser;
+import org.nuxeo.ecm.core.query.sql.model.Expression;
+import org.nuxeo.ecm.core.query.sql.model.Function;
+import org.nuxeo.ecm.core.query.sql.model.LiteralList;
+import org.nuxeo.ecm.core.query.sql.model.MultiExpression;
+import org.nuxeo.ecm.core.query.sql.model.Operand;
+import org.nuxeo.ecm.core.query.sql.model.OperandList;
+import org.nuxeo.ecm.core.query.sql.model.Operator;
+import org.nuxeo.ecm.core.query.sql.model.Predicate;
+import org.nuxeo.ecm.core.query.sql.model.Reference;
+import org.nuxeo.ecm.core.query.sql.model.SQLQuery;
+import org.nuxeo.ecm.core.query.sql.model.StringLiteral;
 import org.nuxeo.ecm.core.work.api.Work;
 import org.nuxeo.ecm.core.work.api.WorkManager;
+import org.nuxeo.elasticsearch.api.ElasticSearchAdmin;
+import org.nuxeo.elasticsearch.api.ElasticSearchIndexing;
+import org.nuxeo.elasticsearch.core.ReindexingCheckpointStore;
 import org.nuxeo.runtime.api.Framework;
 
 /**
- * Worker to reindex a large amount of document
+ * Worker to reindex a large amount of document.
+ * <p>
+ * The job worker splits the documents into ecm:uuid ranges of about the same size and schedules one partition worker
+ * per range, so that the partitions are processed in parallel by all the instances sharing the work queue. The range
+ * bounds are ids sampled from the repository, so that they have its id type and ordering whatever it is (varchar, uuid
+ * or sequence). A partition worker indexes a
+ * chunk of documents in ecm:uuid order, saves its progress in a {@link ReindexingCheckpoint} and schedules another
+ * worker for the next chunk, so that an interrupted job can be resumed from its last checkpoint.
  *
  * @since 7.1
  */
@@ -44,10 +69,19 @@ public class ScrollingIndexingWorker extends BaseIndexingWorker implements Work
 
     private static final long serialVersionUID = 1L;
 
-    private static final String DEFAULT_BUCKET_SIZE = "500";
+    private static final String DEFAULT_PARTITIONS = "16";
+
+    private static final String DEFAULT_CHUNK_SIZE = "10000";
+
+    private static final String DEFAULT_BUCKET_SIZE = "50";
+
+    private static final int MAX_PARTITIONS = 256;
 
     protected final String nxql;
 
+    /** The partition processed by this worker, {@code null} for the job worker. */
+    protected final ReindexingCheckpoint checkpoint;
+
     protected WorkManager workManager;
 
     protected long documentCount = 0;
@@ -56,47 +90,244 @@ public class ScrollingIndexingWorker extends BaseIndexingWorker implements Work
         super();
         this.repositoryName = repositoryName;
         this.nxql = nxql;
+        checkpoint = null;
+    }
+
+    /**
+     * Creates a worker processing the next chunk of a partition.
+     */
+    public ScrollingIndexingWorker(ReindexingCheckpoint checkpoint) {
+        super();
+        repositoryName = checkpoint.getRepositoryName();
+        nxql = checkpoint.getNxql();
+        this.checkpoint = checkpoint;
     }
 
     @Override
     public String getTitle() {
+        if (checkpoint != null) {
+            return "Elasticsearch reindexing " + checkpoint;
+        }
         return "Elasticsearch scrolling indexer: " + nxql + ", processed " + documentCount;
     }
 
     @Override
     protected void doWork() {
-        String jobName = getSchedulePath().getPath();
-        log.warn(String.format("Re-indexing job: %s started, NXQL: %s on repository: %s", jobName, nxql, repositoryName));
+        if (checkpoint == null) {
+            startJob();
+        } else {
+            processChunk();
+        }
+    }
+
+    protected void startJob() {
+        String jobId = getId();
         CoreSession session = initSession(repositoryName);
-        IterableQueryResult res = session.queryAndFetch(nxql, NXQL.NXQL);
-        int bucketCount = 0;
+        long total;
+        List<String> bounds;
+        IterableQueryResult res = session.queryAndFetch(getPartitionQuery(nxql, null, null, null), NXQL.NXQL);
+        try {
+            total = res.size();
+            bounds = getPartitionBounds(res, total, getPartitionCount());
+        } finally {
+            res.close();
+        }
+        int partitions = bounds.size() - 1;
+        log.warn(String.format("Re-indexing job: %s started, NXQL: %s on repository: %s, %d documents in %d partitions",
+                jobId, nxql, repositoryName, total, partitions));
+        ReindexingCheckpointStore store = getCheckpointStore();
+        for (int i = 0; i < partitions; i++) {
+            schedulePartition(store, new ReindexingCheckpoint(jobId, repositoryName, nxql, i, partitions,
+                    bounds.get(i), bounds.get(i + 1), total));
+        }
+    }
+
+    protected void processChunk() {
+        ElasticSearchIndexing esi = Framework.getLocalService(ElasticSearchIndexing.class);
+        CoreSession session = initSession(repositoryName);
+        String query = getPartitionQuery(nxql, checkpoint.getLowerBound(), checkpoint.getUpperBound(),
+                checkpoint.getLastId());
+        int chunkSize = getChunkSize();
+        int bucketSize = getBucketSize();
+        String lastId = null;
+        IterableQueryResult res = session.queryAndFetch(query, NXQL.NXQL);
         try {
             Iterator<Map<String, Serializable>> it = res.iterator();
-            int bucketSize = getBucketSize();
             List<String> ids = new ArrayList<>(bucketSize);
-            while (it.hasNext()) {
+            while (documentCount < chunkSize && it.hasNext()) {
+                lastId = (String) it.next().get(NXQL.ECM_UUID);
+                ids.add(lastId);
                 documentCount += 1;
-                ids.add((String) it.next().get(NXQL.ECM_UUID));
                 if (ids.size() == bucketSize) {
-                    scheduleBucketWorker(ids, false);
-                    ids = new ArrayList<>(bucketSize);
-                    bucketCount += 1;
+                    esi.indexNow(BucketIndexingWorker.getIndexingCommands(session, ids));
+                    ids.clear();
                 }
             }
-            scheduleBucketWorker(ids, true);
             if (!ids.isEmpty()) {
-                bucketCount += 1;
+                esi.indexNow(BucketIndexingWorker.getIndexingCommands(session, ids));
             }
         } finally {
             res.close();
-            log.warn(String.format("Re-indexing job: %s has submited %d documents in %d bucket workers", jobName,
-                    documentCount, bucketCount));
         }
+        boolean completed = documentCount < chunkSize;
+        checkpoint.advance(lastId, documentCount, completed);
+        ReindexingCheckpointStore store = getCheckpointStore();
+        if (completed) {
+            store.save(checkpoint);
+            log.warn(String.format("Re-indexing job: %s partition %d/%d completed, %d documents", checkpoint.getJobId(),
+                    checkpoint.getPartition() + 1, checkpoint.getPartitions(), checkpoint.getProcessed()));
+            // the last partition to complete removes the checkpoints of the job, deleting them twice is harmless
+            if (store.isJobCompleted(checkpoint)) {
+                store.deleteJob(checkpoint);
+                log.warn(String.format("Re-indexing job: %s completed", checkpoint.getJobId()));
+            }
+        } else {
+            schedulePartition(store, checkpoint);
+        }
+    }
+
+    /**
+     * Schedules a worker for the next chunk of a partition, the checkpoint referencing it being saved first.
+     */
+    protected void schedulePartition(ReindexingCheckpointStore store, ReindexingCheckpoint checkpoint) {
+        ScrollingIndexingWorker worker = new ScrollingIndexingWorker(checkpoint);
+        checkpoint.setWorkId(worker.getId());
+        store.save(checkpoint);
+        getWorkManager().schedule(worker);
     }
 
-    protected void scheduleBucketWorker(List<String> bucket, boolean isLast) {
-        BucketIndexingWorker subWorker = new BucketIndexingWorker(repositoryName, bucket, isLast);
-        getWorkManager().schedule(subWorker);
+    /**
+     * Splits the documents of the query result, ordered by ecm:uuid, into ranges of about the same size. The bounds are
+     * the ids found at regular positions in the result, the first and the last bounds being {@code null} so that the
+     * documents created meanwhile are processed too.
+     */
+    protected static List<String> getPartitionBounds(IterableQueryResult res, long total, int partitions) {
+        partitions = (int) Math.max(1, Math.min(Math.min(MAX_PARTITIONS, partitions), total));
+        List<String> bounds = new ArrayList<>(partitions + 1);
+        bounds.add(null);
+        for (int i = 1; i < partitions; i++) {
+            res.skipTo(total * i / partitions);
+            Iterator<Map<String, Serializable>> it = res.iterator();
+            if (!it.hasNext()) {
+                break;
+            }
+            String id = (String) it.next().get(NXQL.ECM_UUID);
+            if (!id.equals(bounds.get(bounds.size() - 1))) {
+                bounds.add(id);
+            }
+        }
+        bounds.add(null);
+        return bounds;
+    }
+
+    /**
+     * Restricts the query to a range of ecm:uuid, ordered by ecm:uuid so that it can be resumed after the last
+     * processed id. Only the ecm:uuid is selected, and the order of the original query is ignored.
+     */
+    protected static String getPartitionQuery(String nxql, String lowerBound, String upperBound, String lastId) {
+        SQLQuery query = SQLQueryParser.parse(nxql);
+        List<Operand> clauses = new ArrayList<>(3);
+        if (query.where != null && query.where.predicate != null) {
+            clauses.add(query.where.predicate);
+        }
+        Reference id = new Reference(NXQL.ECM_UUID);
+        if (lastId != null) {
+            clauses.add(new Predicate(id, Operator.GT, new StringLiteral(lastId)));
+        } else if (lowerBound != null) {
+            clauses.add(new Predicate(id, Operator.GTEQ, new StringLiteral(lowerBound)));
+        }
+        if (upperBound != null) {
+            clauses.add(new Predicate(id, Operator.LT, new StringLiteral(upperBound)));
+        }
+        StringBuilder sb = new StringBuilder();
+        sb.append("SELECT ").append(NXQL.ECM_UUID).append(" FROM ").append(query.from);
+        if (!clauses.isEmpty()) {
+            sb.append(" WHERE ");
+            appendOperand(sb, new MultiExpression(Operator.AND, clauses));
+        }
+        sb.append(" ORDER BY ").append(NXQL.ECM_UUID);
+        return sb.toString();
+    }
+
+    /**
+     * Appends an operand of a parsed query as NXQL. The operands' {@code toString} cannot be used, as it neither
+     * escapes the strings nor writes multi-expressions in NXQL syntax.
+     */
+    protected static void appendOperand(StringBuilder sb, Operand operand) {
+        if (operand instanceof MultiExpression) {
+            MultiExpression expr = (MultiExpression) operand;
+            for (int i = 0; i < expr.values.size(); i++) {
+                if (i > 0) {
+                    sb.append(' ').append(expr.operator).append(' ');
+                }
+                sb.append('(');
+                appendOperand(sb, expr.values.get(i));
+                sb.append(')');
+            }
+        } else if (operand instanceof Expression) {
+            Expression expr = (Expression) operand;
+            if (expr.rvalue == null) {
+                if (expr.isSuffix()) {
+                    appendSubOperand(sb, expr.lvalue);
+                    sb.append(' ').append(expr.operator);
+                } else {
+                    sb.append(expr.operator).append(' ');
+                    appendSubOperand(sb, expr.lvalue);
+                }
+            } else {
+                appendSubOperand(sb, expr.lvalue);
+                sb.append(' ').append(expr.operator).append(' ');
+                if (expr.operator == Operator.BETWEEN || expr.operator == Operator.NOTBETWEEN) {
+                    LiteralList range = (LiteralList) expr.rvalue;
+                    appendOperand(sb, range.get(0));
+                    sb.append(" AND ");
+                    appendOperand(sb, range.get(1));
+                } else {
+                    appendSubOperand(sb, expr.rvalue);
+                }
+            }
+        } else if (operand instanceof StringLiteral) {
+            sb.append(NXQL.escapeString(((StringLiteral) operand).value));
+        } else if (operand instanceof LiteralList) {
+            sb.append('(');
+            appendOperands(sb, (LiteralList) operand);
+            sb.append(')');
+        } else if (operand instanceof Function) {
+            Function function = (Function) operand;
+            sb.append(function.name).append('(');
+            if (function.args != null) {
+                appendOperands(sb, function.args);
+            }
+            sb.append(')');
+        } else if (operand instanceof OperandList) {
+            appendOperands(sb, (OperandList) operand);
+        } else {
+            // references and other literals
+            sb.append(operand);
+        }
+    }
+
+    protected static void appendSubOperand(StringBuilder sb, Operand operand) {
+        if (operand instanceof Expression) {
+            sb.append('(');
+            appendOperand(sb, operand);
+            sb.append(')');
+        } else {
+            appendOperand(sb, operand);
+        }
+    }
+
+    protected static void appendOperands(StringBuilder sb, List<? extends Operand> operands) {
+        for (int i = 0; i < operands.size(); i++) {
+            if (i > 0) {
+                sb.append(", ");
+            }
+            appendOperand(sb, operands.get(i));
+        }
+    }
+
+    protected ReindexingCheckpointStore getCheckpointStore() {
+        return new ReindexingCheckpointStore(Framework.getLocalService(ElasticSearchAdmin.class).getClient());
     }
 
     protected WorkManager getWorkManager() {
@@ -106,8 +337,24 @@ public class ScrollingIndexingWorker extends BaseIndexingWorker implements Work
         return workManager;
     }
 
+    protected int getPartitionCount() {
+        String value = Framework.getProperty(REINDEX_PARTITIONS_PROPERTY, DEFAULT_PARTITIONS);
+        return Integer.parseInt(value);
+    }
+
+    /**
+     * Gets the chunk size, falling back on the former bucket read size which also was the number of documents handled
+     * by a reindexing work.
+     */
+    @SuppressWarnings("deprecation")
+    protected int getChunkSize() {
+        String value = Framework.getProperty(REINDEX_CHUNK_SIZE_PROPERTY,
+                Framework.getProperty(REINDEX_BUCKET_READ_PROPERTY, DEFAULT_CHUNK_SIZE));
+        return Integer.parseInt(value);
+    }
+
     protected int getBucketSize() {
-        String value = Framework.getProperty(REINDEX_BUCKET_READ_PROPERTY, DEFAULT_BUCKET_SIZE);
+        String value = Framework.getProperty(REINDEX_BUCKET_WRITE_PROPERTY, DEFAULT_BUCKET_SIZE);
         return Integer.parseInt(value);
     }
 
@@ -1,5 +1,6 @@
 package org.nuxeo.elasticsearch.test;
 
+import java.util.Calendar;
 import java.util.concurrent.TimeUnit;
 
 import org.elasticsearch.action.search.SearchResponse;
@@ -98,4 +99,27 @@ public class TestFetchDocumentsFromEs {
 
     }
 
+    @Test
+    public void shouldLoadTypedPropertiesFromEs() throws Exception {
+        buildAndIndexTree();
+        DocumentModelList docs = ess.query(new NxQueryBuilder(session).nxql(
+                "select * from Document where ecm:name = 'folder0'").fetchFromElasticsearch());
+        Assert.assertEquals(1, docs.totalSize());
+        DocumentModel doc = docs.get(0);
+        DocumentModel coreDoc = session.getDocument(doc.getRef());
+        Assert.assertEquals(coreDoc.getId(), doc.getId());
+        Assert.assertEquals("/folder0", doc.getPathAsString());
+        Assert.assertTrue(doc.isImmutable());
+        Assert.assertTrue(doc.isFolder());
+        // indexed properties are converted from the _source
+        Assert.assertTrue(doc.isPrefetched("dc:title"));
+        Assert.assertEquals("Folder0", doc.getPropertyValue("dc:title"));
+        Assert.assertTrue(doc.getPropertyValue("dc:created") instanceof Calendar);
+        Assert.assertEquals(((Calendar) coreDoc.getPropertyValue("dc:created")).getTimeInMillis(),
+                ((Calendar) doc.getPropertyValue("dc:created")).getTimeInMillis());
+        Assert.assertArrayEquals((Object[]) coreDoc.getPropertyValue("dc:contributors"),
+                (Object[]) doc.getPropertyValue("dc:contributors"));
+        Assert.assertEquals(coreDoc.getCurrentLifeCycleState(), doc.getCurrentLifeCycleState());
+    }
+
 }
@@ -17,6 +17,9 @@
 
 package org.nuxeo.elasticsearch.test;
 
+import java.util.ArrayList;
+import java.util.List;
+
 import org.elasticsearch.action.search.SearchResponse;
 import org.elasticsearch.action.search.SearchType;
 import org.elasticsearch.index.query.QueryBuilders;
@@ -227,4 +230,48 @@ public class TestManualIndexing {
         Assert.assertEquals(1, searchResponse.getHits().getTotalHits());
     }
 
+    @Test
+    public void checkBulkIndexingAndDelete() throws Exception {
+        List<IndexingCommand> cmds = new ArrayList<>();
+        DocumentModel folder = null;
+        DocumentModel subFolder = null;
+        String parentPath = "/";
+        for (int i = 0; i < 3; i++) {
+            DocumentModel doc = session.createDocumentModel(parentPath, "folder" + i, "Folder");
+            doc.putContextData(EventConstants.DISABLE_AUTO_INDEXING, Boolean.TRUE);
+            doc = session.createDocument(doc);
+            cmds.add(new IndexingCommand(doc, true, false));
+            if (i == 0) {
+                folder = doc;
+            } else if (i == 1) {
+                subFolder = doc;
+            }
+            parentPath = doc.getPathAsString();
+        }
+        DocumentModel note = session.createDocumentModel("/", "testNote", "Note");
+        note.putContextData(EventConstants.DISABLE_AUTO_INDEXING, Boolean.TRUE);
+        note = session.createDocument(note);
+        cmds.add(new IndexingCommand(note, true, false));
+        session.save();
+
+        startCountingCommandProcessed();
+        esi.indexNow(cmds);
+        assertNumberOfCommandProcessed(4);
+        esa.refresh();
+        SearchResponse searchResponse = esa.getClient().prepareSearch(IDX_NAME).setSearchType(
+                SearchType.DFS_QUERY_THEN_FETCH).setFrom(0).setSize(60).execute().actionGet();
+        Assert.assertEquals(4, searchResponse.getHits().getTotalHits());
+
+        // overlapping recursive deletes and a plain delete in the same call
+        cmds.clear();
+        cmds.add(new IndexingCommand(subFolder, IndexingCommand.DELETE, true, true));
+        cmds.add(new IndexingCommand(folder, IndexingCommand.DELETE, true, true));
+        cmds.add(new IndexingCommand(note, IndexingCommand.DELETE, true, false));
+        esi.indexNow(cmds);
+        esa.refresh();
+        searchResponse = esa.getClient().prepareSearch(IDX_NAME).setSearchType(SearchType.DFS_QUERY_THEN_FETCH).setFrom(
+                0).setSize(60).execute().actionGet();
+        Assert.assertEquals(0, searchResponse.getHits().getTotalHits());
+    }
+
 }
@@ -18,6 +18,7 @@
 package org.nuxeo.elasticsearch.test;
 
 import java.util.Arrays;
+import java.util.Collections;
 
 import org.junit.After;
 import org.junit.Assert;
@@ -34,6 +35,7 @@ import org.nuxeo.ecm.platform.tag.TagService;
 import org.nuxeo.elasticsearch.api.ElasticSearchAdmin;
 import org.nuxeo.elasticsearch.api.ElasticSearchIndexing;
 import org.nuxeo.elasticsearch.api.ElasticSearchService;
+import org.nuxeo.elasticsearch.api.ReindexingStatus;
 import org.nuxeo.elasticsearch.listener.ElasticSearchInlineListener;
 import org.nuxeo.elasticsearch.query.NxQueryBuilder;
 import org.nuxeo.runtime.api.Framework;
@@ -160,6 +162,10 @@ public class TestReindex {
 
         Assert.assertEquals(getDigest(coreDocs), getDigest(docs2));
 
+        // the checkpoints of completed jobs are removed
+        Assert.assertEquals(Collections.<ReindexingStatus> emptyList(), esa.getReindexingStatus());
+        // nothing to resume
+        Assert.assertEquals(0, esi.resumeReindex(session.getRepositoryName()));
     }
 
     private void buildDocs() throws Exception {
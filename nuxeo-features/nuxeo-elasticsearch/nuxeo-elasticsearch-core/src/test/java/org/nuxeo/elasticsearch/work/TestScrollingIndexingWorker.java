@@ -0,0 +1,48 @@
+/*
+ * (C) Copyright 2014 Nuxeo SA (http://nuxeo.com/) and contributors.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser General Public License
+ * (LGPL) version 2.1 which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl-2.1.html
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * Contributors:
+ *     Nuxeo
+ */
+package org.nuxeo.elasticsearch.work;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+public class TestScrollingIndexingWorker {
+
+    @Test
+    public void testPartitionQuery() {
+        assertEquals("SELECT ecm:uuid FROM Document ORDER BY ecm:uuid",
+                ScrollingIndexingWorker.getPartitionQuery("SELECT * FROM Document", null, null, null));
+        assertEquals("SELECT ecm:uuid FROM Document WHERE (ecm:uuid >= 'a') AND (ecm:uuid < 'b') ORDER BY ecm:uuid",
+                ScrollingIndexingWorker.getPartitionQuery("SELECT * FROM Document", "a", "b", null));
+        // resumed after the last id, the original order is dropped
+        assertEquals("SELECT ecm:uuid FROM Document, Relation WHERE (dc:title = 'it\\'s') AND (ecm:uuid > 'c')"
+                + " ORDER BY ecm:uuid", ScrollingIndexingWorker.getPartitionQuery(
+                "SELECT * FROM Document, Relation WHERE dc:title = 'it\\'s' ORDER BY dc:title DESC", "a", null, "c"));
+        // keywords in literals and nested clauses are kept as is
+        assertEquals("SELECT ecm:uuid FROM Note WHERE ((dc:title LIKE '% ORDER BY %') OR (NOT (ecm:isProxy = 1)))"
+                + " AND (ecm:uuid < 'b') ORDER BY ecm:uuid", ScrollingIndexingWorker.getPartitionQuery(
+                "SELECT ecm:uuid FROM Note WHERE dc:title LIKE '% ORDER BY %' OR NOT ecm:isProxy = 1", null, "b",
+                null));
+        assertEquals("SELECT ecm:uuid FROM Document WHERE"
+                + " (((dc:created BETWEEN DATE '2014-01-01' AND DATE '2014-12-31')"
+                + " AND (ecm:primaryType IN ('File', 'Note'))) AND (dc:subjects/* IS NULL)) ORDER BY ecm:uuid",
+                ScrollingIndexingWorker.getPartitionQuery("SELECT * FROM Document WHERE dc:created BETWEEN "
+                        + "DATE '2014-01-01' AND DATE '2014-12-31' AND ecm:primaryType IN ('File', 'Note')"
+                        + " AND dc:subjects/* IS NULL", null, null, null));
+    }
+
+}
@@ -23,6 +23,13 @@ import org.nuxeo.ecm.core.api.ClientException;
  */
 public interface AuditAdmin {
 
+    /**
+     * Framework property: if {@code true}, the audit log is partitioned by month of event date (PostgreSQL only).
+     *
+     * @since 7.1
+     */
+    String PARTITIONING_ENABLED_PROPERTY = "nuxeo.audit.partitioning.enabled";
+
     /**
      * Forces log Synchronisation for a branch of the repository. This can be useful to add the create entries if DB was
      * initialized from a bulk import.
@@ -12,7 +12,11 @@
  */
 package org.nuxeo.ecm.platform.audit.api.document;
 
+import java.io.Serializable;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.Date;
 import java.util.List;
 
 import org.apache.commons.logging.Log;
@@ -20,9 +24,12 @@ import org.apache.commons.logging.LogFactory;
 import org.nuxeo.ecm.core.api.ClientException;
 import org.nuxeo.ecm.core.api.CoreSession;
 import org.nuxeo.ecm.core.api.DocumentModel;
+import org.nuxeo.ecm.core.api.IdRef;
 import org.nuxeo.ecm.core.api.SortInfo;
+import org.nuxeo.ecm.platform.audit.api.AuditAdmin;
 import org.nuxeo.ecm.platform.audit.api.AuditPageProvider;
 import org.nuxeo.ecm.platform.query.api.PageProvider;
+import org.nuxeo.runtime.api.Framework;
 
 /**
  * Page provider that is dedicated to fetching history of a Document.
@@ -45,15 +52,61 @@ public class DocumentHistoryPageProvider extends AuditPageProvider {
 
     protected Log log = LogFactory.getLog(DocumentHistoryPageProvider.class);
 
+    /**
+     * Page provider property: if {@code true}, the pages are only queried from the creation date of the document, so
+     * that the older partitions of a partitioned audit log are skipped. Entries logged before the {@code dc:created} of
+     * the document are then not shown. Defaults to the {@link AuditAdmin#PARTITIONING_ENABLED_PROPERTY} framework
+     * property.
+     *
+     * @since 7.1
+     */
+    public static final String PRUNE_BY_FIRST_ENTRY_DATE_PROPERTY = "pruneByFirstEntryDate";
+
     protected Object[] newParams;
 
     @Override
     protected String getFixedPart() {
-        if (getParameters().length == 3) {
-            return " ( log.docUUID = ? OR (log.docUUID = ? AND log.eventDate <= ?) ) ";
+        Object[] params = getParameters();
+        String fixedPart;
+        if (params.length >= 3) {
+            fixedPart = " ( log.docUUID = ? OR (log.docUUID = ? AND log.eventDate <= ?) ) ";
         } else {
-            return " log.docUUID = ?  ";
+            fixedPart = " log.docUUID = ?  ";
+        }
+        if (params.length == 2 || params.length == 4) {
+            // lower bound from the date of the first entry
+            fixedPart += " AND log.eventDate >= ? ";
+        }
+        return fixedPart;
+    }
+
+    protected boolean isPruneByFirstEntryDate() {
+        Serializable prune = getProperties().get(PRUNE_BY_FIRST_ENTRY_DATE_PROPERTY);
+        if (prune == null) {
+            return Boolean.parseBoolean(Framework.getProperty(AuditAdmin.PARTITIONING_ENABLED_PROPERTY, "false"));
         }
+        return Boolean.parseBoolean(prune.toString());
+    }
+
+    /**
+     * Returns the lower bound of the dates of the entries logged for the document, from its creation date, or
+     * {@code null} if unknown. Versions and proxies have the creation date of their live document, so it also bounds
+     * the live document entries merged in their history.
+     *
+     * @since 7.1
+     */
+    protected Date getMinDate(DocumentModel doc) throws ClientException {
+        if (!doc.hasSchema("dublincore")) {
+            return null;
+        }
+        Calendar created = (Calendar) doc.getPropertyValue("dc:created");
+        if (created == null) {
+            return null;
+        }
+        Calendar minDate = (Calendar) created.clone();
+        // repository and audit timestamps are not taken at the same time, as in DocumentAuditHelper
+        minDate.add(Calendar.MILLISECOND, -500);
+        return minDate.getTime();
     }
 
     @Override
@@ -83,8 +136,9 @@ public class DocumentHistoryPageProvider extends AuditPageProvider {
             }
             CoreSession session = null;
             String uuid = null;
+            DocumentModel doc = null;
             if (params[0] instanceof DocumentModel) {
-                DocumentModel doc = (DocumentModel) params[0];
+                doc = (DocumentModel) params[0];
                 uuid = doc.getId();
                 session = doc.getCoreSession();
             } else {
@@ -100,6 +154,17 @@ public class DocumentHistoryPageProvider extends AuditPageProvider {
                     } else {
                         newParams = new Object[] { uuid };
                     }
+                    if (isPruneByFirstEntryDate()) {
+                        IdRef ref = new IdRef(uuid);
+                        if (doc == null && session.exists(ref)) {
+                            doc = session.getDocument(ref);
+                        }
+                        Date minDate = doc == null ? null : getMinDate(doc);
+                        if (minDate != null) {
+                            newParams = Arrays.copyOf(newParams, newParams.length + 1);
+                            newParams[newParams.length - 1] = minDate;
+                        }
+                    }
                 } catch (ClientException e) {
                     log.error("Error while fetching additional parameters for audit query", e);
                 }
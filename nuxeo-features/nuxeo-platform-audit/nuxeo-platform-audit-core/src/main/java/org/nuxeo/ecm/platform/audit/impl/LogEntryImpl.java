@@ -41,6 +41,7 @@ import javax.persistence.TemporalType;
 import javax.persistence.Transient;
 
 import org.apache.commons.lang.builder.ToStringBuilder;
+import org.hibernate.annotations.Persister;
 import org.nuxeo.ecm.core.api.DocumentRef;
 import org.nuxeo.ecm.platform.audit.api.ExtendedInfo;
 import org.nuxeo.ecm.platform.audit.api.LogEntry;
@@ -59,6 +60,7 @@ import org.nuxeo.ecm.platform.audit.api.comment.UIAuditComment;
         @NamedQuery(name = "LogEntry.countEventsById", query = "select count(log.eventId) from LogEntry log where log.eventId=:eventId"),
         @NamedQuery(name = "LogEntry.findEventIds", query = "select distinct log.eventId from LogEntry log") })
 @Table(name = "NXP_LOGS")
+@Persister(impl = LogEntryPersister.class)
 public class LogEntryImpl implements LogEntry {
 
     private static final long serialVersionUID = 3037187381843636097L;
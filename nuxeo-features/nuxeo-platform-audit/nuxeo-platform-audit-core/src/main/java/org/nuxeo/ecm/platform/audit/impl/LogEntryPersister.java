@@ -0,0 +1,46 @@
+/*
+ * (C) Copyright 2014 Nuxeo SA (http://nuxeo.com/) and contributors.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser General Public License
+ * (LGPL) version 2.1 which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl-2.1.html
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * Contributors:
+ *     Nuxeo
+ */
+package org.nuxeo.ecm.platform.audit.impl;
+
+import java.util.Arrays;
+
+import org.hibernate.HibernateException;
+import org.hibernate.cache.access.EntityRegionAccessStrategy;
+import org.hibernate.engine.ExecuteUpdateResultCheckStyle;
+import org.hibernate.engine.Mapping;
+import org.hibernate.engine.SessionFactoryImplementor;
+import org.hibernate.mapping.PersistentClass;
+import org.hibernate.persister.entity.SingleTableEntityPersister;
+
+/**
+ * Persister of the {@link LogEntryImpl} entities which doesn't check the row count of their inserts.
+ * <p>
+ * When the audit log is partitioned, the trigger of NXP_LOGS inserts the row into its partition and cancels the
+ * insert into NXP_LOGS itself, which therefore reports no row.
+ *
+ * @see org.nuxeo.ecm.platform.audit.service.AuditPartitionManager
+ * @since 7.1
+ */
+public class LogEntryPersister extends SingleTableEntityPersister {
+
+    public LogEntryPersister(PersistentClass persistentClass, EntityRegionAccessStrategy cacheAccessStrategy,
+            SessionFactoryImplementor factory, Mapping mapping) throws HibernateException {
+        super(persistentClass, cacheAccessStrategy, factory, mapping);
+        Arrays.fill(insertResultCheckStyles, ExecuteUpdateResultCheckStyle.NONE);
+    }
+
+}
@@ -0,0 +1,46 @@
+/*
+ * (C) Copyright 2014 Nuxeo SA (http://nuxeo.com/) and contributors.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser General Public License
+ * (LGPL) version 2.1 which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl-2.1.html
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * Contributors:
+ *     Nuxeo
+ */
+package org.nuxeo.ecm.platform.audit.listener;
+
+import org.nuxeo.ecm.core.api.ClientException;
+import org.nuxeo.ecm.core.event.Event;
+import org.nuxeo.ecm.core.event.EventListener;
+import org.nuxeo.ecm.platform.audit.service.NXAuditEventsService;
+import org.nuxeo.runtime.api.Framework;
+
+/**
+ * Scheduled listener that creates the coming partitions of the audit log and applies its retention policy.
+ *
+ * @since 7.1
+ */
+public class AuditPartitionListener implements EventListener {
+
+    public static final String MAINTENANCE_EVENT = "auditPartitionMaintenance";
+
+    @Override
+    public void handleEvent(Event event) throws ClientException {
+        if (!MAINTENANCE_EVENT.equals(event.getName())) {
+            return;
+        }
+        NXAuditEventsService component = (NXAuditEventsService) Framework.getRuntime().getComponent(
+                NXAuditEventsService.NAME);
+        if (component != null) {
+            component.maintainPartitions();
+        }
+    }
+
+}
@@ -59,6 +59,7 @@ import org.nuxeo.ecm.platform.audit.impl.ExtendedInfoImpl;
 import org.nuxeo.ecm.platform.audit.impl.LogEntryImpl;
 import org.nuxeo.ecm.platform.audit.service.extension.AdapterDescriptor;
 import org.nuxeo.ecm.platform.audit.service.extension.ExtendedInfoDescriptor;
+import org.nuxeo.ecm.platform.audit.service.journal.AuditJournalWriter;
 import org.nuxeo.ecm.platform.el.ExpressionContext;
 import org.nuxeo.ecm.platform.el.ExpressionEvaluator;
 
@@ -343,6 +344,29 @@ public abstract class AbstractAuditBackend implements AuditBackend {
     // these methods are actually overridden in the JPA implementation for
     // optimization purpose
 
+    /**
+     * Appends the entries of the events to the audit journal when it is enabled, they are then written by
+     * {@link #addLogEntries} in the background.
+     *
+     * @return {@code false} if the journal is disabled and the caller must write the entries itself
+     * @since 7.1
+     */
+    protected boolean journalEvents(Iterable<Event> events) {
+        AuditJournalWriter writer = component == null ? null : component.getJournalWriter();
+        if (writer == null) {
+            return false;
+        }
+        List<LogEntry> entries = new ArrayList<>();
+        for (Event event : events) {
+            LogEntry entry = buildEntryFromEvent(event);
+            if (entry != null) {
+                entries.add(entry);
+            }
+        }
+        writer.append(entries);
+        return true;
+    }
+
     @Override
     public void logEvents(EventBundle eventBundle) {
         boolean processEvents = false;
@@ -352,7 +376,7 @@ public abstract class AbstractAuditBackend implements AuditBackend {
                 break;
             }
         }
-        if (!processEvents) {
+        if (!processEvents || journalEvents(eventBundle)) {
             return;
         }
         for (Event event : eventBundle) {
@@ -362,6 +386,9 @@ public abstract class AbstractAuditBackend implements AuditBackend {
 
     @Override
     public void logEvent(Event event) {
+        if (journalEvents(Collections.singletonList(event))) {
+            return;
+        }
         LogEntry entry = buildEntryFromEvent(event);
         if (entry != null) {
             List<LogEntry> entries = new ArrayList<>();
@@ -0,0 +1,335 @@
+/*
+ * (C) Copyright 2014 Nuxeo SA (http://nuxeo.com/) and contributors.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser General Public License
+ * (LGPL) version 2.1 which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl-2.1.html
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * Contributors:
+ *     Nuxeo
+ */
+package org.nuxeo.ecm.platform.audit.service;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.GregorianCalendar;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import javax.naming.NamingException;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.nuxeo.runtime.datasource.DataSourceHelper;
+
+/**
+ * Manages the monthly partitions and the retention of the JPA audit log.
+ * <p>
+ * On PostgreSQL the NXP_LOGS table is partitioned by month of LOG_EVENT_DATE using table inheritance: a
+ * {@code BEFORE INSERT} trigger inserts each row into its partition instead, and the planner skips the partitions
+ * excluded by their {@code CHECK} constraint for queries with a date range. The partitions are created in advance by
+ * the daily maintenance, the rows without partition stay in NXP_LOGS itself. As the insert issued by Hibernate then
+ * reports no row, its row count is not checked (see {@code LogEntryPersister}).
+ * <p>
+ * A PostgreSQL foreign key only sees the rows of the table it references, not the ones of its partitions. The foreign
+ * key from NXP_LOGS_MAPEXTINFOS to NXP_LOGS is therefore enforced by a constraint trigger looking up the log entries
+ * in NXP_LOGS and its partitions, which is installed before the foreign key is removed.
+ * <p>
+ * The retention drops the partitions older than the retention period. The entries not stored in a partition (all of
+ * them on other databases) are deleted by batches.
+ *
+ * @since 7.1
+ */
+public class AuditPartitionManager {
+
+    private static final Log log = LogFactory.getLog(AuditPartitionManager.class);
+
+    /**
+     * Number of months of audit log to keep, older entries are removed. Zero or negative keeps everything.
+     */
+    public static final String RETENTION_MONTHS_PROPERTY = "nuxeo.audit.retention.months";
+
+    public static final String DEFAULT_RETENTION_MONTHS = "0";
+
+    protected static final String PARTITION_PREFIX = "nxp_logs_";
+
+    protected static final Pattern PARTITION_PATTERN = Pattern.compile(PARTITION_PREFIX + "(\\d{4})_(\\d{2})");
+
+    /** Number of partitions created in advance, after the current month. */
+    protected static final int PARTITIONS_AHEAD = 2;
+
+    protected static final int DELETE_BATCH_SIZE = 1000;
+
+    protected static final String CREATE_PARTITION_FUNCTION = "CREATE OR REPLACE FUNCTION nx_audit_logs_create_partition(month timestamp) RETURNS text AS $$\n" //
+            + "DECLARE\n" //
+            + "  part text := 'nxp_logs_' || to_char(month, 'YYYY_MM');\n" //
+            + "BEGIN\n" //
+            + "  IF NOT EXISTS (SELECT 1 FROM pg_class WHERE relname = part AND relkind = 'r') THEN\n" //
+            + "    EXECUTE 'CREATE TABLE ' || part || ' (PRIMARY KEY (log_id), CHECK (log_event_date >= '\n" //
+            + "        || quote_literal(month) || ' AND log_event_date < '\n" //
+            + "        || quote_literal(month + interval '1 month') || ')) INHERITS (nxp_logs)';\n" //
+            + "    EXECUTE 'CREATE INDEX ' || part || '_doc_idx ON ' || part || ' (log_doc_uuid, log_event_date)';\n" //
+            + "    EXECUTE 'CREATE INDEX ' || part || '_date_idx ON ' || part || ' (log_event_date)';\n" //
+            + "  END IF;\n" //
+            + "  RETURN part;\n" //
+            + "EXCEPTION WHEN duplicate_table OR unique_violation THEN\n" //
+            + "  -- created concurrently\n" //
+            + "  RETURN part;\n" //
+            + "END $$ LANGUAGE plpgsql";
+
+    protected static final String ROUTE_FUNCTION = "CREATE OR REPLACE FUNCTION nx_audit_logs_route() RETURNS trigger AS $$\n" //
+            + "DECLARE\n" //
+            + "  part text;\n" //
+            + "BEGIN\n" //
+            + "  IF NEW.log_event_date IS NULL THEN\n" //
+            + "    RETURN NEW;\n" //
+            + "  END IF;\n" //
+            + "  part := 'nxp_logs_' || to_char(NEW.log_event_date, 'YYYY_MM');\n" //
+            + "  IF NOT EXISTS (SELECT 1 FROM pg_class WHERE relname = part AND relkind = 'r') THEN\n" //
+            + "    -- no partition created in advance for this month\n" //
+            + "    RETURN NEW;\n" //
+            + "  END IF;\n" //
+            + "  EXECUTE 'INSERT INTO ' || part || ' SELECT ($1).*' USING NEW;\n" //
+            + "  RETURN NULL;\n" //
+            + "END $$ LANGUAGE plpgsql";
+
+    protected static final String DROP_TRIGGER = "DROP TRIGGER IF EXISTS nx_audit_logs_route ON nxp_logs";
+
+    protected static final String CREATE_TRIGGER = "CREATE TRIGGER nx_audit_logs_route BEFORE INSERT ON nxp_logs"
+            + " FOR EACH ROW EXECUTE PROCEDURE nx_audit_logs_route()";
+
+    protected static final String EXTINFOS_CHECK_FUNCTION = "CREATE OR REPLACE FUNCTION nx_audit_logs_extinfos_check() RETURNS trigger AS $$\n" //
+            + "BEGIN\n" //
+            + "  IF NOT EXISTS (SELECT 1 FROM nxp_logs WHERE log_id = NEW.log_fk) THEN\n" //
+            + "    RAISE foreign_key_violation USING MESSAGE = 'No audit entry for log_fk: ' || NEW.log_fk;\n" //
+            + "  END IF;\n" //
+            + "  RETURN NULL;\n" //
+            + "END $$ LANGUAGE plpgsql";
+
+    protected static final String DROP_EXTINFOS_CHECK_TRIGGER = "DROP TRIGGER IF EXISTS nx_audit_logs_extinfos_check"
+            + " ON nxp_logs_mapextinfos";
+
+    protected static final String CREATE_EXTINFOS_CHECK_TRIGGER = "CREATE CONSTRAINT TRIGGER nx_audit_logs_extinfos_check"
+            + " AFTER INSERT OR UPDATE ON nxp_logs_mapextinfos"
+            + " FOR EACH ROW EXECUTE PROCEDURE nx_audit_logs_extinfos_check()";
+
+    /** Replaced by the constraint trigger, which also sees the entries stored in the partitions. */
+    protected static final String DROP_EXTINFOS_FK = "DO $$\n" //
+            + "DECLARE\n" //
+            + "  r record;\n" //
+            + "BEGIN\n" //
+            + "  FOR r IN SELECT conname FROM pg_constraint WHERE contype = 'f'\n" //
+            + "      AND conrelid = 'nxp_logs_mapextinfos'::regclass AND confrelid = 'nxp_logs'::regclass LOOP\n" //
+            + "    EXECUTE 'ALTER TABLE nxp_logs_mapextinfos DROP CONSTRAINT ' || quote_ident(r.conname);\n" //
+            + "  END LOOP;\n" //
+            + "END $$";
+
+    protected static final String LIST_PARTITIONS = "SELECT c.relname FROM pg_inherits i"
+            + " JOIN pg_class c ON c.oid = i.inhrelid JOIN pg_class p ON p.oid = i.inhparent"
+            + " WHERE p.relname = 'nxp_logs'";
+
+    protected final String dataSourceName;
+
+    protected final boolean partitioning;
+
+    protected final int retentionMonths;
+
+    public AuditPartitionManager(String dataSourceName, boolean partitioning, int retentionMonths) {
+        this.dataSourceName = dataSourceName;
+        this.partitioning = partitioning;
+        this.retentionMonths = retentionMonths;
+    }
+
+    public boolean isEnabled() {
+        return partitioning || retentionMonths > 0;
+    }
+
+    /**
+     * Creates the partitions needed for the coming months, and removes the entries older than the retention period.
+     * Must be called outside of a transaction.
+     */
+    public void maintain(Date now) throws SQLException {
+        if (!isEnabled()) {
+            return;
+        }
+        try (Connection connection = getConnection()) {
+            connection.setAutoCommit(true);
+            boolean partitioned = false;
+            if (partitioning) {
+                if (isPostgreSQL(connection)) {
+                    setupPartitions(connection, now);
+                    partitioned = true;
+                } else {
+                    log.warn("Audit log partitioning is only available on PostgreSQL, "
+                            + "the retention will delete the entries by batches");
+                }
+            }
+            if (retentionMonths > 0) {
+                Calendar cutoff = getFirstDayOfMonth(now);
+                cutoff.add(Calendar.MONTH, -retentionMonths);
+                if (partitioned) {
+                    dropPartitions(connection, cutoff);
+                }
+                deleteEntries(connection, cutoff, partitioned);
+            }
+        }
+    }
+
+    protected Connection getConnection() throws SQLException {
+        try {
+            return DataSourceHelper.getDataSource(dataSourceName).getConnection();
+        } catch (NamingException e) {
+            throw new SQLException("Cannot find datasource: " + dataSourceName, e);
+        }
+    }
+
+    protected static boolean isPostgreSQL(Connection connection) throws SQLException {
+        return connection.getMetaData().getDatabaseProductName().toLowerCase().contains("postgresql");
+    }
+
+    protected static Calendar getFirstDayOfMonth(Date date) {
+        Calendar cal = new GregorianCalendar();
+        cal.setTime(date);
+        return new GregorianCalendar(cal.get(Calendar.YEAR), cal.get(Calendar.MONTH), 1);
+    }
+
+    protected void setupPartitions(Connection connection, Date now) throws SQLException {
+        try (Statement st = connection.createStatement()) {
+            st.execute(CREATE_PARTITION_FUNCTION);
+            st.execute(ROUTE_FUNCTION);
+            st.execute(EXTINFOS_CHECK_FUNCTION);
+            // referential integrity is checked by the constraint trigger before the foreign key goes away
+            st.execute(DROP_EXTINFOS_CHECK_TRIGGER);
+            st.execute(CREATE_EXTINFOS_CHECK_TRIGGER);
+            st.execute(DROP_EXTINFOS_FK);
+            st.execute(DROP_TRIGGER);
+            st.execute(CREATE_TRIGGER);
+        }
+        Calendar month = getFirstDayOfMonth(now);
+        try (PreparedStatement ps = connection.prepareStatement("SELECT nx_audit_logs_create_partition(?)")) {
+            for (int i = 0; i <= PARTITIONS_AHEAD; i++) {
+                ps.setTimestamp(1, new Timestamp(month.getTimeInMillis()));
+                try (ResultSet rs = ps.executeQuery()) {
+                    rs.next();
+                }
+                month.add(Calendar.MONTH, 1);
+            }
+        }
+    }
+
+    /**
+     * Drops the partitions entirely before the cutoff, with their extended infos.
+     */
+    protected void dropPartitions(Connection connection, Calendar cutoff) throws SQLException {
+        List<String> partitions = new ArrayList<>();
+        try (Statement st = connection.createStatement(); ResultSet rs = st.executeQuery(LIST_PARTITIONS)) {
+            while (rs.next()) {
+                partitions.add(rs.getString(1));
+            }
+        }
+        for (String partition : partitions) {
+            Matcher m = PARTITION_PATTERN.matcher(partition);
+            if (!m.matches()) {
+                continue;
+            }
+            Calendar end = new GregorianCalendar(Integer.parseInt(m.group(1)), Integer.parseInt(m.group(2)) - 1, 1);
+            end.add(Calendar.MONTH, 1);
+            if (end.after(cutoff)) {
+                continue;
+            }
+            try (Statement st = connection.createStatement()) {
+                st.executeUpdate("WITH m AS (DELETE FROM nxp_logs_mapextinfos WHERE log_fk IN (SELECT log_id FROM "
+                        + partition + ") RETURNING info_fk)"
+                        + " DELETE FROM nxp_logs_extinfo WHERE log_extinfo_id IN (SELECT info_fk FROM m)");
+                st.execute("DROP TABLE " + partition);
+            }
+            log.info("Dropped audit log partition " + partition);
+        }
+    }
+
+    /**
+     * Deletes by batches the entries before the cutoff that are not stored in a partition.
+     */
+    protected void deleteEntries(Connection connection, Calendar cutoff, boolean partitioned) throws SQLException {
+        String select = "SELECT log_id FROM " + (partitioned ? "ONLY " : "") + "nxp_logs WHERE log_event_date < ?";
+        long count = 0;
+        connection.setAutoCommit(false);
+        try {
+            while (true) {
+                List<Long> ids = new ArrayList<>();
+                try (PreparedStatement ps = connection.prepareStatement(select)) {
+                    ps.setTimestamp(1, new Timestamp(cutoff.getTimeInMillis()));
+                    ps.setMaxRows(DELETE_BATCH_SIZE);
+                    try (ResultSet rs = ps.executeQuery()) {
+                        while (rs.next()) {
+                            ids.add(Long.valueOf(rs.getLong(1)));
+                        }
+                    }
+                }
+                if (ids.isEmpty()) {
+                    break;
+                }
+                List<Long> infoIds = new ArrayList<>();
+                try (PreparedStatement ps = prepareIn(connection,
+                        "SELECT info_fk FROM nxp_logs_mapextinfos WHERE log_fk IN ", ids)) {
+                    try (ResultSet rs = ps.executeQuery()) {
+                        while (rs.next()) {
+                            infoIds.add(Long.valueOf(rs.getLong(1)));
+                        }
+                    }
+                }
+                executeIn(connection, "DELETE FROM nxp_logs_mapextinfos WHERE log_fk IN ", ids);
+                for (int i = 0; i < infoIds.size(); i += DELETE_BATCH_SIZE) {
+                    executeIn(connection, "DELETE FROM nxp_logs_extinfo WHERE log_extinfo_id IN ",
+                            infoIds.subList(i, Math.min(infoIds.size(), i + DELETE_BATCH_SIZE)));
+                }
+                executeIn(connection, "DELETE FROM nxp_logs WHERE log_id IN ", ids);
+                connection.commit();
+                count += ids.size();
+            }
+        } catch (SQLException e) {
+            connection.rollback();
+            throw e;
+        } finally {
+            connection.setAutoCommit(true);
+        }
+        if (count > 0) {
+            log.info("Removed " + count + " audit entries older than " + cutoff.getTime());
+        }
+    }
+
+    protected static PreparedStatement prepareIn(Connection connection, String sql, List<Long> ids)
+            throws SQLException {
+        StringBuilder buf = new StringBuilder(sql).append('(');
+        for (int i = 0; i < ids.size(); i++) {
+            buf.append(i == 0 ? "?" : ", ?");
+        }
+        buf.append(')');
+        PreparedStatement ps = connection.prepareStatement(buf.toString());
+        for (int i = 0; i < ids.size(); i++) {
+            ps.setLong(i + 1, ids.get(i).longValue());
+        }
+        return ps;
+    }
+
+    protected static void executeIn(Connection connection, String sql, List<Long> ids) throws SQLException {
+        try (PreparedStatement ps = prepareIn(connection, sql, ids)) {
+            ps.executeUpdate();
+        }
+    }
+
+}
@@ -16,11 +16,14 @@
  */
 package org.nuxeo.ecm.platform.audit.service;
 
+import java.sql.SQLException;
+import java.util.Collections;
 import java.util.Date;
 import java.util.List;
 import java.util.Map;
 
 import javax.persistence.EntityManager;
+import javax.transaction.Transaction;
 
 import org.nuxeo.ecm.core.api.ClientException;
 import org.nuxeo.ecm.core.api.ClientRuntimeException;
@@ -30,9 +33,11 @@ import org.nuxeo.ecm.core.persistence.PersistenceProvider;
 import org.nuxeo.ecm.core.persistence.PersistenceProvider.RunCallback;
 import org.nuxeo.ecm.core.persistence.PersistenceProvider.RunVoid;
 import org.nuxeo.ecm.core.persistence.PersistenceProviderFactory;
+import org.nuxeo.ecm.platform.audit.api.AuditAdmin;
 import org.nuxeo.ecm.platform.audit.api.FilterMapEntry;
 import org.nuxeo.ecm.platform.audit.api.LogEntry;
 import org.nuxeo.runtime.api.Framework;
+import org.nuxeo.runtime.transaction.TransactionHelper;
 
 /**
  * Contains the Hibernate based (legacy) implementation
@@ -41,6 +46,9 @@ import org.nuxeo.runtime.api.Framework;
  */
 public class DefaultAuditBackend extends AbstractAuditBackend implements AuditBackend {
 
+    /** @since 7.1 */
+    public static final String DATASOURCE = "nxaudit-logs";
+
     protected PersistenceProvider persistenceProvider;
 
     // public for testing purpose !
@@ -71,6 +79,31 @@ public class DefaultAuditBackend extends AbstractAuditBackend implements AuditBa
         }
     }
 
+    /**
+     * Creates the partitions of the coming months and removes the entries older than the retention period.
+     *
+     * @see AuditPartitionManager
+     * @since 7.1
+     */
+    public void maintainPartitions() {
+        AuditPartitionManager manager = new AuditPartitionManager(DATASOURCE, Boolean.parseBoolean(Framework.getProperty(
+                AuditAdmin.PARTITIONING_ENABLED_PROPERTY, "false")), Integer.parseInt(Framework.getProperty(
+                AuditPartitionManager.RETENTION_MONTHS_PROPERTY, AuditPartitionManager.DEFAULT_RETENTION_MONTHS)));
+        if (!manager.isEnabled()) {
+            return;
+        }
+        // the schema must be up to date before being altered
+        getOrCreatePersistenceProvider();
+        Transaction tx = TransactionHelper.suspendTransaction();
+        try {
+            manager.maintain(new Date());
+        } catch (SQLException e) {
+            log.error("Cannot maintain the audit log partitions", e);
+        } finally {
+            TransactionHelper.resumeTransaction(tx);
+        }
+    }
+
     @Override
     public void deactivate() {
         deactivatePersistenceProvider();
@@ -329,6 +362,9 @@ public class DefaultAuditBackend extends AbstractAuditBackend implements AuditBa
     }
 
     public void logEvent(final Event event) {
+        if (journalEvents(Collections.singletonList(event))) {
+            return;
+        }
         try {
             getOrCreatePersistenceProvider().run(true, new RunVoid() {
                 public void runWith(EntityManager em) {
@@ -341,6 +377,10 @@ public class DefaultAuditBackend extends AbstractAuditBackend implements AuditBa
     }
 
     public void logEvents(final EventBundle eventBundle) {
+        if (component != null && component.getJournalWriter() != null) {
+            super.logEvents(eventBundle);
+            return;
+        }
         try {
             getOrCreatePersistenceProvider().run(true, new RunVoid() {
                 public void runWith(EntityManager em) {
@@ -19,17 +19,24 @@
 
 package org.nuxeo.ecm.platform.audit.service;
 
+import java.io.File;
+import java.io.IOException;
 import java.util.HashSet;
 import java.util.Set;
+import java.util.concurrent.TimeUnit;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
+import org.nuxeo.common.Environment;
 import org.nuxeo.ecm.platform.audit.api.DocumentHistoryReader;
 import org.nuxeo.ecm.platform.audit.api.document.DocumentHistoryReaderImpl;
 import org.nuxeo.ecm.platform.audit.service.extension.AdapterDescriptor;
 import org.nuxeo.ecm.platform.audit.service.extension.AuditBackendDescriptor;
 import org.nuxeo.ecm.platform.audit.service.extension.EventDescriptor;
 import org.nuxeo.ecm.platform.audit.service.extension.ExtendedInfoDescriptor;
+import org.nuxeo.ecm.platform.audit.service.journal.AuditJournal;
+import org.nuxeo.ecm.platform.audit.service.journal.AuditJournalWriter;
+import org.nuxeo.runtime.api.Framework;
 import org.nuxeo.runtime.model.ComponentContext;
 import org.nuxeo.runtime.model.ComponentInstance;
 import org.nuxeo.runtime.model.ComponentName;
@@ -60,6 +67,51 @@ public class NXAuditEventsService extends DefaultComponent {
 
     private static final String BACKEND_EXT_POINT = "backend";
 
+    /**
+     * If true, the audit entries are appended to a local journal and written to the backend in batches by a
+     * background thread.
+     *
+     * @since 7.1
+     */
+    public static final String JOURNAL_ENABLED_PROPERTY = "nuxeo.audit.journal.enabled";
+
+    /** @since 7.1 */
+    public static final String JOURNAL_DIR_PROPERTY = "nuxeo.audit.journal.dir";
+
+    /** @since 7.1 */
+    public static final String JOURNAL_SEGMENT_SIZE_PROPERTY = "nuxeo.audit.journal.segmentSizeMB";
+
+    /**
+     * If true, each append is forced to disk, otherwise the journal only survives a JVM crash.
+     *
+     * @since 7.1
+     */
+    public static final String JOURNAL_SYNC_PROPERTY = "nuxeo.audit.journal.sync";
+
+    /** @since 7.1 */
+    public static final String JOURNAL_BATCH_SIZE_PROPERTY = "nuxeo.audit.journal.batchSize";
+
+    /** @since 7.1 */
+    public static final String JOURNAL_FLUSH_INTERVAL_PROPERTY = "nuxeo.audit.journal.flushIntervalMs";
+
+    /** @since 7.1 */
+    public static final String JOURNAL_MAX_PENDING_PROPERTY = "nuxeo.audit.journal.maxPending";
+
+    /** @since 7.1 */
+    public static final String JOURNAL_BACKPRESSURE_TIMEOUT_PROPERTY = "nuxeo.audit.journal.backpressureTimeoutMs";
+
+    private static final String DEFAULT_JOURNAL_SEGMENT_SIZE = "64";
+
+    private static final String DEFAULT_JOURNAL_BATCH_SIZE = "1000";
+
+    private static final String DEFAULT_JOURNAL_FLUSH_INTERVAL = "1000";
+
+    private static final String DEFAULT_JOURNAL_MAX_PENDING = "100000";
+
+    private static final String DEFAULT_JOURNAL_BACKPRESSURE_TIMEOUT = "5000";
+
+    private static final long JOURNAL_STOP_TIMEOUT_S = 30;
+
     protected static final Log log = LogFactory.getLog(NXAuditEventsService.class);
 
     protected final Set<ExtendedInfoDescriptor> extendedInfoDescriptors = new HashSet<ExtendedInfoDescriptor>();
@@ -72,12 +124,88 @@ public class NXAuditEventsService extends DefaultComponent {
 
     protected AuditBackend backend;
 
+    protected AuditJournalWriter journalWriter;
+
+    @Override
+    public void applicationStarted(ComponentContext context) {
+        maintainPartitions();
+        if (Boolean.parseBoolean(Framework.getProperty(JOURNAL_ENABLED_PROPERTY, "false"))) {
+            startJournal();
+        }
+    }
+
     @Override
     public void deactivate(ComponentContext context) {
+        stopJournal();
         backend.deactivate();
         super.deactivate(context);
     }
 
+    /**
+     * Creates the coming partitions of the audit log and applies the retention policy, if the backend supports it.
+     *
+     * @since 7.1
+     */
+    public void maintainPartitions() {
+        if (backend instanceof DefaultAuditBackend) {
+            ((DefaultAuditBackend) backend).maintainPartitions();
+        }
+    }
+
+    /**
+     * Opens the audit journal, the entries left by a previous run are written first.
+     *
+     * @since 7.1
+     */
+    protected void startJournal() {
+        File dir = new File(Framework.getProperty(JOURNAL_DIR_PROPERTY,
+                new File(Environment.getDefault().getData(), "audit-journal").getAbsolutePath()));
+        int segmentSize = Integer.parseInt(Framework.getProperty(JOURNAL_SEGMENT_SIZE_PROPERTY,
+                DEFAULT_JOURNAL_SEGMENT_SIZE)) * 1024 * 1024;
+        boolean sync = Boolean.parseBoolean(Framework.getProperty(JOURNAL_SYNC_PROPERTY, "false"));
+        AuditJournal journal;
+        try {
+            journal = new AuditJournal(dir, segmentSize, sync);
+        } catch (IOException e) {
+            log.error("Cannot open the audit journal in " + dir + ", audit entries are written synchronously", e);
+            return;
+        }
+        journalWriter = new AuditJournalWriter(journal, backend, Integer.parseInt(Framework.getProperty(
+                JOURNAL_BATCH_SIZE_PROPERTY, DEFAULT_JOURNAL_BATCH_SIZE)), Long.parseLong(Framework.getProperty(
+                JOURNAL_FLUSH_INTERVAL_PROPERTY, DEFAULT_JOURNAL_FLUSH_INTERVAL)), Long.parseLong(Framework.getProperty(
+                JOURNAL_MAX_PENDING_PROPERTY, DEFAULT_JOURNAL_MAX_PENDING)), Long.parseLong(Framework.getProperty(
+                JOURNAL_BACKPRESSURE_TIMEOUT_PROPERTY, DEFAULT_JOURNAL_BACKPRESSURE_TIMEOUT)));
+        journalWriter.start();
+        log.info("Audit entries are written asynchronously through the journal in " + dir);
+    }
+
+    /**
+     * Writes the pending entries and closes the audit journal.
+     *
+     * @since 7.1
+     */
+    protected void stopJournal() {
+        if (journalWriter == null) {
+            return;
+        }
+        try {
+            journalWriter.stop(JOURNAL_STOP_TIMEOUT_S, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            journalWriter = null;
+        }
+    }
+
+    /**
+     * Returns the writer of the audit journal, or {@code null} if the entries are written synchronously.
+     *
+     * @since 7.1
+     */
+    public AuditJournalWriter getJournalWriter() {
+        return journalWriter;
+    }
+
     @Override
     public void registerContribution(Object contribution, String extensionPoint, ComponentInstance contributor) {
         if (extensionPoint.equals(EVENT_EXT_POINT)) {
@@ -92,11 +220,16 @@ public class NXAuditEventsService extends DefaultComponent {
     }
 
     protected void doRegisterBackend(AuditBackendDescriptor desc) {
+        boolean journal = journalWriter != null;
+        stopJournal();
         if (backend != null) {
             backend.deactivate();
         }
         backend = desc.newInstance();
         backend.activate(this);
+        if (journal) {
+            startJournal();
+        }
     }
 
     protected void doRegisterEvent(EventDescriptor desc) {
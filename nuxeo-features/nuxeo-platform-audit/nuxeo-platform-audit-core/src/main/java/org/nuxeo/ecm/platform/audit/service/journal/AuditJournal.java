@@ -0,0 +1,410 @@
+/*
+ * (C) Copyright 2014 Nuxeo SA (http://nuxeo.com/) and contributors.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser General Public License
+ * (LGPL) version 2.1 which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl-2.1.html
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * Contributors:
+ *     Nuxeo
+ */
+package org.nuxeo.ecm.platform.audit.service.journal;
+
+import java.io.File;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.CRC32;
+
+import org.apache.commons.lang.SerializationException;
+import org.apache.commons.lang.SerializationUtils;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.nuxeo.ecm.platform.audit.api.LogEntry;
+
+/**
+ * Durable local append-only journal of {@link LogEntry}, stored in memory-mapped segment files.
+ * <p>
+ * Each record holds the entries of one {@link #append} call:
+ *
+ * <pre>
+ * [int payload length][int entry count][int payload CRC32][payload: serialized list of entries]
+ * </pre>
+ *
+ * The length is written last, so a zero length marks the end of the written part of a segment. A separate checkpoint
+ * file records the position up to which the records have been written to the audit backend; segments entirely before
+ * it are deleted. When opened, the journal resumes from the checkpoint and truncates a record torn by a crash.
+ * <p>
+ * Without {@code sync}, the records survive a crash of the JVM (the pages belong to the OS) but not of the OS.
+ *
+ * @since 7.1
+ */
+public class AuditJournal {
+
+    private static final Log log = LogFactory.getLog(AuditJournal.class);
+
+    protected static final int HEADER_SIZE = 12;
+
+    protected static final String SEGMENT_SUFFIX = ".journal";
+
+    protected static final String CHECKPOINT_FILE = "checkpoint";
+
+    protected final File dir;
+
+    protected final int segmentSize;
+
+    protected final boolean sync;
+
+    /** The segments not yet deleted, by id. */
+    protected final TreeMap<Long, MappedByteBuffer> segments = new TreeMap<>();
+
+    protected long writeSegment;
+
+    protected int writeOffset;
+
+    protected long checkpointSegment;
+
+    protected int checkpointOffset;
+
+    protected final AtomicLong pendingEntries = new AtomicLong();
+
+    /**
+     * Entries read from the journal, up to a position to be passed to {@link AuditJournal#commit} once they are
+     * written.
+     */
+    public static class Batch {
+
+        protected final List<LogEntry> entries;
+
+        protected final int count;
+
+        protected final long segment;
+
+        protected final int offset;
+
+        protected Batch(List<LogEntry> entries, int count, long segment, int offset) {
+            this.entries = entries;
+            this.count = count;
+            this.segment = segment;
+            this.offset = offset;
+        }
+
+        public List<LogEntry> getEntries() {
+            return entries;
+        }
+
+        /**
+         * Returns the number of entries consumed from the journal, including the unreadable ones.
+         */
+        public int getCount() {
+            return count;
+        }
+
+        public boolean isEmpty() {
+            return count == 0;
+        }
+
+    }
+
+    /**
+     * Opens the journal stored in the given directory, creating it if needed.
+     *
+     * @param segmentSize the size of the segment files
+     * @param sync if {@code true}, each append is forced to the storage device before returning
+     */
+    public AuditJournal(File dir, int segmentSize, boolean sync) throws IOException {
+        this.dir = dir;
+        this.segmentSize = segmentSize;
+        this.sync = sync;
+        dir.mkdirs();
+        if (!dir.isDirectory()) {
+            throw new IOException("Cannot create audit journal directory: " + dir);
+        }
+        recover();
+    }
+
+    protected synchronized void recover() throws IOException {
+        List<Long> ids = listSegments();
+        readCheckpoint(ids.isEmpty() ? 0 : ids.get(0).longValue());
+        for (Long id : ids) {
+            if (id.longValue() < checkpointSegment) {
+                deleteSegment(id.longValue());
+            } else {
+                segments.put(id, map(id.longValue(), 0));
+            }
+        }
+        if (segments.isEmpty()) {
+            checkpointOffset = 0;
+            segments.put(Long.valueOf(checkpointSegment), map(checkpointSegment, segmentSize));
+        } else if (!segments.containsKey(Long.valueOf(checkpointSegment))) {
+            log.warn("Audit journal checkpoint refers to a missing segment, resuming from the first one");
+            checkpointSegment = segments.firstKey().longValue();
+            checkpointOffset = 0;
+        }
+        long pending = 0;
+        for (Map.Entry<Long, MappedByteBuffer> es : segments.entrySet()) {
+            long id = es.getKey().longValue();
+            MappedByteBuffer buffer = es.getValue();
+            int offset = id == checkpointSegment ? checkpointOffset : 0;
+            while (true) {
+                int length = getRecordLength(buffer, offset);
+                if (length <= 0) {
+                    break;
+                }
+                if (!checkRecord(buffer, offset, length)) {
+                    log.warn(String.format("Truncating audit journal segment %d at offset %d: incomplete record",
+                            Long.valueOf(id), Integer.valueOf(offset)));
+                    buffer.putInt(offset, 0);
+                    buffer.force();
+                    break;
+                }
+                pending += buffer.getInt(offset + 4);
+                offset += HEADER_SIZE + length;
+            }
+            writeSegment = id;
+            writeOffset = offset;
+        }
+        pendingEntries.set(pending);
+        if (pending > 0) {
+            log.warn(String.format("Recovered %d audit entries not yet written from the journal in %s",
+                    Long.valueOf(pending), dir));
+        }
+    }
+
+    /**
+     * Appends the entries to the journal.
+     */
+    public void append(List<LogEntry> entries) throws IOException {
+        if (entries.isEmpty()) {
+            return;
+        }
+        byte[] payload = SerializationUtils.serialize(new ArrayList<>(entries));
+        CRC32 crc = new CRC32();
+        crc.update(payload);
+        synchronized (this) {
+            int size = HEADER_SIZE + payload.length;
+            MappedByteBuffer buffer = segments.get(Long.valueOf(writeSegment));
+            if (writeOffset + size > buffer.capacity()) {
+                buffer = roll(size);
+            }
+            ByteBuffer record = buffer.duplicate();
+            record.position(writeOffset + 4);
+            record.putInt(entries.size());
+            record.putInt((int) crc.getValue());
+            record.put(payload);
+            // the length is written last, it validates the record
+            buffer.putInt(writeOffset, payload.length);
+            if (sync) {
+                buffer.force();
+            }
+            writeOffset += size;
+            pendingEntries.addAndGet(entries.size());
+        }
+    }
+
+    protected MappedByteBuffer roll(int recordSize) throws IOException {
+        writeSegment++;
+        writeOffset = 0;
+        MappedByteBuffer buffer = map(writeSegment, Math.max(segmentSize, recordSize));
+        segments.put(Long.valueOf(writeSegment), buffer);
+        return buffer;
+    }
+
+    /**
+     * Reads the records following the checkpoint, up to {@code maxEntries} entries (at least one record).
+     */
+    public Batch read(int maxEntries) {
+        List<byte[]> payloads = new ArrayList<>();
+        int count = 0;
+        long segment;
+        int offset;
+        synchronized (this) {
+            segment = checkpointSegment;
+            offset = checkpointOffset;
+            while (count < maxEntries || payloads.isEmpty()) {
+                MappedByteBuffer buffer = segments.get(Long.valueOf(segment));
+                int length = getRecordLength(buffer, offset);
+                if (length <= 0) {
+                    Long next = segments.higherKey(Long.valueOf(segment));
+                    if (next == null) {
+                        break;
+                    }
+                    segment = next.longValue();
+                    offset = 0;
+                    continue;
+                }
+                byte[] payload = new byte[length];
+                ByteBuffer record = buffer.duplicate();
+                record.position(offset + HEADER_SIZE);
+                record.get(payload);
+                payloads.add(payload);
+                count += buffer.getInt(offset + 4);
+                offset += HEADER_SIZE + length;
+            }
+        }
+        // deserialize outside of the lock, appends are not blocked meanwhile
+        List<LogEntry> entries = new ArrayList<>(count);
+        for (byte[] payload : payloads) {
+            try {
+                @SuppressWarnings("unchecked")
+                List<LogEntry> list = (List<LogEntry>) SerializationUtils.deserialize(payload);
+                entries.addAll(list);
+            } catch (SerializationException | ClassCastException e) {
+                log.error("Skipping unreadable audit journal record", e);
+            }
+        }
+        return new Batch(entries, count, segment, offset);
+    }
+
+    /**
+     * Moves the checkpoint after the given batch, and deletes the segments that are not needed anymore.
+     */
+    public synchronized void commit(Batch batch) throws IOException {
+        if (batch.isEmpty()) {
+            return;
+        }
+        checkpointSegment = batch.segment;
+        checkpointOffset = batch.offset;
+        writeCheckpoint();
+        pendingEntries.addAndGet(-batch.count);
+        for (Long id : new ArrayList<>(segments.headMap(Long.valueOf(checkpointSegment)).keySet())) {
+            segments.remove(id);
+            deleteSegment(id.longValue());
+        }
+    }
+
+    public File getDirectory() {
+        return dir;
+    }
+
+    /**
+     * Returns the number of entries appended but not yet committed.
+     */
+    public long getPendingEntries() {
+        return pendingEntries.get();
+    }
+
+    public synchronized int getSegmentCount() {
+        return segments.size();
+    }
+
+    /**
+     * Forces the written records to the storage device.
+     */
+    public synchronized void force() {
+        segments.get(Long.valueOf(writeSegment)).force();
+    }
+
+    public synchronized void close() {
+        force();
+        // mappings are released when garbage collected
+        segments.clear();
+    }
+
+    protected static int getRecordLength(MappedByteBuffer buffer, int offset) {
+        if (offset + HEADER_SIZE > buffer.capacity()) {
+            return 0;
+        }
+        int length = buffer.getInt(offset);
+        if (length < 0 || offset + HEADER_SIZE + length > buffer.capacity()) {
+            return -1;
+        }
+        return length;
+    }
+
+    protected static boolean checkRecord(MappedByteBuffer buffer, int offset, int length) {
+        byte[] payload = new byte[length];
+        ByteBuffer record = buffer.duplicate();
+        record.position(offset + HEADER_SIZE);
+        record.get(payload);
+        CRC32 crc = new CRC32();
+        crc.update(payload);
+        return buffer.getInt(offset + 8) == (int) crc.getValue();
+    }
+
+    protected List<Long> listSegments() {
+        List<Long> ids = new ArrayList<>();
+        String[] names = dir.list(new FilenameFilter() {
+            @Override
+            public boolean accept(File d, String name) {
+                return name.endsWith(SEGMENT_SUFFIX);
+            }
+        });
+        for (String name : names) {
+            try {
+                ids.add(Long.valueOf(name.substring(0, name.length() - SEGMENT_SUFFIX.length())));
+            } catch (NumberFormatException e) {
+                log.warn("Ignoring unexpected file in audit journal: " + name);
+            }
+        }
+        Collections.sort(ids);
+        return ids;
+    }
+
+    protected File getSegmentFile(long id) {
+        return new File(dir, String.format("%020d%s", Long.valueOf(id), SEGMENT_SUFFIX));
+    }
+
+    /**
+     * Maps a segment file, creating it with the given size if needed.
+     */
+    protected MappedByteBuffer map(long id, int size) throws IOException {
+        try (RandomAccessFile file = new RandomAccessFile(getSegmentFile(id), "rw")) {
+            if (file.length() < size) {
+                file.setLength(size);
+            }
+            return file.getChannel().map(MapMode.READ_WRITE, 0, file.length());
+        }
+    }
+
+    protected void deleteSegment(long id) {
+        File file = getSegmentFile(id);
+        if (!file.delete()) {
+            log.warn("Cannot delete audit journal segment: " + file);
+        }
+    }
+
+    protected void readCheckpoint(long defaultSegment) throws IOException {
+        File file = new File(dir, CHECKPOINT_FILE);
+        if (!file.exists()) {
+            checkpointSegment = defaultSegment;
+            checkpointOffset = 0;
+            return;
+        }
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            checkpointSegment = raf.readLong();
+            checkpointOffset = raf.readInt();
+        }
+    }
+
+    protected void writeCheckpoint() throws IOException {
+        File tmp = new File(dir, CHECKPOINT_FILE + ".tmp");
+        try (RandomAccessFile raf = new RandomAccessFile(tmp, "rw")) {
+            raf.setLength(0);
+            raf.writeLong(checkpointSegment);
+            raf.writeInt(checkpointOffset);
+            raf.getFD().sync();
+        }
+        // atomic replacement, the previous checkpoint stays valid on a crash
+        Files.move(tmp.toPath(), new File(dir, CHECKPOINT_FILE).toPath(), StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+    }
+
+}
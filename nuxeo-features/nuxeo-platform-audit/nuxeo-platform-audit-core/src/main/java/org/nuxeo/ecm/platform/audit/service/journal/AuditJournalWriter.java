@@ -0,0 +1,406 @@
+/*
+ * (C) Copyright 2014 Nuxeo SA (http://nuxeo.com/) and contributors.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser General Public License
+ * (LGPL) version 2.1 which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl-2.1.html
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * Contributors:
+ *     Nuxeo
+ */
+package org.nuxeo.ecm.platform.audit.service.journal;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.NotSerializableException;
+import java.sql.SQLDataException;
+import java.sql.SQLException;
+import java.sql.SQLIntegrityConstraintViolationException;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.lang.SerializationException;
+import org.apache.commons.lang.exception.ExceptionUtils;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.nuxeo.ecm.platform.audit.api.AuditRuntimeException;
+import org.nuxeo.ecm.platform.audit.api.LogEntry;
+import org.nuxeo.ecm.platform.audit.service.AuditBackend;
+import org.nuxeo.runtime.metrics.MetricsService;
+import org.nuxeo.runtime.transaction.TransactionHelper;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.SharedMetricRegistries;
+import com.codahale.metrics.Timer;
+
+/**
+ * Asynchronous audit writer: the entries are appended to an {@link AuditJournal}, and a background thread drains
+ * them in batches to the {@link AuditBackend}.
+ * <p>
+ * A batch is written when {@code batchSize} entries are pending, or when the oldest pending entry is
+ * {@code flushInterval} milliseconds old. A failed batch stays in the journal and is retried with an exponential
+ * backoff. A batch rejected by the backend, for instance because of a constraint violation, is split to write the
+ * other entries, and the rejected ones are moved to the {@value #DEAD_LETTER_FILE} file of the journal directory.
+ * When more than {@code maxPending} entries are waiting, the appending threads are slowed down for at most
+ * {@code backpressureTimeout} milliseconds.
+ *
+ * @since 7.1
+ */
+public class AuditJournalWriter implements Runnable {
+
+    private static final Log log = LogFactory.getLog(AuditJournalWriter.class);
+
+    protected static final long MAX_RETRY_DELAY_MS = 30000;
+
+    protected static final String[] GAUGES = { "pending", "segments" };
+
+    protected static final String DEAD_LETTER_FILE = "dead-letter.log";
+
+    protected final AuditJournal journal;
+
+    protected final AuditBackend backend;
+
+    protected final int batchSize;
+
+    protected final long flushInterval;
+
+    protected final long maxPending;
+
+    protected final long backpressureTimeout;
+
+    protected Thread thread;
+
+    protected volatile boolean stopped;
+
+    /** Set by {@link #await} to write the pending entries without waiting for a full batch. */
+    protected boolean flushRequested;
+
+    /** The batch being written, kept until committed, used by the writer thread only. */
+    protected AuditJournal.Batch batch;
+
+    /** The entries of the batch still to be written. */
+    protected List<LogEntry> remaining;
+
+    protected final File deadLetterFile;
+
+    protected final MetricRegistry registry = SharedMetricRegistries.getOrCreate(MetricsService.class.getName());
+
+    protected final Counter appendCount = registry.counter(MetricRegistry.name("nuxeo", "audit", "journal",
+            "appended"));
+
+    protected final Counter drainCount = registry.counter(MetricRegistry.name("nuxeo", "audit", "journal", "drained"));
+
+    protected final Counter failureCount = registry.counter(MetricRegistry.name("nuxeo", "audit", "journal",
+            "failures"));
+
+    protected final Counter deadLetterCount = registry.counter(MetricRegistry.name("nuxeo", "audit", "journal",
+            "deadletters"));
+
+    protected final Timer drainTimer = registry.timer(MetricRegistry.name("nuxeo", "audit", "journal", "drain"));
+
+    protected final Timer backpressureTimer = registry.timer(MetricRegistry.name("nuxeo", "audit", "journal",
+            "backpressure"));
+
+    public AuditJournalWriter(AuditJournal journal, AuditBackend backend, int batchSize, long flushInterval,
+            long maxPending, long backpressureTimeout) {
+        this.journal = journal;
+        this.backend = backend;
+        this.batchSize = batchSize;
+        this.flushInterval = flushInterval;
+        this.maxPending = maxPending;
+        this.backpressureTimeout = backpressureTimeout;
+        deadLetterFile = new File(journal.getDirectory(), DEAD_LETTER_FILE);
+    }
+
+    public void start() {
+        registry.remove(MetricRegistry.name("nuxeo", "audit", "journal", GAUGES[0]));
+        registry.register(MetricRegistry.name("nuxeo", "audit", "journal", GAUGES[0]), new Gauge<Long>() {
+            @Override
+            public Long getValue() {
+                return Long.valueOf(journal.getPendingEntries());
+            }
+        });
+        registry.remove(MetricRegistry.name("nuxeo", "audit", "journal", GAUGES[1]));
+        registry.register(MetricRegistry.name("nuxeo", "audit", "journal", GAUGES[1]), new Gauge<Integer>() {
+            @Override
+            public Integer getValue() {
+                return Integer.valueOf(journal.getSegmentCount());
+            }
+        });
+        thread = new Thread(this, "Nuxeo-Audit-Journal");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Stops the writer after having written the pending entries, or when the timeout expires. The entries still
+     * pending are written after the next start.
+     */
+    public void stop(long timeout, TimeUnit unit) throws InterruptedException {
+        try {
+            if (!await(timeout, unit)) {
+                log.warn(journal.getPendingEntries() + " audit entries left in the journal");
+            }
+        } finally {
+            synchronized (this) {
+                stopped = true;
+                notifyAll();
+            }
+            thread.join(unit.toMillis(timeout));
+            journal.close();
+            for (String gauge : GAUGES) {
+                registry.remove(MetricRegistry.name("nuxeo", "audit", "journal", gauge));
+            }
+        }
+    }
+
+    /**
+     * Appends the entries to the journal, they are written to the backend later.
+     */
+    public void append(List<LogEntry> entries) {
+        if (journal.getPendingEntries() >= maxPending) {
+            waitForCapacity();
+        }
+        try {
+            journal.append(entries);
+        } catch (IOException e) {
+            throw new AuditRuntimeException("Cannot append to the audit journal", e);
+        }
+        appendCount.inc(entries.size());
+        if (journal.getPendingEntries() >= batchSize) {
+            synchronized (this) {
+                notifyAll();
+            }
+        }
+    }
+
+    protected void waitForCapacity() {
+        Timer.Context context = backpressureTimer.time();
+        try {
+            long deadline = System.currentTimeMillis() + backpressureTimeout;
+            synchronized (this) {
+                long remaining;
+                while (!stopped && journal.getPendingEntries() >= maxPending
+                        && (remaining = deadline - System.currentTimeMillis()) > 0) {
+                    wait(remaining);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            context.stop();
+        }
+    }
+
+    /**
+     * Waits until all the entries appended so far are written to the backend.
+     *
+     * @return {@code false} if the timeout expired before
+     */
+    public boolean await(long timeout, TimeUnit unit) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + unit.toMillis(timeout);
+        synchronized (this) {
+            flushRequested = true;
+            notifyAll();
+            long remaining;
+            while (journal.getPendingEntries() > 0) {
+                remaining = deadline - System.currentTimeMillis();
+                if (stopped || remaining <= 0) {
+                    return false;
+                }
+                wait(remaining);
+            }
+            return true;
+        }
+    }
+
+    @Override
+    public void run() {
+        int failures = 0;
+        try {
+            while (waitForEntries()) {
+                if (drain()) {
+                    failures = 0;
+                } else {
+                    failures++;
+                    long delay = Math.min(MAX_RETRY_DELAY_MS, 100L << Math.min(failures, 20));
+                    synchronized (this) {
+                        if (!stopped) {
+                            wait(delay);
+                        }
+                    }
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Waits for a full batch, a flush request, or for the flush interval to expire on pending entries.
+     *
+     * @return {@code false} if the writer is stopped
+     */
+    protected synchronized boolean waitForEntries() throws InterruptedException {
+        long deadline = System.currentTimeMillis() + flushInterval;
+        while (!stopped) {
+            long pending = journal.getPendingEntries();
+            long now = System.currentTimeMillis();
+            if (pending == 0) {
+                flushRequested = false;
+                deadline = now + flushInterval;
+                wait(flushInterval);
+            } else if (pending >= batchSize || flushRequested || now >= deadline) {
+                return true;
+            } else {
+                wait(deadline - now);
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Writes the next batch to the backend.
+     *
+     * @return {@code false} if the batch failed and must be retried
+     */
+    protected boolean drain() {
+        if (batch == null) {
+            batch = journal.read(batchSize);
+            remaining = batch.getEntries();
+        }
+        if (batch.isEmpty()) {
+            batch = null;
+            return true;
+        }
+        if (!remaining.isEmpty()) {
+            int done = write(remaining);
+            // the entries written or dead-lettered are not written again on retry
+            remaining = remaining.subList(done, remaining.size());
+            if (!remaining.isEmpty()) {
+                failureCount.inc();
+                return false;
+            }
+        }
+        try {
+            journal.commit(batch);
+        } catch (IOException e) {
+            // the entries will be written again after a restart
+            log.error("Cannot checkpoint the audit journal", e);
+        }
+        drainCount.inc(batch.getCount());
+        batch = null;
+        remaining = null;
+        synchronized (this) {
+            notifyAll();
+        }
+        return true;
+    }
+
+    /**
+     * Writes the entries to the backend. When they are rejected, they are split to write the others and to move the
+     * rejected ones to the dead letter file.
+     *
+     * @return the number of leading entries written or dead-lettered, the others must be retried
+     */
+    protected int write(List<LogEntry> entries) {
+        RuntimeException error = addLogEntries(entries);
+        if (error == null) {
+            return entries.size();
+        }
+        if (!isRejected(error)) {
+            log.error("Cannot write " + entries.size() + " audit entries, will retry", error);
+            return 0;
+        }
+        if (entries.size() == 1) {
+            deadLetter(entries.get(0), error);
+            return 1;
+        }
+        log.debug("Audit entries rejected, splitting the batch of " + entries.size(), error);
+        int half = entries.size() / 2;
+        int done = write(entries.subList(0, half));
+        if (done < half) {
+            return done;
+        }
+        return half + write(entries.subList(half, entries.size()));
+    }
+
+    /**
+     * Writes the entries to the backend in their own transaction.
+     *
+     * @return the failure, or {@code null} if the entries are written
+     */
+    protected RuntimeException addLogEntries(List<LogEntry> entries) {
+        Timer.Context context = drainTimer.time();
+        boolean tx = TransactionHelper.startTransaction();
+        RuntimeException error = null;
+        try {
+            backend.addLogEntries(entries);
+        } catch (RuntimeException e) {
+            if (tx) {
+                TransactionHelper.setTransactionRollbackOnly();
+            }
+            error = e;
+        } finally {
+            if (tx) {
+                try {
+                    TransactionHelper.commitOrRollbackTransaction();
+                } catch (RuntimeException e) {
+                    if (error == null) {
+                        error = e;
+                    }
+                }
+            }
+            context.stop();
+        }
+        return error;
+    }
+
+    /**
+     * Checks whether the failure is caused by the entries themselves, so that writing them again would fail again: a
+     * constraint violation, invalid data or an entry that cannot be serialized. Other failures are assumed to be
+     * transient.
+     */
+    protected static boolean isRejected(Throwable error) {
+        for (Throwable t = error; t != null; t = t.getCause() == t ? null : t.getCause()) {
+            if (t instanceof SQLIntegrityConstraintViolationException || t instanceof SQLDataException
+                    || t instanceof NotSerializableException || t instanceof SerializationException) {
+                return true;
+            }
+            if (t instanceof SQLException) {
+                String state = ((SQLException) t).getSQLState();
+                // SQL standard classes: data exception, integrity constraint violation
+                if (state != null && (state.startsWith("22") || state.startsWith("23"))) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Moves an entry rejected by the backend to the dead letter file, so that the next ones can be written.
+     */
+    protected void deadLetter(LogEntry entry, Throwable error) {
+        deadLetterCount.inc();
+        log.error("Audit entry rejected, moved to " + deadLetterFile + ": " + entry, error);
+        String line = String.format("%tFT%<tT.%<tL %s %s%n", new Date(), ExceptionUtils.getRootCauseMessage(error),
+                entry);
+        try {
+            FileUtils.writeStringToFile(deadLetterFile, line, "UTF-8", true);
+        } catch (IOException e) {
+            log.error("Cannot write to the audit dead letter file, entry lost: " + entry, e);
+        }
+    }
+
+}
@@ -0,0 +1,152 @@
+/*
+ * (C) Copyright 2014 Nuxeo SA (http://nuxeo.com/) and contributors.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser General Public License
+ * (LGPL) version 2.1 which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl-2.1.html
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * Contributors:
+ *     Nuxeo
+ */
+package org.nuxeo.ecm.platform.audit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.nuxeo.ecm.platform.audit.api.LogEntry;
+import org.nuxeo.ecm.platform.audit.impl.LogEntryImpl;
+import org.nuxeo.ecm.platform.audit.service.journal.AuditJournal;
+
+public class TestAuditJournal {
+
+    protected static final int SEGMENT_SIZE = 4096;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    protected static List<LogEntry> newEntries(int first, int count) {
+        List<LogEntry> entries = new ArrayList<>();
+        for (int i = first; i < first + count; i++) {
+            LogEntryImpl entry = new LogEntryImpl();
+            entry.setEventId("event" + i);
+            entry.setDocUUID("uuid" + i);
+            entries.add(entry);
+        }
+        return entries;
+    }
+
+    @Test
+    public void testAppendReadCommit() throws Exception {
+        AuditJournal journal = new AuditJournal(folder.getRoot(), SEGMENT_SIZE, false);
+        journal.append(newEntries(0, 3));
+        journal.append(newEntries(3, 2));
+        assertEquals(5, journal.getPendingEntries());
+
+        // records are never split
+        AuditJournal.Batch batch = journal.read(2);
+        assertEquals(3, batch.getCount());
+        assertEquals("event0", batch.getEntries().get(0).getEventId());
+
+        // nothing is consumed until committed
+        assertEquals(3, journal.read(2).getCount());
+        journal.commit(batch);
+        assertEquals(2, journal.getPendingEntries());
+
+        batch = journal.read(100);
+        assertEquals(2, batch.getCount());
+        assertEquals("uuid4", batch.getEntries().get(1).getDocUUID());
+        journal.commit(batch);
+        assertEquals(0, journal.getPendingEntries());
+        assertTrue(journal.read(100).isEmpty());
+        journal.close();
+    }
+
+    @Test
+    public void testSegmentsAreRolledAndDeleted() throws Exception {
+        AuditJournal journal = new AuditJournal(folder.getRoot(), SEGMENT_SIZE, false);
+        for (int i = 0; i < 100; i++) {
+            journal.append(newEntries(i, 1));
+        }
+        assertTrue(journal.getSegmentCount() > 1);
+        AuditJournal.Batch batch = journal.read(1000);
+        assertEquals(100, batch.getCount());
+        assertEquals("event99", batch.getEntries().get(99).getEventId());
+        journal.commit(batch);
+        assertEquals(1, journal.getSegmentCount());
+        journal.close();
+    }
+
+    @Test
+    public void testRecovery() throws Exception {
+        AuditJournal journal = new AuditJournal(folder.getRoot(), SEGMENT_SIZE, false);
+        for (int i = 0; i < 50; i++) {
+            journal.append(newEntries(i, 1));
+        }
+        journal.commit(journal.read(20));
+        journal.close();
+
+        // the uncommitted entries are found again after a restart
+        journal = new AuditJournal(folder.getRoot(), SEGMENT_SIZE, false);
+        assertEquals(30, journal.getPendingEntries());
+        AuditJournal.Batch batch = journal.read(1000);
+        assertEquals(30, batch.getCount());
+        assertEquals("event20", batch.getEntries().get(0).getEventId());
+
+        // appends continue after the recovered records
+        journal.append(newEntries(50, 1));
+        journal.commit(batch);
+        assertEquals(Collections.singletonList("event50"), getEventIds(journal.read(1000)));
+        journal.close();
+    }
+
+    @Test
+    public void testTornRecordIsTruncated() throws Exception {
+        File dir = folder.getRoot();
+        AuditJournal journal = new AuditJournal(dir, 1024 * 1024, false);
+        journal.append(newEntries(0, 1));
+        journal.append(newEntries(1, 1));
+        journal.close();
+
+        // corrupt the payload of the second record, as if the process crashed while writing it
+        File segment = new File(dir, String.format("%020d.journal", Long.valueOf(0)));
+        try (RandomAccessFile file = new RandomAccessFile(segment, "rw")) {
+            int length = file.readInt();
+            file.seek(12 + length + 12 + 10);
+            byte b = file.readByte();
+            file.seek(12 + length + 12 + 10);
+            file.writeByte(b ^ 0xff);
+        }
+
+        journal = new AuditJournal(dir, 1024 * 1024, false);
+        assertEquals(1, journal.getPendingEntries());
+        assertEquals(Collections.singletonList("event0"), getEventIds(journal.read(1000)));
+        // the next append replaces the torn record
+        journal.append(newEntries(2, 1));
+        assertEquals(2, journal.getPendingEntries());
+        journal.close();
+    }
+
+    protected static List<String> getEventIds(AuditJournal.Batch batch) {
+        List<String> ids = new ArrayList<>();
+        for (LogEntry entry : batch.getEntries()) {
+            ids.add(entry.getEventId());
+        }
+        return ids;
+    }
+
+}
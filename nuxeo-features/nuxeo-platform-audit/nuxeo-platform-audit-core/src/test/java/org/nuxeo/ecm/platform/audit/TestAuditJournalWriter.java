@@ -0,0 +1,144 @@
+/*
+ * (C) Copyright 2014 Nuxeo SA (http://nuxeo.com/) and contributors.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser General Public License
+ * (LGPL) version 2.1 which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl-2.1.html
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * Contributors:
+ *     Nuxeo
+ */
+package org.nuxeo.ecm.platform.audit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.anyListOf;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+
+import java.io.File;
+import java.sql.SQLIntegrityConstraintViolationException;
+import java.sql.SQLTransientConnectionException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.nuxeo.ecm.platform.audit.api.AuditRuntimeException;
+import org.nuxeo.ecm.platform.audit.api.LogEntry;
+import org.nuxeo.ecm.platform.audit.impl.LogEntryImpl;
+import org.nuxeo.ecm.platform.audit.service.AuditBackend;
+import org.nuxeo.ecm.platform.audit.service.journal.AuditJournal;
+import org.nuxeo.ecm.platform.audit.service.journal.AuditJournalWriter;
+
+public class TestAuditJournalWriter {
+
+    protected static final String POISON = "poison";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /** The entries written by the backend. */
+    protected final List<String> written = new ArrayList<>();
+
+    /** Number of transient failures left before the backend writes again. */
+    protected int transientFailures;
+
+    protected AuditBackend newBackend() {
+        AuditBackend backend = mock(AuditBackend.class);
+        doAnswer(new Answer<Void>() {
+            @Override
+            public Void answer(InvocationOnMock invocation) {
+                @SuppressWarnings("unchecked")
+                List<LogEntry> entries = (List<LogEntry>) invocation.getArguments()[0];
+                if (transientFailures > 0) {
+                    transientFailures--;
+                    throw new AuditRuntimeException("Connection lost", new SQLTransientConnectionException());
+                }
+                for (LogEntry entry : entries) {
+                    if (POISON.equals(entry.getEventId())) {
+                        throw new AuditRuntimeException("Cannot insert",
+                                new SQLIntegrityConstraintViolationException("duplicate key"));
+                    }
+                }
+                for (LogEntry entry : entries) {
+                    written.add(entry.getEventId());
+                }
+                return null;
+            }
+        }).when(backend).addLogEntries(anyListOf(LogEntry.class));
+        return backend;
+    }
+
+    protected static List<LogEntry> newEntries(String... eventIds) {
+        List<LogEntry> entries = new ArrayList<>();
+        for (String eventId : eventIds) {
+            LogEntryImpl entry = new LogEntryImpl();
+            entry.setEventId(eventId);
+            entries.add(entry);
+        }
+        return entries;
+    }
+
+    @Test
+    public void testRejectedEntryIsDeadLettered() throws Exception {
+        AuditJournal journal = new AuditJournal(folder.getRoot(), 4096, false);
+        AuditJournalWriter writer = new AuditJournalWriter(journal, newBackend(), 10, 10, 1000, 1000);
+        writer.start();
+        try {
+            writer.append(newEntries("event0", "event1", POISON, "event3", "event4"));
+            writer.append(newEntries("event5"));
+            assertTrue(writer.await(10, TimeUnit.SECONDS));
+        } finally {
+            writer.stop(10, TimeUnit.SECONDS);
+        }
+
+        // the other entries are written once, in order
+        List<String> expected = new ArrayList<>();
+        for (int i = 0; i < 6; i++) {
+            if (i != 2) {
+                expected.add("event" + i);
+            }
+        }
+        assertEquals(expected, written);
+        assertEquals(0, journal.getPendingEntries());
+        File deadLetter = new File(folder.getRoot(), "dead-letter.log");
+        assertTrue(deadLetter.exists());
+        List<String> lines = FileUtils.readLines(deadLetter, "UTF-8");
+        assertEquals(1, lines.size());
+        assertTrue(lines.get(0), lines.get(0).contains(POISON));
+        assertTrue(lines.get(0), lines.get(0).contains("duplicate key"));
+    }
+
+    @Test
+    public void testTransientFailureIsRetried() throws Exception {
+        transientFailures = 2;
+        AuditJournal journal = new AuditJournal(folder.getRoot(), 4096, false);
+        AuditJournalWriter writer = new AuditJournalWriter(journal, newBackend(), 10, 10, 1000, 1000);
+        writer.start();
+        try {
+            writer.append(newEntries("event0", "event1"));
+            assertTrue(writer.await(10, TimeUnit.SECONDS));
+        } finally {
+            writer.stop(10, TimeUnit.SECONDS);
+        }
+
+        // not split, nothing dead-lettered
+        assertEquals(0, transientFailures);
+        assertEquals(2, written.size());
+        assertFalse(new File(folder.getRoot(), "dead-letter.log").exists());
+    }
+
+}
@@ -0,0 +1,90 @@
+/*
+ * (C) Copyright 2014 Nuxeo SA (http://nuxeo.com/) and contributors.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser General Public License
+ * (LGPL) version 2.1 which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl-2.1.html
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * Contributors:
+ *     Nuxeo
+ */
+package org.nuxeo.ecm.platform.audit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.List;
+
+import javax.inject.Inject;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.nuxeo.ecm.platform.audit.api.LogEntry;
+import org.nuxeo.ecm.platform.audit.api.Logs;
+import org.nuxeo.ecm.platform.audit.service.AuditPartitionManager;
+import org.nuxeo.ecm.platform.audit.service.DefaultAuditBackend;
+import org.nuxeo.runtime.test.runner.Features;
+import org.nuxeo.runtime.test.runner.FeaturesRunner;
+import org.nuxeo.runtime.transaction.TransactionHelper;
+
+@RunWith(FeaturesRunner.class)
+@Features(AuditFeature.class)
+public class TestAuditRetention {
+
+    @Inject
+    AuditFeature audit;
+
+    @Inject
+    Logs logs;
+
+    protected LogEntry newEntry(String eventId, int monthsAgo) {
+        LogEntry entry = logs.newLogEntry();
+        entry.setEventId(eventId);
+        entry.setDocUUID("uuid");
+        Calendar date = Calendar.getInstance();
+        date.add(Calendar.MONTH, -monthsAgo);
+        entry.setEventDate(date.getTime());
+        entry.getExtendedInfos().put("months", logs.newExtendedInfo(Long.valueOf(monthsAgo)));
+        return entry;
+    }
+
+    @Test
+    public void testOldEntriesAreRemoved() throws Exception {
+        audit.clear();
+        List<LogEntry> entries = new ArrayList<>();
+        entries.add(newEntry("recent", 0));
+        entries.add(newEntry("lastYear", 11));
+        entries.add(newEntry("old", 14));
+        entries.add(newEntry("older", 30));
+        logs.addLogEntries(entries);
+        assertEquals(4, logs.getLogEntriesFor("uuid").size());
+
+        // maintenance runs outside of a transaction
+        TransactionHelper.commitOrRollbackTransaction();
+        try {
+            new AuditPartitionManager(DefaultAuditBackend.DATASOURCE, false, 12).maintain(new Date());
+        } finally {
+            TransactionHelper.startTransaction();
+        }
+
+        List<LogEntry> remaining = logs.getLogEntriesFor("uuid");
+        assertEquals(2, remaining.size());
+        for (LogEntry entry : remaining) {
+            String eventId = entry.getEventId();
+            assertTrue("recent".equals(eventId) || "lastYear".equals(eventId));
+            assertEquals(1, entry.getExtendedInfos().size());
+        }
+        List<?> infos = logs.nativeQuery("select count(info.id) from ExtendedInfoImpl info", 1, 10);
+        assertEquals(2L, ((Long) infos.get(0)).longValue());
+    }
+
+}
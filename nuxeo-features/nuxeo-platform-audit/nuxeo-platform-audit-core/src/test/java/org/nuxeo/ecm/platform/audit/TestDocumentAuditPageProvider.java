@@ -190,6 +190,30 @@ public class TestDocumentAuditPageProvider {
 
     }
 
+    @Test
+    public void testDocumentHistoryPageProviderPrunedByCreationDate() throws Exception {
+        PageProviderService pps = Framework.getService(PageProviderService.class);
+        HashMap<String, Serializable> props = new HashMap<String, Serializable>();
+        props.put(DocumentHistoryPageProvider.PRUNE_BY_FIRST_ENTRY_DATE_PROPERTY, Boolean.TRUE);
+
+        DocumentModel searchDoc = session.createDocumentModel("BasicAuditSearch");
+        searchDoc.setPathInfo("/", "auditsearch");
+        searchDoc = session.createDocument(searchDoc);
+
+        // the same entries as without the lower bound
+        PageProvider<?> pp = pps.getPageProvider("DOCUMENT_HISTORY_PROVIDER", null, Long.valueOf(20),
+                Long.valueOf(0), props, pfouh.doc);
+        pp.setSearchDocumentModel(searchDoc);
+        List<LogEntry> entries = (List<LogEntry>) pp.getCurrentPage();
+        assertEquals(19, entries.size());
+
+        pp = pps.getPageProvider("DOCUMENT_HISTORY_PROVIDER", null, Long.valueOf(20), Long.valueOf(0), props,
+                pfouh.proxy);
+        pp.setSearchDocumentModel(searchDoc);
+        entries = (List<LogEntry>) pp.getCurrentPage();
+        assertEquals(19 - 5 + 1 + 1, entries.size());
+    }
+
     @Inject
     DocumentHistoryReader history;
 
@@ -0,0 +1,171 @@
+/*
+ * (C) Copyright 2014 Nuxeo SA (http://nuxeo.com/) and contributors.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser General Public License
+ * (LGPL) version 2.1 which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl-2.1.html
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * Contributors:
+ *     Nuxeo
+ */
+package org.nuxeo.ecm.platform.audit.service;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Matchers.startsWith;
+import static org.mockito.Mockito.atLeastOnce;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.util.GregorianCalendar;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+/**
+ * Checks the statements issued for the partitioning on PostgreSQL, the batched delete is checked against the
+ * database by {@code TestAuditRetention}.
+ */
+public class TestAuditPartitionManager {
+
+    protected Connection connection;
+
+    protected Statement statement;
+
+    protected PreparedStatement createPartition;
+
+    protected PreparedStatement selectEntries;
+
+    @Before
+    public void setUp() throws Exception {
+        connection = mock(Connection.class);
+        DatabaseMetaData metadata = mock(DatabaseMetaData.class);
+        when(metadata.getDatabaseProductName()).thenReturn("PostgreSQL");
+        when(connection.getMetaData()).thenReturn(metadata);
+        statement = mock(Statement.class);
+        when(connection.createStatement()).thenReturn(statement);
+        createPartition = mock(PreparedStatement.class);
+        ResultSet created = mock(ResultSet.class);
+        when(created.next()).thenReturn(Boolean.TRUE);
+        when(createPartition.executeQuery()).thenReturn(created);
+        when(connection.prepareStatement("SELECT nx_audit_logs_create_partition(?)")).thenReturn(createPartition);
+        selectEntries = mock(PreparedStatement.class);
+        // no entry outside of the partitions
+        ResultSet entries = mock(ResultSet.class);
+        when(selectEntries.executeQuery()).thenReturn(entries);
+        when(connection.prepareStatement(startsWith("SELECT log_id"))).thenReturn(selectEntries);
+    }
+
+    protected AuditPartitionManager newManager(boolean partitioning, int retentionMonths) {
+        return new AuditPartitionManager("nxaudit-logs", partitioning, retentionMonths) {
+            @Override
+            protected Connection getConnection() throws SQLException {
+                return connection;
+            }
+        };
+    }
+
+    protected static Timestamp getMonth(int year, int month) {
+        return new Timestamp(new GregorianCalendar(year, month - 1, 1).getTimeInMillis());
+    }
+
+    protected List<String> getExecuted() throws SQLException {
+        ArgumentCaptor<String> sql = ArgumentCaptor.forClass(String.class);
+        verify(statement, atLeastOnce()).execute(sql.capture());
+        return sql.getAllValues();
+    }
+
+    @Test
+    public void testPartitionsAreCreatedInAdvance() throws Exception {
+        newManager(true, 0).maintain(new GregorianCalendar(2014, 11, 15).getTime());
+
+        ArgumentCaptor<Timestamp> months = ArgumentCaptor.forClass(Timestamp.class);
+        verify(createPartition, times(3)).setTimestamp(eq(1), months.capture());
+        assertEquals(getMonth(2014, 12), months.getAllValues().get(0));
+        assertEquals(getMonth(2015, 1), months.getAllValues().get(1));
+        assertEquals(getMonth(2015, 2), months.getAllValues().get(2));
+        // no retention
+        verify(connection, never()).prepareStatement(startsWith("SELECT log_id"));
+    }
+
+    @Test
+    public void testEntriesAreRoutedBeforeInsert() throws Exception {
+        newManager(true, 0).maintain(new GregorianCalendar(2014, 11, 15).getTime());
+
+        List<String> executed = getExecuted();
+        int route = executed.indexOf(AuditPartitionManager.CREATE_TRIGGER);
+        assertTrue(route >= 0);
+        assertTrue(AuditPartitionManager.CREATE_TRIGGER.contains(" BEFORE INSERT ON nxp_logs "));
+        assertTrue(executed.indexOf(AuditPartitionManager.ROUTE_FUNCTION) < route);
+        // the row is inserted into an existing partition only, and then not into nxp_logs
+        String function = AuditPartitionManager.ROUTE_FUNCTION;
+        assertFalse(function.contains("EXCEPTION"));
+        assertFalse(function.contains("nx_audit_logs_create_partition"));
+        assertTrue(function.contains("RETURN NULL;"));
+    }
+
+    @Test
+    public void testExtendedInfosForeignKeyIsReplaced() throws Exception {
+        newManager(true, 0).maintain(new GregorianCalendar(2014, 11, 15).getTime());
+
+        List<String> executed = getExecuted();
+        int check = executed.indexOf(AuditPartitionManager.CREATE_EXTINFOS_CHECK_TRIGGER);
+        int drop = executed.indexOf(AuditPartitionManager.DROP_EXTINFOS_FK);
+        assertTrue(executed.indexOf(AuditPartitionManager.EXTINFOS_CHECK_FUNCTION) >= 0);
+        assertTrue(check >= 0);
+        assertTrue(check < drop);
+    }
+
+    @Test
+    public void testOldPartitionsAreDropped() throws Exception {
+        ResultSet partitions = mock(ResultSet.class);
+        when(partitions.next()).thenReturn(Boolean.TRUE, Boolean.TRUE, Boolean.TRUE, Boolean.TRUE, Boolean.FALSE);
+        when(partitions.getString(1)).thenReturn("nxp_logs_2013_10", "nxp_logs_2013_11", "nxp_logs_2013_12",
+                "nxp_logs_mapextinfos");
+        when(statement.executeQuery(AuditPartitionManager.LIST_PARTITIONS)).thenReturn(partitions);
+
+        newManager(true, 12).maintain(new GregorianCalendar(2014, 11, 15).getTime());
+
+        // the retention keeps December 2013 onwards
+        verify(statement).execute("DROP TABLE nxp_logs_2013_10");
+        verify(statement).execute("DROP TABLE nxp_logs_2013_11");
+        verify(statement, never()).execute("DROP TABLE nxp_logs_2013_12");
+        verify(statement, never()).execute("DROP TABLE nxp_logs_mapextinfos");
+        verify(statement, times(2)).executeUpdate(anyString());
+        // the remaining old entries are looked up in nxp_logs itself
+        verify(connection).prepareStatement("SELECT log_id FROM ONLY nxp_logs WHERE log_event_date < ?");
+        verify(selectEntries).setTimestamp(1, getMonth(2013, 12));
+    }
+
+    @Test
+    public void testNotPartitionedOnOtherDatabases() throws Exception {
+        when(connection.getMetaData().getDatabaseProductName()).thenReturn("H2");
+
+        newManager(true, 12).maintain(new GregorianCalendar(2014, 11, 15).getTime());
+
+        verify(statement, never()).execute(anyString());
+        verify(connection).prepareStatement("SELECT log_id FROM nxp_logs WHERE log_event_date < ?");
+    }
+
+}
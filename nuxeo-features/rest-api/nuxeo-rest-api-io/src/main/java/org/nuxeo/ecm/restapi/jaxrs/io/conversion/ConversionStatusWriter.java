@@ -0,0 +1,49 @@
+/*
+ * (C) Copyright 2014 Nuxeo SA (http://nuxeo.com/) and contributors.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser General Public License
+ * (LGPL) version 2.1 which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl-2.1.html
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * Contributors:
+ *     Nuxeo
+ */
+package org.nuxeo.ecm.restapi.jaxrs.io.conversion;
+
+import java.io.IOException;
+
+import javax.ws.rs.Produces;
+import javax.ws.rs.ext.Provider;
+
+import org.codehaus.jackson.JsonGenerator;
+import org.nuxeo.ecm.automation.jaxrs.io.EntityWriter;
+import org.nuxeo.ecm.core.api.ClientException;
+import org.nuxeo.ecm.core.convert.api.ConversionStatus;
+
+/**
+ * @since 7.1
+ */
+@Provider
+@Produces({ "application/json+nxentity", "application/json" })
+public class ConversionStatusWriter extends EntityWriter<ConversionStatus> {
+
+    public static final String ENTITY_TYPE = "conversionStatus";
+
+    @Override
+    protected void writeEntityBody(JsonGenerator jg, ConversionStatus status) throws ClientException, IOException {
+        jg.writeStringField("conversionId", status.getConversionId());
+        jg.writeStringField("status", status.getStatus().name().toLowerCase());
+    }
+
+    @Override
+    protected String getEntityType() {
+        return ENTITY_TYPE;
+    }
+
+}
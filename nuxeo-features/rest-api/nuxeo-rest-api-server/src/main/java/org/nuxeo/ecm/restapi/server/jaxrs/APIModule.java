@@ -39,6 +39,7 @@ import org.nuxeo.ecm.automation.jaxrs.io.operations.JsonRequestReader;
 import org.nuxeo.ecm.automation.jaxrs.io.operations.MultiPartFormRequestReader;
 import org.nuxeo.ecm.automation.jaxrs.io.operations.MultiPartRequestReader;
 import org.nuxeo.ecm.automation.jaxrs.io.operations.UrlEncodedFormRequestReader;
+import org.nuxeo.ecm.restapi.jaxrs.io.conversion.ConversionStatusWriter;
 import org.nuxeo.ecm.restapi.jaxrs.io.directory.DirectoryEntriesWriter;
 import org.nuxeo.ecm.restapi.jaxrs.io.directory.DirectoryEntryReader;
 import org.nuxeo.ecm.restapi.jaxrs.io.directory.DirectoryEntryWriter;
@@ -110,6 +111,7 @@ public class APIModule extends WebEngineModule {
         result.add(new DocumentTypesWriter());
         result.add(new FacetWriter());
         result.add(new FacetsWriter());
+        result.add(new ConversionStatusWriter());
 
         return result;
     }
@@ -91,6 +91,14 @@ public class APIRoot extends ModuleRoot {
         return newObject("config");
     }
 
+    /**
+     * @since 7.1
+     */
+    @Path("/conversion")
+    public Object doGetConversion() {
+        return newObject("conversion");
+    }
+
     @Override
     public Object handleError(final WebApplicationException cause) {
         Throwable unWrapException = ExceptionHelper.unwrapException(cause);
@@ -0,0 +1,70 @@
+/*
+ * (C) Copyright 2014 Nuxeo SA (http://nuxeo.com/) and contributors.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser General Public License
+ * (LGPL) version 2.1 which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl-2.1.html
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * Contributors:
+ *     Nuxeo
+ */
+package org.nuxeo.ecm.restapi.server.jaxrs.conversion;
+
+import javax.ws.rs.GET;
+import javax.ws.rs.Path;
+import javax.ws.rs.PathParam;
+import javax.ws.rs.core.Response;
+
+import org.nuxeo.ecm.core.api.Blob;
+import org.nuxeo.ecm.core.api.ClientException;
+import org.nuxeo.ecm.core.api.blobholder.BlobHolder;
+import org.nuxeo.ecm.core.convert.api.ConversionService;
+import org.nuxeo.ecm.core.convert.api.ConversionStatus;
+import org.nuxeo.ecm.platform.web.common.ServletHelper;
+import org.nuxeo.ecm.webengine.model.WebObject;
+import org.nuxeo.ecm.webengine.model.exceptions.WebResourceNotFoundException;
+import org.nuxeo.ecm.webengine.model.impl.DefaultObject;
+import org.nuxeo.runtime.api.Framework;
+
+/**
+ * Endpoint to poll the conversions scheduled through {@link ConversionService#scheduleConversion}, for instance with
+ * the {@code Blob.ScheduleConversion} operation.
+ * <ul>
+ * <li>{@code GET conversion/{conversionId}/poll}: the status of the conversion</li>
+ * <li>{@code GET conversion/{conversionId}/result}: the main blob of the conversion result</li>
+ * </ul>
+ *
+ * @since 7.1
+ */
+@WebObject(type = "conversion")
+public class ConversionObject extends DefaultObject {
+
+    @GET
+    @Path("{conversionId}/poll")
+    public ConversionStatus doGetStatus(@PathParam("conversionId") String conversionId) {
+        ConversionStatus status = Framework.getLocalService(ConversionService.class).getConversionStatus(conversionId);
+        if (status == null) {
+            throw new WebResourceNotFoundException("No conversion found with id: " + conversionId);
+        }
+        return status;
+    }
+
+    @GET
+    @Path("{conversionId}/result")
+    public Response doGetResult(@PathParam("conversionId") String conversionId) throws ClientException {
+        BlobHolder result = Framework.getLocalService(ConversionService.class).getConversionResult(conversionId);
+        Blob blob = result == null ? null : result.getBlob();
+        if (blob == null) {
+            throw new WebResourceNotFoundException("No conversion result found with id: " + conversionId);
+        }
+        String contentDisposition = ServletHelper.getRFC2231ContentDisposition(ctx.getRequest(), blob.getFilename());
+        return Response.ok(blob).header("Content-Disposition", contentDisposition).type(blob.getMimeType()).build();
+    }
+
+}
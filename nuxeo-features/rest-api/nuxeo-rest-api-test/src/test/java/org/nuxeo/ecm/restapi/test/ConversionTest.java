@@ -0,0 +1,109 @@
+/*
+ * (C) Copyright 2014 Nuxeo SA (http://nuxeo.com/) and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser General Public License
+ * (LGPL) version 2.1 which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl-2.1.html
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * Contributors:
+ *     Nuxeo
+ */
+package org.nuxeo.ecm.restapi.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.Serializable;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+import javax.ws.rs.core.Response;
+
+import org.codehaus.jackson.JsonNode;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.nuxeo.ecm.core.api.Blob;
+import org.nuxeo.ecm.core.api.blobholder.SimpleBlobHolder;
+import org.nuxeo.ecm.core.api.impl.UserPrincipal;
+import org.nuxeo.ecm.core.api.impl.blob.StringBlob;
+import org.nuxeo.ecm.core.api.local.ClientLoginModule;
+import org.nuxeo.ecm.core.convert.api.ConversionService;
+import org.nuxeo.ecm.core.test.annotations.Granularity;
+import org.nuxeo.ecm.core.test.annotations.RepositoryConfig;
+import org.nuxeo.ecm.core.work.api.WorkManager;
+import org.nuxeo.runtime.test.runner.Features;
+import org.nuxeo.runtime.test.runner.FeaturesRunner;
+import org.nuxeo.runtime.test.runner.Jetty;
+import org.nuxeo.runtime.test.runner.LocalDeploy;
+
+import com.google.inject.Inject;
+import com.sun.jersey.api.client.ClientResponse;
+
+/**
+ * @since 7.1
+ */
+@RunWith(FeaturesRunner.class)
+@Features({ RestServerFeature.class })
+@Jetty(port = 18090)
+@RepositoryConfig(cleanup = Granularity.METHOD, init = RestServerInit.class)
+@LocalDeploy("org.nuxeo.ecm.platform.restapi.test:test-conversion-contrib.xml")
+public class ConversionTest extends BaseTest {
+
+    @Inject
+    protected ConversionService conversionService;
+
+    @Inject
+    protected WorkManager workManager;
+
+    protected String scheduleConversion(String username) throws Exception {
+        Blob blob = new StringBlob("<html><body>Hello conversion</body></html>");
+        blob.setMimeType("text/html");
+        ClientLoginModule.getThreadLocalLogin().push(new UserPrincipal(username), null, null);
+        try {
+            return conversionService.scheduleConversion("html2text", new SimpleBlobHolder(blob),
+                    Collections.<String, Serializable> emptyMap());
+        } finally {
+            ClientLoginModule.getThreadLocalLogin().pop();
+        }
+    }
+
+    @Test
+    public void iCanPollAndGetTheResultOfAConversion() throws Exception {
+        String id = scheduleConversion("Administrator");
+        assertTrue(workManager.awaitCompletion(10, TimeUnit.SECONDS));
+
+        ClientResponse response = getResponse(RequestType.GET, "conversion/" + id + "/poll");
+        assertEquals(Response.Status.OK.getStatusCode(), response.getStatus());
+        JsonNode node = mapper.readTree(response.getEntityInputStream());
+        assertEquals(id, node.get("conversionId").getValueAsText());
+        assertEquals("completed", node.get("status").getValueAsText());
+
+        response = getResponse(RequestType.GET, "conversion/" + id + "/result");
+        assertEquals(Response.Status.OK.getStatusCode(), response.getStatus());
+        assertTrue(response.getEntity(String.class).contains("Hello conversion"));
+    }
+
+    @Test
+    public void iCannotPollTheConversionOfAnotherUser() throws Exception {
+        String id = scheduleConversion("user1");
+        assertTrue(workManager.awaitCompletion(10, TimeUnit.SECONDS));
+
+        ClientResponse response = getResponse(RequestType.GET, "conversion/" + id + "/poll");
+        assertEquals(Response.Status.NOT_FOUND.getStatusCode(), response.getStatus());
+        response = getResponse(RequestType.GET, "conversion/" + id + "/result");
+        assertEquals(Response.Status.NOT_FOUND.getStatusCode(), response.getStatus());
+    }
+
+    @Test
+    public void iGetNotFoundForAnUnknownConversion() throws Exception {
+        ClientResponse response = getResponse(RequestType.GET, "conversion/unknown/poll");
+        assertEquals(Response.Status.NOT_FOUND.getStatusCode(), response.getStatus());
+    }
+
+}
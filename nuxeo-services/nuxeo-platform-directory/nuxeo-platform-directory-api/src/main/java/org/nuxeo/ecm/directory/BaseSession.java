@@ -19,9 +19,12 @@
 package org.nuxeo.ecm.directory;
 
 import java.io.Serializable;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -261,4 +264,122 @@ public abstract class BaseSession implements Session {
         return new DocumentModelListImpl(entries.subList(offset, toIndex));
     }
 
+    /**
+     * Retrieves the entries one by one, implementations should override this to fetch them in batches.
+     *
+     * @since 7.1
+     */
+    @Override
+    public DocumentModelList getEntries(Collection<String> ids, boolean fetchReferences) throws DirectoryException {
+        DocumentModelList entries = new DocumentModelListImpl();
+        for (String id : new LinkedHashSet<String>(ids)) {
+            DocumentModel entry = getEntry(id, fetchReferences);
+            if (entry != null) {
+                entries.add(entry);
+            }
+        }
+        return entries;
+    }
+
+    /**
+     * Iterates over the results of a regular query, implementations should override this to fetch them page by page.
+     *
+     * @since 7.1
+     */
+    @Override
+    public EntryIterator queryIterator(Map<String, Serializable> filter, Set<String> fulltext, boolean fetchReferences)
+            throws DirectoryException {
+        return new EntryListIterator(query(filter, fulltext, Collections.<String, String> emptyMap(), fetchReferences));
+    }
+
+    /**
+     * Maps the requested ids to the entries returned by a batch lookup, matching ids case-insensitively if needed as
+     * backends may be case insensitive.
+     *
+     * @since 7.1
+     */
+    public static Map<String, DocumentModel> mapEntriesToIds(Collection<String> ids,
+            Collection<DocumentModel> entries) {
+        Map<String, DocumentModel> byId = new HashMap<String, DocumentModel>();
+        Map<String, DocumentModel> byLowerCaseId = new HashMap<String, DocumentModel>();
+        for (DocumentModel entry : entries) {
+            byId.put(entry.getId(), entry);
+            byLowerCaseId.put(entry.getId().toLowerCase(), entry);
+        }
+        Map<String, DocumentModel> map = new HashMap<String, DocumentModel>();
+        for (String id : ids) {
+            DocumentModel entry = byId.get(id);
+            if (entry == null) {
+                entry = byLowerCaseId.get(id.toLowerCase());
+            }
+            if (entry != null) {
+                map.put(id, entry);
+            }
+        }
+        return map;
+    }
+
+    /**
+     * Lists the entries of a map of ids to entries in the order of the given ids.
+     *
+     * @since 7.1
+     */
+    public static DocumentModelList toEntryList(Collection<String> ids, Map<String, DocumentModel> entries) {
+        DocumentModelList list = new DocumentModelListImpl(entries.size());
+        for (String id : new LinkedHashSet<String>(ids)) {
+            DocumentModel entry = entries.get(id);
+            if (entry != null) {
+                list.add(entry);
+            }
+        }
+        return list;
+    }
+
+    /**
+     * {@link EntryIterator} over an already fetched list of entries.
+     *
+     * @since 7.1
+     */
+    public static class EntryListIterator implements EntryIterator {
+
+        protected final List<DocumentModel> entries;
+
+        protected final Iterator<DocumentModel> it;
+
+        public EntryListIterator(List<DocumentModel> entries) {
+            this.entries = entries;
+            it = entries.iterator();
+        }
+
+        @Override
+        public boolean hasNext() {
+            return it.hasNext();
+        }
+
+        @Override
+        public DocumentModel next() {
+            return it.next();
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public Iterator<DocumentModel> iterator() {
+            return this;
+        }
+
+        @Override
+        public long size() {
+            return entries.size();
+        }
+
+        @Override
+        public void close() {
+        }
+
+    }
+
 }
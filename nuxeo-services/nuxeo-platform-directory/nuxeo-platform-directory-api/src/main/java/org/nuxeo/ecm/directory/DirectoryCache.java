@@ -18,12 +18,31 @@
 package org.nuxeo.ecm.directory;
 
 import java.io.IOException;
+import java.io.Serializable;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Calendar;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
+import org.nuxeo.ecm.core.api.ClientException;
+import org.nuxeo.ecm.core.api.DataModel;
 import org.nuxeo.ecm.core.api.DocumentModel;
+import org.nuxeo.ecm.core.api.DocumentModelList;
+import org.nuxeo.ecm.core.api.impl.CopyOnWriteDataModel;
+import org.nuxeo.ecm.core.api.impl.DocumentModelImpl;
+import org.nuxeo.ecm.core.api.impl.DocumentModelListImpl;
+import org.nuxeo.ecm.core.api.model.PropertyException;
 import org.nuxeo.ecm.core.cache.Cache;
 import org.nuxeo.ecm.core.cache.CacheService;
 import org.nuxeo.runtime.api.Framework;
@@ -34,12 +53,35 @@ import com.codahale.metrics.MetricRegistry;
 import com.codahale.metrics.SharedMetricRegistries;
 
 /**
- * Very simple cache system to cache directory entry lookups (not search queries) on top of nuxeo cache
+ * Very simple cache system to cache directory entry lookups and search queries on top of nuxeo cache
+ * <p>
+ * Absent entries are cached too if negative caching is enabled. Query results are only cached if a query cache is
+ * configured, for queries whose filter values are simple values (strings, numbers, booleans, dates), and are
+ * invalidated on any change of the directory.
  * <p>
  * Beware that this cache is not transaction aware (which is not a problem for LDAP directories anyway).
  */
 public class DirectoryCache {
 
+    /**
+     * Maximum number of entries of a query result to cache, larger results are not cached.
+     *
+     * @since 7.1
+     */
+    public static final String QUERY_MAX_RESULTS_PROPERTY = "org.nuxeo.directory.cache.query.maxResults";
+
+    /**
+     * @since 7.1
+     */
+    public static final String DEFAULT_QUERY_MAX_RESULTS = "1000";
+
+    /**
+     * Value cached for an absent entry.
+     *
+     * @since 7.1
+     */
+    protected static final String ABSENT_ENTRY = "__NUXEO_DIRECTORY_ABSENT_ENTRY__";
+
     protected final String name;
 
     protected Cache entryCache;
@@ -50,10 +92,20 @@ public class DirectoryCache {
 
     protected String entryCacheWithoutReferencesName = null;
 
+    protected Cache queryCache;
+
+    protected String queryCacheName = null;
+
+    protected boolean negativeCaching;
+
+    protected final int queryMaxResults;
+
     protected final MetricRegistry metrics = SharedMetricRegistries.getOrCreate(MetricsService.class.getName());
 
     protected final Counter hitsCounter;
 
+    protected final Counter queryHitsCounter;
+
     protected final Counter invalidationsCounter;
 
     protected final Counter maxCounter;
@@ -65,84 +117,313 @@ public class DirectoryCache {
     protected DirectoryCache(String name) {
         this.name = name;
         hitsCounter = metrics.counter(MetricRegistry.name("nuxeo", "directories", name, "cache", "hits"));
+        queryHitsCounter = metrics.counter(MetricRegistry.name("nuxeo", "directories", name, "cache", "queryHits"));
         invalidationsCounter = metrics.counter(MetricRegistry.name("nuxeo", "directories", name, "cache",
                 "invalidations"));
         sizeCounter = metrics.counter(MetricRegistry.name("nuxeo", "directories", name, "cache", "size"));
         maxCounter = metrics.counter(MetricRegistry.name("nuxeo", "directories", name, "cache", "max"));
+        queryMaxResults = Integer.parseInt(Framework.getProperty(QUERY_MAX_RESULTS_PROPERTY,
+                DEFAULT_QUERY_MAX_RESULTS));
     }
 
-    protected boolean isCacheEnabled() {
+    /**
+     * Checks whether entry lookups are cached.
+     *
+     * @since 7.1 (public)
+     */
+    public boolean isCacheEnabled() {
         return (entryCacheName != null && entryCacheWithoutReferencesName != null);
     }
 
+    protected boolean isCacheConfigured() {
+        if (getEntryCache() != null && getEntryCacheWithoutReferences() != null) {
+            return true;
+        }
+        log.warn("Your directory configuration for cache is wrong, directory cache will not be used.");
+        if (getEntryCache() == null) {
+            log.warn(String.format(
+                    "The cache for entry '%s' has not been found, please check the cache name or make sure you have deployed it",
+                    entryCacheName));
+        }
+        if (getEntryCacheWithoutReferences() == null) {
+            log.warn(String.format(
+                    "The cache for entry without references '%s' has not been found, please check the cache name or make sure you have deployed it",
+                    entryCacheWithoutReferencesName));
+        }
+        return false;
+    }
+
     public DocumentModel getEntry(String entryId, EntrySource source) throws DirectoryException {
         return getEntry(entryId, source, true);
     }
 
     public DocumentModel getEntry(String entryId, EntrySource source, boolean fetchReferences)
             throws DirectoryException {
-        if (!isCacheEnabled()) {
-            return source.getEntryFromSource(entryId, fetchReferences);
-        } else if (isCacheEnabled() && (getEntryCache() == null || getEntryCacheWithoutReferences() == null)) {
-
-            log.warn("Your directory configuration for cache is wrong, directory cache will not be used.");
-            if (getEntryCache() == null) {
-                log.warn(String.format(
-                        "The cache for entry '%s' has not been found, please check the cache name or make sure you have deployed it",
-                        entryCacheName));
-            }
-            if (getEntryCacheWithoutReferences() == null) {
-                log.warn(String.format(
-                        "The cache for entry without references '%s' has not been found, please check the cache name or make sure you have deployed it",
-                        entryCacheWithoutReferencesName));
-            }
+        return getEntry(entryId, source, fetchReferences, true);
+    }
 
+    /**
+     * Gets an entry, from the cache if possible.
+     * <p>
+     * The absence of the entry is only cached if {@code cacheAbsence} is {@code true} and negative caching is enabled.
+     * It must be {@code false} if the source filters the entries it returns, as the entry may then exist for other
+     * sessions.
+     *
+     * @since 7.1
+     */
+    public DocumentModel getEntry(String entryId, EntrySource source, boolean fetchReferences, boolean cacheAbsence)
+            throws DirectoryException {
+        if (!isCacheEnabled() || !isCacheConfigured()) {
             return source.getEntryFromSource(entryId, fetchReferences);
         }
+        DocumentModel dm = getCachedEntry(entryId, source, fetchReferences, cacheAbsence);
+        return dm == null ? null : copy(dm);
+    }
+
+    /**
+     * Gets several entries, fetching the ones not in the cache from the source in one batch and caching them.
+     * <p>
+     * The absence of entries is cached as in {@link #getEntry(String, EntrySource, boolean, boolean)}.
+     *
+     * @return a map of the given ids to their entry, ids without entry are absent
+     * @since 7.1
+     */
+    public Map<String, DocumentModel> getEntries(Collection<String> entryIds, EntriesSource source,
+            boolean fetchReferences, boolean cacheAbsence) throws DirectoryException {
+        if (!isCacheEnabled() || !isCacheConfigured()) {
+            return source.getEntriesFromSource(entryIds, fetchReferences);
+        }
+        Cache cache = fetchReferences ? getEntryCache() : getEntryCacheWithoutReferences();
+        Map<String, DocumentModel> entries = new HashMap<String, DocumentModel>();
         try {
-            DocumentModel dm = null;
-            if (fetchReferences) {
-                dm = (DocumentModel) getEntryCache().get(entryId);
-                if (dm == null) {
-                    // fetch the entry from the backend and cache it for later
-                    // reuse
-                    dm = source.getEntryFromSource(entryId, fetchReferences);
-                    if (dm != null) {
-                        getEntryCache().put(entryId, dm);
-                    }
+            Map<String, Serializable> values = cache.getAll(entryIds);
+            List<String> missingIds = new ArrayList<String>();
+            for (String entryId : new LinkedHashSet<String>(entryIds)) {
+                Serializable value = values.get(entryId);
+                if (value == null) {
+                    missingIds.add(entryId);
                 } else {
                     hitsCounter.inc();
+                    if (!ABSENT_ENTRY.equals(value)) {
+                        entries.put(entryId, copy((DocumentModel) value));
+                    }
+                }
+            }
+            if (missingIds.isEmpty()) {
+                return entries;
+            }
+            // fetch the missing entries from the backend and cache them for later reuse
+            Map<String, DocumentModel> fetched = source.getEntriesFromSource(missingIds, fetchReferences);
+            Map<String, Serializable> toCache = new HashMap<String, Serializable>();
+            for (String entryId : missingIds) {
+                DocumentModel dm = fetched.get(entryId);
+                if (dm != null) {
+                    toCache.put(entryId, toCopyOnWrite(dm));
+                    entries.put(entryId, copy(dm));
+                } else if (negativeCaching && cacheAbsence) {
+                    toCache.put(entryId, ABSENT_ENTRY);
                 }
+            }
+            if (!toCache.isEmpty()) {
+                cache.putAll(toCache);
+            }
+            return entries;
+        } catch (IOException e) {
+            throw new DirectoryException(e);
+        }
+    }
+
+    /**
+     * Checks whether an entry exists, using the cached entries (or their cached absence) if possible, and caching the
+     * entry otherwise.
+     * <p>
+     * This must only be used if absence of an entry from {@link EntrySource#getEntryFromSource} always means absence
+     * from the directory, which is not the case if the source filters the entries it returns.
+     *
+     * @since 7.1
+     */
+    public boolean hasEntry(String entryId, EntrySource source) throws DirectoryException {
+        if (!isCacheEnabled() || !isCacheConfigured()) {
+            return source.getEntryFromSource(entryId, false) != null;
+        }
+        try {
+            // the cache without references is the one populated below, but the entry may be in the other one
+            Serializable value = getEntryCacheWithoutReferences().get(entryId);
+            if (value == null) {
+                value = getEntryCache().get(entryId);
+            }
+            if (value != null) {
+                hitsCounter.inc();
+                return !ABSENT_ENTRY.equals(value);
+            }
+            return fetchEntry(entryId, source, false, true) != null;
+        } catch (IOException e) {
+            throw new DirectoryException(e);
+        }
+    }
+
+    /**
+     * Gets an entry from the cache, or from the source and caches it. The returned entry must not be modified.
+     */
+    protected DocumentModel getCachedEntry(String entryId, EntrySource source, boolean fetchReferences,
+            boolean cacheAbsence) throws DirectoryException {
+        Cache cache = fetchReferences ? getEntryCache() : getEntryCacheWithoutReferences();
+        try {
+            Serializable value = cache.get(entryId);
+            if (value != null) {
+                hitsCounter.inc();
+                return ABSENT_ENTRY.equals(value) ? null : (DocumentModel) value;
+            }
+            return fetchEntry(entryId, source, fetchReferences, cacheAbsence);
+        } catch (IOException e) {
+            throw new DirectoryException(e);
+        }
+    }
+
+    /**
+     * Gets an entry from the source and caches it, or its absence, for later reuse.
+     *
+     * @since 7.1
+     */
+    protected DocumentModel fetchEntry(String entryId, EntrySource source, boolean fetchReferences,
+            boolean cacheAbsence) throws DirectoryException, IOException {
+        Cache cache = fetchReferences ? getEntryCache() : getEntryCacheWithoutReferences();
+        DocumentModel dm = source.getEntryFromSource(entryId, fetchReferences);
+        if (dm != null) {
+            cache.put(entryId, toCopyOnWrite(dm));
+        } else if (negativeCaching && cacheAbsence) {
+            cache.put(entryId, ABSENT_ENTRY);
+        }
+        return dm;
+    }
+
+    /**
+     * Queries the directory, using the cached results of the same query if possible.
+     *
+     * @since 7.1
+     */
+    public DocumentModelList query(Map<String, Serializable> filter, Set<String> fulltext,
+            Map<String, String> orderBy, boolean fetchReferences, int limit, int offset, QuerySource source)
+            throws ClientException {
+        String key = queryCacheName == null ? null : getQueryKey(filter, fulltext, orderBy, fetchReferences, limit,
+                offset);
+        if (key == null || getQueryCache() == null) {
+            return source.queryFromSource(filter, fulltext, orderBy, fetchReferences, limit, offset);
+        }
+        try {
+            DocumentModelList list = (DocumentModelList) getQueryCache().get(key);
+            if (list != null) {
+                queryHitsCounter.inc();
             } else {
-                dm = (DocumentModel) getEntryCacheWithoutReferences().get(entryId);
-                if (dm == null) {
-                    // fetch the entry from the backend and cache it for later
-                    // reuse
-                    dm = source.getEntryFromSource(entryId, fetchReferences);
-                    if (dm != null) {
-                        getEntryCacheWithoutReferences().put(entryId, dm);
+                list = source.queryFromSource(filter, fulltext, orderBy, fetchReferences, limit, offset);
+                if (list.size() <= queryMaxResults) {
+                    for (DocumentModel dm : list) {
+                        toCopyOnWrite(dm);
                     }
-                } else {
-                    hitsCounter.inc();
+                    getQueryCache().put(key, list instanceof Serializable ? (Serializable) list
+                            : new DocumentModelListImpl(list));
                 }
             }
-            try {
-                if (dm == null) {
+            DocumentModelList copy = new DocumentModelListImpl(list.size());
+            for (DocumentModel dm : list) {
+                copy.add(copy(dm));
+            }
+            return copy;
+        } catch (IOException e) {
+            throw new DirectoryException(e);
+        }
+    }
+
+    /**
+     * Computes the query cache key, unambiguous and independent of the ordering of the filter and fulltext fields.
+     *
+     * @return the key, or {@code null} if the query cannot be cached
+     * @since 7.1
+     */
+    protected String getQueryKey(Map<String, Serializable> filter, Set<String> fulltext, Map<String, String> orderBy,
+            boolean fetchReferences, int limit, int offset) {
+        StringBuilder buf = new StringBuilder();
+        buf.append(fetchReferences ? 'R' : 'N').append(limit).append(',').append(offset).append(',');
+        if (filter != null) {
+            for (Entry<String, Serializable> es : new TreeMap<String, Serializable>(filter).entrySet()) {
+                Serializable value = es.getValue();
+                String string;
+                if (value == null) {
+                    string = "n";
+                } else if (value instanceof String) {
+                    string = "s" + value;
+                } else if (value instanceof Number || value instanceof Boolean) {
+                    string = value.getClass().getSimpleName() + value;
+                } else if (value instanceof Calendar) {
+                    string = "d" + ((Calendar) value).getTimeInMillis();
+                } else if (value instanceof Date) {
+                    string = "d" + ((Date) value).getTime();
+                } else {
+                    // complex filter, not cacheable
                     return null;
                 }
-                DocumentModel clone = dm.clone();
-                // DocumentModelImpl#clone does not copy context data, hence
-                // propagate the read-only flag manually
-                if (BaseSession.isReadOnlyEntry(dm)) {
-                    BaseSession.setReadOnlyEntry(clone);
+                appendToken(buf.append('f'), es.getKey());
+                appendToken(buf, string);
+            }
+        }
+        if (fulltext != null) {
+            for (String field : new TreeSet<String>(fulltext)) {
+                appendToken(buf.append('t'), field);
+            }
+        }
+        if (orderBy != null) {
+            for (Entry<String, String> es : orderBy.entrySet()) {
+                appendToken(buf.append('o'), es.getKey());
+                appendToken(buf, String.valueOf(es.getValue()).toLowerCase());
+            }
+        }
+        return buf.toString();
+    }
+
+    protected static void appendToken(StringBuilder buf, String token) {
+        buf.append(token.length()).append(':').append(token);
+    }
+
+    /**
+     * Makes the data models of an entry about to be cached share their values with the copies returned to callers,
+     * until these copies are modified.
+     *
+     * @since 7.1
+     */
+    protected DocumentModel toCopyOnWrite(DocumentModel dm) {
+        if (!(dm instanceof DocumentModelImpl)) {
+            return dm;
+        }
+        DocumentModelImpl doc = (DocumentModelImpl) dm;
+        for (DataModel dataModel : new ArrayList<DataModel>(doc.getDataModelsCollection())) {
+            if (!(dataModel instanceof CopyOnWriteDataModel)) {
+                try {
+                    doc.addDataModel(new CopyOnWriteDataModel(dataModel));
+                } catch (PropertyException e) {
+                    throw new DirectoryException(e);
                 }
-                return clone;
-            } catch (CloneNotSupportedException e) {
-                // will never happen as long a DocumentModelImpl is used
-                return dm;
             }
-        } catch (IOException e) {
-            throw new DirectoryException(e);
+        }
+        return doc;
+    }
+
+    /**
+     * Copies a cached entry so that callers cannot modify it.
+     * <p>
+     * As cached entries have copy-on-write data models, this does not copy their values.
+     */
+    protected DocumentModel copy(DocumentModel dm) {
+        try {
+            DocumentModel clone = dm.clone();
+            // DocumentModelImpl#clone does not copy context data, hence
+            // propagate the read-only flag manually
+            if (BaseSession.isReadOnlyEntry(dm)) {
+                BaseSession.setReadOnlyEntry(clone);
+            }
+            return clone;
+        } catch (CloneNotSupportedException e) {
+            // will never happen as long a DocumentModelImpl is used
+            return dm;
         }
     }
 
@@ -161,6 +442,8 @@ public class DirectoryCache {
                 }
             }
         }
+        // the entries may be part of any query result
+        invalidateQueries();
     }
 
     public void invalidate(String... entryIds) {
@@ -181,6 +464,17 @@ public class DirectoryCache {
                 }
             }
         }
+        invalidateQueries();
+    }
+
+    protected void invalidateQueries() {
+        if (queryCacheName != null && getQueryCache() != null) {
+            try {
+                getQueryCache().invalidateAll();
+            } catch (IOException e) {
+                throw new DirectoryException(e);
+            }
+        }
     }
 
     public void setEntryCacheName(String entryCacheName) {
@@ -191,6 +485,23 @@ public class DirectoryCache {
         this.entryCacheWithoutReferencesName = entryCacheWithoutReferencesName;
     }
 
+    /**
+     * @since 7.1
+     */
+    public void setQueryCacheName(String queryCacheName) {
+        this.queryCacheName = queryCacheName;
+        queryCache = null;
+    }
+
+    /**
+     * Enables the caching of absent entries.
+     *
+     * @since 7.1
+     */
+    public void setNegativeCaching(boolean negativeCaching) {
+        this.negativeCaching = negativeCaching;
+    }
+
     public Cache getEntryCache() {
         if (entryCache == null) {
             entryCache = Framework.getService(CacheService.class).getCache(entryCacheName);
@@ -207,4 +518,19 @@ public class DirectoryCache {
         return entryCacheWithoutReferences;
     }
 
+    /**
+     * @since 7.1
+     */
+    public Cache getQueryCache() {
+        if (queryCache == null && queryCacheName != null) {
+            queryCache = Framework.getService(CacheService.class).getCache(queryCacheName);
+            if (queryCache == null) {
+                log.warn(String.format(
+                        "The cache for queries '%s' has not been found, please check the cache name or make sure you have deployed it",
+                        queryCacheName));
+            }
+        }
+        return queryCache;
+    }
+
 }
@@ -0,0 +1,40 @@
+/*
+ * (C) Copyright 2014 Nuxeo SA (http://nuxeo.com/) and contributors.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser General Public License
+ * (LGPL) version 2.1 which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl-2.1.html
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * Contributors:
+ *     Nuxeo - initial API and implementation
+ */
+
+package org.nuxeo.ecm.directory;
+
+import java.util.Collection;
+import java.util.Map;
+
+import org.nuxeo.ecm.core.api.DocumentModel;
+
+/**
+ * Interface to make Session behave as a source of several entries at once for a DirectoryCache instance
+ *
+ * @since 7.1
+ */
+public interface EntriesSource extends EntrySource {
+
+    /**
+     * Gets the entries with the given ids from the backend.
+     *
+     * @return a map of the requested ids to their entry, ids without entry are absent
+     */
+    Map<String, DocumentModel> getEntriesFromSource(Collection<String> ids, boolean fetchReferences)
+            throws DirectoryException;
+
+}
@@ -0,0 +1,39 @@
+/*
+ * (C) Copyright 2014 Nuxeo SA (http://nuxeo.com/) and contributors.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser General Public License
+ * (LGPL) version 2.1 which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl-2.1.html
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * Contributors:
+ *     Nuxeo - initial API and implementation
+ */
+
+package org.nuxeo.ecm.directory;
+
+import org.nuxeo.ecm.core.api.DocumentModelIterator;
+
+/**
+ * Iterator over the entries matching a directory query, which backends may fetch page by page instead of loading
+ * them all in memory.
+ * <p>
+ * It must be closed to release the backend resources, unless fully iterated.
+ *
+ * @see Session#queryIterator
+ * @since 7.1
+ */
+public interface EntryIterator extends DocumentModelIterator, AutoCloseable {
+
+    /**
+     * Iteration errors are thrown as {@link DirectoryException} (unchecked) from {@link #hasNext} and {@link #next}.
+     */
+    @Override
+    void close() throws DirectoryException;
+
+}
@@ -19,6 +19,7 @@
 package org.nuxeo.ecm.directory;
 
 import java.io.Serializable;
+import java.util.Collection;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -60,6 +61,17 @@ public interface Session {
      */
     DocumentModel getEntry(String id, boolean fetchReferences) throws DirectoryException;
 
+    /**
+     * Retrieves several directory entries using their ids, in as few backend calls as possible.
+     *
+     * @param ids the entry ids
+     * @param fetchReferences boolean stating if references have to be fetched
+     * @return the entries found, in the order of the given ids, ids without entry being ignored
+     * @throws DirectoryException
+     * @since 7.1
+     */
+    DocumentModelList getEntries(Collection<String> ids, boolean fetchReferences) throws DirectoryException;
+
     /**
      * Retrieves all the entries in the directory. If the remote server issues a size limit exceeded error while sending
      * partial results up to that limit, the method {@code DocumentModelList#totalsize} on the returned list will return
@@ -208,6 +220,19 @@ public interface Session {
     DocumentModelList query(Map<String, Serializable> filter, Set<String> fulltext, Map<String, String> orderBy,
             boolean fetchReferences, int limit, int offset) throws ClientException, DirectoryException;
 
+    /**
+     * Executes a simple query, iterating over the results instead of loading them all at once. The conditions will be
+     * 'AND'-ed.
+     * <p>
+     * Backends supporting it fetch the results page by page, and the directory query size limit does not apply. The
+     * iterator must be closed when not fully iterated.
+     *
+     * @see #query(Map, Set, Map, boolean)
+     * @since 7.1
+     */
+    EntryIterator queryIterator(Map<String, Serializable> filter, Set<String> fulltext, boolean fetchReferences)
+            throws DirectoryException;
+
     // TODO: create an API to allow sql AND/OR/NOT/LIKE conditions
     // public DocumentModelList query(Criteria criteria ) throws
     // DirectoryException;
@@ -33,12 +33,13 @@ import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.Properties;
 import java.util.Set;
+import java.util.concurrent.TimeUnit;
 
 import javax.naming.Context;
 import javax.naming.NamingException;
 import javax.naming.directory.DirContext;
-import javax.naming.directory.InitialDirContext;
 import javax.naming.directory.SearchControls;
+import javax.naming.ldap.InitialLdapContext;
 import javax.net.SocketFactory;
 import javax.net.ssl.SSLContext;
 import javax.net.ssl.SSLException;
@@ -60,6 +61,11 @@ import org.nuxeo.ecm.directory.Reference;
 import org.nuxeo.ecm.directory.Session;
 import org.nuxeo.runtime.api.Framework;
 
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+
 /**
  * Implementation of the Directory interface for servers implementing the Lightweight Directory Access Protocol.
  *
@@ -88,6 +94,39 @@ public class LDAPDirectory extends AbstractDirectory {
     // the following attribute is only used for testing purpose
     protected ContextProvider testServer;
 
+    /**
+     * JVM-wide JNDI LDAP connection pool settings exposed as gauges.
+     *
+     * @since 7.1
+     */
+    protected static final String[] POOL_PROPERTIES = { "initsize", "prefsize", "maxsize", "timeout" };
+
+    /**
+     * Values used by the JDK for the {@link #POOL_PROPERTIES} that are not set, 0 meaning no limit.
+     *
+     * @since 7.1
+     */
+    protected static final int[] POOL_DEFAULTS = { 1, 0, 0, 0 };
+
+    /**
+     * Time in milliseconds beyond which getting a connection is counted as slow, usually because the pool is
+     * exhausted.
+     *
+     * @since 7.1
+     */
+    public static final String SLOW_CONNECTION_PROPERTY = "org.nuxeo.directory.ldap.connections.slow.threshold";
+
+    protected static final String SLOW_CONNECTION_DEFAULT = "1000";
+
+    // @since 7.1
+    protected final Timer connectionWaitTimer;
+
+    // @since 7.1
+    protected final Counter slowConnectionCount;
+
+    // @since 7.1
+    protected final long slowConnectionThreshold;
+
     public LDAPDirectory(LDAPDirectoryDescriptor config) throws ClientException {
         super(config.name);
         this.config = config;
@@ -103,6 +142,38 @@ public class LDAPDirectory extends AbstractDirectory {
             throw new DirectoryException("searchBaseDn configuration is missing for directory " + config.getName());
         }
 
+        connectionWaitTimer = registry.timer(MetricRegistry.name("nuxeo", "directories", name, "ldap", "connections",
+                "wait"));
+        slowConnectionCount = registry.counter(MetricRegistry.name("nuxeo", "directories", name, "ldap",
+                "connections", "slow"));
+        slowConnectionThreshold = Long.parseLong(Framework.getProperty(SLOW_CONNECTION_PROPERTY,
+                SLOW_CONNECTION_DEFAULT));
+        registerPoolGauges(registry);
+    }
+
+    /**
+     * Registers gauges for the JNDI LDAP connection pool settings, which are system properties shared by all the
+     * directories, reporting the JDK defaults for the ones that are not set. The pool itself does not expose its
+     * current size, so the time spent getting a connection and the number of slow ones are tracked per directory
+     * instead.
+     *
+     * @since 7.1
+     */
+    protected static synchronized void registerPoolGauges(MetricRegistry registry) {
+        for (int i = 0; i < POOL_PROPERTIES.length; i++) {
+            final String property = POOL_PROPERTIES[i];
+            final int defaultValue = POOL_DEFAULTS[i];
+            String gaugeName = MetricRegistry.name("nuxeo", "directories", "ldap", "pool", property);
+            if (registry.getNames().contains(gaugeName)) {
+                continue;
+            }
+            registry.register(gaugeName, new Gauge<Integer>() {
+                @Override
+                public Integer getValue() {
+                    return Integer.getInteger("com.sun.jndi.ldap.connect.pool." + property, defaultValue);
+                }
+            });
+        }
     }
 
     @Override
@@ -147,6 +218,8 @@ public class LDAPDirectory extends AbstractDirectory {
         // cache parameterization
         cache.setEntryCacheName(config.cacheEntryName);
         cache.setEntryCacheWithoutReferencesName(config.cacheEntryWithoutReferencesName);
+        cache.setQueryCacheName(config.cacheQueryName);
+        cache.setNegativeCaching(config.cacheNegativeEntries);
 
         log.debug(String.format("initialized LDAP directory %s with fields [%s] and references [%s]", config.getName(),
                 StringUtils.join(schemaFieldMap.keySet().toArray(), ", "),
@@ -304,7 +377,8 @@ public class LDAPDirectory extends AbstractDirectory {
                 String ldapUrls = serverConfig.getLdapUrls();
                 contextProperties.put(Context.PROVIDER_URL, ldapUrls);
             }
-            return new InitialDirContext(contextProperties);
+            // an LdapContext allows the use of request controls for paged searches
+            return new InitialLdapContext(contextProperties, null);
         } catch (NamingException e) {
             throw new DirectoryException("Cannot connect to LDAP directory '" + getName() + "': " + e.getMessage(), e);
         }
@@ -352,8 +426,17 @@ public class LDAPDirectory extends AbstractDirectory {
         if (testServer != null) {
             context = testServer.getContext();
         } else {
-            context = createContext();
+            Timer.Context timerContext = connectionWaitTimer.time();
+            try {
+                context = createContext();
+            } finally {
+                long elapsed = TimeUnit.NANOSECONDS.toMillis(timerContext.stop());
+                if (elapsed > slowConnectionThreshold) {
+                    slowConnectionCount.inc();
+                }
+            }
         }
+        // each session holds its own connection, the active ones are counted by the sessions
         Session session = new LDAPSession(this, context);
         addSession(session);
         return session;
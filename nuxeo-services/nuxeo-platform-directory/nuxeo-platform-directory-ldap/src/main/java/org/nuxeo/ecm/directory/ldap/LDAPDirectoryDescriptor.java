@@ -70,6 +70,18 @@ public class LDAPDirectoryDescriptor {
     @XNode("cacheEntryWithoutReferencesName")
     public String cacheEntryWithoutReferencesName = null;
 
+    /**
+     * @since 7.1
+     */
+    @XNode("cacheQueryName")
+    public String cacheQueryName = null;
+
+    /**
+     * @since 7.1
+     */
+    @XNode("cacheNegativeEntries")
+    public boolean cacheNegativeEntries = false;
+
     @XNodeMap(value = "fieldMapping", key = "@name", type = HashMap.class, componentType = String.class)
     public Map<String, String> fieldMapping = new HashMap<String, String>();
 
@@ -131,6 +143,15 @@ public class LDAPDirectoryDescriptor {
     @XNode("queryTimeLimit")
     private int queryTimeLimit = 0; // default to wait indefinitely
 
+    /**
+     * Size of the pages requested using the paged results control (RFC 2696), 0 to disable paged searches. Should not
+     * exceed the server page size limit (1000 by default for Active Directory).
+     *
+     * @since 7.1
+     */
+    @XNode("pageSize")
+    public int pageSize = 0;
+
     // Add attribute to allow to ignore referrals resolution
     /**
      * Since 5.9.4
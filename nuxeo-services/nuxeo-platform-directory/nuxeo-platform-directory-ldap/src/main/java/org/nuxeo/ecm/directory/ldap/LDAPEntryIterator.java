@@ -0,0 +1,257 @@
+/*
+ * (C) Copyright 2014 Nuxeo SA (http://nuxeo.com/) and contributors.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser General Public License
+ * (LGPL) version 2.1 which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl-2.1.html
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * Contributors:
+ *     Nuxeo - initial API and implementation
+ */
+
+package org.nuxeo.ecm.directory.ldap;
+
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import javax.naming.NameNotFoundException;
+import javax.naming.NamingEnumeration;
+import javax.naming.NamingException;
+import javax.naming.SizeLimitExceededException;
+import javax.naming.directory.DirContext;
+import javax.naming.directory.SearchControls;
+import javax.naming.directory.SearchResult;
+import javax.naming.ldap.Control;
+import javax.naming.ldap.LdapContext;
+import javax.naming.ldap.PagedResultsControl;
+import javax.naming.ldap.PagedResultsResponseControl;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.nuxeo.ecm.core.api.DocumentModel;
+import org.nuxeo.ecm.directory.DirectoryException;
+import org.nuxeo.ecm.directory.EntryIterator;
+
+/**
+ * Iterates over the results of an LDAP search, converting them to entries as they are read.
+ * <p>
+ * When a page size is given and the session context supports request controls, the results are requested page by
+ * page using the paged results control (RFC 2696), so that the server size limit does not apply to the whole search.
+ *
+ * @since 7.1
+ */
+public class LDAPEntryIterator implements EntryIterator {
+
+    private static final Log log = LogFactory.getLog(LDAPEntryIterator.class);
+
+    protected final LDAPSession session;
+
+    protected final String searchBaseDn;
+
+    protected final String filterExpr;
+
+    protected final Object[] filterArgs;
+
+    protected final SearchControls scts;
+
+    protected final boolean fetchReferences;
+
+    protected final int pageSize;
+
+    // context with paged results request controls, null if not paging
+    protected LdapContext pagedContext;
+
+    protected NamingEnumeration<SearchResult> results;
+
+    protected DocumentModel next;
+
+    protected int count;
+
+    protected boolean truncated;
+
+    public LDAPEntryIterator(LDAPSession session, String filterExpr, Object[] filterArgs, SearchControls scts,
+            boolean fetchReferences, int pageSize) throws DirectoryException {
+        this.session = session;
+        searchBaseDn = session.searchBaseDn;
+        this.filterExpr = filterExpr;
+        this.filterArgs = filterArgs;
+        this.scts = scts;
+        this.fetchReferences = fetchReferences;
+        DirContext context = session.getContext();
+        if (pageSize > 0 && context instanceof LdapContext) {
+            this.pageSize = pageSize;
+        } else {
+            if (pageSize > 0) {
+                log.warn("Paged results are not supported by the context of " + session + ", searching without");
+            }
+            this.pageSize = 0;
+        }
+        try {
+            if (this.pageSize > 0) {
+                pagedContext = ((LdapContext) context).newInstance(new Control[] { newPagedResultsControl(null) });
+                results = search(pagedContext);
+            } else {
+                results = search(context);
+            }
+        } catch (NameNotFoundException e) {
+            // same Active Directory workaround as LDAPSession.queryFromSource
+            log.error("Unexpected response from server while performing query: " + e.getMessage(), e);
+            close();
+        } catch (NamingException | IOException e) {
+            close();
+            throw new DirectoryException("queryIterator failed", e);
+        }
+    }
+
+    protected NamingEnumeration<SearchResult> search(DirContext context) throws NamingException {
+        if (log.isDebugEnabled()) {
+            log.debug(String.format("LDAPEntryIterator: LDAP search base='%s' filter='%s' scope='%s' pageSize=%s [%s]",
+                    searchBaseDn, filterExpr, scts.getSearchScope(), pageSize, session));
+        }
+        if (filterArgs == null) {
+            return context.search(searchBaseDn, filterExpr, scts);
+        }
+        return context.search(searchBaseDn, filterExpr, filterArgs, scts);
+    }
+
+    /**
+     * Creates the paged results request control for the page following the given cookie, or for the first page if the
+     * cookie is {@code null}.
+     * <p>
+     * The first page is requested with a non critical control, so that a server without paging support returns the
+     * plain results. Next pages are only requested when the server returned a cookie, their control is critical so that
+     * the server never ignores the cookie and restarts from the first page.
+     */
+    protected PagedResultsControl newPagedResultsControl(byte[] cookie) throws IOException {
+        if (cookie == null) {
+            return new PagedResultsControl(pageSize, Control.NONCRITICAL);
+        }
+        return new PagedResultsControl(pageSize, cookie, Control.CRITICAL);
+    }
+
+    /**
+     * Returns the cookie of the next page, or {@code null} if this was the last one.
+     */
+    protected byte[] getNextPageCookie() throws NamingException {
+        Control[] controls = pagedContext.getResponseControls();
+        if (controls != null) {
+            for (Control control : controls) {
+                if (control instanceof PagedResultsResponseControl) {
+                    byte[] cookie = ((PagedResultsResponseControl) control).getCookie();
+                    return cookie == null || cookie.length == 0 ? null : cookie;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Reads the next entry, requesting the next page if needed, or returns {@code null} at the end of the results.
+     */
+    protected DocumentModel fetchNext() throws NamingException, IOException {
+        while (results != null) {
+            if (results.hasMore()) {
+                DocumentModel entry = session.ldapResultToDocumentModel(results.next(), null, fetchReferences);
+                if (entry != null) {
+                    count++;
+                    return entry;
+                }
+                continue;
+            }
+            results.close();
+            results = null;
+            if (pagedContext != null) {
+                byte[] cookie = getNextPageCookie();
+                if (cookie != null) {
+                    pagedContext.setRequestControls(new Control[] { newPagedResultsControl(cookie) });
+                    results = search(pagedContext);
+                }
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (next != null) {
+            return true;
+        }
+        try {
+            next = fetchNext();
+        } catch (SizeLimitExceededException e) {
+            if (count == 0) {
+                close();
+                throw new org.nuxeo.ecm.directory.SizeLimitExceededException(e);
+            }
+            log.debug("SizeLimitExceededException caught, stopping iteration after " + count + " results: "
+                    + e.getMessage());
+            truncated = true;
+        } catch (NamingException | IOException e) {
+            close();
+            throw new DirectoryException("queryIterator failed", e);
+        }
+        if (next == null) {
+            close();
+            return false;
+        }
+        return true;
+    }
+
+    @Override
+    public DocumentModel next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        DocumentModel entry = next;
+        next = null;
+        return entry;
+    }
+
+    @Override
+    public void remove() {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public Iterator<DocumentModel> iterator() {
+        return this;
+    }
+
+    @Override
+    public long size() {
+        return UNKNOWN_SIZE;
+    }
+
+    /**
+     * Returns {@code true} if the server stopped sending results because of its size limit.
+     */
+    public boolean isTruncated() {
+        return truncated;
+    }
+
+    @Override
+    public void close() throws DirectoryException {
+        try {
+            if (results != null) {
+                results.close();
+            }
+            if (pagedContext != null) {
+                // only releases this instance, the connection stays with the session
+                pagedContext.close();
+            }
+        } catch (NamingException e) {
+            throw new DirectoryException("close failed", e);
+        } finally {
+            results = null;
+            pagedContext = null;
+        }
+    }
+
+}
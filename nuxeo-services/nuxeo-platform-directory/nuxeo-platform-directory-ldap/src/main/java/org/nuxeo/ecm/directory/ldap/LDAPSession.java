@@ -29,6 +29,9 @@ import java.util.Collection;
 import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
@@ -50,6 +53,7 @@ import javax.naming.directory.DirContext;
 import javax.naming.directory.SearchControls;
 import javax.naming.directory.SearchResult;
 import javax.naming.ldap.InitialLdapContext;
+import javax.naming.ldap.LdapContext;
 
 import org.apache.commons.lang.StringUtils;
 import org.apache.commons.logging.Log;
@@ -69,11 +73,14 @@ import org.nuxeo.ecm.core.schema.types.Type;
 import org.nuxeo.ecm.core.utils.SIDGenerator;
 import org.nuxeo.ecm.directory.BaseSession;
 import org.nuxeo.ecm.directory.Directory;
+import org.nuxeo.ecm.directory.DirectoryCache;
 import org.nuxeo.ecm.directory.DirectoryException;
 import org.nuxeo.ecm.directory.DirectoryFieldMapper;
+import org.nuxeo.ecm.directory.EntriesSource;
+import org.nuxeo.ecm.directory.EntryIterator;
 import org.nuxeo.ecm.directory.EntryAdaptor;
-import org.nuxeo.ecm.directory.EntrySource;
 import org.nuxeo.ecm.directory.PasswordHelper;
+import org.nuxeo.ecm.directory.QuerySource;
 import org.nuxeo.ecm.directory.Reference;
 
 /**
@@ -81,7 +88,7 @@ import org.nuxeo.ecm.directory.Reference;
  *
  * @author Olivier Grisel <ogrisel@nuxeo.com>
  */
-public class LDAPSession extends BaseSession implements EntrySource {
+public class LDAPSession extends BaseSession implements EntriesSource, QuerySource {
 
     protected static final String MISSING_ID_LOWER_CASE = "lower";
 
@@ -89,6 +96,13 @@ public class LDAPSession extends BaseSession implements EntrySource {
 
     private static final Log log = LogFactory.getLog(LDAPSession.class);
 
+    /**
+     * Maximum number of ids in the filter of a batch lookup.
+     *
+     * @since 7.1
+     */
+    protected static final int GET_ENTRIES_BATCH_SIZE = 100;
+
     protected final String schemaName;
 
     protected final DirContext dirContext;
@@ -115,6 +129,13 @@ public class LDAPSession extends BaseSession implements EntrySource {
 
     protected final String passwordHashAlgorithm;
 
+    /**
+     * Whether the session is closed, so that closing it again doesn't remove it twice from the directory counters.
+     *
+     * @since 7.1
+     */
+    protected boolean closed;
+
     public LDAPSession(LDAPDirectory directory, DirContext dirContext) {
         this.directory = directory;
         this.dirContext = LdapRetryHandler.wrap(dirContext, directory.getServer().getRetries());
@@ -255,10 +276,102 @@ public class LDAPSession extends BaseSession implements EntrySource {
         }
     }
 
+    @Override
+    public DocumentModelList getEntries(Collection<String> ids, boolean fetchReferences) throws DirectoryException {
+        if (!isCurrentUserAllowed(SecurityConstants.READ)) {
+            return new DocumentModelListImpl();
+        }
+        return toEntryList(ids, directory.getCache().getEntries(ids, this, fetchReferences, true));
+    }
+
+    @Override
+    public Map<String, DocumentModel> getEntriesFromSource(Collection<String> ids, boolean fetchReferences)
+            throws DirectoryException {
+        List<String> distinctIds = new ArrayList<String>();
+        for (String id : new LinkedHashSet<String>(ids)) {
+            if (StringUtils.isEmpty(id)) {
+                log.warn("The application should not query for entries with an empty id => ignoring it");
+            } else {
+                distinctIds.add(id);
+            }
+        }
+        List<DocumentModel> entries = new ArrayList<DocumentModel>(distinctIds.size());
+        for (int start = 0; start < distinctIds.size(); start += GET_ENTRIES_BATCH_SIZE) {
+            List<String> batch = distinctIds.subList(start,
+                    Math.min(start + GET_ENTRIES_BATCH_SIZE, distinctIds.size()));
+            try {
+                entries.addAll(getLdapEntries(batch, fetchReferences));
+            } catch (NamingException e) {
+                throw new DirectoryException("getEntries failed: " + e.getMessage(), e);
+            }
+        }
+        return mapEntriesToIds(distinctIds, entries);
+    }
+
+    /**
+     * Fetches several entries with a single search whose filter matches any of their ids.
+     *
+     * @since 7.1
+     */
+    protected List<DocumentModel> getLdapEntries(List<String> ids, boolean fetchReferences) throws NamingException,
+            DirectoryException {
+        StringBuilder idsFilter = new StringBuilder("(|");
+        for (int i = 0; i < ids.size(); i++) {
+            idsFilter.append('(').append(idAttribute).append("={").append(i).append("})");
+        }
+        idsFilter.append(')');
+        String filterExpr;
+        if (directory.getBaseFilter().startsWith("(")) {
+            filterExpr = String.format("(&%s%s)", idsFilter, directory.getBaseFilter());
+        } else {
+            filterExpr = String.format("(&%s(%s))", idsFilter, directory.getBaseFilter());
+        }
+        Object[] filterArgs = ids.toArray();
+        SearchControls scts = directory.getSearchControls(false);
+
+        if (log.isDebugEnabled()) {
+            log.debug(String.format("LDAPSession.getLdapEntries(%s): LDAP search base='%s' filter='%s' "
+                    + " args='%s' scope='%s' [%s]", ids, searchBaseDn, filterExpr, ids, scts.getSearchScope(), this));
+        }
+        NamingEnumeration<SearchResult> results;
+        try {
+            results = dirContext.search(searchBaseDn, filterExpr, filterArgs, scts);
+        } catch (NameNotFoundException nnfe) {
+            // see getLdapEntry
+            log.error("Unexpected response from server while performing query: " + nnfe.getMessage(), nnfe);
+            return Collections.emptyList();
+        }
+        Map<String, DocumentModel> entries = new LinkedHashMap<String, DocumentModel>();
+        Set<String> ambiguousIds = new HashSet<String>();
+        try {
+            while (results.hasMore()) {
+                DocumentModel entry = ldapResultToDocumentModel(results.next(), null, fetchReferences);
+                if (entry == null) {
+                    continue;
+                }
+                String key = entry.getId().toLowerCase();
+                if (entries.put(key, entry) != null) {
+                    ambiguousIds.add(key);
+                }
+            }
+        } finally {
+            results.close();
+        }
+        for (String key : ambiguousIds) {
+            // ignore entries that are ambiguous, as getLdapEntry does
+            log.error(String.format("Unable to fetch entry for '%s': found more than one match", key));
+            entries.remove(key);
+        }
+        return new ArrayList<DocumentModel>(entries.values());
+    }
+
     @Override
     public boolean hasEntry(String id) throws DirectoryException {
+        DirectoryCache cache = directory.getCache();
+        if (cache.isCacheEnabled()) {
+            return cache.hasEntry(id, this);
+        }
         try {
-            // TODO: check directory cache first
             return getLdapEntry(id) != null;
         } catch (NamingException e) {
             throw new DirectoryException("hasEntry failed: " + e.getMessage(), e);
@@ -339,9 +452,8 @@ public class LDAPSession extends BaseSession implements EntrySource {
                 log.debug(String.format("LDAPSession.getEntries(): LDAP search base='%s' filter='%s' "
                         + " args=* scope=%s [%s]", searchBaseDn, directory.getBaseFilter(), scts.getSearchScope(), this));
             }
-            NamingEnumeration<SearchResult> results = dirContext.search(searchBaseDn, directory.getBaseFilter(), scts);
             // skip reference fetching
-            return ldapResultsToDocumentModels(results, false);
+            return searchEntries(directory.getBaseFilter(), null, scts, false);
         } catch (SizeLimitExceededException e) {
             throw new org.nuxeo.ecm.directory.SizeLimitExceededException(e);
         } catch (NamingException e) {
@@ -493,68 +605,18 @@ public class LDAPSession extends BaseSession implements EntrySource {
 
     public DocumentModelList query(Map<String, Serializable> filter, Set<String> fulltext, boolean fetchReferences,
             Map<String, String> orderBy) throws DirectoryException {
+        return directory.getCache().query(filter, fulltext, orderBy, fetchReferences, -1, -1, this);
+    }
+
+    /**
+     * Queries the server, limit and offset are not supported.
+     */
+    @Override
+    public DocumentModelList queryFromSource(Map<String, Serializable> filter, Set<String> fulltext,
+            Map<String, String> orderBy, boolean fetchReferences, int limit, int offset) throws DirectoryException {
         try {
-            // building the query using filterExpr / filterArgs to
-            // escape special characters and to fulltext search only on
-            // the explicitly specified fields
-            String[] filters = new String[filter.size()];
             String[] filterArgs = new String[filter.size()];
-
-            if (fulltext == null) {
-                fulltext = Collections.emptySet();
-            }
-
-            int index = 0;
-            for (String fieldName : filter.keySet()) {
-                if (directory.isReference(fieldName)) {
-                    log.warn(fieldName + " is a reference and will be ignored as a query criterion");
-                    continue;
-                }
-
-                String backendFieldName = directory.getFieldMapper().getBackendField(fieldName);
-                Object fieldValue = filter.get(fieldName);
-
-                StringBuilder currentFilter = new StringBuilder();
-                currentFilter.append("(");
-                if (fieldValue == null) {
-                    currentFilter.append("!(" + backendFieldName + "=*)");
-                } else if ("".equals(fieldValue)) {
-                    if (fulltext.contains(fieldName)) {
-                        currentFilter.append(backendFieldName + "=*");
-                    } else {
-                        currentFilter.append("!(" + backendFieldName + "=*)");
-                    }
-                } else {
-                    currentFilter.append(backendFieldName + "=");
-                    if (fulltext.contains(fieldName)) {
-                        if (LDAPSubstringMatchType.SUBFINAL.equals(substringMatchType)) {
-                            currentFilter.append("*{" + index + "}");
-                        } else if (LDAPSubstringMatchType.SUBANY.equals(substringMatchType)) {
-                            currentFilter.append("*{" + index + "}*");
-                        } else {
-                            // default behavior: subinitial
-                            currentFilter.append("{" + index + "}*");
-                        }
-                    } else {
-                        currentFilter.append("{" + index + "}");
-                    }
-                }
-                currentFilter.append(")");
-                filters[index] = currentFilter.toString();
-                if (fieldValue != null && !"".equals(fieldValue)) {
-                    if (fieldValue instanceof Blob) {
-                        // filter arg could be a sequence of \xx where xx is the
-                        // hexadecimal value of the byte
-                        log.warn("Binary search is not supported");
-                    } else {
-                        // XXX: what kind of Objects can we get here? Is
-                        // toString() enough?
-                        filterArgs[index] = fieldValue.toString();
-                    }
-                }
-                index++;
-            }
-            String filterExpr = "(&" + directory.getBaseFilter() + StringUtils.join(filters) + ')';
+            String filterExpr = buildFilterExpression(filter, fulltext, filterArgs);
             SearchControls scts = directory.getSearchControls();
 
             if (log.isDebugEnabled()) {
@@ -563,8 +625,7 @@ public class LDAPSession extends BaseSession implements EntrySource {
                         searchBaseDn, filterExpr, StringUtils.join(filterArgs, ","), scts.getSearchScope(), this));
             }
             try {
-                NamingEnumeration<SearchResult> results = dirContext.search(searchBaseDn, filterExpr, filterArgs, scts);
-                DocumentModelList entries = ldapResultsToDocumentModels(results, fetchReferences);
+                DocumentModelList entries = searchEntries(filterExpr, filterArgs, scts, fetchReferences);
 
                 if (orderBy != null && !orderBy.isEmpty()) {
                     directory.orderEntries(entries, orderBy);
@@ -587,6 +648,127 @@ public class LDAPSession extends BaseSession implements EntrySource {
         }
     }
 
+    /**
+     * Builds the LDAP filter expression of a query, using filterExpr / filterArgs to escape special characters and to
+     * fulltext search only on the explicitly specified fields.
+     *
+     * @param filterArgs the array, sized as the filter, to fill with the filter arguments
+     * @since 7.1
+     */
+    protected String buildFilterExpression(Map<String, Serializable> filter, Set<String> fulltext,
+            String[] filterArgs) {
+        String[] filters = new String[filter.size()];
+
+        if (fulltext == null) {
+            fulltext = Collections.emptySet();
+        }
+
+        int index = 0;
+        for (String fieldName : filter.keySet()) {
+            if (directory.isReference(fieldName)) {
+                log.warn(fieldName + " is a reference and will be ignored as a query criterion");
+                continue;
+            }
+
+            String backendFieldName = directory.getFieldMapper().getBackendField(fieldName);
+            Object fieldValue = filter.get(fieldName);
+
+            StringBuilder currentFilter = new StringBuilder();
+            currentFilter.append("(");
+            if (fieldValue == null) {
+                currentFilter.append("!(" + backendFieldName + "=*)");
+            } else if ("".equals(fieldValue)) {
+                if (fulltext.contains(fieldName)) {
+                    currentFilter.append(backendFieldName + "=*");
+                } else {
+                    currentFilter.append("!(" + backendFieldName + "=*)");
+                }
+            } else {
+                currentFilter.append(backendFieldName + "=");
+                if (fulltext.contains(fieldName)) {
+                    if (LDAPSubstringMatchType.SUBFINAL.equals(substringMatchType)) {
+                        currentFilter.append("*{" + index + "}");
+                    } else if (LDAPSubstringMatchType.SUBANY.equals(substringMatchType)) {
+                        currentFilter.append("*{" + index + "}*");
+                    } else {
+                        // default behavior: subinitial
+                        currentFilter.append("{" + index + "}*");
+                    }
+                } else {
+                    currentFilter.append("{" + index + "}");
+                }
+            }
+            currentFilter.append(")");
+            filters[index] = currentFilter.toString();
+            if (fieldValue != null && !"".equals(fieldValue)) {
+                if (fieldValue instanceof Blob) {
+                    // filter arg could be a sequence of \xx where xx is the
+                    // hexadecimal value of the byte
+                    log.warn("Binary search is not supported");
+                } else {
+                    // XXX: what kind of Objects can we get here? Is
+                    // toString() enough?
+                    filterArgs[index] = fieldValue.toString();
+                }
+            }
+            index++;
+        }
+        return "(&" + directory.getBaseFilter() + StringUtils.join(filters) + ')';
+    }
+
+    /**
+     * Searches entries, page by page if the directory is configured to use paged results.
+     *
+     * @param filterArgs the filter arguments, or {@code null} if none
+     * @since 7.1
+     */
+    protected DocumentModelList searchEntries(String filterExpr, Object[] filterArgs, SearchControls scts,
+            boolean fetchReferences) throws DirectoryException, NamingException {
+        int pageSize = directory.getConfig().pageSize;
+        if (pageSize <= 0 || !(dirContext instanceof LdapContext)) {
+            NamingEnumeration<SearchResult> results = filterArgs == null ? dirContext.search(searchBaseDn,
+                    filterExpr, scts) : dirContext.search(searchBaseDn, filterExpr, filterArgs, scts);
+            return ldapResultsToDocumentModels(results, fetchReferences);
+        }
+        DocumentModelListImpl list = new DocumentModelListImpl();
+        if (!isCurrentUserAllowed(SecurityConstants.READ)) {
+            return list;
+        }
+        try (LDAPEntryIterator it = new LDAPEntryIterator(this, filterExpr, filterArgs, scts, fetchReferences,
+                pageSize)) {
+            while (it.hasNext()) {
+                list.add(it.next());
+            }
+            if (it.isTruncated()) {
+                // mark the collect results as a truncated result list
+                list.setTotalSize(-2);
+            }
+        }
+        log.debug("LDAP paged search returned " + list.size() + " results");
+        return list;
+    }
+
+    /**
+     * Iterates over the query results without applying the directory query size limit, requesting them page by page
+     * if the directory is configured to use paged results.
+     *
+     * @since 7.1
+     */
+    @Override
+    public EntryIterator queryIterator(Map<String, Serializable> filter, Set<String> fulltext, boolean fetchReferences)
+            throws DirectoryException {
+        if (!isCurrentUserAllowed(SecurityConstants.READ)) {
+            return new EntryListIterator(new DocumentModelListImpl());
+        }
+        String[] filterArgs = new String[filter.size()];
+        String filterExpr = buildFilterExpression(filter, fulltext, filterArgs);
+        SearchControls scts = directory.getSearchControls();
+        SearchControls unlimited = new SearchControls(scts.getSearchScope(), 0, scts.getTimeLimit(),
+                scts.getReturningAttributes(), scts.getReturningObjFlag(), scts.getDerefLinkFlag());
+        return new LDAPEntryIterator(this, filterExpr, filterArgs, unlimited, fetchReferences,
+                directory.getConfig().pageSize);
+    }
+
     @Override
     public DocumentModelList query(Map<String, Serializable> filter) throws DirectoryException {
         // by default, do not fetch references of result entries
@@ -613,6 +795,10 @@ public class LDAPSession extends BaseSession implements EntrySource {
 
     @Override
     public void close() throws DirectoryException {
+        if (closed) {
+            return;
+        }
+        closed = true;
         try {
             dirContext.close();
         } catch (NamingException e) {
@@ -24,6 +24,7 @@ import java.lang.reflect.Proxy;
 
 import javax.naming.ServiceUnavailableException;
 import javax.naming.directory.DirContext;
+import javax.naming.ldap.LdapContext;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -66,9 +67,14 @@ public class LdapRetryHandler implements InvocationHandler {
         throw e;
     }
 
+    /**
+     * Wraps the given context, the wrapper being a {@link LdapContext} if the context is one, to allow the use of
+     * request controls.
+     */
     public static DirContext wrap(DirContext dirContext, int retries) {
         LdapRetryHandler handler = new LdapRetryHandler(dirContext, retries);
+        Class<?> itf = dirContext instanceof LdapContext ? LdapContext.class : DirContext.class;
         return (DirContext) Proxy.newProxyInstance(Thread.currentThread().getContextClassLoader(),
-                new Class<?>[] { DirContext.class }, handler);
+                new Class<?>[] { itf }, handler);
     }
 }
@@ -161,6 +161,12 @@ public class TestLDAPDescriptors extends NXRuntimeTestCase {
         }
     }
 
+    @Test
+    public void testGetPageSize() {
+        assertEquals(1000, directory.pageSize);
+        assertEquals(0, new LDAPDirectoryDescriptor().pageSize);
+    }
+
     @Test
     public void testGetName() {
         assertEquals("directoryName", directory.getName());
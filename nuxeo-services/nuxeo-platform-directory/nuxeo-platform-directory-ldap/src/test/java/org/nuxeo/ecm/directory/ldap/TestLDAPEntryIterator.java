@@ -0,0 +1,174 @@
+/*
+ * (C) Copyright 2014 Nuxeo SA (http://nuxeo.com/) and contributors.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser General Public License
+ * (LGPL) version 2.1 which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl-2.1.html
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * Contributors:
+ *     Nuxeo
+ */
+package org.nuxeo.ecm.directory.ldap;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyBoolean;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import javax.naming.NamingEnumeration;
+import javax.naming.directory.SearchControls;
+import javax.naming.directory.SearchResult;
+import javax.naming.ldap.Control;
+import javax.naming.ldap.LdapContext;
+import javax.naming.ldap.PagedResultsControl;
+import javax.naming.ldap.PagedResultsResponseControl;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.nuxeo.ecm.core.api.DocumentModel;
+
+/**
+ * Checks the paged searches of {@link LDAPEntryIterator} against a mocked context, as the embedded test server cannot
+ * be relied on to support the paged results control.
+ */
+public class TestLDAPEntryIterator {
+
+    protected static final String FILTER = "(uid=*)";
+
+    protected static final byte[] COOKIE = { 1, 2, 3 };
+
+    protected LDAPSession session;
+
+    protected LdapContext context;
+
+    protected LdapContext pagedContext;
+
+    protected SearchControls scts;
+
+    @Before
+    public void setUp() throws Exception {
+        session = mock(LDAPSession.class);
+        context = mock(LdapContext.class);
+        pagedContext = mock(LdapContext.class);
+        when(session.getContext()).thenReturn(context);
+        when(context.newInstance(any(Control[].class))).thenReturn(pagedContext);
+        scts = new SearchControls();
+    }
+
+    /**
+     * Mocks a page of results, converted by the session to entries with the given ids.
+     */
+    @SuppressWarnings("unchecked")
+    protected NamingEnumeration<SearchResult> mockPage(String... ids) throws Exception {
+        NamingEnumeration<SearchResult> page = mock(NamingEnumeration.class);
+        SearchResult[] results = new SearchResult[ids.length];
+        Boolean[] hasMore = new Boolean[ids.length];
+        for (int i = 0; i < ids.length; i++) {
+            results[i] = mock(SearchResult.class);
+            hasMore[i] = i < ids.length - 1 ? Boolean.TRUE : Boolean.FALSE;
+            DocumentModel entry = mock(DocumentModel.class);
+            when(entry.getId()).thenReturn(ids[i]);
+            when(session.ldapResultToDocumentModel(eq(results[i]), any(String.class), anyBoolean())).thenReturn(entry);
+        }
+        when(page.hasMore()).thenReturn(Boolean.TRUE, hasMore);
+        when(page.next()).thenReturn(results[0], Arrays.copyOfRange(results, 1, results.length));
+        return page;
+    }
+
+    /**
+     * Builds the response control holding the given cookie, BER encoded as a sequence of the size estimate and the
+     * cookie.
+     */
+    protected static PagedResultsResponseControl newResponse(byte[] cookie) throws IOException {
+        byte[] value = new byte[7 + cookie.length];
+        value[0] = 0x30; // sequence
+        value[1] = (byte) (5 + cookie.length);
+        value[2] = 0x02; // integer
+        value[3] = 1;
+        value[4] = 0;
+        value[5] = 0x04; // octet string
+        value[6] = (byte) cookie.length;
+        System.arraycopy(cookie, 0, value, 7, cookie.length);
+        return new PagedResultsResponseControl(PagedResultsResponseControl.OID, false, value);
+    }
+
+    protected static List<String> getIds(LDAPEntryIterator it) {
+        List<String> ids = new ArrayList<String>();
+        for (DocumentModel entry : it) {
+            ids.add(entry.getId());
+        }
+        return ids;
+    }
+
+    @Test
+    public void testPagesAreRequestedWithCookies() throws Exception {
+        NamingEnumeration<SearchResult> page1 = mockPage("user1", "user2");
+        NamingEnumeration<SearchResult> page2 = mockPage("user3");
+        when(pagedContext.search(any(String.class), eq(FILTER), eq(scts))).thenReturn(page1, page2);
+        // a cookie after the first page, an empty one after the last page
+        when(pagedContext.getResponseControls()).thenReturn(new Control[] { newResponse(COOKIE) },
+                new Control[] { newResponse(new byte[0]) });
+
+        LDAPEntryIterator it = new LDAPEntryIterator(session, FILTER, null, scts, false, 2);
+        List<String> ids = getIds(it);
+
+        assertEquals(3, ids.size());
+        assertEquals("user1", ids.get(0));
+        assertEquals("user3", ids.get(2));
+        assertFalse(it.isTruncated());
+        verify(pagedContext, times(2)).search(any(String.class), eq(FILTER), eq(scts));
+        verify(page1).close();
+        verify(page2).close();
+        verify(pagedContext).close();
+
+        // the first page may be served by a server without paging support
+        ArgumentCaptor<Control[]> first = ArgumentCaptor.forClass(Control[].class);
+        verify(context).newInstance(first.capture());
+        assertEquals(1, first.getValue().length);
+        assertTrue(first.getValue()[0] instanceof PagedResultsControl);
+        assertFalse(first.getValue()[0].isCritical());
+        // the next page is requested with the cookie of the previous one, which must not be ignored
+        ArgumentCaptor<Control[]> next = ArgumentCaptor.forClass(Control[].class);
+        verify(pagedContext).setRequestControls(next.capture());
+        assertEquals(1, next.getValue().length);
+        PagedResultsControl control = (PagedResultsControl) next.getValue()[0];
+        assertTrue(control.isCritical());
+        assertEquals(PagedResultsControl.OID, control.getID());
+        assertArrayEquals(new PagedResultsControl(2, COOKIE, Control.CRITICAL).getEncodedValue(),
+                control.getEncodedValue());
+    }
+
+    @Test
+    public void testSinglePageWithoutResponseControl() throws Exception {
+        NamingEnumeration<SearchResult> page = mockPage("user1");
+        when(pagedContext.search(any(String.class), eq(FILTER), eq(scts))).thenReturn(page);
+        // server ignoring the non critical control
+        when(pagedContext.getResponseControls()).thenReturn(null);
+
+        LDAPEntryIterator it = new LDAPEntryIterator(session, FILTER, null, scts, false, 2);
+
+        assertEquals(1, getIds(it).size());
+        verify(pagedContext, times(1)).search(any(String.class), eq(FILTER), eq(scts));
+        verify(pagedContext, times(0)).setRequestControls(any(Control[].class));
+    }
+
+}
@@ -50,8 +50,15 @@ import org.nuxeo.ecm.core.api.impl.blob.FileBlob;
 import org.nuxeo.ecm.core.management.api.ProbeStatus;
 import org.nuxeo.ecm.directory.BaseSession;
 import org.nuxeo.ecm.directory.DirectoryException;
+import org.nuxeo.ecm.directory.EntryIterator;
 import org.nuxeo.ecm.directory.Session;
 import org.nuxeo.ecm.directory.ldap.management.LDAPDirectoriesProbe;
+import org.nuxeo.runtime.metrics.MetricsService;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.SharedMetricRegistries;
 
 /**
  * @author <a href="mailto:ogrisel@nuxeo.com">Olivier Grisel</a>
@@ -62,6 +69,22 @@ public class TestLDAPSession extends LDAPDirectoryTestCase {
 
     protected static final String GROUP_SCHEMANAME = "group";
 
+    @Test
+    public void testGetEntriesByIds() throws Exception {
+        Session session = getLDAPDirectory("userDirectory").getSession();
+        try {
+            DocumentModelList entries = session.getEntries(Arrays.asList("user1", "nosuchuser", "Administrator"),
+                    false);
+            assertEquals(2, entries.size());
+            assertEquals("user1", entries.get(0).getId());
+            assertEquals("One", entries.get(0).getProperty(USER_SCHEMANAME, "lastName"));
+            assertEquals("Administrator", entries.get(1).getId());
+            assertEquals("Manager", entries.get(1).getProperty(USER_SCHEMANAME, "lastName"));
+        } finally {
+            session.close();
+        }
+    }
+
     @SuppressWarnings("unchecked")
     @Test
     public void testGetEntry() throws Exception {
@@ -929,6 +952,65 @@ public class TestLDAPSession extends LDAPDirectoryTestCase {
         }
     }
 
+    @Test
+    public void testQueryIterator() throws ClientException {
+        Session session = getLDAPDirectory("userDirectory").getSession();
+        try {
+            Map<String, Serializable> filter = new HashMap<String, Serializable>();
+            filter.put("firstName", "User");
+            List<String> entryIds = new ArrayList<String>();
+            try (EntryIterator it = session.queryIterator(filter, null, false)) {
+                for (DocumentModel entry : it) {
+                    entryIds.add(entry.getId());
+                    assertEquals("User", entry.getProperty(USER_SCHEMANAME, "firstName"));
+                }
+                assertFalse(it.hasNext());
+            }
+            Collections.sort(entryIds);
+            assertEquals(Arrays.asList("user1", "user2", "user3"), entryIds);
+
+            // closing before the end of the results
+            try (EntryIterator it = session.queryIterator(filter, null, false)) {
+                assertTrue(it.hasNext());
+                assertNotNull(it.next());
+            }
+        } finally {
+            session.close();
+        }
+    }
+
+    @Test
+    public void testCloseTwice() throws ClientException {
+        LDAPDirectory directory = getLDAPDirectory("userDirectory");
+        MetricRegistry registry = SharedMetricRegistries.getOrCreate(MetricsService.class.getName());
+        // each session holds its own connection
+        Counter sessionCount = registry.counter(MetricRegistry.name("nuxeo", "directories", "userDirectory",
+                "sessions", "active"));
+        long active = sessionCount.getCount();
+        Session session = directory.getSession();
+        assertEquals(active + 1, sessionCount.getCount());
+        session.close();
+        assertEquals(active, sessionCount.getCount());
+        session.close();
+        assertEquals(active, sessionCount.getCount());
+    }
+
+    @Test
+    public void testPoolGauges() throws ClientException {
+        getLDAPDirectory("userDirectory");
+        MetricRegistry registry = SharedMetricRegistries.getOrCreate(MetricsService.class.getName());
+        for (int i = 0; i < LDAPDirectory.POOL_PROPERTIES.length; i++) {
+            String property = LDAPDirectory.POOL_PROPERTIES[i];
+            Gauge<?> gauge = registry.getGauges().get(MetricRegistry.name("nuxeo", "directories", "ldap", "pool",
+                    property));
+            assertNotNull(property, gauge);
+            // the JDK defaults when not set
+            Integer expected = Integer.getInteger("com.sun.jndi.ldap.connect.pool." + property,
+                    LDAPDirectory.POOL_DEFAULTS[i]);
+            assertEquals(property, expected, gauge.getValue());
+        }
+    }
+
     @Test
     public void testQuery2() throws ClientException {
         if (!USE_EXTERNAL_TEST_LDAP_SERVER) {
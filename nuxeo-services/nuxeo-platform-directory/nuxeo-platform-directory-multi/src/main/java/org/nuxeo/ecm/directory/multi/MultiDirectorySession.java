@@ -21,10 +21,12 @@ package org.nuxeo.ecm.directory.multi;
 
 import java.io.Serializable;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
@@ -371,56 +373,119 @@ public class MultiDirectorySession extends BaseSession {
         }
         init();
         source_loop: for (SourceInfo sourceInfo : sourceInfos) {
-            boolean isReadOnlyEntry = true;
-            final Map<String, Object> map = new HashMap<String, Object>();
-
+            List<DocumentModel> subEntries = new ArrayList<DocumentModel>(sourceInfo.subDirectoryInfos.size());
             for (SubDirectoryInfo dirInfo : sourceInfo.subDirectoryInfos) {
                 final DocumentModel entry = dirInfo.getSession().getEntry(id, fetchReferences);
-                boolean isOptional = dirInfo.isOptional;
-                if (entry == null && !isOptional) {
+                if (entry == null && !dirInfo.isOptional) {
                     // not in this source
                     continue source_loop;
                 }
-                if (entry != null && !isReadOnlyEntry(entry)) {
-                    // set readonly to false if at least one source is writable
-                    isReadOnlyEntry = false;
-                }
-                try {
-                    if (entry == null && isOptional && !dirInfo.getSession().isReadOnly()) {
-                        // set readonly to false if null entry is from optional
-                        // and writable directory
-                        isReadOnlyEntry = false;
-                    }
-                } catch (ClientException ce) {
-                    log.error("Cannot get readonly value from directory " + dirInfo.dirName, ce);
+                subEntries.add(entry);
+            }
+            return makeSourceEntry(id, sourceInfo, subEntries);
+        }
+        return null;
+    }
+
+    @Override
+    public DocumentModelList getEntries(Collection<String> ids, boolean fetchReferences) throws DirectoryException {
+        if (!isCurrentUserAllowed(SecurityConstants.READ)) {
+            return new DocumentModelListImpl();
+        }
+        init();
+        Map<String, DocumentModel> entries = new HashMap<String, DocumentModel>();
+        List<String> remainingIds = new ArrayList<String>(new LinkedHashSet<String>(ids));
+        for (SourceInfo sourceInfo : sourceInfos) {
+            if (remainingIds.isEmpty()) {
+                break;
+            }
+            // one batch lookup per sub-directory, for the ids still present
+            // in all the required sub-directories seen so far
+            List<String> sourceIds = remainingIds;
+            List<Map<String, DocumentModel>> subEntriesById = new ArrayList<Map<String, DocumentModel>>();
+            for (SubDirectoryInfo dirInfo : sourceInfo.subDirectoryInfos) {
+                Map<String, DocumentModel> subEntries;
+                if (sourceIds.isEmpty()) {
+                    subEntries = Collections.emptyMap();
+                } else {
+                    DocumentModelList found = dirInfo.getSession().getEntries(sourceIds, fetchReferences);
+                    subEntries = mapEntriesToIds(sourceIds, found);
                 }
-                for (Entry<String, String> e : dirInfo.toSource.entrySet()) {
-                    if (entry != null) {
-                        try {
-                            map.put(e.getValue(), entry.getProperty(dirInfo.dirSchemaName, e.getKey()));
-                        } catch (ClientException e1) {
-                            throw new DirectoryException(e1);
-                        }
-                    } else {
-                        // fill with default values for this directory
-                        if (!map.containsKey(e.getValue())) {
-                            map.put(e.getValue(), dirInfo.defaultEntry.get(e.getKey()));
+                if (!dirInfo.isOptional) {
+                    List<String> foundIds = new ArrayList<String>(subEntries.size());
+                    for (String id : sourceIds) {
+                        if (subEntries.containsKey(id)) {
+                            foundIds.add(id);
                         }
                     }
+                    sourceIds = foundIds;
                 }
+                subEntriesById.add(subEntries);
             }
-            // force the entry in readonly if it's defined on the multidirectory
-            if (isReadOnly()) {
-                isReadOnlyEntry = true;
+            for (String id : sourceIds) {
+                List<DocumentModel> subEntries = new ArrayList<DocumentModel>(subEntriesById.size());
+                for (Map<String, DocumentModel> map : subEntriesById) {
+                    subEntries.add(map.get(id));
+                }
+                entries.put(id, makeSourceEntry(id, sourceInfo, subEntries));
+            }
+            remainingIds.removeAll(sourceIds);
+        }
+        return toEntryList(ids, entries);
+    }
+
+    /**
+     * Builds an entry from the entries of the sub-directories of a source, null for absent optional ones.
+     *
+     * @since 7.1
+     */
+    protected DocumentModel makeSourceEntry(String id, SourceInfo sourceInfo, List<DocumentModel> subEntries)
+            throws DirectoryException {
+        boolean isReadOnlyEntry = true;
+        final Map<String, Object> map = new HashMap<String, Object>();
+
+        for (int i = 0; i < sourceInfo.subDirectoryInfos.size(); i++) {
+            SubDirectoryInfo dirInfo = sourceInfo.subDirectoryInfos.get(i);
+            final DocumentModel entry = subEntries.get(i);
+            boolean isOptional = dirInfo.isOptional;
+            if (entry != null && !isReadOnlyEntry(entry)) {
+                // set readonly to false if at least one source is writable
+                isReadOnlyEntry = false;
             }
-            // ok we have the data
             try {
-                return BaseSession.createEntryModel(null, schemaName, id, map, isReadOnlyEntry);
-            } catch (PropertyException e) {
-                throw new DirectoryException(e);
+                if (entry == null && isOptional && !dirInfo.getSession().isReadOnly()) {
+                    // set readonly to false if null entry is from optional
+                    // and writable directory
+                    isReadOnlyEntry = false;
+                }
+            } catch (ClientException ce) {
+                log.error("Cannot get readonly value from directory " + dirInfo.dirName, ce);
+            }
+            for (Entry<String, String> e : dirInfo.toSource.entrySet()) {
+                if (entry != null) {
+                    try {
+                        map.put(e.getValue(), entry.getProperty(dirInfo.dirSchemaName, e.getKey()));
+                    } catch (ClientException e1) {
+                        throw new DirectoryException(e1);
+                    }
+                } else {
+                    // fill with default values for this directory
+                    if (!map.containsKey(e.getValue())) {
+                        map.put(e.getValue(), dirInfo.defaultEntry.get(e.getKey()));
+                    }
+                }
             }
         }
-        return null;
+        // force the entry in readonly if it's defined on the multidirectory
+        if (isReadOnly()) {
+            isReadOnlyEntry = true;
+        }
+        // ok we have the data
+        try {
+            return BaseSession.createEntryModel(null, schemaName, id, map, isReadOnlyEntry);
+        } catch (PropertyException e) {
+            throw new DirectoryException(e);
+        }
     }
 
     @Override
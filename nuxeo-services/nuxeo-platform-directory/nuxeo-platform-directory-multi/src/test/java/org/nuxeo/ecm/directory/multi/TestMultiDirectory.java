@@ -184,6 +184,21 @@ public class TestMultiDirectory {
         assertEquals("foo1", entry.getProperty("schema3", "thefoo"));
     }
 
+    @Test
+    public void testGetEntriesByIds() throws Exception {
+        DocumentModelList l = dir.getEntries(Arrays.asList("4", "no-such-entry", "1", "3"), true);
+        assertEquals(3, l.size());
+        assertEquals("4", l.get(0).getId());
+        assertEquals("foo4", l.get(0).getProperty("schema3", "thefoo"));
+        assertEquals("bar4", l.get(0).getProperty("schema3", "thebar"));
+        assertEquals("1", l.get(1).getId());
+        assertEquals("foo1", l.get(1).getProperty("schema3", "thefoo"));
+        assertEquals("bar1", l.get(1).getProperty("schema3", "thebar"));
+        assertEquals("3", l.get(2).getId());
+        assertEquals("foo3", l.get(2).getProperty("schema3", "thefoo"));
+        assertEquals("bar3", l.get(2).getProperty("schema3", "thebar"));
+    }
+
     @Test
     public void testCreate() throws Exception {
         Session dir1 = memdir1.getSession();
@@ -142,6 +142,8 @@ public class SQLDirectory extends AbstractDirectory {
         // cache parameterization
         cache.setEntryCacheName(config.cacheEntryName);
         cache.setEntryCacheWithoutReferencesName(config.cacheEntryWithoutReferencesName);
+        cache.setQueryCacheName(config.cacheQueryName);
+        cache.setNegativeCaching(Boolean.TRUE.equals(config.cacheNegativeEntries));
 
     }
 
@@ -129,6 +129,18 @@ public class SQLDirectoryDescriptor {
     @XNode("cacheEntryWithoutReferencesName")
     public String cacheEntryWithoutReferencesName = null;
 
+    /**
+     * @since 7.1
+     */
+    @XNode("cacheQueryName")
+    public String cacheQueryName = null;
+
+    /**
+     * @since 7.1
+     */
+    @XNode("cacheNegativeEntries")
+    public Boolean cacheNegativeEntries = null;
+
     @XNodeList(value = "filters/staticFilter", type = SQLStaticFilter[].class, componentType = SQLStaticFilter.class)
     private SQLStaticFilter[] staticFilters;
 
@@ -447,6 +459,12 @@ public class SQLDirectoryDescriptor {
         if (other.cacheEntryWithoutReferencesName != null || overwite) {
             cacheEntryWithoutReferencesName = other.cacheEntryWithoutReferencesName;
         }
+        if (other.cacheQueryName != null || overwite) {
+            cacheQueryName = other.cacheQueryName;
+        }
+        if (other.cacheNegativeEntries != null || overwite) {
+            cacheNegativeEntries = other.cacheNegativeEntries;
+        }
         if ((other.staticFilters != null && other.staticFilters.length != 0) || overwite) {
             staticFilters = other.staticFilters;
         }
@@ -502,6 +520,8 @@ public class SQLDirectoryDescriptor {
         clone.remove = remove;
         clone.cacheEntryName = cacheEntryName;
         clone.cacheEntryWithoutReferencesName = cacheEntryWithoutReferencesName;
+        clone.cacheQueryName = cacheQueryName;
+        clone.cacheNegativeEntries = cacheNegativeEntries;
         if (staticFilters != null) {
             clone.staticFilters = new SQLStaticFilter[staticFilters.length];
             for (int i = 0; i < staticFilters.length; i++) {
@@ -26,10 +26,12 @@ import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
@@ -61,11 +63,13 @@ import org.nuxeo.ecm.core.storage.sql.jdbc.dialect.Dialect;
 import org.nuxeo.ecm.core.utils.SIDGenerator;
 import org.nuxeo.ecm.directory.BaseSession;
 import org.nuxeo.ecm.directory.Directory;
+import org.nuxeo.ecm.directory.DirectoryCache;
 import org.nuxeo.ecm.directory.DirectoryException;
-import org.nuxeo.ecm.directory.EntrySource;
+import org.nuxeo.ecm.directory.EntriesSource;
 import org.nuxeo.ecm.directory.OperationNotAllowedException;
 import org.nuxeo.ecm.directory.PasswordHelper;
 import org.nuxeo.ecm.directory.PermissionDescriptor;
+import org.nuxeo.ecm.directory.QuerySource;
 import org.nuxeo.ecm.directory.Reference;
 import org.nuxeo.ecm.directory.SizeLimitExceededException;
 import org.nuxeo.ecm.directory.sql.filter.SQLComplexFilter;
@@ -73,12 +77,19 @@ import org.nuxeo.ecm.directory.sql.filter.SQLComplexFilter;
 /**
  * This class represents a session against an SQLDirectory.
  */
-public class SQLSession extends BaseSession implements EntrySource {
+public class SQLSession extends BaseSession implements EntriesSource, QuerySource {
 
     private static final String READ_ONLY_VOCABULARY_WARN = "This SQLDirectory is ReadOnly, you are not allowed to modify it.";
 
     private static final Log log = LogFactory.getLog(SQLSession.class);
 
+    /**
+     * Maximum number of ids in the IN list of a batch lookup.
+     *
+     * @since 7.1
+     */
+    protected static final int GET_ENTRIES_BATCH_SIZE = 100;
+
     protected final Map<String, Field> schemaFieldMap;
 
     protected final List<String> storedFieldNames;
@@ -319,7 +330,7 @@ public class SQLSession extends BaseSession implements EntrySource {
     @Override
     public DocumentModel getEntry(String id, boolean fetchReferences) throws DirectoryException {
         if (isCurrentUserAllowed(SecurityConstants.READ)) {
-            return directory.getCache().getEntry(id, this, fetchReferences);
+            return directory.getCache().getEntry(id, this, fetchReferences, isAbsenceCacheable());
         }
         return null;
     }
@@ -392,53 +403,126 @@ public class SQLSession extends BaseSession implements EntrySource {
             if (!rs.next()) {
                 return null;
             }
-
-            // fetch the stored fields
-            Map<String, Object> fieldMap = new HashMap<String, Object>();
-            for (String fieldName : storedFieldNames) {
-                Object value = getFieldValue(rs, fieldName);
-                fieldMap.put(fieldName, value);
+            return readEntry(rs, fetchReferences);
+        } catch (SQLException e) {
+            throw new DirectoryException("getEntry failed", e);
+        } finally {
+            try {
+                if (ps != null) {
+                    ps.close();
+                }
+            } catch (SQLException sqle) {
+                throw new DirectoryException(sqle);
             }
+        }
+    }
 
-            if (isMultiTenant()) {
-                // check that the entry is from the current tenant, or no tenant
-                // at all
-                String tenantId = getCurrentTenantId();
-                if (!StringUtils.isBlank(tenantId)) {
-                    String entryTenantId = (String) fieldMap.get(TENANT_ID_FIELD);
-                    if (!StringUtils.isBlank(entryTenantId)) {
-                        if (!entryTenantId.equals(tenantId)) {
-                            return null;
-                        }
+    /**
+     * Builds the entry for the current row of a result set.
+     *
+     * @return the entry, or {@code null} if it belongs to another tenant
+     * @since 7.1
+     */
+    protected DocumentModel readEntry(ResultSet rs, boolean fetchReferences) throws DirectoryException {
+        // fetch the stored fields
+        Map<String, Object> fieldMap = new HashMap<String, Object>();
+        for (String fieldName : storedFieldNames) {
+            Object value = getFieldValue(rs, fieldName);
+            fieldMap.put(fieldName, value);
+        }
+
+        if (isMultiTenant()) {
+            // check that the entry is from the current tenant, or no tenant
+            // at all
+            String tenantId = getCurrentTenantId();
+            if (!StringUtils.isBlank(tenantId)) {
+                String entryTenantId = (String) fieldMap.get(TENANT_ID_FIELD);
+                if (!StringUtils.isBlank(entryTenantId)) {
+                    if (!entryTenantId.equals(tenantId)) {
+                        return null;
                     }
                 }
             }
+        }
 
-            DocumentModel entry = fieldMapToDocumentModel(fieldMap);
+        DocumentModel entry = fieldMapToDocumentModel(fieldMap);
 
-            // fetch the reference fields
-            if (fetchReferences) {
-                for (Reference reference : directory.getReferences()) {
-                    List<String> targetIds = reference.getTargetIdsForSource(entry.getId());
-                    try {
-                        entry.setProperty(schemaName, reference.getFieldName(), targetIds);
-                    } catch (ClientException e) {
-                        throw new DirectoryException(e);
-                    }
+        // fetch the reference fields
+        if (fetchReferences) {
+            for (Reference reference : directory.getReferences()) {
+                List<String> targetIds = reference.getTargetIdsForSource(entry.getId());
+                try {
+                    entry.setProperty(schemaName, reference.getFieldName(), targetIds);
+                } catch (ClientException e) {
+                    throw new DirectoryException(e);
                 }
             }
-            return entry;
-        } catch (SQLException e) {
-            throw new DirectoryException("getEntry failed", e);
-        } finally {
+        }
+        return entry;
+    }
+
+    @Override
+    public DocumentModelList getEntries(Collection<String> ids, boolean fetchReferences) throws DirectoryException {
+        if (!isCurrentUserAllowed(SecurityConstants.READ)) {
+            return new DocumentModelListImpl();
+        }
+        return toEntryList(ids, directory.getCache().getEntries(ids, this, fetchReferences, isAbsenceCacheable()));
+    }
+
+    @Override
+    public Map<String, DocumentModel> getEntriesFromSource(Collection<String> ids, boolean fetchReferences)
+            throws DirectoryException {
+        acquireConnection();
+        List<String> distinctIds = new ArrayList<String>(new LinkedHashSet<String>(ids));
+        List<DocumentModel> entries = new ArrayList<DocumentModel>(distinctIds.size());
+        for (int start = 0; start < distinctIds.size(); start += GET_ENTRIES_BATCH_SIZE) {
+            List<String> batch = distinctIds.subList(start,
+                    Math.min(start + GET_ENTRIES_BATCH_SIZE, distinctIds.size()));
+            Select select = new Select(table);
+            select.setFrom(table.getQuotedName());
+            select.setWhat("*");
+            StringBuilder whereClause = new StringBuilder(table.getPrimaryColumn().getQuotedName()).append(" IN (");
+            for (int i = 0; i < batch.size(); i++) {
+                whereClause.append(i == 0 ? "?" : ", ?");
+            }
+            whereClause.append(')');
+            select.setWhere(addFilterWhereClause(whereClause.toString()));
+            String sql = select.getStatement();
+
+            if (logger.isLogEnabled()) {
+                List<Serializable> values = new ArrayList<Serializable>(batch);
+                addFilterValuesForLog(values);
+                logger.logSQL(sql, values);
+            }
+
+            PreparedStatement ps = null;
             try {
-                if (ps != null) {
-                    ps.close();
+                ps = sqlConnection.prepareStatement(sql);
+                int i = 1;
+                for (String id : batch) {
+                    setFieldValue(ps, i++, table.getPrimaryColumn(), id);
+                }
+                addFilterValues(ps, i);
+                ResultSet rs = ps.executeQuery();
+                while (rs.next()) {
+                    DocumentModel entry = readEntry(rs, fetchReferences);
+                    if (entry != null) {
+                        entries.add(entry);
+                    }
+                }
+            } catch (SQLException e) {
+                throw new DirectoryException("getEntries failed", e);
+            } finally {
+                try {
+                    if (ps != null) {
+                        ps.close();
+                    }
+                } catch (SQLException sqle) {
+                    throw new DirectoryException(sqle);
                 }
-            } catch (SQLException sqle) {
-                throw new DirectoryException(sqle);
             }
         }
+        return mapEntriesToIds(distinctIds, entries);
     }
 
     @Override
@@ -736,6 +820,16 @@ public class SQLSession extends BaseSession implements EntrySource {
         if (!isCurrentUserAllowed(SecurityConstants.READ)) {
             return new DocumentModelListImpl();
         }
+        if (isMultiTenant()) {
+            // results depend on the current tenant
+            return queryFromSource(filter, fulltext, orderBy, fetchReferences, limit, offset);
+        }
+        return directory.getCache().query(filter, fulltext, orderBy, fetchReferences, limit, offset, this);
+    }
+
+    @Override
+    public DocumentModelList queryFromSource(Map<String, Serializable> filter, Set<String> fulltext,
+            Map<String, String> orderBy, boolean fetchReferences, int limit, int offset) throws ClientException {
         acquireConnection();
         Map<String, Object> filterMap = new LinkedHashMap<String, Object>(filter);
 
@@ -1105,6 +1199,10 @@ public class SQLSession extends BaseSession implements EntrySource {
 
     @Override
     public boolean hasEntry(String id) throws ClientException {
+        DirectoryCache cache = directory.getCache();
+        if (cache.isCacheEnabled() && isAbsenceCacheable()) {
+            return cache.hasEntry(id, this);
+        }
         acquireConnection();
         Select select = new Select(table);
         select.setFrom(table.getQuotedName());
@@ -1148,7 +1246,17 @@ public class SQLSession extends BaseSession implements EntrySource {
     /**
      * Returns {@code true} if this directory supports multi tenancy, {@code false} otherwise.
      */
-    protected boolean isMultiTenant() {
+    /**
+     * Checks whether an entry absent from {@link #getEntryFromSource} is absent from the table, and not just filtered
+     * out for this session, so that its absence can be cached.
+     *
+     * @since 7.1
+     */
+    protected boolean isAbsenceCacheable() {
+        return staticFilters.length == 0 && !isMultiTenant();
+    }
+
+        protected boolean isMultiTenant() {
         return directory.isMultiTenant();
     }
 
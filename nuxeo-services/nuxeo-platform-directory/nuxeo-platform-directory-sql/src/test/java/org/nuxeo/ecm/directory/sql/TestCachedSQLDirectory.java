@@ -19,14 +19,31 @@
 
 package org.nuxeo.ecm.directory.sql;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
 import org.eclipse.jdt.internal.core.Assert;
 import org.junit.Test;
 import org.nuxeo.ecm.core.api.DocumentModel;
+import org.nuxeo.ecm.core.api.DocumentModelList;
 import org.nuxeo.ecm.core.redis.RedisFeature;
 import org.nuxeo.ecm.directory.AbstractDirectory;
 import org.nuxeo.ecm.directory.DirectoryCache;
 import org.nuxeo.ecm.directory.DirectoryException;
 import org.nuxeo.ecm.directory.Session;
+import org.nuxeo.runtime.metrics.MetricsService;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.SharedMetricRegistries;
 
 public class TestCachedSQLDirectory extends TestSQLDirectory {
 
@@ -38,6 +55,8 @@ public class TestCachedSQLDirectory extends TestSQLDirectory {
 
     protected final static String ENTRY_CACHE_WITHOUT_REFERENCES_NAME = "sql-entry-cache-without-references";
 
+    protected final static String QUERY_CACHE_NAME = "sql-query-cache";
+
     @Override
     public void setUp() throws Exception {
         super.setUp();
@@ -55,7 +74,13 @@ public class TestCachedSQLDirectory extends TestSQLDirectory {
         DirectoryCache cache = dir.getCache();
         cache.setEntryCacheName(ENTRY_CACHE_NAME);
         cache.setEntryCacheWithoutReferencesName(ENTRY_CACHE_WITHOUT_REFERENCES_NAME);
+        cache.setQueryCacheName(QUERY_CACHE_NAME);
+        cache.setNegativeCaching(true);
+    }
 
+    protected static Counter getCacheCounter(String name) {
+        MetricRegistry metrics = SharedMetricRegistries.getOrCreate(MetricsService.class.getName());
+        return metrics.counter(MetricRegistry.name("nuxeo", "directories", "userDirectory", "cache", name));
     }
 
     @Test
@@ -71,4 +96,127 @@ public class TestCachedSQLDirectory extends TestSQLDirectory {
         Assert.isNotNull(entry);
     }
 
+    @Test
+    public void testQueryFromCache() throws Exception {
+        Counter queryHits = getCacheCounter("queryHits");
+        Session sqlSession = getSQLDirectory().getSession();
+        try {
+            Map<String, Serializable> filter = new HashMap<String, Serializable>();
+            filter.put("username", "user_1");
+            DocumentModelList entries = sqlSession.query(filter);
+            assertEquals(1, entries.size());
+            long hits = queryHits.getCount();
+            // modifying a result does not modify the cached result
+            entries.get(0).setProperty("user", "intField", Long.valueOf(123));
+
+            entries = sqlSession.query(filter);
+            assertEquals(hits + 1, queryHits.getCount());
+            assertEquals(1, entries.size());
+            assertFalse(Long.valueOf(123).equals(entries.get(0).getProperty("user", "intField")));
+
+            // an update invalidates the cached results
+            DocumentModel entry = sqlSession.getEntry("user_1");
+            entry.setProperty("user", "intField", Long.valueOf(7));
+            sqlSession.updateEntry(entry);
+            entries = sqlSession.query(filter);
+            assertEquals(hits + 1, queryHits.getCount());
+            assertEquals(Long.valueOf(7), entries.get(0).getProperty("user", "intField"));
+        } finally {
+            sqlSession.close();
+        }
+    }
+
+    @Test
+    public void testNegativeCaching() throws Exception {
+        Counter entryHits = getCacheCounter("hits");
+        Session sqlSession = getSQLDirectory().getSession();
+        try {
+            assertNull(sqlSession.getEntry("user_new", false));
+            long hits = entryHits.getCount();
+            // absence is cached
+            assertNull(sqlSession.getEntry("user_new", false));
+            assertFalse(sqlSession.hasEntry("user_new"));
+            assertEquals(hits + 2, entryHits.getCount());
+
+            // a creation invalidates the cached absence
+            Map<String, Object> map = new HashMap<String, Object>();
+            map.put("username", "user_new");
+            map.put("password", "pass_new");
+            sqlSession.createEntry(map);
+            assertTrue(sqlSession.hasEntry("user_new"));
+            assertNotNull(sqlSession.getEntry("user_new"));
+        } finally {
+            sqlSession.close();
+        }
+    }
+
+    @Test
+    public void testHasEntryFromCache() throws Exception {
+        Counter entryHits = getCacheCounter("hits");
+        Session sqlSession = getSQLDirectory().getSession();
+        try {
+            long hits = entryHits.getCount();
+            // first calls fetch from the backend
+            assertTrue(sqlSession.hasEntry("user_1"));
+            assertFalse(sqlSession.hasEntry("user_none"));
+            assertEquals(hits, entryHits.getCount());
+
+            // the entry and its absence are then cached
+            assertTrue(sqlSession.hasEntry("user_1"));
+            assertFalse(sqlSession.hasEntry("user_none"));
+            assertEquals(hits + 2, entryHits.getCount());
+        } finally {
+            sqlSession.close();
+        }
+    }
+
+    @Test
+    public void testNoNegativeCachingForFilteredSource() throws Exception {
+        DirectoryCache cache = getSQLDirectory().getCache();
+        SQLSession sqlSession = (SQLSession) getSQLDirectory().getSession();
+        try {
+            // absence from a filtered source is not absence from the directory
+            assertNull(cache.getEntry("user_none", sqlSession, false, false));
+            assertNull(cache.getEntryCacheWithoutReferences().get("user_none"));
+            assertTrue(cache.getEntries(Arrays.asList("user_none"), sqlSession, true, false).isEmpty());
+            assertNull(cache.getEntryCache().get("user_none"));
+
+            // cached otherwise
+            assertNull(cache.getEntry("user_none", sqlSession, false, true));
+            assertNotNull(cache.getEntryCacheWithoutReferences().get("user_none"));
+        } finally {
+            sqlSession.close();
+        }
+    }
+
+    @Test
+    public void testGetEntriesFromCache() throws Exception {
+        Counter entryHits = getCacheCounter("hits");
+        Session sqlSession = getSQLDirectory().getSession();
+        try {
+            // user_1 is cached, the others are fetched in one batch
+            assertNotNull(sqlSession.getEntry("user_1"));
+            long hits = entryHits.getCount();
+            DocumentModelList entries = sqlSession.getEntries(Arrays.asList("user_1", "Administrator", "user_none"),
+                    true);
+            assertEquals(2, entries.size());
+            assertEquals("user_1", entries.get(0).getId());
+            assertEquals("Administrator", entries.get(1).getId());
+            assertEquals(hits + 1, entryHits.getCount());
+
+            // all cached now, absence included
+            entries = sqlSession.getEntries(Arrays.asList("Administrator", "user_none", "user_1"), true);
+            assertEquals(2, entries.size());
+            assertEquals("Administrator", entries.get(0).getId());
+            assertEquals(hits + 4, entryHits.getCount());
+
+            // returned entries are copies
+            entries.get(0).setProperty("user", "password", "changed");
+            entries = sqlSession.getEntries(Arrays.asList("Administrator"), true);
+            assertEquals("Administrator", entries.get(0).getProperty("user", "password"));
+        } finally {
+            sqlSession.close();
+        }
+    }
+
 }
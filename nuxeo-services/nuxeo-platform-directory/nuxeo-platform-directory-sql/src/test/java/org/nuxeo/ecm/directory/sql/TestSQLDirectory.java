@@ -29,6 +29,7 @@ import static org.junit.Assert.fail;
 import java.io.Serializable;
 import java.util.Arrays;
 import java.util.Calendar;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
@@ -237,6 +238,28 @@ public class TestSQLDirectory extends SQLDirectoryTestCase {
         }
     }
 
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testGetEntriesByIds() throws Exception {
+        Session session = getSession();
+        try {
+            DocumentModelList entries = session.getEntries(
+                    Arrays.asList("Administrator", "user_1", "nosuchuser", "user_1"), true);
+            assertEquals(2, entries.size());
+            assertEquals("Administrator", entries.get(0).getId());
+            assertEquals("user_1", entries.get(1).getId());
+            assertEquals("pass_1", entries.get(1).getProperty(SCHEMA, "password"));
+            List<String> groups = (List<String>) entries.get(1).getProperty(SCHEMA, "groups");
+            assertEquals(2, groups.size());
+            assertTrue(groups.contains("group_1"));
+
+            entries = session.getEntries(Collections.<String> emptyList(), false);
+            assertTrue(entries.isEmpty());
+        } finally {
+            session.close();
+        }
+    }
+
     @SuppressWarnings("unchecked")
     @Test
     public void testGetEntry() throws Exception {
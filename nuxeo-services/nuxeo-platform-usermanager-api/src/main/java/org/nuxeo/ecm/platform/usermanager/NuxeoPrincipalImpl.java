@@ -32,6 +32,7 @@ import java.security.Principal;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Set;
@@ -335,13 +336,30 @@ public class NuxeoPrincipalImpl implements NuxeoPrincipal {
         UserManager userManager = Framework.getService(UserManager.class);
         Set<String> checkedGroups = new HashSet<String>();
         List<String> groupsToProcess = new ArrayList<String>();
-        List<String> resultingGroups = new ArrayList<String>();
+        Set<String> resultingGroups = new LinkedHashSet<String>();
         groupsToProcess.addAll(getGroups());
 
         while (!groupsToProcess.isEmpty()) {
             String groupName = groupsToProcess.remove(0);
             if (!checkedGroups.contains(groupName)) {
                 checkedGroups.add(groupName);
+                // directory groups and their ancestors are resolved by the
+                // user manager without loading the group members
+                List<String> ancestorGroups = null;
+                if (userManager != null) {
+                    try {
+                        ancestorGroups = userManager.getAncestorGroups(groupName);
+                    } catch (DirectoryException de) {
+                        if (!virtualGroups.contains(groupName)) {
+                            throw de;
+                        }
+                    }
+                }
+                if (ancestorGroups != null) {
+                    checkedGroups.addAll(ancestorGroups);
+                    resultingGroups.addAll(ancestorGroups);
+                    continue;
+                }
                 NuxeoGroup nxGroup = null;
                 if (userManager != null) {
                     try {
@@ -259,6 +259,17 @@ public interface UserManager extends Authenticator, EventListener, Serializable
      */
     List<String> getGroupsInGroup(String parentId) throws ClientException;
 
+    /**
+     * Returns the given group followed by all the groups it belongs to, directly or through its parent groups.
+     * <p>
+     * The first element is the group name as stored in the group directory. Member lists are not loaded.
+     *
+     * @param groupName the group name
+     * @return the group and its ancestors, or null if the group is not known to the group directory
+     * @since 7.1
+     */
+    List<String> getAncestorGroups(String groupName) throws ClientException;
+
     /**
      * Returns the list of groups that are not members of other groups.
      *
@@ -181,6 +181,14 @@ public class UserManagerDescriptor implements Serializable {
     @XNode("userCacheName")
     public String userCacheName;
 
+    /**
+     * Name of the cache of the group hierarchy.
+     *
+     * @since 7.1
+     */
+    @XNode("groupCacheName")
+    public String groupCacheName;
+
     /**
      * Merge with data from another descriptor.
      */
@@ -191,6 +199,9 @@ public class UserManagerDescriptor implements Serializable {
         if (other.userCacheName != null) {
             userCacheName = other.userCacheName;
         }
+        if (other.groupCacheName != null) {
+            groupCacheName = other.groupCacheName;
+        }
         if (other.userListingMode != null) {
             userListingMode = other.userListingMode;
         }
@@ -118,6 +118,15 @@ public class UserManagerWithComputedGroups extends UserManagerImpl {
         return grp;
     }
 
+    @Override
+    public List<String> getAncestorGroups(String groupName) throws ClientException {
+        if (activateComputedGroup() && getService().allowGroupOverride()) {
+            // any group may be replaced by a computed one, let callers use getGroup
+            return null;
+        }
+        return super.getAncestorGroups(groupName);
+    }
+
     @Override
     public List<String> getGroupIds() throws ClientException {
         List<String> ids = super.getGroupIds();
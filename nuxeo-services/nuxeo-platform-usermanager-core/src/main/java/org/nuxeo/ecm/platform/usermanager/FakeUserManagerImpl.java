@@ -333,6 +333,10 @@ public class FakeUserManagerImpl implements UserManager {
         throw new UnsupportedOperationException();
     }
 
+    public List<String> getAncestorGroups(String groupName) throws ClientException {
+        return null;
+    }
+
     public List<String> getGroupIds() throws ClientException {
         throw new UnsupportedOperationException();
     }
@@ -32,6 +32,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -56,6 +57,7 @@ import org.nuxeo.ecm.core.cache.Cache;
 import org.nuxeo.ecm.core.cache.CacheService;
 import org.nuxeo.ecm.directory.BaseSession;
 import org.nuxeo.ecm.directory.DirectoryException;
+import org.nuxeo.ecm.directory.Reference;
 import org.nuxeo.ecm.directory.Session;
 import org.nuxeo.ecm.directory.api.DirectoryService;
 import org.nuxeo.ecm.platform.usermanager.exceptions.GroupAlreadyExistsException;
@@ -107,6 +109,35 @@ public class UserManagerImpl implements UserManager, MultiTenantUserManager {
 
     protected Cache principalCache = null;
 
+    /**
+     * Cache of the direct parents and of the ancestors of the groups looked up through {@link #getAncestorGroups}, or
+     * {@code null} if not configured.
+     *
+     * @since 7.1
+     */
+    protected Cache groupCache = null;
+
+    /**
+     * Prefix of the keys of the {@link GroupNode} of each group in the group cache.
+     *
+     * @since 7.1
+     */
+    protected static final String GROUP_PARENTS_KEY_PREFIX = "parents:";
+
+    /**
+     * Prefix of the keys of the ancestors of each group in the group cache.
+     *
+     * @since 7.1
+     */
+    protected static final String GROUP_ANCESTORS_KEY_PREFIX = "ancestors:";
+
+    /**
+     * Incremented on each invalidation so that values computed concurrently are not stored.
+     *
+     * @since 7.1
+     */
+    protected final AtomicLong groupCacheGeneration = new AtomicLong();
+
     public UserMultiTenantManagement multiTenantManagement = new DefaultUserMultiTenantManagement();
 
     /**
@@ -222,6 +253,9 @@ public class UserManagerImpl implements UserManager, MultiTenantUserManager {
         if (descriptor.userCacheName != null) {
             principalCache = cacheService.getCache(descriptor.userCacheName);
         }
+        if (descriptor.groupCacheName != null) {
+            groupCache = cacheService.getCache(descriptor.groupCacheName);
+        }
 
     }
 
@@ -633,6 +667,175 @@ public class UserManagerImpl implements UserManager, MultiTenantUserManager {
         return getGroupsInGroup(parentId, null);
     }
 
+    /**
+     * Name and direct parent groups of a group, or a missing group when the name is null.
+     *
+     * @since 7.1
+     */
+    protected static class GroupNode implements Serializable {
+
+        private static final long serialVersionUID = 1L;
+
+        protected final String name;
+
+        protected final List<String> parents;
+
+        protected GroupNode(String name, List<String> parents) {
+            this.name = name;
+            this.parents = parents;
+        }
+    }
+
+    @Override
+    public List<String> getAncestorGroups(String groupName) throws ClientException {
+        String key = GROUP_ANCESTORS_KEY_PREFIX + groupName;
+        @SuppressWarnings("unchecked")
+        List<String> ancestors = (List<String>) getGroupCacheValue(key);
+        if (ancestors == null) {
+            long generation = groupCacheGeneration.get();
+            ancestors = computeAncestorGroups(groupName);
+            putGroupCacheValue(key, (Serializable) ancestors, generation);
+        }
+        return ancestors.isEmpty() ? null : new ArrayList<String>(ancestors);
+    }
+
+    /**
+     * Walks the parent groups breadth-first, loading from the directory only the groups not already known.
+     *
+     * @return the group followed by its ancestors, or an empty list if the group does not exist
+     * @since 7.1
+     */
+    protected List<String> computeAncestorGroups(String groupName) throws ClientException {
+        GroupNode node = getGroupNode(groupName);
+        List<String> ancestors = new ArrayList<String>();
+        if (node.name == null) {
+            return ancestors;
+        }
+        Set<String> seen = new HashSet<String>();
+        LinkedList<GroupNode> nodes = new LinkedList<GroupNode>();
+        nodes.add(node);
+        seen.add(node.name);
+        while (!nodes.isEmpty()) {
+            node = nodes.removeFirst();
+            ancestors.add(node.name);
+            for (String parent : node.parents) {
+                if (seen.contains(parent)) {
+                    continue;
+                }
+                GroupNode parentNode = getGroupNode(parent);
+                if (parentNode.name == null) {
+                    log.debug("Group " + node.name + " references the " + parent + " group that does not exist");
+                } else if (seen.add(parentNode.name)) {
+                    nodes.add(parentNode);
+                }
+            }
+        }
+        return ancestors;
+    }
+
+    protected GroupNode getGroupNode(String groupName) throws ClientException {
+        String key = GROUP_PARENTS_KEY_PREFIX + groupName;
+        GroupNode node = (GroupNode) getGroupCacheValue(key);
+        if (node == null) {
+            long generation = groupCacheGeneration.get();
+            node = loadGroupNode(groupName);
+            putGroupCacheValue(key, node, generation);
+        }
+        return node;
+    }
+
+    /**
+     * @since 7.1
+     */
+    protected Serializable getGroupCacheValue(String key) throws ClientException {
+        if (groupCache == null) {
+            return null;
+        }
+        try {
+            return groupCache.get(key);
+        } catch (IOException e) {
+            throw new ClientException(e);
+        }
+    }
+
+    /**
+     * Stores a value in the group cache, unless the cache was invalidated since its computation started. Values
+     * computed on other nodes during an invalidation may still be stored, they expire with the cache TTL.
+     *
+     * @since 7.1
+     */
+    protected void putGroupCacheValue(String key, Serializable value, long generation) throws ClientException {
+        if (groupCache == null || generation != groupCacheGeneration.get()) {
+            return;
+        }
+        try {
+            groupCache.put(key, value);
+        } catch (IOException e) {
+            throw new ClientException(e);
+        }
+    }
+
+    protected GroupNode loadGroupNode(String groupName) throws ClientException {
+        String name = multiTenantManagement.groupnameTranformer(this, groupName, null);
+        if (name == null) {
+            return new GroupNode(null, null);
+        }
+        Session groupDir = null;
+        try {
+            groupDir = dirService.open(groupDirectoryName);
+            // don't fetch references, the members may be numerous
+            DocumentModel entry = groupDir.getEntry(name.trim(), false);
+            if (entry == null) {
+                return new GroupNode(null, null);
+            }
+            // the id as stored, the directory may be case insensitive
+            name = entry.getId();
+            List<String> parents = getGroupReferenceIds(groupParentGroupsField, name, groupDir);
+            return new GroupNode(name, new ArrayList<String>(parents));
+        } finally {
+            if (groupDir != null) {
+                groupDir.close();
+            }
+        }
+    }
+
+    /**
+     * Gets the ids referenced by a group field, through the directory reference when there is one so that only this
+     * field is read.
+     *
+     * @since 7.1
+     */
+    @SuppressWarnings("unchecked")
+    protected List<String> getGroupReferenceIds(String field, String groupName, Session groupDir)
+            throws ClientException {
+        List<String> ids;
+        Reference reference = dirService.getDirectory(groupDirectoryName).getReference(field);
+        if (reference != null) {
+            ids = reference.getTargetIdsForSource(groupName);
+        } else {
+            DocumentModel entry = groupDir.getEntry(groupName);
+            ids = entry == null ? null : (List<String>) entry.getProperty(groupSchemaName, field);
+        }
+        return ids == null ? Collections.<String> emptyList() : ids;
+    }
+
+    /**
+     * Forgets the parents and ancestors of all groups. The change of a group changes the ancestors of all its
+     * descendants, and the cache can't be searched for the former sub-groups of the group.
+     *
+     * @since 7.1
+     */
+    protected void invalidateAllGroupAncestors() {
+        groupCacheGeneration.incrementAndGet();
+        if (groupCache != null) {
+            try {
+                groupCache.invalidateAll();
+            } catch (IOException e) {
+                throw new ClientException(e);
+            }
+        }
+    }
+
     @Override
     public List<String> getUsersInGroup(String groupId) throws ClientException {
         return getGroup(groupId).getMemberUsers();
@@ -751,6 +954,7 @@ public class UserManagerImpl implements UserManager, MultiTenantUserManager {
      * Notifies group has changed so that the JaasCacheFlusher listener can make sure principals cache is reset.
      */
     protected void notifyGroupChanged(String groupName) throws ClientException {
+        invalidateAllGroupAncestors();
         invalidateAllPrincipals();
         notify(groupName, GROUPCHANGED_EVENT_ID);
     }
@@ -1571,6 +1775,7 @@ public class UserManagerImpl implements UserManager, MultiTenantUserManager {
         if (INVALIDATE_PRINCIPAL_EVENT_ID.equals(id)) {
             invalidatePrincipal((String) event.getData());
         } else if (INVALIDATE_ALL_PRINCIPALS_EVENT_ID.equals(id)) {
+            invalidateAllGroupAncestors();
             invalidateAllPrincipals();
         }
     }
@@ -27,6 +27,7 @@ import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
 import java.io.Serializable;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
@@ -48,6 +49,7 @@ import org.nuxeo.ecm.core.api.security.ACL;
 import org.nuxeo.ecm.core.api.security.SecurityConstants;
 import org.nuxeo.ecm.core.api.security.impl.ACLImpl;
 import org.nuxeo.ecm.core.api.security.impl.ACPImpl;
+import org.nuxeo.ecm.core.cache.Cache;
 import org.nuxeo.ecm.platform.usermanager.exceptions.GroupAlreadyExistsException;
 import org.nuxeo.ecm.platform.usermanager.exceptions.UserAlreadyExistsException;
 import org.nuxeo.runtime.api.Framework;
@@ -490,6 +492,55 @@ public class TestUserManager extends UserManagerTestCase {
         assertEquals(expectedTopLevelGroups, topLevelGroups);
     }
 
+    @Test
+    public void testGetAncestorGroups() throws Exception {
+        deleteTestObjects();
+
+        DocumentModel g1 = getGroup("test_g1");
+        DocumentModel g2 = getGroup("test_g2");
+        DocumentModel g3 = getGroup("test_g3");
+        userManager.createGroup(g1);
+        g2.setProperty("group", "subGroups", Arrays.asList("test_g1"));
+        userManager.createGroup(g2);
+        g3.setProperty("group", "subGroups", Arrays.asList("test_g2"));
+        userManager.createGroup(g3);
+
+        assertEquals(Arrays.asList("test_g1", "test_g2", "test_g3"), userManager.getAncestorGroups("test_g1"));
+        assertEquals(Arrays.asList("test_g3"), userManager.getAncestorGroups("test_g3"));
+        assertNull(userManager.getAncestorGroups("test_nosuchgroup"));
+        Cache groupCache = ((UserManagerImpl) userManager).groupCache;
+        assertNotNull(groupCache.get("ancestors:test_g1"));
+        assertNotNull(groupCache.get("parents:test_g2"));
+
+        DocumentModel u1 = getUser("test_u1");
+        u1.setProperty("user", "groups", Arrays.asList("test_g1"));
+        userManager.createUser(u1);
+        List<String> allGroups = userManager.getPrincipal("test_u1").getAllGroups();
+        assertTrue(allGroups.containsAll(Arrays.asList("test_g1", "test_g2", "test_g3")));
+
+        // a group newly attached above g3 is seen through the closure
+        DocumentModel g4 = getGroup("test_g4");
+        g4.setProperty("group", "subGroups", Arrays.asList("test_g3"));
+        userManager.createGroup(g4);
+        assertNull(groupCache.get("ancestors:test_g1"));
+        assertEquals(Arrays.asList("test_g1", "test_g2", "test_g3", "test_g4"),
+                userManager.getAncestorGroups("test_g1"));
+
+        // detaching g2 from g3
+        g3 = userManager.getGroupModel("test_g3");
+        g3.setProperty("group", "subGroups", new ArrayList<String>());
+        userManager.updateGroup(g3);
+        assertEquals(Arrays.asList("test_g1", "test_g2"), userManager.getAncestorGroups("test_g1"));
+        allGroups = userManager.getPrincipal("test_u1").getAllGroups();
+        assertTrue(allGroups.contains("test_g2"));
+        assertFalse(allGroups.contains("test_g3"));
+
+        // deleting g2
+        userManager.deleteGroup("test_g2");
+        assertEquals(Arrays.asList("test_g1"), userManager.getAncestorGroups("test_g1"));
+        assertNull(userManager.getAncestorGroups("test_g2"));
+    }
+
     /**
      * Test the method getUsersInGroup, making sure it does return only the users of the group (and not the subgroups
      * ones).